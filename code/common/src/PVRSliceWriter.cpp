@@ -0,0 +1,95 @@
+#include "PVRSliceWriter.h"
+
+#include <chrono>
+#include <cstring>
+#include <utility>
+
+using namespace std::chrono;
+
+SliceWriter::SliceWriter(int macroblocks, Writer writer)
+    : macroblocks(macroblocks), writer(std::move(writer)) {}
+
+void SliceWriter::startFrame(const uint8_t *header, size_t size, size_t timestampOffset) {
+    std::lock_guard<std::mutex> lock(mtx);
+    this->header.assign(header, header + size);
+    this->timestampOffset = timestampOffset;
+    headerWritten = false;
+    lastWritten = false;
+    nextMb = 0;
+    written = 0;
+    pending.clear();
+}
+
+void SliceWriter::add(const uint8_t *nal, size_t size, bool slice, int firstMb, int lastMb) {
+    std::lock_guard<std::mutex> lock(mtx);
+    // the phone took the frame as complete, anything more would be read as the next header
+    if (lastWritten)
+        return;
+    if (!slice) {
+        write(nal, size, false);
+        return;
+    }
+    if (firstMb != nextMb) {
+        pending.push_back({firstMb, lastMb, std::vector<uint8_t>(nal, nal + size)});
+        return;
+    }
+
+    writeSlice(nal, size, lastMb);
+    bool found = true;
+    while (found && !lastWritten) {
+        found = false;
+        for (size_t i = 0; i < pending.size(); i++) {
+            if (pending[i].firstMb == nextMb) {
+                Pending next = std::move(pending[i]);
+                pending.erase(pending.begin() + i);
+                writeSlice(next.nal.data(), next.nal.size(), next.lastMb);
+                found = true;
+                break;
+            }
+        }
+    }
+}
+
+size_t SliceWriter::endFrame() {
+    std::lock_guard<std::mutex> lock(mtx);
+    // only if the slices did not cover the frame
+    while (!pending.empty() && !lastWritten) {
+        size_t first = 0;
+        for (size_t i = 1; i < pending.size(); i++) {
+            if (pending[i].firstMb < pending[first].firstMb)
+                first = i;
+        }
+        Pending next = std::move(pending[first]);
+        pending.erase(pending.begin() + first);
+        writeSlice(next.nal.data(), next.nal.size(), next.lastMb);
+    }
+    if (headerWritten && !lastWritten)
+        write(nullptr, 0, true);
+    return written;
+}
+
+void SliceWriter::writeSlice(const uint8_t *nal, size_t size, int lastMb) {
+    write(nal, size, lastMb >= macroblocks - 1);
+    nextMb = lastMb + 1;
+}
+
+void SliceWriter::write(const uint8_t *nal, size_t size, bool last) {
+    // header, size and NAL in one write
+    chunk.clear();
+    if (!headerWritten) {
+        int64_t now = duration_cast<microseconds>(system_clock::now().time_since_epoch()).count();
+        if (timestampOffset + sizeof(now) <= header.size())
+            memcpy(&header[timestampOffset], &now, sizeof(now));
+        chunk.insert(chunk.end(), header.begin(), header.end());
+        headerWritten = true;
+    }
+    uint32_t sizeField = (uint32_t) size | (last ? PVR_LAST_SLICE : 0);
+    auto sizeBytes = reinterpret_cast<const uint8_t *>(&sizeField);
+    chunk.insert(chunk.end(), sizeBytes, sizeBytes + sizeof(sizeField));
+    if (size > 0)
+        chunk.insert(chunk.end(), nal, nal + size);
+
+    writer(chunk.data(), chunk.size());
+    written += size;
+    lastWritten = last;
+}
@@ -0,0 +1,58 @@
+#pragma once
+
+#include <cstddef>
+#include <cstdint>
+#include <functional>
+#include <mutex>
+#include <vector>
+
+// Sliced frames on the TCP video stream. A frame starts with the 64 byte header as always, its NAL
+// size is PVR_SLICED_FRAME. Then the NALs follow as the encoder finishes them, each a uint32 size
+// and the NAL. The size of the last one of the frame has PVR_LAST_SLICE set, it may be empty.
+#define PVR_SLICED_FRAME 0xFFFFFFFFu
+#define PVR_LAST_SLICE 0x80000000u
+
+// Writes the NALs x264 hands to nalu_process as sliced frames. The slice threads finish slices in
+// any order, they are written in the order of their macroblocks.
+class SliceWriter {
+  public:
+    typedef std::function<void(const uint8_t *data, size_t size)> Writer;
+
+    // macroblocks of a frame, the slice ending with the last one ends the frame
+    SliceWriter(int macroblocks, Writer writer);
+
+    // Before encoding a frame. The header is written with its first NAL, the send time in us since
+    // epoch is put at timestampOffset.
+    void startFrame(const uint8_t *header, size_t size, size_t timestampOffset);
+
+    // A NAL of the frame, from any thread. Other NALs than slices are written as they come, x264
+    // outputs them before the slices.
+    void add(const uint8_t *nal, size_t size, bool slice, int firstMb, int lastMb);
+
+    // After the encoder returned, ends the frame if its last slice was not written. Returns the
+    // bytes of NALs written, 0 if the encoder output nothing and nothing was written.
+    size_t endFrame();
+
+  private:
+    struct Pending {
+        int firstMb;
+        int lastMb;
+        std::vector<uint8_t> nal;
+    };
+
+    std::mutex mtx;
+    int macroblocks;
+    Writer writer;
+    std::vector<uint8_t> header;
+    size_t timestampOffset = 0;
+    std::vector<uint8_t> chunk;
+    bool headerWritten = false;
+    bool lastWritten = false;
+    int nextMb = 0;
+    size_t written = 0;
+    // slices that finished before the ones ahead of them
+    std::vector<Pending> pending;
+
+    void write(const uint8_t *nal, size_t size, bool last);
+    void writeSlice(const uint8_t *nal, size_t size, int lastMb);
+};
@@ -19,6 +19,12 @@ enum PVR_MSG {
     DISCONNECT,
 };
 
+// How the phone wants the video, the byte after the IPD in ADDITIONAL_DATA
+enum PVR_VIDEO_FLAGS {
+    PVR_VIDEO_UDP = 1,      // packets with parity instead of TCP
+    PVR_VIDEO_SLICES = 2,   // reads sliced frames, see PVRSliceWriter.h
+};
+
 class TCPTalker {
     std::thread *thr;
     std::mutex sktMtx;
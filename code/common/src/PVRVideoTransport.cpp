@@ -0,0 +1,256 @@
+#include "PVRVideoTransport.h"
+
+#include <algorithm>
+#include <cstring>
+
+namespace {
+    // A frame this far behind the last delivered one is from a restarted stream, not a late one
+    const int32_t RESTART_FRAMES = 600;
+
+    // frame ids wrap, compare by their distance
+    int32_t frameDistance(uint32_t from, uint32_t to) { return (int32_t) (to - from); }
+
+    size_t dataShardLength(const VideoPacketHeader &header, int index) {
+        return std::min<size_t>(header.shardSize,
+                                header.frameSize - (size_t) index * header.shardSize);
+    }
+
+    void xorInto(uint8_t *to, const uint8_t *from, size_t size) {
+        for (size_t i = 0; i < size; i++)
+            to[i] ^= from[i];
+    }
+}   // namespace
+
+VideoPacketizer::VideoPacketizer(uint16_t shardSize, int parityPercent)
+    : shardSize(std::max<uint16_t>(shardSize, 1)), parityPercent(std::max(parityPercent, 0)) {
+    packet.resize(PVR_VIDEO_PACKET_HEADER_SIZE + this->shardSize);
+}
+
+void VideoPacketizer::send(const uint8_t *frame, size_t size, const PacketSender &sender) {
+    size_t dataShards = std::max<size_t>((size + shardSize - 1) / shardSize, 1);
+    if (dataShards > UINT16_MAX)
+        return;
+    size_t parityShards = std::min(dataShards, (dataShards * parityPercent + 99) / 100);
+
+    VideoPacketHeader header;
+    header.frameId = frameId++;
+    header.frameSize = (uint32_t) size;
+    header.dataShards = (uint16_t) dataShards;
+    header.parityShards = (uint16_t) parityShards;
+    header.shardSize = shardSize;
+    parity.assign(parityShards * shardSize, 0);
+
+    uint8_t *payload = &packet[PVR_VIDEO_PACKET_HEADER_SIZE];
+    for (size_t i = 0; i < dataShards; i++) {
+        size_t length = dataShardLength(header, (int) i);
+        header.index = (uint16_t) i;
+        header.sequence = sequence++;
+        memcpy(&packet[0], &header, PVR_VIDEO_PACKET_HEADER_SIZE);
+        if (length > 0)
+            memcpy(payload, frame + i * shardSize, length);
+        sender(&packet[0], PVR_VIDEO_PACKET_HEADER_SIZE + length);
+        if (parityShards > 0)
+            xorInto(&parity[(i % parityShards) * shardSize], payload, length);
+    }
+    for (size_t j = 0; j < parityShards; j++) {
+        header.index = (uint16_t) (dataShards + j);
+        header.sequence = sequence++;
+        memcpy(&packet[0], &header, PVR_VIDEO_PACKET_HEADER_SIZE);
+        memcpy(payload, &parity[j * shardSize], shardSize);
+        sender(&packet[0], PVR_VIDEO_PACKET_HEADER_SIZE + shardSize);
+    }
+}
+
+bool VideoReassembler::add(const uint8_t *packet, size_t size) {
+    receiveStats.packets++;
+    VideoPacketHeader header;
+    if (size < PVR_VIDEO_PACKET_HEADER_SIZE) {
+        receiveStats.packetsDropped++;
+        return false;
+    }
+    memcpy(&header, packet, PVR_VIDEO_PACKET_HEADER_SIZE);
+    const uint8_t *payload = packet + PVR_VIDEO_PACKET_HEADER_SIZE;
+    size_t length = size - PVR_VIDEO_PACKET_HEADER_SIZE;
+
+    size_t capacity = (size_t) header.dataShards * header.shardSize;
+    bool valid = header.shardSize > 0 && header.dataShards > 0 &&
+                 header.parityShards <= header.dataShards &&
+                 header.index < header.dataShards + header.parityShards &&
+                 header.frameSize <= capacity &&
+                 (header.dataShards == 1 || header.frameSize > capacity - header.shardSize);
+    if (valid) {
+        size_t expected = header.index < header.dataShards ? dataShardLength(header, header.index)
+                                                           : header.shardSize;
+        valid = length == expected;
+    }
+    if (!valid) {
+        receiveStats.packetsDropped++;
+        return false;
+    }
+
+    if (delivered) {
+        int32_t distance = frameDistance(lastFrameId, header.frameId);
+        if (distance < -RESTART_FRAMES) {
+            reset();
+        } else if (distance <= 0) {
+            receiveStats.packetsDropped++;
+            return false;
+        }
+    }
+
+    Slot &slot = slots[header.frameId % SLOTS];
+    if (slot.active && slot.header.frameId != header.frameId) {
+        if (frameDistance(slot.header.frameId, header.frameId) < 0) {
+            receiveStats.packetsDropped++;
+            return false;
+        }
+        receiveStats.framesLost++;
+        slot.active = false;
+    }
+    if (!slot.active) {
+        start(slot, header);
+    } else if (slot.header.frameSize != header.frameSize ||
+               slot.header.dataShards != header.dataShards ||
+               slot.header.parityShards != header.parityShards ||
+               slot.header.shardSize != header.shardSize) {
+        receiveStats.packetsDropped++;
+        return false;
+    }
+    if (slot.received[header.index]) {
+        receiveStats.packetsDropped++;
+        return false;
+    }
+
+    slot.received[header.index] = 1;
+    if (header.index < header.dataShards) {
+        uint8_t *shard = &slot.data[(size_t) header.index * header.shardSize];
+        memcpy(shard, payload, length);
+        // the parity covers the short last shard padded with zeros
+        memset(shard + length, 0, header.shardSize - length);
+        slot.dataReceived++;
+    } else {
+        memcpy(&slot.parity[(size_t) (header.index - header.dataShards) * header.shardSize],
+               payload,
+               length);
+        slot.parityReceived++;
+    }
+
+    if (slot.dataReceived < header.dataShards) {
+        if (slot.dataReceived + slot.parityReceived < header.dataShards || !recoverable(slot))
+            return false;
+        recover(slot);
+        receiveStats.framesRecovered++;
+    }
+    receiveStats.frames++;
+
+    for (auto &older : slots) {
+        if (older.active && &older != &slot &&
+            frameDistance(older.header.frameId, header.frameId) > 0) {
+            receiveStats.framesLost++;
+            older.active = false;
+        }
+    }
+    slot.active = false;
+    delivered = true;
+    lastFrameId = header.frameId;
+    frameData = &slot.data[0];
+    frameBytes = header.frameSize;
+    return true;
+}
+
+void VideoReassembler::reset() {
+    for (auto &slot : slots)
+        slot.active = false;
+    delivered = false;
+    frameData = nullptr;
+    frameBytes = 0;
+}
+
+void VideoReassembler::start(Slot &slot, const VideoPacketHeader &header) {
+    slot.active = true;
+    slot.header = header;
+    // the buffers only grow, so after the largest frames nothing is allocated
+    slot.data.resize((size_t) header.dataShards * header.shardSize);
+    slot.parity.resize((size_t) header.parityShards * header.shardSize);
+    slot.received.assign(header.dataShards + header.parityShards, 0);
+    slot.dataReceived = 0;
+    slot.parityReceived = 0;
+}
+
+bool VideoReassembler::recoverable(const Slot &slot) const {
+    int dataShards = slot.header.dataShards;
+    int parityShards = slot.header.parityShards;
+    for (int group = 0; group < parityShards; group++) {
+        int missing = 0;
+        for (int i = group; i < dataShards; i += parityShards)
+            missing += slot.received[i] ? 0 : 1;
+        if (missing > 1 || (missing == 1 && !slot.received[dataShards + group]))
+            return false;
+    }
+    return parityShards > 0;
+}
+
+void VideoReassembler::recover(Slot &slot) {
+    int dataShards = slot.header.dataShards;
+    int parityShards = slot.header.parityShards;
+    size_t shardSize = slot.header.shardSize;
+    for (int group = 0; group < parityShards; group++) {
+        int missing = -1;
+        for (int i = group; i < dataShards; i += parityShards) {
+            if (!slot.received[i])
+                missing = i;
+        }
+        if (missing < 0)
+            continue;
+
+        uint8_t *shard = &slot.data[missing * shardSize];
+        memcpy(shard, &slot.parity[group * shardSize], shardSize);
+        for (int i = group; i < dataShards; i += parityShards) {
+            if (i != missing)
+                xorInto(shard, &slot.data[i * shardSize], shardSize);
+        }
+        slot.received[missing] = 1;
+        slot.dataReceived++;
+        receiveStats.shardsRecovered++;
+    }
+}
+
+PacketLossSimulator::PacketLossSimulator(PacketSender sender,
+                                         double lossRate,
+                                         double burstRate,
+                                         double reorderRate,
+                                         int reorderDistance,
+                                         uint32_t seed)
+    : sender(std::move(sender)), lossRate(lossRate), burstRate(burstRate),
+      reorderRate(reorderRate), reorderDistance(std::max(reorderDistance, 1)), random(seed) {}
+
+void PacketLossSimulator::send(const uint8_t *packet, size_t size) {
+    lastLost = chance(random) < (lastLost ? burstRate : lossRate);
+    if (lastLost) {
+        droppedPackets++;
+        return;
+    }
+    if (chance(random) < reorderRate) {
+        held.push_back({reorderDistance, std::vector<uint8_t>(packet, packet + size)});
+        reorderedPackets++;
+        return;
+    }
+
+    sender(packet, size);
+    for (auto &packetHeld : held) {
+        if (--packetHeld.first == 0)
+            sender(&packetHeld.second[0], packetHeld.second.size());
+    }
+    held.erase(std::remove_if(held.begin(),
+                              held.end(),
+                              [](const std::pair<int, std::vector<uint8_t>> &packetHeld) {
+                                  return packetHeld.first == 0;
+                              }),
+               held.end());
+}
+
+void PacketLossSimulator::flush() {
+    for (auto &packetHeld : held)
+        sender(&packetHeld.second[0], packetHeld.second.size());
+    held.clear();
+}
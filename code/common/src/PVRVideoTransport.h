@@ -0,0 +1,138 @@
+#pragma once
+
+#include <cstddef>
+#include <cstdint>
+#include <functional>
+#include <random>
+#include <utility>
+#include <vector>
+
+// Video frames over UDP, shared by the server and the phone. No sockets in here: the packetizer
+// hands packets to a send function and the reassembler is fed the received ones, so it is tested
+// on the host, see mobile/android/PhoneVR/app/src/test/cpp.
+//
+// A frame is split into data shards of shardSize bytes, the last one shorter, plus parity shards.
+// Parity shard j is the XOR of the data shards i with i % parityShards == j, so any loss of at
+// most one packet per group is recovered, including a burst of up to parityShards packets.
+//
+// Packet: VideoPacketHeader, then the shard. Native byte order like the TCP stream.
+
+struct VideoPacketHeader {
+    uint32_t frameId;
+    uint32_t sequence;   // per packet, for counting losses
+    uint32_t frameSize;
+    uint16_t index;      // data shards first, then parity shards
+    uint16_t dataShards;
+    uint16_t parityShards;
+    uint16_t shardSize;
+};
+
+#define PVR_VIDEO_PACKET_HEADER_SIZE 20
+static_assert(sizeof(VideoPacketHeader) == PVR_VIDEO_PACKET_HEADER_SIZE, "packed header");
+
+// Shard size that keeps packets in a 1500 byte Ethernet MTU with IPv4 and UDP headers
+#define PVR_VIDEO_SHARD_SIZE (1500 - 20 - 8 - PVR_VIDEO_PACKET_HEADER_SIZE)
+
+typedef std::function<void(const uint8_t *packet, size_t size)> PacketSender;
+
+class VideoPacketizer {
+  public:
+    // parityPercent of the data shards are added as parity, rounded up, 0 for none
+    VideoPacketizer(uint16_t shardSize, int parityPercent);
+
+    // Sends the packets of a frame, data shards first
+    void send(const uint8_t *frame, size_t size, const PacketSender &sender);
+
+    uint32_t framesSent() const { return frameId; }
+
+  private:
+    uint16_t shardSize;
+    int parityPercent;
+    uint32_t frameId = 0;
+    uint32_t sequence = 0;
+    std::vector<uint8_t> packet;
+    std::vector<uint8_t> parity;
+};
+
+struct VideoReceiveStats {
+    uint64_t packets = 0;
+    uint64_t packetsDropped = 0;   // late, duplicate or malformed
+    uint64_t frames = 0;           // complete, including recovered ones
+    uint64_t framesRecovered = 0;
+    uint64_t framesLost = 0;   // abandoned when a later frame completed first
+    uint64_t shardsRecovered = 0;
+};
+
+// Reassembles frames from packets in any order. A frame is delivered once all its data shards
+// arrived or can be recovered, frames still incomplete before it are given up. So packets
+// reordered across frames are only lost if the later frame completes before them.
+class VideoReassembler {
+  public:
+    static constexpr int SLOTS = 8;   // frames being assembled
+
+    // Returns true when the packet completed a frame, which stays valid until the next add
+    bool add(const uint8_t *packet, size_t size);
+
+    const uint8_t *frame() const { return frameData; }
+    size_t frameSize() const { return frameBytes; }
+    uint32_t frameId() const { return lastFrameId; }
+
+    const VideoReceiveStats &stats() const { return receiveStats; }
+    void reset();
+
+  private:
+    struct Slot {
+        bool active = false;
+        VideoPacketHeader header;
+        std::vector<uint8_t> data;     // dataShards * shardSize
+        std::vector<uint8_t> parity;   // parityShards * shardSize
+        std::vector<uint8_t> received;
+        int dataReceived;
+        int parityReceived;
+    };
+
+    Slot slots[SLOTS];
+    bool delivered = false;
+    uint32_t lastFrameId = 0;
+    const uint8_t *frameData = nullptr;
+    size_t frameBytes = 0;
+    VideoReceiveStats receiveStats;
+
+    void start(Slot &slot, const VideoPacketHeader &header);
+    bool recoverable(const Slot &slot) const;
+    void recover(Slot &slot);
+};
+
+// Drops and reorders packets on their way to a sender, to test the transport on loopback. A
+// packet is lost with lossRate, the next one with burstRate after a loss. A reordered packet is
+// held back until reorderDistance more were sent.
+class PacketLossSimulator {
+  public:
+    PacketLossSimulator(PacketSender sender,
+                        double lossRate,
+                        double burstRate,
+                        double reorderRate,
+                        int reorderDistance,
+                        uint32_t seed = 1);
+
+    void send(const uint8_t *packet, size_t size);
+    // Sends the held back packets
+    void flush();
+
+    uint64_t dropped() const { return droppedPackets; }
+    uint64_t reordered() const { return reorderedPackets; }
+
+  private:
+    PacketSender sender;
+    double lossRate;
+    double burstRate;
+    double reorderRate;
+    int reorderDistance;
+    std::mt19937 random;
+    std::uniform_real_distribution<double> chance{0.0, 1.0};
+    bool lastLost = false;
+    // packets held back and how many more to send before them
+    std::vector<std::pair<int, std::vector<uint8_t>>> held;
+    uint64_t droppedPackets = 0;
+    uint64_t reorderedPackets = 0;
+};
@@ -24,12 +24,26 @@ using namespace PVR;
 #define JNI_VERS  JNI_VERSION_1_6
 #define SUB(func) FUNC(void, func)
 
+#define STREAM_STATS_SIZE 12   // Wrap.STREAM_STATS_SIZE
+
 JavaVM *jVM;
 
 namespace {
     jclass javaWrap;
+    // resolved once in JNI_OnLoad, the Wrap class is kept alive by the global ref
+    jmethodID segueToGameMethod = nullptr;
+    jmethodID unwindToMainMethod = nullptr;
+
+    // Detaches the thread it belongs to from the VM when the thread exits
+    struct ThreadAttachment {
+        bool attached = false;
+
+        ~ThreadAttachment() {
+            if (attached)
+                jVM->DetachCurrentThread();
+        }
+    };
 
-    float newAcc[3];
     uint16_t vPort = 0;
 
     int maxWidth, maxHeight;
@@ -94,6 +108,14 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *) {
             PVR_DB_I("JNI_OnLoad::GlobalRef:: System ran out of memory");
         } else {
             PVR_DB_I("JNI_OnLoad:: Found.");
+            segueToGameMethod = env->GetStaticMethodID(javaWrap, "segueToGame", "()V");
+            unwindToMainMethod = env->GetStaticMethodID(javaWrap, "unwindToMain", "()V");
+            if (env->ExceptionCheck()) {
+                env->ExceptionClear();
+            }
+            if (segueToGameMethod == NULL || unwindToMainMethod == NULL) {
+                PVR_DB_I("JNI_OnLoad::GetStaticMethodID:: Cannot find the Wrap callbacks");
+            }
         }
     } catch (exception e) {
         PVR_DB_I("JNI_OnLoad::FindClass:: Caught Exception: " + string(e.what()));
@@ -101,165 +123,40 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *) {
     return JNI_VERS;
 }
 
-void callJavaMethod(const char *name) {
+// Native threads calling into Java, like the announcer, are attached once for their lifetime
+JNIEnv *attachedEnv() {
+    JNIEnv *env = nullptr;
+    jint result = jVM->GetEnv((void **) &env, JNI_VERS);
+    if (result == JNI_EDETACHED) {
+        thread_local ThreadAttachment attachment;
+        result = jVM->AttachCurrentThread(&env, nullptr);
+        attachment.attached = result == JNI_OK;
+    }
+    if (result != JNI_OK) {
+        PVR_DB_I("JNI_attachedEnv:: Fail to get JNIEnv " + to_string(result));
+        return nullptr;
+    }
+    return env;
+}
+
+void callJavaMethod(jmethodID method, const char *name) {
     PVR_DB_I("JNI callJavaMethod: Calling " + to_string(name));
 
     try {
-        bool isMainThread = true;
-        JNIEnv *env;
-
-        jint result = jVM->GetEnv((void **) &env, JNI_VERS);
-        if (result != JNI_OK) {
-            if (result == JNI_EDETACHED) {
-                PVR_DB_I("JNI_callJavaMethod:: JNI Not attached");
-            } else if (result == JNI_EVERSION) {
-                PVR_DB_I("JNI_callJavaMethod:: JNI Version not supported");
-            } else {
-                PVR_DB_I("JNI_callJavaMethod:: JNI Unknown error");
-            }
-
-            isMainThread = false;
-            jint thread_result = jVM->AttachCurrentThread(&env, nullptr);
-
-            if (thread_result != JNI_OK) {
-                PVR_DB_I("JNI_callJavaMethod:: Fail to AttachCurrentThread " +
-                         to_string(thread_result));
-            }
+        JNIEnv *env = attachedEnv();
+        if (env == nullptr || method == nullptr) {
+            PVR_DB_I("JNI_callJavaMethod:: Cannot call " + to_string(name));
+            return;
         }
 
-        jthrowable exc;
-        jmethodID resultOfMethodID = (env->GetStaticMethodID(javaWrap, name, "()V"));
+        env->CallStaticVoidMethod(javaWrap, method);
         if (env->ExceptionCheck()) {
-            // jclass jClassFormErr = env->FindClass("java/lang/ClassFormatError");
-            exc = env->ExceptionOccurred();
+            env->ExceptionDescribe();
             env->ExceptionClear();
-
-            jboolean isCopy = false;
-            jmethodID toString = env->GetMethodID(
-                env->FindClass("java/lang/Object"), "toString", "()Ljava/lang/String;");
-            jstring s = (jstring) (*env).CallObjectMethod(exc, toString);
-            const char *utf = (*env).GetStringUTFChars(s, &isCopy);
-
-            PVR_DB_I("JNI_callJavaMethod:: Exception Caught: " + string(utf));
-        }
-
-        if (resultOfMethodID == NULL) {
-            PVR_DB_I("JNI_callJavaMethod:: Fail to GetStaticMethodID of " + to_string(name));
         }
-
-        env->CallStaticVoidMethod(javaWrap, resultOfMethodID);
         PVR_DB_I("JNI_callJavaMethod:: Success calling " + to_string(name) + "()");
-
-        if (!isMainThread) {
-            jint resultOfDetachCurrentThread = jVM->DetachCurrentThread();
-            if (resultOfDetachCurrentThread != JNI_OK) {
-                PVR_DB_I("JNI_callJavaMethod:: Fail DetachCurrentThread with error code " +
-                         to_string(resultOfDetachCurrentThread));
-            }
-        }
     } catch (exception e) {
-        PVR_DB_I("JNI_callJavaMethod::GetStaticMethodID:: Caught Exception: " + string(e.what()));
-    }
-}
-
-extern "C" void updateJavaTextViewFPS(float f1,
-                                      float f2,
-                                      float f3,
-                                      float cf1,
-                                      float cf2,
-                                      float cf3,
-                                      float cf4,
-                                      float cf5,
-                                      float ctd1,
-                                      float ctd2,
-                                      int td1,
-                                      int td2) {
-    PVR_DB("JNI Calling updataJavaTextViewFPS: " + to_string(f1) + " " + to_string(f2) + " " +
-           to_string(f3) + " " + to_string(cf1) + " " + to_string(cf2) + " " + to_string(cf3) +
-           " " + to_string(cf4));
-    try {
-        bool isMainThread = true;
-        JNIEnv *env;
-
-        jint result = jVM->GetEnv((void **) &env, JNI_VERS);
-        if (result != JNI_OK) {
-            if (result == JNI_EDETACHED) {
-                PVR_DB("JNI_updataJavaTextViewFPS:: JNI Not attached");
-            } else if (result == JNI_EVERSION) {
-                PVR_DB("JNI_updataJavaTextViewFPS:: JNI Version not supported");
-            } else {
-                PVR_DB("JNI_updataJavaTextViewFPS:: JNI Unknown error");
-            }
-            isMainThread = false;
-            jint thread_result = jVM->AttachCurrentThread(&env, nullptr);
-
-            if (thread_result != JNI_OK) {
-                PVR_DB("JNI_updataJavaTextViewFPS:: Fail to AttachCurrentThread " +
-                       to_string(thread_result));
-            }
-        }
-
-        jfloat jf1 = f1;
-        jfloat jf2 = f2;
-        jfloat jf3 = f3;
-
-        jfloat jcf1 = cf1;
-        jfloat jcf2 = cf2;
-        jfloat jcf3 = cf3;
-        jfloat jcf4 = cf4;
-        jfloat jcf5 = cf5;
-
-        jfloat jctd1 = ctd1;
-        jfloat jctd2 = ctd2;
-
-        jint jtd1 = td1;
-        jint jtd2 = td2;
-
-        jthrowable exc;
-        jmethodID resultOfMethodID =
-            (env->GetStaticMethodID(javaWrap, "updateTextViewFPS", "(FFFFFFFFFFII)V"));
-        /*if (env->ExceptionCheck()) {
-            //jclass jClassFormErr = env->FindClass("java/lang/ClassFormatError");
-            exc = env->ExceptionOccurred();
-            env->ExceptionClear();
-
-            jboolean isCopy = false;
-            jmethodID toString = env->GetMethodID(env->FindClass("java/lang/Object"), "toString",
-                                                  "()Ljava/lang/String;");
-            jstring s = (jstring) (*env).CallObjectMethod(exc, toString);
-            const char *utf = (*env).GetStringUTFChars(s, &isCopy);
-
-            PVR_DB_I("JNI_callJavaMethod:: Exception Caught: " + string(utf));
-        }*/
-
-        if (resultOfMethodID == NULL) {
-            PVR_DB("JNI_updataJavaTextViewFPS:: Fail to GetStaticMethodID of updateTextViewFPS");
-        }
-
-        env->CallStaticVoidMethod(javaWrap,
-                                  resultOfMethodID,
-                                  jf1,
-                                  jf2,
-                                  jf3,
-                                  jcf1,
-                                  jcf2,
-                                  jcf3,
-                                  jcf4,
-                                  jcf5,
-                                  jctd1,
-                                  jctd2,
-                                  jtd1,
-                                  jtd2);
-        if (!isMainThread) {
-            jint resultOfDetachCurrentThread = jVM->DetachCurrentThread();
-            if (resultOfDetachCurrentThread != JNI_OK) {
-                PVR_DB("JNI_updataJavaTextViewFPS:: Fail DetachCurrentThread with error code " +
-                       to_string(resultOfDetachCurrentThread));
-            }
-        }
-    } catch (exception e) {
-        PVR_DB_I("JNI_updataJavaTextViewFPS::GetStaticMethodID:: Caught Exception: " +
-                 string(e.what()));
+        PVR_DB_I("JNI_callJavaMethod:: Caught Exception: " + string(e.what()));
     }
 }
 
@@ -310,11 +207,11 @@ SUB(startAnnouncer)(JNIEnv *env, jclass, jstring jIP, jint port) {
         PVRStartAnnouncer(
             ip,
             port,
-            [] { callJavaMethod("segueToGame"); },
+            [] { callJavaMethod(segueToGameMethod, "segueToGame"); },
             [](uint8_t *headerBuf, size_t len) {
                 vHeader = vector<uint8_t>(headerBuf, headerBuf + len);
             },
-            [] { callJavaMethod("unwindToMain"); });
+            [] { callJavaMethod(unwindToMainMethod, "unwindToMain"); });
         env->ReleaseStringUTFChars(jIP, ip);
     } catch (exception e) {
         PVR_DB_I("JNI_startAnnouncer:: Caught Exception: " + string(e.what()));
@@ -335,37 +232,60 @@ SUB(startSendSensorData)(JNIEnv *env, jclass, jint port) {
     PVR_DB_I("JNI startSendSensorData " + to_string(port));
 
     try {
-        PVRStartSendSensorData(port, [](float *quat, float *acc) {
-            if (gvrApi) {
-                auto gmat = gvrApi->GetHeadSpaceFromStartSpaceRotation(GvrApi::GetTimePointNow());
-                Quaternionf equat(Map<Matrix3f>(GetMat3(gmat.m).data()));
-
-                quat[0] = equat.w();
-                quat[1] = equat.x();
-                quat[2] = equat.y();
-                quat[3] = equat.z();
-                memcpy(acc, newAcc, 3 * 4);
-                return true;
-            }
-            return false;
-        });
+        PVRStartSendSensorData(
+            port,
+            [](float *quat) {
+                if (gvrApi) {
+                    auto gmat =
+                        gvrApi->GetHeadSpaceFromStartSpaceRotation(GvrApi::GetTimePointNow());
+                    Quaternionf equat(Map<Matrix3f>(GetMat3(gmat.m).data()));
+
+                    quat[0] = equat.w();
+                    quat[1] = equat.x();
+                    quat[2] = equat.y();
+                    quat[3] = equat.z();
+                    return true;
+                }
+                return false;
+            },
+            PVRCreateAndroidAccelerationSource);
     } catch (exception e) {
         PVR_DB_I("JNI_startSendSensorData:: Caught Exception: " + string(e.what()));
     }
 }
 
-SUB(setAccData)(JNIEnv *env, jclass, jfloatArray jarr) {
-    // PVR_DB("JNI setAccData");
+// Pulled by the UI at the rate it shows them, instead of pushing every received frame to Java.
+// Fills STREAM_STATS_SIZE values per frame: fpsStreamRecver, fpsDecoder, fpsRenderer, 5 server fps,
+// 2 server delays, networkDelay, receiveDelay. Returns the number of frames.
+FUNC(jint, pullStreamStats)(JNIEnv *env, jclass, jfloatArray jStats) {
     try {
-        auto *accArr = env->GetFloatArrayElements(jarr, nullptr);
-        if (accArr == NULL) {
-            PVR_DB("JNI_setAccData:: GetFloatArrayElements returned NULL value ");
+        static PVRStreamStats stats[PVR_STREAM_STATS_HISTORY];
+        static jfloat values[PVR_STREAM_STATS_HISTORY][STREAM_STATS_SIZE];
+        int maxCount = min(env->GetArrayLength(jStats) / STREAM_STATS_SIZE,
+                           (jsize) PVR_STREAM_STATS_HISTORY);
+        int count = PVRPullStreamStats(stats, maxCount);
+        for (int i = 0; i < count; i++) {
+            auto &s = stats[i];
+            jfloat frame[STREAM_STATS_SIZE] = {s.fpsStreamRecver,
+                                               s.fpsDecoder,
+                                               s.fpsRenderer,
+                                               s.serverFps[0],
+                                               s.serverFps[1],
+                                               s.serverFps[2],
+                                               s.serverFps[3],
+                                               s.serverFps[4],
+                                               s.serverDelays[0],
+                                               s.serverDelays[1],
+                                               (jfloat) s.networkDelay,
+                                               (jfloat) s.receiveDelay};
+            memcpy(values[i], frame, sizeof(frame));
         }
-        memcpy(newAcc, accArr, 3 * 4);
-        env->ReleaseFloatArrayElements(jarr, accArr, JNI_ABORT);
+        env->SetFloatArrayRegion(jStats, 0, count * STREAM_STATS_SIZE, &values[0][0]);
+        return count;
     } catch (exception e) {
-        PVR_DB_I("JNI_setAccData:: Caught Exception: " + string(e.what()));
+        PVR_DB_I("JNI_pullStreamStats:: Caught Exception: " + string(e.what()));
     }
+    return 0;
 }
 
 ///////////////////////////////////// system control & events /////////////////////////////////////
@@ -415,6 +335,43 @@ SUB(setVStreamPort)(JNIEnv *, jclass, jint port) {
     }
 }
 
+SUB(setVStreamUdp)(JNIEnv *, jclass, jboolean udp) {
+    PVR_DB_I("JNI setVStreamUdp - " + to_string(udp == JNI_TRUE));
+    try {
+        PVRSetVideoUdp(udp == JNI_TRUE);
+    } catch (exception e) {
+        PVR_DB_I("JNI_setVStreamUdp:: Caught Exception: " + string(e.what()));
+    }
+}
+
+SUB(setVStreamCapture)(JNIEnv *env, jclass, jstring jPath) {
+    try {
+        auto path = env->GetStringUTFChars(jPath, nullptr);
+        PVR_DB_I("JNI setVStreamCapture - " + string(path));
+        PVRSetStreamCapture(path);
+        env->ReleaseStringUTFChars(jPath, path);
+    } catch (exception e) {
+        PVR_DB_I("JNI_setVStreamCapture:: Caught Exception: " + string(e.what()));
+    }
+}
+
+SUB(setVStreamReplay)(JNIEnv *env, jclass, jstring jPath, jboolean realtime) {
+    try {
+        auto path = env->GetStringUTFChars(jPath, nullptr);
+        PVR_DB_I("JNI setVStreamReplay - " + string(path) +
+                 ", realtime: " + to_string(realtime == JNI_TRUE));
+        PVRSetStreamReplay(path, realtime == JNI_TRUE);
+
+        // the decoder is configured with the header NALs of the capture, no server sends them
+        StreamCaptureReader reader;
+        if (*path && reader.open(path))
+            vHeader = reader.headerNals();
+        env->ReleaseStringUTFChars(jPath, path);
+    } catch (exception e) {
+        PVR_DB_I("JNI_setVStreamReplay:: Caught Exception: " + string(e.what()));
+    }
+}
+
 SUB(startStream)() {   // cannot pass parameter here or else sigabrit on getting frame (why???)
     PVR_DB_I("JNI startStream");
     try {
@@ -452,7 +409,7 @@ SUB(startMediaCodec)(JNIEnv *env, jclass, jobject surface) {
                 while (pvrState != PVR_STATE_SHUTDOWN) {
                     if (PVRIsVidBufNeeded())   // emptyVBufs.size() < 3
                     {
-                        auto idx = AMediaCodec_dequeueInputBuffer(codec, 1000);   // 1ms timeout
+                        auto idx = AMediaCodec_dequeueInputBuffer(codec, 0);
                         if (idx >= 0) {
                             size_t bufSz = 0;
                             uint8_t *buf = AMediaCodec_getInputBuffer(codec, (size_t) idx, &bufSz);
@@ -463,7 +420,8 @@ SUB(startMediaCodec)(JNIEnv *env, jclass, jobject surface) {
                         }
                     }
 
-                    auto fBuf = PVRPopVideoBuf();   // filledVBuf
+                    // sleeps until the receiver fills a buffer, for at most 0.5ms
+                    auto fBuf = PVRPopVideoBuf(500);   // filledVBuf
                     static Clk::time_point oldtime = Clk::now();
                     if (fBuf.idx != -1) {
                         AMediaCodec_queueInputBuffer(codec,
@@ -478,9 +436,9 @@ SUB(startMediaCodec)(JNIEnv *env, jclass, jobject surface) {
                     }
 
                     AMediaCodecBufferInfo info;
-                    auto outIdx = AMediaCodec_dequeueOutputBuffer(codec,
-                                                                  &info,
-                                                                  1000);   // 1ms timeout
+                    // waits 1ms for the frame just queued, only polls otherwise
+                    auto outIdx = AMediaCodec_dequeueOutputBuffer(
+                        codec, &info, fBuf.idx != -1 ? 1000 : 0);
                     if (outIdx >= 0) {
                         PVR_DB(
                             "[MediaCodec th] Output: " +
@@ -542,6 +500,7 @@ SUB(stopAll)(JNIEnv *) {
 
         mediaThr->join();
         delete mediaThr;
+        PVRResetStreamQueues();
 
         AMediaCodec_stop(codec);
         AMediaCodec_delete(codec);
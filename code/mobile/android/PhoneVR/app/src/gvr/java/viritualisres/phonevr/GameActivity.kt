@@ -7,10 +7,6 @@ import android.content.SharedPreferences
 import android.content.pm.ActivityInfo
 import android.graphics.Point
 import android.graphics.SurfaceTexture
-import android.hardware.Sensor
-import android.hardware.SensorEvent
-import android.hardware.SensorEventListener
-import android.hardware.SensorManager
 import android.opengl.GLSurfaceView
 import android.os.Build
 import android.os.Bundle
@@ -23,71 +19,39 @@ import android.widget.FrameLayout
 import android.widget.TextView
 import com.google.vr.ndk.base.AndroidCompat
 import com.google.vr.ndk.base.GvrLayout
-import java.util.concurrent.locks.ReentrantLock
 import javax.microedition.khronos.egl.EGLConfig
 import javax.microedition.khronos.opengles.GL10
 
-class GameActivity : Activity(), SensorEventListener {
+class GameActivity : Activity() {
 
-    private lateinit var sensMgr: SensorManager
     private lateinit var prefs: SharedPreferences
     private lateinit var surf: GLSurfaceView
     private lateinit var gvrLayout: GvrLayout
 
     private var uiFPSTextViewUpdatethread: Thread? = null
-    private var fpsMutex: ReentrantLock = ReentrantLock()
-    private var fpsResumeMutex: ReentrantLock = ReentrantLock()
-
-    // CPU TimeDelays
-    // private var tDelaycRend: Float = 0.0f
-    // private var tDelaycEnc: Float = 0.0f
-    var lastctDelaysVals: Array<Array<Float>> =
-        arrayOf(
-            arrayOf<Float>(0.0f, 0.0f, 0.0f, 0.0f, 0.0f), // tDelay CPU Rendering
-            arrayOf<Float>(0.0f, 0.0f, 0.0f, 0.0f, 0.0f)) // tDelay CPU Encoding
-
-    var lasttDelaysVals: Array<Array<Int>> =
-        arrayOf(
-            arrayOf<Int>(0, 0, 0, 0, 0), // tNetworkDelay
-            arrayOf<Int>(0, 0, 0, 0, 0)) // tDelaycTillUpdateCall
-
-    // Mobile FPSs
-    // var fpsStreamRecv: Float = 0.0f
-    // var fpsDecoder: Float = 0.0f
-    // var fpsRenderer: Float = 0.0f
-    var lastfpsVals: Array<Array<Float>> =
-        arrayOf(
-            arrayOf<Float>(0.0f, 0.0f, 0.0f, 0.0f, 0.0f), // StreamRecv
-            arrayOf<Float>(0.0f, 0.0f, 0.0f, 0.0f, 0.0f), // Decoder
-            arrayOf<Float>(0.0f, 0.0f, 0.0f, 0.0f, 0.0f)) // Renderer
-
-    // CPU FPSs
-    // var cfpsSteamVRApp: Float = 0.0f
-    // var cfpsEncoder: Float = 0.0f
-    // var cfpsStreamWriter: Float = 0.0f
-    // var cfpsStreamer: Float = 0.0f
-    var clastfpsVals: Array<Array<Float>> =
-        arrayOf(
-            arrayOf<Float>(0.0f, 0.0f, 0.0f, 0.0f, 0.0f), // VRApp
-            arrayOf<Float>(0.0f, 0.0f, 0.0f, 0.0f, 0.0f), // Encoder
-            arrayOf<Float>(0.0f, 0.0f, 0.0f, 0.0f, 0.0f), // StreamWriter
-            arrayOf<Float>(0.0f, 0.0f, 0.0f, 0.0f, 0.0f), // StreamWriter
-            arrayOf<Float>(0.0f, 0.0f, 0.0f, 0.0f, 0.0f)) // Renderer
-
-    var fpsCounter: Int = 0 // For storing previous 5 Fps Values
+    @Volatile private var overlayPaused = false
+
+    // stats of every received frame, added by uiFPSTextViewUpdatethread and read by the UI thread
+    private val latencyStats = LatencyStats(Wrap.STREAM_STATS_SIZE, STATS_WINDOW)
+    private val pulledStats = FloatArray(Wrap.STREAM_STATS_SIZE * Wrap.STREAM_STATS_HISTORY)
+    private val percentiles = LatencyStats.Percentiles()
+    private val overlayText = StringBuilder()
 
     private var isDaydream = false
 
+    // a capture replayed instead of the stream of a server, see MainActivity
+    private var replayPath = ""
+
     override fun onCreate(savedInstanceState: Bundle?) {
 
         super.onCreate(savedInstanceState)
 
-        sensMgr = getSystemService(Context.SENSOR_SERVICE) as SensorManager
         prefs = getSharedPreferences(pvrPrefsKey, Context.MODE_PRIVATE)
         surf = GLSurfaceView(this)
         gvrLayout = GvrLayout(this)
 
         val mainActRot = intent.getIntExtra("MAINLAYOUT_ROT", Surface.ROTATION_0)
+        replayPath = intent.getStringExtra(REPLAY_PATH) ?: ""
         if (mainActRot == Surface.ROTATION_270) {
             requestedOrientation = ActivityInfo.SCREEN_ORIENTATION_REVERSE_LANDSCAPE
         }
@@ -137,7 +101,7 @@ class GameActivity : Activity(), SensorEventListener {
 
         // getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
-        Wrap.startSendSensorData(prefs.getInt(posePortKey, posePortDef))
+        if (replayPath.isEmpty()) Wrap.startSendSensorData(prefs.getInt(posePortKey, posePortDef))
 
         // Log.d("--PVR-Java--", "main Layout Orientation : (" + mainActRot +")" /*+
         // mainLayout.rotation.toString() + ", GVR: "*/ + windowManager.defaultDisplay.rotation);
@@ -151,51 +115,13 @@ class GameActivity : Activity(), SensorEventListener {
                         try {
                             while (!this.isInterrupted) {
                                 sleep(250)
-                                runOnUiThread {
-                                    val tv = findViewById<TextView>(R.id.textViewFPS)
-                                    fpsResumeMutex.lock()
-                                    fpsMutex.lock()
-                                    /*  --- FPS and Latency Stats       ---
-                                       --- M - Mobile; C - CPU/Desktop ---
-                                       SR - StreamReceiver @M
-                                       D - Media Decoder @M
-                                       R - Frame Renderer @M
-
-                                       cR - Frame Renderer @C
-                                       SS - Stream Sender @C
-                                       SW - Stream Writer @C
-                                       E - Media Encoder @C
-                                       VRa - VR Application FPS @C
-
-                                       tSS - Time Delay between RendererGotFrame and RendererRendered @C
-                                       tE - Time Delay between EncoderGotFrame and EncoderEncoded @C
-                                       tND - NetworkDelay - Time Delay between DataPacketSent from @C to DataPacketReceived @M
-                                       tSR - StreamReceiver - Time Delay between DataPacketSent from @C to DataSentToMediaDecoder @M
-                                    */
-                                    tv.text =
-                                        String.format(
-                                            "---FPS---\n" +
-                                                "M| SR: %5.1f D: %5.1f R: %5.1f cR: %5.1f\n" +
-                                                "C| SS: %5.1f SW: %5.1f E: %5.1f VRa: %5.1f\n" +
-                                                "---Latency(ms)---\n" +
-                                                "C| tSS: %5.1f tE: %5.1f\n" +
-                                                "M| tND: %5.1f tSR: %5.1f",
-                                            lastfpsVals[0].average(),
-                                            lastfpsVals[1].average(),
-                                            lastfpsVals[2].average(),
-                                            clastfpsVals[4].average(),
-                                            clastfpsVals[3].average(),
-                                            clastfpsVals[2].average(),
-                                            clastfpsVals[1].average(),
-                                            clastfpsVals[0].average(),
-                                            lastctDelaysVals[1].average(),
-                                            lastctDelaysVals[0].average(),
-                                            lasttDelaysVals[0].average(),
-                                            lasttDelaysVals[1].average())
-                                    // fpsStreamRecv, fpsDecoder, fpsRenderer,
-                                    // cfpsStreamer, cfpsEncoder, cfpsSteamVRApp)
-                                    fpsMutex.unlock()
-                                    fpsResumeMutex.unlock()
+                                // pulled when shown, the receiver only stores them per frame
+                                val frames = Wrap.pullStreamStats(pulledStats)
+                                for (i in 0 until frames) {
+                                    latencyStats.addAll(pulledStats, i * Wrap.STREAM_STATS_SIZE)
+                                }
+                                if (!overlayPaused) {
+                                    runOnUiThread { updateOverlay() }
                                 }
                             }
                         } catch (e: InterruptedException) {
@@ -211,24 +137,17 @@ class GameActivity : Activity(), SensorEventListener {
         Wrap.onPause()
         surf.onPause()
         gvrLayout.onPause()
-        sensMgr.unregisterListener(this)
-        if (uiFPSTextViewUpdatethread != null) fpsResumeMutex.lock()
+        overlayPaused = true
         super.onPause()
     }
 
     override fun onResume() {
         super.onResume()
-        val acc =
-            sensMgr.getDefaultSensor(
-                Sensor.TYPE_LINEAR_ACCELERATION) // Sensor.TYPE_ROTATION_VECTOR for orientation
-        sensMgr.registerListener(
-            this, acc, SensorManager.SENSOR_DELAY_FASTEST, 1000) // max 5ms latency
         gvrLayout.onResume()
         surf.onResume()
         Wrap.onResume()
 
-        // FPS Update Thread exits ? Yes ? It must be Paused by onPause(). Resume it
-        if ((uiFPSTextViewUpdatethread != null) && fpsResumeMutex.isLocked) fpsResumeMutex.unlock()
+        overlayPaused = false
 
         // Log.d("--PVR-Java--", "Resume: main Layout Orientation : " /*+
         // mainLayout.rotation.toString()
@@ -261,55 +180,33 @@ class GameActivity : Activity(), SensorEventListener {
         }
     }
 
-    // SensorEventListener methods
-    override fun onAccuracyChanged(sensor: Sensor, accuracy: Int) {}
-
-    override fun onSensorChanged(event: SensorEvent) {
-        Wrap.setAccData(event.values)
-    }
-
-    fun updateFPS(
-        fpsStreamRecvJNI: Float,
-        fpsDecoderJNI: Float,
-        fpsRendererJNI: Float,
-        cfpsSteamVRAppJNI: Float,
-        cfpsEncoderJNI: Float,
-        cfpsStreamWriterJNI: Float,
-        cfpsStreamerJNI: Float,
-        cfpsRenderer: Float,
-        ctDelayRend: Float,
-        ctDelayEnc: Float,
-        tNetworkDelay: Int,
-        tStreamRecvDelayms: Int
-    ) {
-        fpsMutex.lock()
-
-        // fpsStreamRecv = fpsStreamRecvJNI
-        // fpsDecoder = fpsDecoderJNI
-        // fpsRenderer = fpsRendererJNI
-        lastfpsVals[0][fpsCounter] = fpsStreamRecvJNI
-        lastfpsVals[1][fpsCounter] = fpsDecoderJNI
-        lastfpsVals[2][fpsCounter] = fpsRendererJNI
-
-        // cfpsSteamVRApp = cfpsSteamVRAppJNI
-        // cfpsEncoder = cfpsEncoderJNI
-        // cfpsStreamWriter = cfpsStreamWriterJNI
-        // cfpsStreamer = cfpsStreamerJNI
-
-        clastfpsVals[0][fpsCounter] = cfpsSteamVRAppJNI
-        clastfpsVals[1][fpsCounter] = cfpsEncoderJNI
-        clastfpsVals[2][fpsCounter] = cfpsStreamWriterJNI
-        clastfpsVals[3][fpsCounter] = cfpsStreamerJNI
-        clastfpsVals[4][fpsCounter] = cfpsRenderer
-
-        lastctDelaysVals[0][fpsCounter] = ctDelayRend
-        lastctDelaysVals[1][fpsCounter] = ctDelayEnc
-
-        lasttDelaysVals[0][fpsCounter] = tNetworkDelay // Latency in Network Communication
-        lasttDelaysVals[1][fpsCounter] = tStreamRecvDelayms
-
-        fpsCounter = (++fpsCounter) % 5
-        fpsMutex.unlock()
+    /*  --- FPS and Latency Stats       ---
+       --- M - Mobile; C - CPU/Desktop ---
+       SR - StreamReceiver @M
+       D - Media Decoder @M
+       R - Frame Renderer @M
+
+       cR - Frame Renderer @C
+       SS - Stream Sender @C
+       SW - Stream Writer @C
+       E - Media Encoder @C
+       VRa - VR Application FPS @C
+
+       tSS - Time Delay between RendererGotFrame and RendererRendered @C
+       tE - Time Delay between EncoderGotFrame and EncoderEncoded @C
+       tND - NetworkDelay - Time Delay between DataPacketSent from @C to DataPacketReceived @M
+       tSR - StreamReceiver - Time Delay between DataPacketSent from @C to DataSentToMediaDecoder @M
+    */
+    private fun updateOverlay() {
+        overlayText.setLength(0)
+        overlayText.append("--- p50 p95 p99 max, ").append(STATS_WINDOW).append(" frames ---")
+        for (i in OVERLAY_STATS.indices) {
+            if (i == OVERLAY_LATENCY_START) overlayText.append("\n--- Latency(ms) ---")
+            latencyStats.read(OVERLAY_STATS[i], percentiles)
+            overlayText.append('\n').append(OVERLAY_NAMES[i]).append(": ")
+            percentiles.appendTo(overlayText)
+        }
+        findViewById<TextView>(R.id.textViewFPS).text = overlayText
     }
 
     private inner class Renderer :
@@ -319,6 +216,12 @@ class GameActivity : Activity(), SensorEventListener {
         override fun onSurfaceCreated(gl: GL10, c: EGLConfig) {
             val sz = Point()
             windowManager.defaultDisplay.getRealSize(sz)
+            // asked from the server by initSystem
+            Wrap.setVStreamUdp(prefs.getBoolean(udpVideoKey, udpVideoDef))
+            val capture =
+                replayPath.isEmpty() && prefs.getBoolean(captureStreamKey, captureStreamDef)
+            Wrap.setVStreamCapture(if (capture) streamCaptureFile(this@GameActivity).path else "")
+            Wrap.setVStreamReplay(replayPath, intent.getBooleanExtra(REPLAY_REALTIME, true))
             val texID =
                 Wrap.initSystem(
                     sz.x,
@@ -352,4 +255,57 @@ class GameActivity : Activity(), SensorEventListener {
             Wrap.drawFrame(pts)
         }
     }
+
+    companion object {
+        // intent extras, the capture file to replay and whether at the recorded speed
+        const val REPLAY_PATH = "REPLAY_PATH"
+        const val REPLAY_REALTIME = "REPLAY_REALTIME"
+
+        // 10s of frames at 60fps, long enough for the rare stalls to show in p99 and max
+        private const val STATS_WINDOW = 600
+
+        // order of the stats pulled from Wrap.pullStreamStats
+        private const val STAT_SR = 0
+        private const val STAT_D = 1
+        private const val STAT_R = 2
+        private const val STAT_VRA = 3
+        private const val STAT_E = 4
+        private const val STAT_SW = 5
+        private const val STAT_SS = 6
+        private const val STAT_CR = 7
+        private const val STAT_T_REND = 8
+        private const val STAT_T_ENC = 9
+        private const val STAT_T_ND = 10
+        private const val STAT_T_SR = 11
+
+        private val OVERLAY_STATS =
+            intArrayOf(
+                STAT_SR,
+                STAT_D,
+                STAT_R,
+                STAT_CR,
+                STAT_SS,
+                STAT_SW,
+                STAT_E,
+                STAT_VRA,
+                STAT_T_ENC,
+                STAT_T_REND,
+                STAT_T_ND,
+                STAT_T_SR)
+        private val OVERLAY_NAMES =
+            arrayOf(
+                "M SR",
+                "M D",
+                "M R",
+                "C cR",
+                "C SS",
+                "C SW",
+                "C E",
+                "C VRa",
+                "C tSS",
+                "C tE",
+                "M tND",
+                "M tSR")
+        private const val OVERLAY_LATENCY_START = 8
+    }
 }
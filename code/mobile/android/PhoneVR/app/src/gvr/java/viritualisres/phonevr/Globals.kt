@@ -1,7 +1,9 @@
 /* (C)2023 */
 package viritualisres.phonevr
 
+import android.content.Context
 import android.os.Build
+import java.io.File
 
 val pvrPrefsKey = "pvr_globals"
 
@@ -69,3 +71,13 @@ val warpDef = false // ReProj
 
 val debugKey = "debug"
 val debugDef = false
+
+val udpVideoKey = "udpVideo"
+val udpVideoDef = false
+
+val captureStreamKey = "captureStream"
+val captureStreamDef = false
+
+// the recorded video stream, replayed from the main menu
+fun streamCaptureFile(context: Context) =
+    File(context.getExternalFilesDir(null), "PVR/stream.pvrcap")
@@ -13,6 +13,7 @@ import android.view.Menu
 import android.view.MenuItem
 import android.view.WindowManager
 import android.widget.TextView
+import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
 import androidx.appcompat.widget.Toolbar
 
@@ -73,6 +74,21 @@ class MainActivity : AppCompatActivity() {
         // Log.d("PhoneVR", "OnCreate called");
     }
 
+    // Plays the stream recorded with Settings -> Record video stream, no server needed
+    private fun replayCapture(realtime: Boolean) {
+        val capture = streamCaptureFile(this)
+        if (!capture.exists()) {
+            Toast.makeText(this, R.string.no_stream_capture, Toast.LENGTH_LONG).show()
+            return
+        }
+        Wrap.stopAnnouncer()
+        val intent = Intent(this, GameActivity::class.java)
+        intent.putExtra("MAINLAYOUT_ROT", windowManager.defaultDisplay.rotation)
+        intent.putExtra(GameActivity.REPLAY_PATH, capture.path)
+        intent.putExtra(GameActivity.REPLAY_REALTIME, realtime)
+        startActivity(intent)
+    }
+
     private fun setExtDirinJNI() {
         val dir = getExternalFilesDir(null).toString()
         Log.d(
@@ -153,6 +169,10 @@ class MainActivity : AppCompatActivity() {
             startActivity(intent)
             return true
         }
+        if (item.itemId == R.id.action_replay || item.itemId == R.id.action_replay_fast) {
+            replayCapture(item.itemId == R.id.action_replay)
+            return true
+        }
 
         return super.onOptionsItemSelected(item)
     }
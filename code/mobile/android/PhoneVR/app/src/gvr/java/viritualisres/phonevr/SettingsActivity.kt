@@ -277,6 +277,8 @@ class SettingsActivity : AppCompatActivity() {
                 putFloat(offFovKey, binding.offFov.text.toString().replace(',', '.').toFloat())
                 putBoolean(warpKey, binding.warp.isChecked)
                 putBoolean(debugKey, binding.debug.isChecked)
+                putBoolean(udpVideoKey, binding.udpVideo.isChecked)
+                putBoolean(captureStreamKey, binding.captureStream.isChecked)
                 apply()
             }
         } catch (e: Exception) {
@@ -301,6 +303,8 @@ class SettingsActivity : AppCompatActivity() {
         binding.offFov.setText(String.format(l, fmt2, prefs.getFloat(offFovKey, offFovDef)))
         binding.warp.isChecked = prefs.getBoolean(warpKey, warpDef)
         binding.debug.isChecked = prefs.getBoolean(debugKey, debugDef)
+        binding.udpVideo.isChecked = prefs.getBoolean(udpVideoKey, udpVideoDef)
+        binding.captureStream.isChecked = prefs.getBoolean(captureStreamKey, captureStreamDef)
     }
 
     private fun Util_IsVaildPort(port: Int): Boolean {
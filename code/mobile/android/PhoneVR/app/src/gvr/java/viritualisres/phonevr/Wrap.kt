@@ -8,6 +8,9 @@ import java.lang.ref.WeakReference
 
 internal object Wrap {
 
+    const val STREAM_STATS_SIZE = 12
+    const val STREAM_STATS_HISTORY = 128 // PVR_STREAM_STATS_HISTORY
+
     private var mainRef: WeakReference<MainActivity>? = null
     private var gameRef: WeakReference<GameActivity>? = null
 
@@ -38,44 +41,18 @@ internal object Wrap {
         gameRef?.get()?.finish()
     }
 
-    @JvmStatic
-    fun updateTextViewFPS(
-        fpsStreamRecv: Float,
-        fpsDecoder: Float,
-        fpsRenderer: Float,
-        cfpsSteamVRApp: Float,
-        cfpsEncoder: Float,
-        cfpsStreamWriter: Float,
-        cfpsStreamer: Float,
-        cfpsRenderer: Float,
-        ctDelayRend: Float,
-        ctDelayEnc: Float,
-        tNetworkDelat: Int,
-        tDelayTillUpdateCallms: Int
-    ) {
-        // Log.d("--PVR-Java--", "updateTextViewFPS Wrapper : $fpsStreamRecv $fpsDecoder
-        // $fpsRenderer")
-        gameRef
-            ?.get()
-            ?.updateFPS(
-                fpsStreamRecv,
-                fpsDecoder,
-                fpsRenderer,
-                cfpsSteamVRApp,
-                cfpsEncoder,
-                cfpsStreamWriter,
-                cfpsStreamer,
-                cfpsRenderer,
-                ctDelayRend,
-                ctDelayEnc,
-                tNetworkDelat,
-                tDelayTillUpdateCallms)
-    }
-
     external fun createRenderer(gvrCtx: Long)
 
     external fun setVStreamPort(port: Int)
 
+    external fun setVStreamUdp(udp: Boolean)
+
+    // records the received stream to path, an empty path records nothing
+    external fun setVStreamCapture(path: String)
+
+    // replays the capture at path instead of receiving, an empty path receives
+    external fun setVStreamReplay(path: String, realtime: Boolean)
+
     external fun startStream()
 
     external fun initSystem(
@@ -97,7 +74,9 @@ internal object Wrap {
 
     external fun startSendSensorData(port: Int)
 
-    external fun setAccData(data: FloatArray)
+    // fills STREAM_STATS_SIZE values per frame received since the last pull, oldest first,
+    // returns the number of frames
+    external fun pullStreamStats(stats: FloatArray): Int
 
     external fun startAnnouncer(pcIP: String, port: Int)
 
@@ -1,34 +1,80 @@
 #include "alvr_client_core.h"
 #include "cardboard.h"
+#include "distortion_cache.h"
+#include "frame_timing.h"
 #include <GLES3/gl3.h>
 #include <algorithm>
+#include <atomic>
 #include <android/log.h>
+#include <android/trace.h>
 #include <deque>
 #include <jni.h>
 #include <map>
+#include <mutex>
 #include <thread>
 #include <unistd.h>
 #include <vector>
 
 #include "nlohmann/json.hpp"
+#include "passthrough.h"
+#include "reprojection.h"
+#include "reprojection_math.h"
+#include "seqlock.h"
 #include "utils.h"
+#include "vsync_predictor.h"
 
 using namespace nlohmann;
 
 uint64_t HEAD_ID = alvr_path_string_to_id("/user/head");
 
-// Note: the Cardboard SDK cannot estimate display time and an heuristic is used instead.
-const uint64_t VSYNC_QUEUE_INTERVAL_NS = 50e6;
+// Note: the Cardboard SDK cannot estimate display time, it is predicted from the Choreographer
+// vsyncs instead. A frame rendered before the next vsync is composed at that vsync and scanned out
+// one vsync later.
+const int DISPLAY_PIPELINE_VSYNCS = 1;
 const float FLOOR_HEIGHT = 1.5;
 const int MAXIMUM_TRACKING_FRAMES = 360;
+// head poses sent to the server per displayed frame
+const int TRACKING_SAMPLES_PER_FRAME = 3;
+const int64_t PASSTHROUGH_STATS_INTERVAL_NS = 5e9;
+// refresh rates closer than this are the same, displays report 59.94 or 60.0001 for 60
+const float REFRESH_RATE_TOLERANCE = 0.5;
+
+// Eye offsets and FOVs of the current viewer, set by the render thread and read by inputThread.
+struct ViewConfig {
+    float eyeOffsets[2];
+    AlvrFov fov[2];
+};
+
+// What the client core was initialized with, a warm up is reused if it still matches.
+struct OfferedCapabilities {
+    uint32_t viewWidth = 0;
+    uint32_t viewHeight = 0;
+    std::vector<float> refreshRates;
+
+    bool operator==(const OfferedCapabilities &other) const {
+        return viewWidth == other.viewWidth && viewHeight == other.viewHeight &&
+               refreshRates == other.refreshRates;
+    }
+};
 
 struct NativeContext {
     JavaVM *javaVm = nullptr;
     jobject javaContext = nullptr;
+    // the application context, handed to ALVR
+    jobject alvrContext = nullptr;
+    bool alvrInitialized = false;
+    OfferedCapabilities alvrCapabilities;
 
     CardboardHeadTracker *headTracker = nullptr;
-    CardboardLensDistortion *lensDistortion = nullptr;
     CardboardDistortionRenderer *distortionRenderer = nullptr;
+    // used by the render thread only
+    DistortionCache distortionCache;
+    // of the meshes in distortionRenderer
+    uint64_t distortionKey = 0;
+    // set when a new viewer is scanned, the render thread then clears distortionCache
+    std::atomic<bool> viewerChanged{false};
+    // CLOCK_BOOTTIME of the last resumeNative until its first frame is rendered
+    std::atomic<int64_t> resumeTimeNs{0};
 
     int screenWidth = 0;
     int screenHeight = 0;
@@ -37,27 +83,62 @@ struct NativeContext {
     bool glContextRecreated = false;
 
     bool running = false;
-    bool streaming = false;
+    // read by inputThread
+    std::atomic<bool> streaming{false};
+    // set when the lobby changes without head motion, taken by takeLobbyActivityNative
+    std::atomic<bool> lobbyActivity{false};
+    // ALVR events polled on the main thread at every vsync, so a throttled lobby notices a new
+    // stream right away, handled by the render thread. eventMutex guards them and, for the polls,
+    // alvrInitialized; it is not held while the client core is created or destroyed.
+    std::mutex eventMutex;
+    std::vector<AlvrEvent> events;
+    // used by the render thread only, swapped with events
+    std::vector<AlvrEvent> renderEvents;
+
+    // offered to the server through AlvrClientCapabilities, scaled down by the limits of
+    // setPerformanceLimitsNative
+    uint32_t viewWidth = 0;
+    uint32_t viewHeight = 0;
+    // set on the main thread, read by the render thread in getClientCapabilities
+    std::mutex capabilitiesMutex;
+    // of the display modes at the screen resolution, highest first
+    std::vector<float> displayRefreshRates = {60};
+    float maxRefreshRate = 0;
+    float resolutionScale = 1;
+    std::atomic<bool> capabilitiesChanged{false};
+    // the highest rate offered at the last alvr_initialize, used if the server names no stream rate
+    float offeredRefreshRate = 60;
+
+    // vsyncs are added on the main thread, predictions are made on the render thread
+    std::mutex vsyncMutex;
+    VsyncPredictor vsyncPredictor;
+
     PassthroughInfo passthroughInfo = {};
+    // set from Java, read by the render thread
+    std::atomic<bool> reprojection{false};
+    ReprojectionInfo reprojectionInfo;
+    // views of the last stream frame, shown again turned when no new frame arrived in time
+    AlvrViewParams renderedViews[2] = {};
+    bool streamFrameRendered = false;
+    // written by the render thread, read by Java through getFrameTimingBufferNative
+    FrameTimingRing frameTiming;
     std::thread inputThread;
 
     // Une one texture per eye, no need for swapchains.
     GLuint lobbyTextures[2] = {0, 0};
     GLuint streamTextures[2] = {0, 0};
 
-    float eyeOffsets[2] = {0.0, 0.0};
-    AlvrFov fovArr[2] = {};
-    AlvrViewParams viewParams[2] = {};
-    AlvrDeviceMotion deviceMotion = {};
-
-    NativeContext() {
-        memset(&fovArr, 0, (sizeof(fovArr)) / sizeof(int));
-        memset(&viewParams, 0, (sizeof(viewParams)) / sizeof(int));
-        memset(&deviceMotion, 0, (sizeof(deviceMotion)) / sizeof(int));
-    }
+    // only stored by the render thread, so inputThread never sees half updated parameters
+    SeqLock<ViewConfig> viewConfig;
 };
 
-NativeContext CTX = {};
+NativeContext CTX;
+
+// Section of the cold start traces, see NativeWarmUp.java.
+struct TraceSection {
+    explicit TraceSection(const char *name) { ATrace_beginSection(name); }
+    ~TraceSection() { ATrace_endSection(); }
+};
 
 int64_t GetBootTimeNano() {
     struct timespec res = {};
@@ -65,6 +146,143 @@ int64_t GetBootTimeNano() {
     return (res.tv_sec * 1e9) + res.tv_nsec;
 }
 
+void reportPassthroughStats() {
+    PassthroughStats &stats = CTX.passthroughInfo.stats;
+    int64_t now = GetBootTimeNano();
+    if (stats.periodStartNs == 0) {
+        stats.periodStartNs = now;
+        return;
+    }
+    int64_t elapsedNs = now - stats.periodStartNs;
+    if (elapsedNs < PASSTHROUGH_STATS_INTERVAL_NS) {
+        return;
+    }
+    if (stats.framesLatched > 0) {
+        info("Passthrough camera: %.1f fps, %llu dropped, camera-to-display latency avg %.1fms "
+             "max %.1fms",
+             stats.framesLatched * 1e9 / elapsedNs,
+             (unsigned long long) stats.framesDropped,
+             stats.framesDisplayed > 0 ? stats.latencySumNs / 1e6 / stats.framesDisplayed : 0.0,
+             stats.latencyMaxNs / 1e6);
+    }
+    stats = {};
+    stats.periodStartNs = now;
+}
+
+// Publishes the timing of renderNative on every return path.
+struct FrameTimingScope {
+    FrameTimingScope() { CTX.frameTiming.beginFrame(GetBootTimeNano()); }
+    ~FrameTimingScope() { CTX.frameTiming.endFrame(GetBootTimeNano()); }
+};
+
+int64_t GetMonotonicTimeNano() {
+    struct timespec res = {};
+    clock_gettime(CLOCK_MONOTONIC, &res);
+    return (res.tv_sec * 1e9) + res.tv_nsec;
+}
+
+// Predicted scan-out time of a frame rendered now, in CLOCK_BOOTTIME.
+int64_t predictDisplayTimeNs() {
+    std::lock_guard<std::mutex> lock(CTX.vsyncMutex);
+    return CTX.vsyncPredictor.predictDisplayTimeNs(GetBootTimeNano(), DISPLAY_PIPELINE_VSYNCS);
+}
+
+// refreshRates receives the offered refresh rates, highest first, and has to outlive
+// alvr_initialize. The server streams at the one closest to its setting.
+AlvrClientCapabilities getClientCapabilities(std::vector<float> &refreshRates) {
+    std::lock_guard<std::mutex> lock(CTX.capabilitiesMutex);
+    refreshRates.clear();
+    for (float rate : CTX.displayRefreshRates) {
+        if (CTX.maxRefreshRate <= 0 || rate <= CTX.maxRefreshRate + REFRESH_RATE_TOLERANCE) {
+            refreshRates.push_back(rate);
+        }
+    }
+    if (refreshRates.empty()) {
+        // below every display rate, frames are shown for more than one vsync
+        refreshRates.push_back(CTX.maxRefreshRate);
+    }
+    CTX.offeredRefreshRate = refreshRates[0];
+
+    AlvrClientCapabilities caps = {};
+    // even sizes, the encoder works on 2x2 chroma blocks
+    caps.default_view_width = (uint32_t) (CTX.viewWidth * CTX.resolutionScale) & ~1u;
+    caps.default_view_height = (uint32_t) (CTX.viewHeight * CTX.resolutionScale) & ~1u;
+    caps.external_decoder = false;
+    caps.refresh_rates = refreshRates.data();
+    caps.refresh_rates_count = (int32_t) refreshRates.size();
+    caps.foveated_encoding =
+        true;   // By default disable FFE (can be force-enabled by Server Settings
+    caps.encoder_high_profile = true;
+    caps.encoder_10_bits = true;
+    caps.encoder_av1 = true;
+    return caps;
+}
+
+OfferedCapabilities offeredCapabilities() {
+    OfferedCapabilities offered;
+    AlvrClientCapabilities caps = getClientCapabilities(offered.refreshRates);
+    offered.viewWidth = caps.default_view_width;
+    offered.viewHeight = caps.default_view_height;
+    return offered;
+}
+
+// ALVR releases the Android context in alvr_destroy, so it is handed over before every
+// alvr_initialize.
+void initializeAlvr() {
+    TraceSection trace("alvr_initialize");
+    CTX.capabilitiesChanged = false;
+    std::vector<float> refreshRates;
+    AlvrClientCapabilities caps = getClientCapabilities(refreshRates);
+    info("Offering %ux%u views at up to %.0fHz, %d refresh rates",
+         caps.default_view_width,
+         caps.default_view_height,
+         refreshRates[0],
+         (int) refreshRates.size());
+
+    alvr_initialize_android_context((void *) CTX.javaVm, (void *) CTX.alvrContext);
+    alvr_initialize(caps);
+    {
+        std::lock_guard<std::mutex> lock(CTX.eventMutex);
+        CTX.alvrInitialized = true;
+    }
+    CTX.alvrCapabilities = {caps.default_view_width, caps.default_view_height, refreshRates};
+}
+
+void destroyAlvr() {
+    {
+        // a poll in progress ends before, none starts after
+        std::lock_guard<std::mutex> lock(CTX.eventMutex);
+        CTX.alvrInitialized = false;
+        CTX.events.clear();
+    }
+    alvr_destroy();
+}
+
+// Moves the pending ALVR events to CTX.events, false if there were none
+bool pollAlvrEvents() {
+    std::lock_guard<std::mutex> lock(CTX.eventMutex);
+    if (!CTX.alvrInitialized)
+        return false;
+    bool polled = false;
+    AlvrEvent event;
+    while (alvr_poll_event(&event)) {
+        CTX.events.push_back(event);
+        polled = true;
+    }
+    return polled;
+}
+
+// The capabilities are sent when connecting, so the client core is re-initialized to offer the
+// new ones. Only done while no stream runs, a running stream keeps its configuration.
+void applyClientCapabilities() {
+    alvr_pause();
+    destroyAlvr();
+    initializeAlvr();
+    if (CTX.running) {
+        alvr_resume();
+    }
+}
+
 // Inverse unit quaternion
 AlvrQuat inverseQuat(AlvrQuat q) { return {-q.x, -q.y, -q.z, q.w}; }
 
@@ -93,10 +311,8 @@ void offsetPosWithQuat(AlvrQuat q, float offset[3], float outPos[3]) {
     outPos[2] -= rotatedOffset[2];
 }
 
-AlvrFov getFov(CardboardEye eye) {
-    float f[4];
-    CardboardLensDistortion_getFieldOfView(CTX.lensDistortion, eye, f);
-
+// f as returned by CardboardLensDistortion_getFieldOfView
+AlvrFov toAlvrFov(const float f[4]) {
     AlvrFov fov = {};
     fov.left = -f[0];
     fov.right = f[1];
@@ -119,91 +335,253 @@ AlvrPose getPose(uint64_t timestampNs) {
     return pose;
 }
 
-void updateViewConfigs(uint64_t targetTimestampNs = 0) {
-    if (!targetTimestampNs)
-        targetTimestampNs = GetBootTimeNano() + alvr_get_head_prediction_offset_ns();
-
+void updateViewConfigs(uint64_t targetTimestampNs,
+                       AlvrViewParams viewParams[2],
+                       AlvrDeviceMotion &deviceMotion) {
+    ViewConfig config = CTX.viewConfig.load();
     AlvrPose headPose = getPose(targetTimestampNs);
 
-    CTX.deviceMotion.device_id = HEAD_ID;
-    CTX.deviceMotion.pose = headPose;
+    deviceMotion = {};
+    deviceMotion.device_id = HEAD_ID;
+    deviceMotion.pose = headPose;
 
-    float headToEye[3] = {CTX.eyeOffsets[kLeft], 0.0, 0.0};
-
-    CTX.viewParams[kLeft].pose = headPose;
-    offsetPosWithQuat(headPose.orientation, headToEye, CTX.viewParams[kLeft].pose.position);
-    CTX.viewParams[kLeft].fov = CTX.fovArr[kLeft];
-
-    headToEye[0] = CTX.eyeOffsets[kRight];
-    CTX.viewParams[kRight].pose = headPose;
-    offsetPosWithQuat(headPose.orientation, headToEye, CTX.viewParams[kRight].pose.position);
-    CTX.viewParams[kRight].fov = CTX.fovArr[kRight];
+    for (int eye = 0; eye < 2; eye++) {
+        float headToEye[3] = {config.eyeOffsets[eye], 0.0, 0.0};
+        viewParams[eye] = {};
+        viewParams[eye].pose = headPose;
+        offsetPosWithQuat(headPose.orientation, headToEye, viewParams[eye].pose.position);
+        viewParams[eye].fov = config.fov[eye];
+    }
 }
 
-void inputThread() {
+void inputThread(std::chrono::nanoseconds trackingPeriod) {
     auto deadline = std::chrono::steady_clock::now();
+    AlvrViewParams viewParams[2] = {};
+    AlvrDeviceMotion deviceMotion = {};
 
-    info("inputThread: thread staring...");
+    info("inputThread: thread staring, tracking every %lldus",
+         (long long) (trackingPeriod.count() / 1000));
     while (CTX.streaming) {
 
         auto targetTimestampNs = GetBootTimeNano() + alvr_get_head_prediction_offset_ns();
-        updateViewConfigs(targetTimestampNs);
+        updateViewConfigs(targetTimestampNs, viewParams, deviceMotion);
 
-        alvr_send_tracking(
-            targetTimestampNs, CTX.viewParams, &CTX.deviceMotion, 1, nullptr, nullptr);
+        alvr_send_tracking(targetTimestampNs, viewParams, &deviceMotion, 1, nullptr, nullptr);
 
-        deadline += std::chrono::nanoseconds((uint64_t) (1e9 / 60.f / 3));
+        deadline += trackingPeriod;
         std::this_thread::sleep_until(deadline);
     }
 }
 
+// Sets up distortionRenderer and the view configuration for the saved viewer and the current
+// screen size. Creating the lens distortion and its meshes is the slow part of a resume, so the
+// results are cached per viewer and screen size. Returns false if no viewer is saved yet.
+bool updateDistortion() {
+    uint8_t *buffer;
+    int size;
+    CardboardQrCode_getSavedDeviceParams(&buffer, &size);
+    if (size == 0) {
+        CardboardQrCode_destroy(buffer);
+        return false;
+    }
+
+    if (CTX.viewerChanged.exchange(false)) {
+        CTX.distortionCache.clear();
+    }
+    uint64_t key = DistortionCache::key(buffer, size, CTX.screenWidth, CTX.screenHeight);
+    if (key == CTX.distortionKey && CTX.distortionRenderer && !CTX.glContextRecreated) {
+        // e.g. passthrough was toggled, the renderer still has the right meshes
+        CardboardQrCode_destroy(buffer);
+        return true;
+    }
+
+    int64_t startNs = GetBootTimeNano();
+    DistortionParams params;
+    bool cached = CTX.distortionCache.find(key, params);
+    if (!cached) {
+        CardboardLensDistortion *lensDistortion =
+            CardboardLensDistortion_create(buffer, size, CTX.screenWidth, CTX.screenHeight);
+        for (int eye = 0; eye < 2; eye++) {
+            EyeDistortion &distortion = params.eyes[eye];
+            CardboardMesh mesh;
+            CardboardLensDistortion_getDistortionMesh(lensDistortion, (CardboardEye) eye, &mesh);
+            distortion.indices.assign(mesh.indices, mesh.indices + mesh.n_indices);
+            distortion.vertices.assign(mesh.vertices, mesh.vertices + 2 * mesh.n_vertices);
+            distortion.uvs.assign(mesh.uvs, mesh.uvs + 2 * mesh.n_vertices);
+            CardboardLensDistortion_getEyeFromHeadMatrix(
+                lensDistortion, (CardboardEye) eye, distortion.eyeFromHead);
+            CardboardLensDistortion_getFieldOfView(
+                lensDistortion, (CardboardEye) eye, distortion.fov);
+        }
+        CardboardLensDistortion_destroy(lensDistortion);
+        CTX.distortionCache.put(key, params);
+    }
+    CardboardQrCode_destroy(buffer);
+
+    if (CTX.distortionRenderer) {
+        CardboardDistortionRenderer_destroy(CTX.distortionRenderer);
+        CTX.distortionRenderer = nullptr;
+    }
+    const CardboardOpenGlEsDistortionRendererConfig config{kGlTexture2D};
+    CTX.distortionRenderer = CardboardOpenGlEs2DistortionRenderer_create(&config);
+
+    ViewConfig viewConfig = {};
+    for (int eye = 0; eye < 2; eye++) {
+        EyeDistortion &distortion = params.eyes[eye];
+        CardboardMesh mesh = {};
+        mesh.indices = distortion.indices.data();
+        mesh.n_indices = (int) distortion.indices.size();
+        mesh.vertices = distortion.vertices.data();
+        mesh.uvs = distortion.uvs.data();
+        mesh.n_vertices = (int) distortion.vertices.size() / 2;
+        CardboardDistortionRenderer_setMesh(CTX.distortionRenderer, &mesh, (CardboardEye) eye);
+
+        viewConfig.eyeOffsets[eye] = distortion.eyeFromHead[12];
+        viewConfig.fov[eye] = toAlvrFov(distortion.fov);
+    }
+    CTX.viewConfig.store(viewConfig);
+    // alvr_send_views_config(viewConfig.fov, viewConfig.eyeOffsets[0] - viewConfig.eyeOffsets[1]);
+    CTX.distortionKey = key;
+
+    info("Distortion for %dx%d %s in %.1fms",
+         CTX.screenWidth,
+         CTX.screenHeight,
+         cached ? "loaded from cache" : "computed",
+         (GetBootTimeNano() - startNs) / 1e6);
+    return true;
+}
+
 extern "C" JNIEXPORT jint JNI_OnLoad(JavaVM *vm, void *) {
     CTX.javaVm = vm;
     return JNI_VERSION_1_6;
 }
 
-extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_initializeNative(
-    JNIEnv *env, jobject obj, jint screenWidth, jint screenHeight, jfloat refreshRate) {
-    CTX.javaContext = env->NewGlobalRef(obj);
+// Sets what is shared by warmUpNative and initializeNative, the application context and the
+// display the capabilities are derived from.
+void setAppEnvironment(JNIEnv *env,
+                       jobject context,
+                       jint screenWidth,
+                       jint screenHeight,
+                       jfloatArray refreshRates,
+                       jstring cacheDir) {
+    if (CTX.alvrContext == nullptr) {
+        jclass contextClass = env->GetObjectClass(context);
+        jmethodID getApplicationContext = env->GetMethodID(
+            contextClass, "getApplicationContext", "()Landroid/content/Context;");
+        jobject applicationContext = env->CallObjectMethod(context, getApplicationContext);
+        CTX.alvrContext = env->NewGlobalRef(applicationContext);
+        env->DeleteLocalRef(applicationContext);
+        env->DeleteLocalRef(contextClass);
+    }
 
-    uint32_t viewWidth = std::max(screenWidth, screenHeight) / 2;
-    uint32_t viewHeight = std::min(screenWidth, screenHeight);
+    const char *cacheDirChars = env->GetStringUTFChars(cacheDir, nullptr);
+    CTX.distortionCache.setPath(std::string(cacheDirChars) + "/distortion_cache.bin");
+    env->ReleaseStringUTFChars(cacheDir, cacheDirChars);
 
-    alvr_initialize_android_context((void *) CTX.javaVm, (void *) CTX.javaContext);
+    CTX.viewWidth = std::max(screenWidth, screenHeight) / 2;
+    CTX.viewHeight = std::min(screenWidth, screenHeight);
+    std::lock_guard<std::mutex> lock(CTX.capabilitiesMutex);
+    jfloat *rates = env->GetFloatArrayElements(refreshRates, nullptr);
+    CTX.displayRefreshRates.assign(rates, rates + env->GetArrayLength(refreshRates));
+    env->ReleaseFloatArrayElements(refreshRates, rates, JNI_ABORT);
+}
 
-    float refreshRatesBuffer[1] = {refreshRate};
+extern "C" JNIEXPORT void JNICALL
+Java_viritualisres_phonevr_NativeWarmUp_warmUpNative(JNIEnv *env,
+                                                     jclass,
+                                                     jobject context,
+                                                     jint screenWidth,
+                                                     jint screenHeight,
+                                                     jfloat maxRefreshRate,
+                                                     jfloatArray refreshRates,
+                                                     jstring cacheDir,
+                                                     jboolean initialize) {
+    setAppEnvironment(env, context, screenWidth, screenHeight, refreshRates, cacheDir);
+    {
+        std::lock_guard<std::mutex> lock(CTX.capabilitiesMutex);
+        CTX.maxRefreshRate = maxRefreshRate;
+    }
 
-    AlvrClientCapabilities caps = {};
-    caps.default_view_height = viewHeight;
-    caps.default_view_width = viewWidth;
-    caps.external_decoder = false;
-    caps.refresh_rates = refreshRatesBuffer;
-    caps.refresh_rates_count = 1;
-    caps.foveated_encoding =
-        true;   // By default disable FFE (can be force-enabled by Server Settings
-    caps.encoder_high_profile = true;
-    caps.encoder_10_bits = true;
-    caps.encoder_av1 = true;
+    {
+        TraceSection trace("Cardboard device params");
+        // initialized again with the activity by initializeNative, for the QR code scanner
+        Cardboard_initializeAndroid(CTX.javaVm, CTX.alvrContext);
+        uint8_t *buffer;
+        int size;
+        CardboardQrCode_getSavedDeviceParams(&buffer, &size);
+        if (size > 0) {
+            // loads the distortion cache file, the landscape surface is the whole screen
+            uint64_t key = DistortionCache::key(buffer,
+                                                size,
+                                                std::max(screenWidth, screenHeight),
+                                                std::min(screenWidth, screenHeight));
+            DistortionParams params;
+            info("Warm up: distortion meshes %s",
+                 CTX.distortionCache.find(key, params) ? "cached" : "not cached");
+        }
+        CardboardQrCode_destroy(buffer);
+    }
 
-    alvr_initialize(caps);
+    if (initialize) {
+        initializeAlvr();
+    }
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_viritualisres_phonevr_NativeWarmUp_releaseAlvrNative(JNIEnv *, jclass) {
+    // an ALVRActivity destroys the client core itself
+    if (CTX.alvrInitialized && CTX.javaContext == nullptr) {
+        info("Destroying the ALVR client core of the warm up");
+        destroyAlvr();
+    }
+}
 
-    Cardboard_initializeAndroid(CTX.javaVm, CTX.javaContext);
-    CTX.headTracker = CardboardHeadTracker_create();
+extern "C" JNIEXPORT void JNICALL
+Java_viritualisres_phonevr_ALVRActivity_initializeNative(JNIEnv *env,
+                                                         jobject obj,
+                                                         jint screenWidth,
+                                                         jint screenHeight,
+                                                         jfloat refreshRate,
+                                                         jfloatArray refreshRates,
+                                                         jstring cacheDir) {
+    CTX.javaContext = env->NewGlobalRef(obj);
+    setAppEnvironment(env, obj, screenWidth, screenHeight, refreshRates, cacheDir);
+    {
+        std::lock_guard<std::mutex> lock(CTX.vsyncMutex);
+        CTX.vsyncPredictor.setNominalPeriod((int64_t) (1e9 / refreshRate));
+    }
+
+    if (CTX.alvrInitialized && offeredCapabilities() == CTX.alvrCapabilities) {
+        info("Reusing the ALVR client core of the warm up");
+        // limits set before initializing are already offered
+        CTX.capabilitiesChanged = false;
+    } else {
+        if (CTX.alvrInitialized) {
+            destroyAlvr();
+        }
+        initializeAlvr();
+    }
+
+    {
+        TraceSection trace("Cardboard_initializeAndroid");
+        Cardboard_initializeAndroid(CTX.javaVm, CTX.javaContext);
+        CTX.headTracker = CardboardHeadTracker_create();
+    }
 
     CTX.passthroughInfo.screenWidth = &(CTX.screenWidth);
     CTX.passthroughInfo.screenHeight = &(CTX.screenHeight);
     passthrough_createPlane(&(CTX.passthroughInfo));
 }
 
-extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_destroyNative(JNIEnv *,
+extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_destroyNative(JNIEnv *env,
                                                                                         jobject) {
     alvr_destroy_opengl();
-    alvr_destroy();
+    destroyAlvr();
+    env->DeleteGlobalRef(CTX.javaContext);
+    CTX.javaContext = nullptr;
 
     CardboardHeadTracker_destroy(CTX.headTracker);
     CTX.headTracker = nullptr;
-    CardboardLensDistortion_destroy(CTX.lensDistortion);
-    CTX.lensDistortion = nullptr;
     CardboardDistortionRenderer_destroy(CTX.distortionRenderer);
     CTX.distortionRenderer = nullptr;
 }
@@ -213,6 +591,7 @@ extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_resume
     CardboardHeadTracker_resume(CTX.headTracker);
 
     CTX.renderingParamsChanged = true;
+    CTX.resumeTimeNs = GetBootTimeNano();
 
     uint8_t *buffer;
     int size;
@@ -243,6 +622,11 @@ extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_Passthrough_setPass
     CTX.renderingParamsChanged = true;
 }
 
+extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_Passthrough_cameraFrameLatchedNative(
+    JNIEnv *, jobject, jlong timestampNs, jint droppedFrames, jboolean realtimeClock) {
+    passthrough_frameLatched(&(CTX.passthroughInfo), timestampNs, droppedFrames, realtimeClock);
+}
+
 extern "C" JNIEXPORT void JNICALL
 Java_viritualisres_phonevr_Passthrough_setPassthroughSizeNative(JNIEnv *, jobject, jfloat size) {
     CTX.passthroughInfo.passthroughSize = size;
@@ -253,6 +637,7 @@ extern "C" JNIEXPORT jint JNICALL
 Java_viritualisres_phonevr_ALVRActivity_surfaceCreatedNative(JNIEnv *, jobject) {
     alvr_initialize_opengl();
     GLuint camTex = passthrough_init(&(CTX.passthroughInfo));
+    reprojection_init();
     CTX.glContextRecreated = true;
     return camTex;
 }
@@ -270,56 +655,97 @@ extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_sendBa
     alvr_send_battery(HEAD_ID, level, plugged);
 }
 
-extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_renderNative(JNIEnv *,
-                                                                                       jobject) {
-    try {
-        if (CTX.renderingParamsChanged) {
-            info("renderingParamsChanged, processing new params");
-            uint8_t *buffer;
-            int size;
-            CardboardQrCode_getSavedDeviceParams(&buffer, &size);
+extern "C" JNIEXPORT void JNICALL
+Java_viritualisres_phonevr_ALVRActivity_vsyncNative(JNIEnv *, jobject, jlong frameTimeNanos) {
+    // Choreographer frame times are CLOCK_MONOTONIC, the head tracker uses CLOCK_BOOTTIME
+    int64_t bootOffsetNs = GetBootTimeNano() - GetMonotonicTimeNano();
+    std::lock_guard<std::mutex> lock(CTX.vsyncMutex);
+    CTX.vsyncPredictor.addVsync(frameTimeNanos + bootOffsetNs);
+}
 
-            if (size == 0) {
-                return;
-            }
+extern "C" JNIEXPORT void JNICALL
+Java_viritualisres_phonevr_ALVRActivity_setPerformanceLimitsNative(JNIEnv *,
+                                                                    jobject,
+                                                                    jfloat maxRefreshRate,
+                                                                    jfloat resolutionScale) {
+    {
+        std::lock_guard<std::mutex> lock(CTX.capabilitiesMutex);
+        CTX.maxRefreshRate = maxRefreshRate;
+        CTX.resolutionScale = resolutionScale;
+    }
+    // picked up by the render thread
+    CTX.capabilitiesChanged = true;
+}
 
-            info("renderingParamsChanged, sending new params to alvr");
-            if (CTX.lensDistortion) {
-                CardboardLensDistortion_destroy(CTX.lensDistortion);
-                CTX.lensDistortion = nullptr;
-            }
-            info("renderingParamsChanged, destroyed distortion");
-            CTX.lensDistortion =
-                CardboardLensDistortion_create(buffer, size, CTX.screenWidth, CTX.screenHeight);
+extern "C" JNIEXPORT void JNICALL
+Java_viritualisres_phonevr_ALVRActivity_setDisplayRefreshRateNative(JNIEnv *,
+                                                                     jobject,
+                                                                     jfloat refreshRate) {
+    info("Display refresh rate changed to %.2fHz", refreshRate);
+    std::lock_guard<std::mutex> lock(CTX.vsyncMutex);
+    CTX.vsyncPredictor.setNominalPeriod((int64_t) (1e9 / refreshRate));
+}
 
-            CardboardQrCode_destroy(buffer);
-            *buffer = 0;
+extern "C" JNIEXPORT jboolean JNICALL
+Java_viritualisres_phonevr_ALVRActivity_isStreamingNative(JNIEnv *, jobject) {
+    return CTX.streaming;
+}
 
-            if (CTX.distortionRenderer) {
-                CardboardDistortionRenderer_destroy(CTX.distortionRenderer);
-                CTX.distortionRenderer = nullptr;
-            }
-            const CardboardOpenGlEsDistortionRendererConfig config{kGlTexture2D};
-            CTX.distortionRenderer = CardboardOpenGlEs2DistortionRenderer_create(&config);
+extern "C" JNIEXPORT jboolean JNICALL
+Java_viritualisres_phonevr_ALVRActivity_takeLobbyActivityNative(JNIEnv *, jobject) {
+    // called at every vsync, also while the lobby throttle skips renderNative
+    bool polled = pollAlvrEvents();
+    return CTX.lobbyActivity.exchange(false) || polled;
+}
 
-            for (int eye = 0; eye < 2; eye++) {
-                CardboardMesh mesh;
-                CardboardLensDistortion_getDistortionMesh(
-                    CTX.lensDistortion, (CardboardEye) eye, &mesh);
-                CardboardDistortionRenderer_setMesh(
-                    CTX.distortionRenderer, &mesh, (CardboardEye) eye);
-
-                float matrix[16] = {};
-                CardboardLensDistortion_getEyeFromHeadMatrix(
-                    CTX.lensDistortion, (CardboardEye) eye, matrix);
-                CTX.eyeOffsets[eye] = matrix[12];
-            }
+extern "C" JNIEXPORT void JNICALL
+Java_viritualisres_phonevr_ALVRActivity_setReprojectionNative(JNIEnv *, jobject, jboolean enabled) {
+    CTX.reprojection = enabled;
+}
 
-            CTX.fovArr[kLeft] = getFov(kLeft);
-            CTX.fovArr[kRight] = getFov(kRight);
+extern "C" JNIEXPORT jobject JNICALL
+Java_viritualisres_phonevr_ALVRActivity_getFrameTimingBufferNative(JNIEnv *env, jobject) {
+    return env->NewDirectByteBuffer(CTX.frameTiming.data(), (jlong) CTX.frameTiming.size());
+}
 
-            info("renderingParamsChanged, updating new view configs (FOV) to alvr");
-            // alvr_send_views_config(fovArr, CTX.eyeOffsets[0] - CTX.eyeOffsets[1]);
+FovTangents toFovTangents(const AlvrFov &fov) {
+    return fovTangents(fov.left, fov.right, fov.up, fov.down);
+}
+
+ReprojectionQuat toReprojectionQuat(AlvrQuat q) { return {q.x, q.y, q.z, q.w}; }
+
+// Turns the last stream frame from the orientation it was rendered for to the one predicted for
+// this frame. Without a new frame, the previous one is turned further instead of shown again.
+void reprojectStream(CardboardEyeTextureDescription viewsDescs[]) {
+    AlvrPose pose = getPose(predictDisplayTimeNs());
+    ViewConfig viewConfig = CTX.viewConfig.load();
+
+    float warp[2][9];
+    for (int eye = 0; eye < 2; eye++) {
+        const AlvrViewParams &rendered = CTX.renderedViews[eye];
+        reprojectionMatrix(toFovTangents(rendered.fov),
+                           toReprojectionQuat(rendered.pose.orientation),
+                           toFovTangents(viewConfig.fov[eye]),
+                           toReprojectionQuat(pose.orientation),
+                           warp[eye]);
+    }
+    reprojection_render(&(CTX.reprojectionInfo), CTX.streamTextures, warp, viewsDescs);
+}
+
+extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_renderNative(JNIEnv *,
+                                                                                       jobject) {
+    FrameTimingScope frameTimingScope;
+    try {
+        if (CTX.capabilitiesChanged && !CTX.streaming) {
+            applyClientCapabilities();
+        }
+
+        if (CTX.renderingParamsChanged) {
+            info("renderingParamsChanged, processing new params");
+            TraceSection trace("updateDistortion");
+            if (!updateDistortion()) {
+                return;
+            }
         }
 
         // Note: if GL context is recreated, old resources are already freed.
@@ -334,6 +760,9 @@ extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_render
         if (CTX.renderingParamsChanged || CTX.glContextRecreated) {
             if (CTX.passthroughInfo.enabled) {
                 passthrough_setup(&(CTX.passthroughInfo));
+                // set up once, not on every frame while passthrough is on
+                CTX.renderingParamsChanged = false;
+                CTX.glContextRecreated = false;
             } else {
                 info("Rebuilding, binding textures, Resuming ALVR since glContextRecreated %b, "
                      "renderingParamsChanged %b",
@@ -367,8 +796,13 @@ extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_render
             }
         }
 
-        AlvrEvent event;
-        while (alvr_poll_event(&event)) {
+        // the events of the last frame, handled or not
+        CTX.renderEvents.clear();
+        {
+            std::lock_guard<std::mutex> lock(CTX.eventMutex);
+            CTX.renderEvents.swap(CTX.events);
+        }
+        for (const AlvrEvent &event : CTX.renderEvents) {
             if (event.tag == ALVR_EVENT_HUD_MESSAGE_UPDATED) {
                 auto message_length = alvr_hud_message(nullptr);
                 auto message_buffer = std::vector<char>(message_length);
@@ -378,6 +812,7 @@ extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_render
 
                 if (message_length > 0)
                     alvr_update_hud_message_opengl(&message_buffer[0]);
+                CTX.lobbyActivity = true;
             }
             if (event.tag == ALVR_EVENT_STREAMING_STARTED) {
                 info("ALVR Poll Event: ALVR_EVENT_STREAMING_STARTED, generating and binding "
@@ -412,11 +847,6 @@ extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_render
                                     nullptr));
                 }
 
-                CTX.fovArr[0] = getFov((CardboardEye) 0);
-                CTX.fovArr[1] = getFov((CardboardEye) 1);
-
-                info("ALVR Poll Event: ALVR_EVENT_STREAMING_STARTED, View configs updated...");
-
                 auto leftIntHandle = (uint32_t) CTX.streamTextures[0];
                 auto rightIntHandle = (uint32_t) CTX.streamTextures[1];
                 const uint32_t *textureHandles[2] = {&leftIntHandle, &rightIntHandle};
@@ -481,21 +911,36 @@ extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_render
                 info("ALVR Poll Event: ALVR_EVENT_STREAMING_STARTED, opengl stream started and "
                      "input "
                      "Thread started...");
+                reprojection_setup(
+                    &(CTX.reprojectionInfo), (int) config.view_width, (int) config.view_height);
+                CTX.streamFrameRendered = false;
+
                 CTX.streaming = true;
-                CTX.inputThread = std::thread(inputThread);
+                // the rate the server picked from the offered ones, often below the highest
+                float streamRefreshRate = config.refresh_rate_hint > 0 ? config.refresh_rate_hint
+                                                                       : CTX.offeredRefreshRate;
+                info("Stream runs at %.0fHz", streamRefreshRate);
+                // a few poses per frame, so the server always has a recent one to predict from
+                auto trackingPeriod = std::chrono::nanoseconds(
+                    (int64_t) (1e9 / (streamRefreshRate * TRACKING_SAMPLES_PER_FRAME)));
+                CTX.inputThread = std::thread(inputThread, trackingPeriod);
 
             } else if (event.tag == ALVR_EVENT_STREAMING_STOPPED) {
                 info("ALVR Poll Event: ALVR_EVENT_STREAMING_STOPPED, Waiting for inputThread to "
                      "join...");
                 CTX.streaming = false;
+                CTX.lobbyActivity = true;
                 CTX.inputThread.join();
 
                 GL(glDeleteTextures(2, CTX.streamTextures));
+                reprojection_cleanup(&(CTX.reprojectionInfo));
                 info("ALVR Poll Event: ALVR_EVENT_STREAMING_STOPPED, Stream stopped deleted "
                      "textures.");
             }
         }
 
+        CTX.frameTiming.endStage(STAGE_POLL, GetBootTimeNano());
+
         CardboardEyeTextureDescription viewsDescs[2] = {};
         for (auto &viewsDesc : viewsDescs) {
             viewsDesc.left_u = 0.0;
@@ -505,35 +950,51 @@ extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_render
         }
 
         if (CTX.passthroughInfo.enabled) {
+            CTX.frameTiming.setMode(FRAME_PASSTHROUGH);
             passthrough_render(&(CTX.passthroughInfo), viewsDescs);
         } else if (CTX.streaming) {
+            CTX.frameTiming.setMode(FRAME_STREAM);
             void *streamHardwareBuffer = nullptr;
 
-            AlvrViewParams dummyViewParams;
-            auto timestampNs = alvr_get_frame(&dummyViewParams, &streamHardwareBuffer);
+            // ALVR writes the views of both eyes
+            AlvrViewParams views[2];
+            auto timestampNs = alvr_get_frame(views, &streamHardwareBuffer);
+            CTX.frameTiming.endStage(STAGE_ACQUIRE, GetBootTimeNano());
+            CTX.frameTiming.setFrameTimestamp(timestampNs);
 
-            if (timestampNs == -1) {
+            bool reprojection = CTX.reprojection;
+            if (timestampNs == -1 && !(reprojection && CTX.streamFrameRendered)) {
                 return;
             }
 
-            uint32_t swapchainIndices[2] = {0, 0};
-            alvr_render_stream_opengl(streamHardwareBuffer, swapchainIndices);
+            if (timestampNs != -1) {
+                uint32_t swapchainIndices[2] = {0, 0};
+                alvr_render_stream_opengl(streamHardwareBuffer, swapchainIndices);
 
-            alvr_report_submit(timestampNs, 0);
+                alvr_report_submit(timestampNs, 0);
+                CTX.renderedViews[0] = views[0];
+                CTX.renderedViews[1] = views[1];
+                CTX.streamFrameRendered = true;
+            }
 
             viewsDescs[0].texture = CTX.streamTextures[0];
             viewsDescs[1].texture = CTX.streamTextures[1];
+
+            if (reprojection) {
+                reprojectStream(viewsDescs);
+            }
         } else {
-            AlvrPose pose = getPose(GetBootTimeNano() + VSYNC_QUEUE_INTERVAL_NS);
+            AlvrPose pose = getPose(predictDisplayTimeNs());
+            ViewConfig viewConfig = CTX.viewConfig.load();
 
             AlvrViewInput viewInputs[2] = {};
             for (int eye = 0; eye < 2; eye++) {
-                float headToEye[3] = {CTX.eyeOffsets[eye], 0.0, 0.0};
+                float headToEye[3] = {viewConfig.eyeOffsets[eye], 0.0, 0.0};
                 // offset head pos to Eye Position
                 offsetPosWithQuat(pose.orientation, headToEye, viewInputs[eye].pose.position);
 
                 viewInputs[eye].pose.orientation = pose.orientation;
-                viewInputs[eye].fov = getFov((CardboardEye) eye);
+                viewInputs[eye].fov = viewConfig.fov[eye];
                 viewInputs[eye].swapchain_index = 0;
             }
             alvr_render_lobby_opengl(viewInputs);
@@ -541,9 +1002,7 @@ extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_render
             viewsDescs[0].texture = CTX.lobbyTextures[0];
             viewsDescs[1].texture = CTX.lobbyTextures[1];
         }
-
-        // Note: the Cardboard SDK does not support reprojection!
-        // todo: manually implement it?
+        CTX.frameTiming.endStage(STAGE_RENDER, GetBootTimeNano());
 
         // info("nativeRendered: Rendering to Display...");
         CardboardDistortionRenderer_renderEyeToDisplay(CTX.distortionRenderer,
@@ -554,6 +1013,17 @@ extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_render
                                                        CTX.screenHeight,
                                                        &viewsDescs[0],
                                                        &viewsDescs[1]);
+        CTX.frameTiming.endStage(STAGE_DISTORTION, GetBootTimeNano());
+
+        int64_t resumeTimeNs = CTX.resumeTimeNs.exchange(0);
+        if (resumeTimeNs != 0) {
+            info("Resume to first frame: %.1fms", (GetBootTimeNano() - resumeTimeNs) / 1e6);
+        }
+
+        if (CTX.passthroughInfo.enabled) {
+            passthrough_frameSubmitted(&(CTX.passthroughInfo));
+            reportPassthroughStats();
+        }
     } catch (const json::exception &e) {
         error(std::string(std::string(__FUNCTION__) + std::string(__FILE_NAME__) +
                           std::string(e.what()))
@@ -563,5 +1033,6 @@ extern "C" JNIEXPORT void JNICALL Java_viritualisres_phonevr_ALVRActivity_render
 
 extern "C" JNIEXPORT void JNICALL
 Java_viritualisres_phonevr_ALVRActivity_switchViewerNative(JNIEnv *, jobject) {
+    CTX.viewerChanged = true;
     CardboardQrCode_scanQrCodeAndSaveDeviceParams();
 }
@@ -0,0 +1,225 @@
+#include "distortion_cache.h"
+
+#include <algorithm>
+#include <cstdio>
+#include <fstream>
+#include <iterator>
+
+namespace {
+    // "PVRD", changed whenever the layout below changes
+    const uint32_t MAGIC = 0x44525650;
+    const uint32_t FILE_VERSION = 1;
+
+    // the Cardboard SDK meshes have 40x40 vertices, anything much larger is a corrupt file
+    const int32_t MAX_ELEMENTS = 1 << 20;
+
+    class Writer {
+      public:
+        template <typename T> void put(T value) {
+            const char *bytes = reinterpret_cast<const char *>(&value);
+            data.insert(data.end(), bytes, bytes + sizeof(T));
+        }
+
+        template <typename T> void putVector(const std::vector<T> &values) {
+            put<int32_t>((int32_t) values.size());
+            const char *bytes = reinterpret_cast<const char *>(values.data());
+            data.insert(data.end(), bytes, bytes + values.size() * sizeof(T));
+        }
+
+        std::vector<char> data;
+    };
+
+    class Reader {
+      public:
+        explicit Reader(const std::vector<char> &data) : data(data) {}
+
+        template <typename T> bool get(T &value) { return getBytes(&value, sizeof(T)); }
+
+        template <typename T> bool getVector(std::vector<T> &values) {
+            int32_t size;
+            if (!get(size) || size < 0 || size > MAX_ELEMENTS) {
+                return false;
+            }
+            values.resize(size);
+            return getBytes(values.data(), size * sizeof(T));
+        }
+
+        bool atEnd() const { return offset == data.size(); }
+
+      private:
+        bool getBytes(void *out, size_t size) {
+            if (data.size() - offset < size) {
+                return false;
+            }
+            std::copy(data.begin() + offset, data.begin() + offset + size, (char *) out);
+            offset += size;
+            return true;
+        }
+
+        const std::vector<char> &data;
+        size_t offset = 0;
+    };
+
+    void writeEye(Writer &writer, const EyeDistortion &eye) {
+        writer.putVector(eye.indices);
+        writer.putVector(eye.vertices);
+        writer.putVector(eye.uvs);
+        for (float value : eye.eyeFromHead) {
+            writer.put(value);
+        }
+        for (float value : eye.fov) {
+            writer.put(value);
+        }
+    }
+
+    bool readEye(Reader &reader, EyeDistortion &eye) {
+        if (!reader.getVector(eye.indices) || !reader.getVector(eye.vertices) ||
+            !reader.getVector(eye.uvs) || eye.vertices.size() != eye.uvs.size()) {
+            return false;
+        }
+        for (float &value : eye.eyeFromHead) {
+            if (!reader.get(value)) {
+                return false;
+            }
+        }
+        for (float &value : eye.fov) {
+            if (!reader.get(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}   // namespace
+
+uint64_t DistortionCache::key(const uint8_t *deviceParams,
+                              int size,
+                              int screenWidth,
+                              int screenHeight) {
+    // FNV-1a
+    uint64_t hash = 0xcbf29ce484222325ull;
+    auto mix = [&hash](uint8_t byte) {
+        hash ^= byte;
+        hash *= 0x100000001b3ull;
+    };
+    for (int i = 0; i < size; i++) {
+        mix(deviceParams[i]);
+    }
+    for (uint32_t value : {(uint32_t) size, (uint32_t) screenWidth, (uint32_t) screenHeight}) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            mix((uint8_t) (value >> shift));
+        }
+    }
+    return hash;
+}
+
+void DistortionCache::setPath(const std::string &cachePath) {
+    path = cachePath;
+    loaded = false;
+}
+
+bool DistortionCache::find(uint64_t key, DistortionParams &params) {
+    load();
+    auto entry = entries.find(key);
+    if (entry == entries.end()) {
+        return false;
+    }
+    order.erase(std::find(order.begin(), order.end(), key));
+    order.push_back(key);
+    params = entry->second;
+    return true;
+}
+
+void DistortionCache::put(uint64_t key, const DistortionParams &params) {
+    load();
+    if (entries.count(key) > 0) {
+        order.erase(std::find(order.begin(), order.end(), key));
+    }
+    entries[key] = params;
+    order.push_back(key);
+    while ((int) order.size() > MAX_ENTRIES) {
+        entries.erase(order.front());
+        order.erase(order.begin());
+    }
+    save();
+}
+
+void DistortionCache::clear() {
+    entries.clear();
+    order.clear();
+    loaded = true;
+    if (!path.empty()) {
+        std::remove(path.c_str());
+    }
+}
+
+void DistortionCache::load() {
+    if (loaded) {
+        return;
+    }
+    loaded = true;
+    entries.clear();
+    order.clear();
+    if (path.empty()) {
+        return;
+    }
+
+    std::ifstream file(path, std::ios::binary);
+    std::vector<char> data((std::istreambuf_iterator<char>(file)),
+                           std::istreambuf_iterator<char>());
+    if (data.empty()) {
+        return;
+    }
+    Reader reader(data);
+    uint32_t magic, version;
+    int32_t count;
+    if (!reader.get(magic) || magic != MAGIC || !reader.get(version) || version != FILE_VERSION ||
+        !reader.get(count) || count < 0 || count > MAX_ENTRIES) {
+        return;
+    }
+    std::map<uint64_t, DistortionParams> read;
+    std::vector<uint64_t> readOrder;
+    for (int i = 0; i < count; i++) {
+        uint64_t key;
+        DistortionParams params;
+        if (!reader.get(key) || !readEye(reader, params.eyes[0]) ||
+            !readEye(reader, params.eyes[1])) {
+            return;
+        }
+        read[key] = params;
+        readOrder.push_back(key);
+    }
+    // a truncated or corrupt file is ignored as a whole
+    if (!reader.atEnd() || read.size() != readOrder.size()) {
+        return;
+    }
+    entries = read;
+    order = readOrder;
+}
+
+void DistortionCache::save() const {
+    if (path.empty()) {
+        return;
+    }
+    Writer writer;
+    writer.put(MAGIC);
+    writer.put(FILE_VERSION);
+    writer.put<int32_t>((int32_t) order.size());
+    for (uint64_t key : order) {
+        const DistortionParams &params = entries.at(key);
+        writer.put(key);
+        writeEye(writer, params.eyes[0]);
+        writeEye(writer, params.eyes[1]);
+    }
+
+    // written next to the cache and renamed, a crash never leaves half a file behind
+    std::string tmpPath = path + ".tmp";
+    {
+        std::ofstream file(tmpPath, std::ios::binary | std::ios::trunc);
+        file.write(writer.data.data(), (std::streamsize) writer.data.size());
+        if (!file) {
+            std::remove(tmpPath.c_str());
+            return;
+        }
+    }
+    std::rename(tmpPath.c_str(), path.c_str());
+}
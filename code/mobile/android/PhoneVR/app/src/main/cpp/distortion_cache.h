@@ -0,0 +1,54 @@
+#pragma once
+
+#include <cstdint>
+#include <map>
+#include <string>
+#include <vector>
+
+// What the Cardboard SDK computes from the viewer's device params for one eye.
+struct EyeDistortion {
+    // CardboardMesh contents
+    std::vector<int> indices;
+    std::vector<float> vertices;   // x, y per vertex
+    std::vector<float> uvs;        // u, v per vertex
+    float eyeFromHead[16] = {};
+    // as returned by CardboardLensDistortion_getFieldOfView: left, right, bottom, top
+    float fov[4] = {};
+};
+
+struct DistortionParams {
+    EyeDistortion eyes[2];
+};
+
+// Keeps the distortion meshes, eye matrices and FOVs of the last few viewers and screen sizes in
+// memory and in one file, so resuming does not need CardboardLensDistortion to compute them
+// again. Not thread safe.
+class DistortionCache {
+  public:
+    // entries kept, one per viewer and screen size
+    static constexpr int MAX_ENTRIES = 4;
+
+    // identifies the device params blob of a viewer on a screen of this size
+    static uint64_t key(const uint8_t *deviceParams, int size, int screenWidth, int screenHeight);
+
+    // path of the cache file, empty to keep the cache in memory only
+    void setPath(const std::string &path);
+
+    // false if key is not cached
+    bool find(uint64_t key, DistortionParams &params);
+
+    void put(uint64_t key, const DistortionParams &params);
+
+    // forgets all entries and deletes the file
+    void clear();
+
+  private:
+    void load();
+    void save() const;
+
+    std::string path;
+    bool loaded = false;
+    std::map<uint64_t, DistortionParams> entries;
+    // keys, least recently used first
+    std::vector<uint64_t> order;
+};
@@ -0,0 +1,73 @@
+#include "frame_timing.h"
+
+#include <algorithm>
+#include <cstring>
+
+namespace {
+    const size_t FRAMES_WRITTEN_OFFSET = 16;
+
+    template <typename T> void put(uint8_t *p, size_t offset, T value) {
+        std::memcpy(p + offset, &value, sizeof(T));
+    }
+
+    // Java reads the sequence and the frame count while they change
+    void publish(uint8_t *p, size_t offset, int64_t value) {
+        __atomic_store_n(reinterpret_cast<int64_t *>(p + offset), value, __ATOMIC_RELEASE);
+    }
+
+    int32_t clampNs(int64_t ns) {
+        return (int32_t) std::min<int64_t>(std::max<int64_t>(ns, 0), INT32_MAX);
+    }
+}   // namespace
+
+static_assert(24 + 4 * (STAGE_COUNT + 2) == FrameTimingRing::RECORD_SIZE, "record layout");
+
+FrameTimingRing::FrameTimingRing() {
+    put<int32_t>(buffer, 0, VERSION);
+    put<int32_t>(buffer, 4, CAPACITY);
+    put<int32_t>(buffer, 8, RECORD_SIZE);
+}
+
+void FrameTimingRing::beginFrame(int64_t nowNs) {
+    inFrame = true;
+    startNs = nowNs;
+    lastStageEndNs = nowNs;
+    frameTimestampNs = 0;
+    std::fill(stageNs, stageNs + STAGE_COUNT, 0);
+    pendingMode = FRAME_LOBBY;
+}
+
+void FrameTimingRing::endStage(FrameStage stage, int64_t nowNs) {
+    stageNs[stage] = clampNs(nowNs - lastStageEndNs);
+    lastStageEndNs = nowNs;
+}
+
+void FrameTimingRing::setFrameTimestamp(int64_t timestampNs) { frameTimestampNs = timestampNs; }
+
+void FrameTimingRing::endFrame(int64_t nowNs) {
+    if (!inFrame) {
+        return;
+    }
+    inFrame = false;
+
+    int32_t flags = pendingMode;
+    if (frameTimestampNs == -1) {
+        flags |= FRAME_FLAG_DROPPED;
+    }
+
+    uint8_t *record = buffer + HEADER_SIZE + (framesWritten % CAPACITY) * RECORD_SIZE;
+    publish(record, 0, 2 * framesWritten + 1);
+    // the fields must not become visible before the odd sequence
+    __atomic_thread_fence(__ATOMIC_RELEASE);
+    put<int64_t>(record, 8, startNs);
+    put<int64_t>(record, 16, frameTimestampNs);
+    for (int stage = 0; stage < STAGE_COUNT; stage++) {
+        put<int32_t>(record, 24 + 4 * stage, stageNs[stage]);
+    }
+    put<int32_t>(record, 24 + 4 * STAGE_COUNT, clampNs(nowNs - startNs));
+    put<int32_t>(record, 28 + 4 * STAGE_COUNT, flags);
+    publish(record, 0, 2 * framesWritten + 2);
+
+    framesWritten++;
+    publish(buffer, FRAMES_WRITTEN_OFFSET, framesWritten);
+}
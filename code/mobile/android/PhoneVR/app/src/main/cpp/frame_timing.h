@@ -0,0 +1,67 @@
+#pragma once
+
+#include <cstddef>
+#include <cstdint>
+
+// Stages of renderNative, timed one after the other.
+enum FrameStage {
+    // event polling and applying changed rendering parameters
+    STAGE_POLL = 0,
+    // alvr_get_frame, only when streaming
+    STAGE_ACQUIRE,
+    // stream, lobby or passthrough rendering into the eye textures
+    STAGE_RENDER,
+    // CardboardDistortionRenderer_renderEyeToDisplay
+    STAGE_DISTORTION,
+    STAGE_COUNT
+};
+
+enum FrameMode { FRAME_LOBBY = 0, FRAME_STREAM = 1, FRAME_PASSTHROUGH = 2 };
+
+// Fixed size ring of per-frame timings that Java reads directly as a ByteBuffer (see
+// FrameTimings.java), so recording costs no JNI calls. Written by the render thread only.
+//
+// Layout, native byte order:
+//   header:  int32 version, int32 capacity, int32 recordSize, int32 reserved,
+//            int64 framesWritten, 8 bytes reserved
+//   records: int64 sequence, int64 startNs, int64 frameTimestampNs,
+//            int32 stageNs[STAGE_COUNT], int32 totalNs, int32 flags
+// A record is being written while its sequence is odd and holds frame n once it is 2n + 2.
+// frameTimestampNs is the ALVR frame timestamp, -1 if no frame was ready, 0 outside of streams.
+// flags holds the FrameMode in bits 0-1 and FRAME_FLAG_DROPPED.
+class FrameTimingRing {
+  public:
+    static constexpr int32_t VERSION = 1;
+    static constexpr int32_t CAPACITY = 512;
+    static constexpr int32_t HEADER_SIZE = 32;
+    static constexpr int32_t RECORD_SIZE = 48;
+    static constexpr int32_t FRAME_FLAG_DROPPED = 1 << 2;
+
+    FrameTimingRing();
+
+    void *data() { return buffer; }
+    const void *data() const { return buffer; }
+    size_t size() const { return sizeof(buffer); }
+
+    void beginFrame(int64_t nowNs);
+    // the stage took the time since the previous stage ended, or since beginFrame
+    void endStage(FrameStage stage, int64_t nowNs);
+    void setMode(FrameMode mode) { pendingMode = mode; }
+    // frameTimestampNs == -1 marks the frame as dropped
+    void setFrameTimestamp(int64_t frameTimestampNs);
+    // publishes the frame, does nothing without beginFrame
+    void endFrame(int64_t nowNs);
+
+  private:
+    alignas(8) uint8_t buffer[HEADER_SIZE + CAPACITY * RECORD_SIZE] = {};
+
+    int64_t framesWritten = 0;
+
+    // the frame being timed
+    bool inFrame = false;
+    int64_t startNs = 0;
+    int64_t lastStageEndNs = 0;
+    int64_t frameTimestampNs = 0;
+    int32_t stageNs[STAGE_COUNT] = {};
+    FrameMode pendingMode = FRAME_LOBBY;
+};
@@ -1,6 +1,8 @@
 #include "alvr_client_core.h"
 #include <GLES2/gl2ext.h>
 #include <GLES3/gl3.h>
+#include <algorithm>
+#include <time.h>
 #include <vector>
 
 #include "passthrough.h"
@@ -192,4 +194,33 @@ void passthrough_render(PassthroughInfo *info, CardboardEyeTextureDescription vi
     }
     viewsDescs[0].texture = info->passthroughTexture;
     viewsDescs[1].texture = info->passthroughTexture;
-}
\ No newline at end of file
+}
+
+void passthrough_frameLatched(PassthroughInfo *info,
+                              int64_t timestampNs,
+                              int droppedFrames,
+                              bool realtimeClock) {
+    info->cameraTimestampNs = timestampNs;
+    info->cameraRealtimeClock = realtimeClock;
+    info->cameraFrameDisplayed = false;
+    info->stats.framesLatched++;
+    info->stats.framesDropped += std::max(droppedFrames, 0);
+}
+
+void passthrough_frameSubmitted(PassthroughInfo *info) {
+    // only the first submission of a camera frame counts towards the latency
+    if (info->cameraFrameDisplayed || info->cameraTimestampNs == 0) {
+        return;
+    }
+    info->cameraFrameDisplayed = true;
+
+    struct timespec now = {};
+    clock_gettime(info->cameraRealtimeClock ? CLOCK_BOOTTIME : CLOCK_MONOTONIC, &now);
+    int64_t latencyNs = now.tv_sec * 1000000000LL + now.tv_nsec - info->cameraTimestampNs;
+    if (latencyNs < 0) {
+        return;
+    }
+    info->stats.framesDisplayed++;
+    info->stats.latencySumNs += latencyNs;
+    info->stats.latencyMaxNs = std::max(info->stats.latencyMaxNs, latencyNs);
+}
@@ -1,10 +1,30 @@
 #ifndef PHONEVR_PASSTHROUGH_H
 
 #include "cardboard.h"
+#include <cstdint>
+
+// Camera frames of the passthrough, reset after every report.
+struct PassthroughStats {
+    uint64_t framesLatched = 0;
+    // camera frames that arrived but were replaced by a newer one before being latched
+    uint64_t framesDropped = 0;
+    // latched frames that were submitted for display, with their camera-to-display latency
+    uint64_t framesDisplayed = 0;
+    int64_t latencySumNs = 0;
+    int64_t latencyMaxNs = 0;
+    int64_t periodStartNs = 0;
+};
 
 struct PassthroughInfo {
     bool enabled = false;
 
+    // sensor timestamp of the latched camera frame, in CLOCK_BOOTTIME if cameraRealtimeClock,
+    // else in CLOCK_MONOTONIC
+    int64_t cameraTimestampNs = 0;
+    bool cameraRealtimeClock = false;
+    bool cameraFrameDisplayed = true;
+    PassthroughStats stats;
+
     GLuint cameraTexture = 0;
     GLuint passthroughTexture = 0;
 
@@ -18,11 +38,19 @@ struct PassthroughInfo {
     int *screenHeight = 0;
 };
 
+// compiles a shader, 0 on failure
+GLuint LoadGLShader(GLenum type, const char *shader_source);
+
 void passthrough_createPlane(PassthroughInfo *info);
 GLuint passthrough_init(PassthroughInfo *info);
 void passthrough_cleanup(PassthroughInfo *info);
 void passthrough_setup(PassthroughInfo *info);
 void passthrough_render(PassthroughInfo *info, CardboardEyeTextureDescription viewDescs[]);
+void passthrough_frameLatched(PassthroughInfo *info,
+                              int64_t timestampNs,
+                              int droppedFrames,
+                              bool realtimeClock);
+void passthrough_frameSubmitted(PassthroughInfo *info);
 
 #define PHONEVR_PASSTHROUGH_H
 
@@ -0,0 +1,123 @@
+#include <GLES3/gl3.h>
+
+#include "passthrough.h"
+#include "reprojection.h"
+
+namespace {
+    // The warp maps device coordinates to homogeneous texture coordinates. Those interpolate
+    // linearly across the screen, so dividing per fragment gives the exact reprojection.
+    constexpr const char *warpVertexShader =
+        R"glsl(
+    uniform mat3 u_Warp;
+    attribute vec2 a_Position;
+    varying vec3 v_UVW;
+
+    void main() {
+      v_UVW = u_Warp * vec3(a_Position, 1.0);
+      gl_Position = vec4(a_Position, 0.0, 1.0);
+    })glsl";
+
+    constexpr const char *warpFragmentShader =
+        R"glsl(
+    precision highp float;
+    varying vec3 v_UVW;
+    uniform sampler2D sTexture;
+    void main() {
+        vec2 uv = v_UVW.xy / v_UVW.z;
+        if (v_UVW.z <= 0.0 || any(lessThan(uv, vec2(0.0))) || any(greaterThan(uv, vec2(1.0)))) {
+            // not rendered by the server
+            gl_FragColor = vec4(0.0, 0.0, 0.0, 1.0);
+        } else {
+            gl_FragColor = texture2D(sTexture, uv);
+        }
+    })glsl";
+
+    GLuint warpProgram = 0;
+    GLint warpPositionParam = 0;
+    GLint warpMatrixParam = 0;
+
+    const float fullScreenQuad[] = {-1.0, -1.0, 1.0, -1.0, -1.0, 1.0, 1.0, 1.0};
+}   // namespace
+
+void reprojection_init() {
+    GLuint vertexShader = LoadGLShader(GL_VERTEX_SHADER, warpVertexShader);
+    GLuint fragmentShader = LoadGLShader(GL_FRAGMENT_SHADER, warpFragmentShader);
+
+    warpProgram = glCreateProgram();
+    glAttachShader(warpProgram, vertexShader);
+    glAttachShader(warpProgram, fragmentShader);
+    glLinkProgram(warpProgram);
+    glDeleteShader(vertexShader);
+    glDeleteShader(fragmentShader);
+
+    warpPositionParam = glGetAttribLocation(warpProgram, "a_Position");
+    warpMatrixParam = glGetUniformLocation(warpProgram, "u_Warp");
+}
+
+void reprojection_setup(ReprojectionInfo *info, int width, int height) {
+    reprojection_cleanup(info);
+    info->width = width;
+    info->height = height;
+
+    glGenTextures(2, info->textures);
+    for (GLuint texture : info->textures) {
+        glBindTexture(GL_TEXTURE_2D, texture);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexImage2D(
+            GL_TEXTURE_2D, 0, GL_RGB, width, height, 0, GL_RGB, GL_UNSIGNED_BYTE, nullptr);
+    }
+    glGenFramebuffers(1, &(info->framebuffer));
+}
+
+void reprojection_cleanup(ReprojectionInfo *info) {
+    if (info->framebuffer != 0) {
+        glDeleteFramebuffers(1, &(info->framebuffer));
+        info->framebuffer = 0;
+    }
+    if (info->textures[0] != 0) {
+        glDeleteTextures(2, info->textures);
+        info->textures[0] = 0;
+        info->textures[1] = 0;
+    }
+}
+
+void reprojection_render(ReprojectionInfo *info,
+                         const GLuint streamTextures[2],
+                         const float warp[2][9],
+                         CardboardEyeTextureDescription viewsDescs[]) {
+    glBindFramebuffer(GL_FRAMEBUFFER, info->framebuffer);
+    glDisable(GL_DEPTH_TEST);
+    glDisable(GL_CULL_FACE);
+    glDisable(GL_SCISSOR_TEST);
+    glDisable(GL_BLEND);
+    glViewport(0, 0, info->width, info->height);
+
+    glUseProgram(warpProgram);
+    glActiveTexture(GL_TEXTURE0);
+    glEnableVertexAttribArray(warpPositionParam);
+    glVertexAttribPointer(warpPositionParam, 2, GL_FLOAT, false, 0, fullScreenQuad);
+
+    for (int eye = 0; eye < 2; ++eye) {
+        glFramebufferTexture2D(
+            GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, info->textures[eye], 0);
+
+        // GLES only takes column-major matrices
+        float columnMajor[9];
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                columnMajor[col * 3 + row] = warp[eye][row * 3 + col];
+            }
+        }
+        glUniformMatrix3fv(warpMatrixParam, 1, GL_FALSE, columnMajor);
+        glBindTexture(GL_TEXTURE_2D, streamTextures[eye]);
+        glDrawArrays(GL_TRIANGLE_STRIP, 0, 4);
+
+        viewsDescs[eye].texture = info->textures[eye];
+    }
+
+    glDisableVertexAttribArray(warpPositionParam);
+    glBindFramebuffer(GL_FRAMEBUFFER, 0);
+}
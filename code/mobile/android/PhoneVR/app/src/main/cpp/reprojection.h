@@ -0,0 +1,30 @@
+#ifndef PHONEVR_REPROJECTION_H
+
+#include "cardboard.h"
+
+// Rotational reprojection of the stream: each eye of the decoded frame is drawn again, turned
+// from the head orientation the server rendered it for to the latest predicted one, before the
+// distortion. Hides network and decode latency on head rotation, not on translation. The math is
+// in reprojection_math.h.
+struct ReprojectionInfo {
+    // warped copies of the stream textures, shown instead of them
+    GLuint textures[2] = {0, 0};
+    GLuint framebuffer = 0;
+    int width = 0;
+    int height = 0;
+};
+
+// compiles the shaders, needs the GL context
+void reprojection_init();
+// creates the warped textures, of the size of the stream textures
+void reprojection_setup(ReprojectionInfo *info, int width, int height);
+void reprojection_cleanup(ReprojectionInfo *info);
+// warp holds the row-major reprojectionMatrix of each eye
+void reprojection_render(ReprojectionInfo *info,
+                         const GLuint streamTextures[2],
+                         const float warp[2][9],
+                         CardboardEyeTextureDescription viewsDescs[]);
+
+#define PHONEVR_REPROJECTION_H
+
+#endif   // PHONEVR_REPROJECTION_H
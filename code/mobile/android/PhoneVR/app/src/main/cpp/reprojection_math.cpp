@@ -0,0 +1,99 @@
+#include "reprojection_math.h"
+
+#include <cmath>
+
+namespace {
+    void multiply(const float a[9], const float b[9], float out[9]) {
+        float result[9];
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                result[row * 3 + col] = a[row * 3] * b[col] + a[row * 3 + 1] * b[3 + col] +
+                                        a[row * 3 + 2] * b[6 + col];
+            }
+        }
+        for (int i = 0; i < 9; i++) {
+            out[i] = result[i];
+        }
+    }
+
+    void transpose(const float m[9], float out[9]) {
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                out[col * 3 + row] = m[row * 3 + col];
+            }
+        }
+    }
+}   // namespace
+
+FovTangents fovTangents(float left, float right, float up, float down) {
+    return {std::tan(left), std::tan(right), std::tan(up), std::tan(down)};
+}
+
+void rotationMatrix(ReprojectionQuat q, float out[9]) {
+    float norm = std::sqrt(q.x * q.x + q.y * q.y + q.z * q.z + q.w * q.w);
+    if (norm == 0) {
+        norm = 1;
+        q.w = 1;
+    }
+    float x = q.x / norm, y = q.y / norm, z = q.z / norm, w = q.w / norm;
+
+    out[0] = 1 - 2 * (y * y + z * z);
+    out[1] = 2 * (x * y - z * w);
+    out[2] = 2 * (x * z + y * w);
+    out[3] = 2 * (x * y + z * w);
+    out[4] = 1 - 2 * (x * x + z * z);
+    out[5] = 2 * (y * z - x * w);
+    out[6] = 2 * (x * z - y * w);
+    out[7] = 2 * (y * z + x * w);
+    out[8] = 1 - 2 * (x * x + y * y);
+}
+
+void reprojectionMatrix(const FovTangents &renderedFov,
+                        ReprojectionQuat renderedOrientation,
+                        const FovTangents &displayFov,
+                        ReprojectionQuat displayOrientation,
+                        float out[9]) {
+    // device coordinates of the display view to a direction in its head space
+    const FovTangents &d = displayFov;
+    float unproject[9] = {(d.right - d.left) / 2,
+                          0,
+                          (d.right + d.left) / 2,
+                          0,
+                          (d.up - d.down) / 2,
+                          (d.up + d.down) / 2,
+                          0,
+                          0,
+                          -1};
+
+    // display head space to rendered head space, through world space
+    float display[9];
+    float rendered[9];
+    float renderedInverse[9];
+    rotationMatrix(displayOrientation, display);
+    rotationMatrix(renderedOrientation, rendered);
+    transpose(rendered, renderedInverse);
+    float delta[9];
+    multiply(renderedInverse, display, delta);
+
+    // direction (x, y, z) in rendered head space to (u * w, v * w, w) with w = -z
+    const FovTangents &r = renderedFov;
+    float width = r.right - r.left;
+    float height = r.up - r.down;
+    float project[9] = {
+        1 / width, 0, r.left / width, 0, 1 / height, r.down / height, 0, 0, -1};
+
+    multiply(delta, unproject, out);
+    multiply(project, out, out);
+}
+
+bool reprojectPoint(const float matrix[9], float ndcX, float ndcY, float &u, float &v) {
+    float uw = matrix[0] * ndcX + matrix[1] * ndcY + matrix[2];
+    float vw = matrix[3] * ndcX + matrix[4] * ndcY + matrix[5];
+    float w = matrix[6] * ndcX + matrix[7] * ndcY + matrix[8];
+    if (w <= 0) {
+        return false;
+    }
+    u = uw / w;
+    v = vw / w;
+    return true;
+}
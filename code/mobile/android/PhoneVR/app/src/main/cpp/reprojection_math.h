@@ -0,0 +1,35 @@
+#pragma once
+
+// Math of the rotational reprojection, see reprojection.h.
+//
+// Orientations rotate head space into world space, like the AlvrPose orientations. Head space
+// looks down -z with +x right and +y up. Matrices are 3x3, row-major.
+
+struct ReprojectionQuat {
+    float x, y, z, w;
+};
+
+// Tangents of the half angles of a view frustum, left and down are negative.
+struct FovTangents {
+    float left, right, up, down;
+};
+
+// angles in radians, left and down negative like AlvrFov
+FovTangents fovTangents(float left, float right, float up, float down);
+
+// rotation matrix of q, which does not need to be normalized
+void rotationMatrix(ReprojectionQuat q, float out[9]);
+
+// Maps a point of the displayed eye view, (x, y, 1) in normalized device coordinates, to
+// (u * w, v * w, w), where (u, v) is the texture coordinate of the same direction in the frame
+// that was rendered for renderedOrientation. The head has turned to displayOrientation since.
+// Being linear in the device coordinates, the result can be interpolated across the screen and
+// divided per pixel.
+void reprojectionMatrix(const FovTangents &renderedFov,
+                        ReprojectionQuat renderedOrientation,
+                        const FovTangents &displayFov,
+                        ReprojectionQuat displayOrientation,
+                        float out[9]);
+
+// Applies a reprojectionMatrix to one point. False if the direction is behind the rendered view.
+bool reprojectPoint(const float matrix[9], float ndcX, float ndcY, float &u, float &v);
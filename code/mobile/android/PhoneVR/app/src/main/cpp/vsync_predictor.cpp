@@ -0,0 +1,147 @@
+#include "vsync_predictor.h"
+
+#include <algorithm>
+#include <cmath>
+
+VsyncPredictor::VsyncPredictor(int64_t nominalPeriodNs) : nominalPeriodNs(nominalPeriodNs) {}
+
+void VsyncPredictor::setNominalPeriod(int64_t periodNs) {
+    nominalPeriodNs = periodNs;
+    reset();
+}
+
+void VsyncPredictor::reset() {
+    count = 0;
+    nextSlot = 0;
+    lastIndex = 0;
+    lastVsyncNs = 0;
+    fittedPeriodNs = 0;
+    anchorNs = 0;
+    recentCount = 0;
+    recentSlot = 0;
+    skippedRun = 0;
+}
+
+int64_t VsyncPredictor::periodNs() const {
+    return hasModel() ? std::llround(fittedPeriodNs) : nominalPeriodNs;
+}
+
+void VsyncPredictor::addVsync(int64_t vsyncNs) {
+    if (count == 0) {
+        remember(vsyncNs, false);
+        push(0, vsyncNs);
+        return;
+    }
+    if (vsyncNs <= lastVsyncNs) {
+        // repeated or out of order
+        return;
+    }
+
+    double period = hasModel() ? fittedPeriodNs : (double) nominalPeriodNs;
+    int64_t reference = hasModel() ? anchorNs : lastVsyncNs;
+    int64_t periods = std::llround((vsyncNs - reference) / period);
+    double error = std::fabs((double) (vsyncNs - reference) - periods * period);
+    if (periods < 1 || error > MISMATCH_FRACTION * period) {
+        remember(vsyncNs, true);
+        int mismatches = 0;
+        for (int i = 0; i < recentCount; i++) {
+            mismatches += recentMismatch[i] ? 1 : 0;
+        }
+        if (mismatches >= MISMATCH_LIMIT) {
+            restartFromRecent();
+        }
+        return;
+    }
+
+    remember(vsyncNs, false);
+    skippedRun = periods > 1 ? skippedRun + 1 : 0;
+    push(lastIndex + periods, vsyncNs);
+    if (skippedRun >= SKIP_LIMIT) {
+        // no vsync came at the learned period for a while, it is a multiple of the real one
+        restartFromRecent();
+    }
+}
+
+int64_t VsyncPredictor::nextVsyncNs(int64_t nowNs) const {
+    if (count == 0) {
+        return nowNs + nominalPeriodNs;
+    }
+    double period = hasModel() ? fittedPeriodNs : (double) nominalPeriodNs;
+    int64_t anchor = hasModel() ? anchorNs : lastVsyncNs;
+    double periods = std::floor((nowNs - anchor) / period) + 1;
+    return anchor + std::llround(periods * period);
+}
+
+int64_t VsyncPredictor::predictDisplayTimeNs(int64_t nowNs, int pipelineVsyncs) const {
+    return nextVsyncNs(nowNs) + pipelineVsyncs * periodNs();
+}
+
+void VsyncPredictor::push(int64_t index, int64_t vsyncNs) {
+    times[nextSlot] = vsyncNs;
+    indices[nextSlot] = index;
+    nextSlot = (nextSlot + 1) % HISTORY;
+    count = std::min(count + 1, HISTORY);
+    lastIndex = index;
+    lastVsyncNs = vsyncNs;
+    fit();
+}
+
+void VsyncPredictor::fit() {
+    if (count < MIN_FIT) {
+        return;
+    }
+    // relative to the latest vsync, the doubles keep full precision
+    double xMean = 0;
+    double yMean = 0;
+    for (int i = 0; i < count; i++) {
+        xMean += (double) (indices[i] - lastIndex);
+        yMean += (double) (times[i] - lastVsyncNs);
+    }
+    xMean /= count;
+    yMean /= count;
+
+    double sxx = 0;
+    double sxy = 0;
+    for (int i = 0; i < count; i++) {
+        double x = (double) (indices[i] - lastIndex) - xMean;
+        double y = (double) (times[i] - lastVsyncNs) - yMean;
+        sxx += x * x;
+        sxy += x * y;
+    }
+    if (sxx <= 0) {
+        return;
+    }
+    fittedPeriodNs = sxy / sxx;
+    anchorNs = lastVsyncNs + std::llround(yMean - fittedPeriodNs * xMean);
+}
+
+void VsyncPredictor::remember(int64_t vsyncNs, bool mismatch) {
+    recentTimes[recentSlot] = vsyncNs;
+    recentMismatch[recentSlot] = mismatch;
+    recentSlot = (recentSlot + 1) % RECENT;
+    recentCount = std::min(recentCount + 1, RECENT);
+}
+
+void VsyncPredictor::restartFromRecent() {
+    int n = recentCount;
+    if (restarting || n < 3) {
+        return;
+    }
+    int64_t recent[RECENT];
+    for (int i = 0; i < n; i++) {
+        // oldest first
+        recent[i] = recentTimes[(recentSlot - n + i + RECENT) % RECENT];
+    }
+    int64_t deltas[RECENT];
+    for (int i = 1; i < n; i++) {
+        deltas[i - 1] = recent[i] - recent[i - 1];
+    }
+    std::sort(deltas, deltas + n - 1);
+    // the median ignores the odd skipped or late callback
+    setNominalPeriod(deltas[(n - 1) / 2]);
+    restarting = true;
+    for (int i = 0; i < n; i++) {
+        addVsync(recent[i]);
+    }
+    restarting = false;
+}
@@ -0,0 +1,87 @@
+#pragma once
+
+#include <cstdint>
+
+// Learns the vsync period and phase from vsync timestamps (the Choreographer frame times) and
+// predicts the following vsyncs. Not thread safe.
+//
+// The model is a least squares line through the latest vsyncs, numbered by how many periods lie
+// between them, so skipped callbacks do not disturb it. A refresh rate change shows up as vsyncs
+// that do not fit the period and restarts the model.
+class VsyncPredictor {
+  public:
+    // vsyncs the model is fitted to
+    static constexpr int HISTORY = 32;
+
+    // vsyncs before period and phase come from the fit instead of the nominal period
+    static constexpr int MIN_FIT = 4;
+
+    // a vsync further than this fraction of a period from the model does not fit
+    static constexpr double MISMATCH_FRACTION = 0.25;
+
+    // latest vsyncs, fitting or not, checked for a refresh rate change
+    static constexpr int RECENT = 7;
+
+    // vsyncs among the RECENT ones that do not fit before the model restarts. Not consecutive
+    // ones, every third 90Hz vsync fits a 60Hz model.
+    static constexpr int MISMATCH_LIMIT = 3;
+
+    // consecutive vsyncs that are all more than one period apart before the period is assumed
+    // to have grown by that multiple, e.g. after a switch from 120Hz to 60Hz
+    static constexpr int SKIP_LIMIT = 8;
+
+    explicit VsyncPredictor(int64_t nominalPeriodNs = 16666667);
+
+    // Sets the period to assume until enough vsyncs arrived, e.g. after a display mode change.
+    // Restarts the model.
+    void setNominalPeriod(int64_t periodNs);
+
+    void reset();
+
+    void addVsync(int64_t vsyncNs);
+
+    // true once period and phase are learned
+    bool hasModel() const { return count >= MIN_FIT; }
+
+    int64_t periodNs() const;
+
+    // the first predicted vsync after nowNs
+    int64_t nextVsyncNs(int64_t nowNs) const;
+
+    // when a frame started at nowNs is scanned out, pipelineVsyncs after the next vsync
+    int64_t predictDisplayTimeNs(int64_t nowNs, int pipelineVsyncs) const;
+
+  private:
+    void push(int64_t index, int64_t vsyncNs);
+    void fit();
+    void remember(int64_t vsyncNs, bool mismatch);
+    // restarts the model with the median period of the recent vsyncs
+    void restartFromRecent();
+
+    int64_t nominalPeriodNs;
+
+    // ring of the vsyncs in the model and their period numbers
+    int64_t times[HISTORY] = {};
+    int64_t indices[HISTORY] = {};
+    int count = 0;
+    int nextSlot = 0;
+
+    int64_t lastIndex = 0;
+    int64_t lastVsyncNs = 0;
+
+    // fitted model: the vsync with period number lastIndex is at anchorNs
+    double fittedPeriodNs = 0;
+    int64_t anchorNs = 0;
+
+    // ring of the latest vsyncs and whether they fit the model
+    int64_t recentTimes[RECENT] = {};
+    bool recentMismatch[RECENT] = {};
+    int recentCount = 0;
+    int recentSlot = 0;
+
+    // consecutive fitting vsyncs that were more than one period apart
+    int skippedRun = 0;
+
+    // set while the recent vsyncs are added again, they never restart the model twice
+    bool restarting = false;
+};
@@ -8,28 +8,52 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.hardware.camera2.CameraManager;
+import android.hardware.display.DisplayManager;
 import android.net.Uri;
 import android.opengl.GLSurfaceView;
 import android.os.BatteryManager;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.provider.Settings;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Display;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.PopupMenu;
+import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.preference.PreferenceManager;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
@@ -51,8 +75,156 @@ public class ALVRActivity extends AppCompatActivity
 
     private final BatteryMonitor bMonitor = new BatteryMonitor(this);
 
+    private final PerformanceGovernor governor =
+            new PerformanceGovernor(this::onPerformanceLevelChanged);
+
+    private ThermalMonitor thermalMonitor = null;
+
+    // frame intervals while the head is still and nothing streams, the passthrough camera delivers
+    // about 30 fps
+    private static final long LOBBY_IDLE_INTERVAL_NS = 100_000_000;
+
+    private static final long PASSTHROUGH_IDLE_INTERVAL_NS = 33_333_333;
+
+    private final IdleThrottle idleThrottle = new IdleThrottle(LOBBY_IDLE_INTERVAL_NS);
+
+    // counted down by the render thread once initializeNative returned
+    private final CountDownLatch nativeInitialized = new CountDownLatch(1);
+
+    // Feeds the vsync timestamps to the native display time prediction and renders right after
+    // each vsync, or fewer of them while idle.
+    private final Choreographer.FrameCallback vsyncCallback =
+            new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    vsyncNative(frameTimeNanos);
+                    if (takeLobbyActivityNative()) {
+                        idleThrottle.onActivity(frameTimeNanos);
+                    }
+                    idleThrottle.setIdleFrameInterval(
+                            passthrough.isPassthroughOn()
+                                    ? PASSTHROUGH_IDLE_INTERVAL_NS
+                                    : LOBBY_IDLE_INTERVAL_NS);
+                    if (idleThrottle.onVsync(frameTimeNanos, isStreamingNative())) {
+                        glView.requestRender();
+                    }
+                    Choreographer.getInstance().postFrameCallback(this);
+                }
+            };
+
+    private SensorManager sensorManager = null;
+
+    // the gyroscope events arrive here, off the main thread
+    private HandlerThread motionThread = null;
+
+    // set while a wake up is posted to the main thread, so head motion posts one at a time
+    private final AtomicBoolean motionPosted = new AtomicBoolean();
+
+    // idleThrottle is used on the main thread like the vsyncs
+    private final Runnable wakeOnMotion =
+            () -> {
+                motionPosted.set(false);
+                // event timestamps are elapsedRealtime, the vsyncs System.nanoTime
+                idleThrottle.onActivity(System.nanoTime());
+            };
+
+    // wakes idleThrottle up on head motion
+    private final SensorEventListener motionListener =
+            new SensorEventListener() {
+                @Override
+                public void onSensorChanged(SensorEvent event) {
+                    float x = event.values[0];
+                    float y = event.values[1];
+                    float z = event.values[2];
+                    if (IdleThrottle.isMotion((float) Math.sqrt(x * x + y * y + z * z))
+                            && motionPosted.compareAndSet(false, true)) {
+                        handler.post(wakeOnMotion);
+                    }
+                }
+
+                @Override
+                public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+            };
+
+    private static final long POWER_SAMPLE_INTERVAL_MS = 1000;
+
+    // samples per line of power stats, a minute
+    private static final int POWER_STATS_SAMPLES = 60;
+
+    private final EnergyMeter energyMeter = new EnergyMeter();
+
+    private int powerSamples = 0;
+
+    // of the last full minute, shown by the frame timing overlay
+    private String powerStats = "";
+
+    private final Runnable samplePower =
+            new Runnable() {
+                @Override
+                public void run() {
+                    samplePower();
+                    handler.postDelayed(this, POWER_SAMPLE_INTERVAL_MS);
+                }
+            };
+
+    private static final long FRAME_TIMING_OVERLAY_INTERVAL_MS = 500;
+
+    // frames summarized by the overlay, about a second
+    private static final int FRAME_TIMING_OVERLAY_FRAMES = 90;
+
+    private FrameTimings frameTimings = null;
+
+    private TextView frameTimingOverlay = null;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Runnable updateFrameTimingOverlay =
+            new Runnable() {
+                @Override
+                public void run() {
+                    List<FrameTimings.Frame> frames =
+                            frameTimings.latest(FRAME_TIMING_OVERLAY_FRAMES);
+                    frameTimingOverlay.setText(
+                            FrameTimings.summarize(frames)
+                                    + "\n"
+                                    + displayModes
+                                    + "\n"
+                                    + powerStats);
+                    handler.postDelayed(this, FRAME_TIMING_OVERLAY_INTERVAL_MS);
+                }
+            };
+
     private SharedPreferences pref = null;
 
+    // mirrors the max_brightness setting, so the menu does not read the preferences
+    private boolean maxBrightness = true;
+    // mirrors the reprojection setting
+    private boolean reprojection = false;
+
+    // mirrors the high_refresh_rate setting, off limits the display to 60Hz
+    private boolean highRefreshRate = true;
+
+    private DisplayModes displayModes = null;
+
+    private DisplayManager displayManager = null;
+
+    // reports display mode changes, requested or forced by the OS
+    private final DisplayManager.DisplayListener displayListener =
+            new DisplayManager.DisplayListener() {
+                @Override
+                public void onDisplayAdded(int displayId) {}
+
+                @Override
+                public void onDisplayRemoved(int displayId) {}
+
+                @Override
+                public void onDisplayChanged(int displayId) {
+                    if (displayId == Display.DEFAULT_DISPLAY) {
+                        onDisplayModeChanged();
+                    }
+                }
+            };
+
     public static class BatteryMonitor extends BroadcastReceiver {
         private final BatteryLevelListener listener;
 
@@ -100,6 +272,7 @@ public class ALVRActivity extends AppCompatActivity
     public void onCreate(Bundle savedInstance) {
         super.onCreate(savedInstance);
         Log.d(TAG, "onCreate ALVRActivity");
+        NativeWarmUp.beginColdStart();
 
         DisplayMetrics displayMetrics = new DisplayMetrics();
         getWindowManager().getDefaultDisplay().getMetrics(displayMetrics);
@@ -109,16 +282,43 @@ public class ALVRActivity extends AppCompatActivity
         // get refresh rate of the device
         Display display = getWindowManager().getDefaultDisplay();
         float refreshRate = display.getRefreshRate();
-        Log.i(TAG, "Refresh rate: " + refreshRate);
+        displayModes = NativeWarmUp.getDisplayModes(display);
+        Log.i(TAG, "Refresh rate: " + refreshRate + ", " + displayModes);
 
-        initializeNative(displayWidth, displayHeight, refreshRate);
+        SharedPreferences prefs = getSharedPreferences("settings", MODE_PRIVATE);
+        highRefreshRate = NativeWarmUp.isHighRefreshRate(prefs);
+        // offered by initializeNative already
+        setPerformanceLimitsNative(maxRefreshRate(), governor.getLevel().resolutionScale);
 
         setContentView(R.layout.activity_vr);
         glView = findViewById(R.id.surface_view);
         glView.setEGLContextClientVersion(3);
         Renderer renderer = new Renderer();
         glView.setRenderer(renderer);
-        glView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        // rendered on every vsync by vsyncCallback
+        glView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+
+        // The first event of the render thread, before any frame and the queued resumeNative, so
+        // the main thread does not wait for a slow warm up. initializeNative reuses what it did.
+        float[] refreshRates = displayModes.refreshRates();
+        String cacheDir = getCacheDir().getPath();
+        glView.queueEvent(
+                () -> {
+                    NativeWarmUp.await();
+                    Trace.beginSection("initializeNative");
+                    // the mode may have changed since onCreate
+                    initializeNative(
+                            displayWidth,
+                            displayHeight,
+                            display.getRefreshRate(),
+                            refreshRates,
+                            cacheDir);
+                    Trace.endSection();
+                    nativeInitialized.countDown();
+                });
+
+        frameTimings = new FrameTimings(getFrameTimingBufferNative());
+        frameTimingOverlay = findViewById(R.id.frame_timing_overlay);
 
         setImmersiveSticky();
         View decorView = getWindow().getDecorView();
@@ -131,38 +331,123 @@ public class ALVRActivity extends AppCompatActivity
 
         // Forces screen to max brightness.
         // get setting max_brightness boolean and set brightness to max if required
-        SharedPreferences prefs = getSharedPreferences("settings", MODE_PRIVATE);
-        if (prefs.getBoolean("max_brightness", true)) {
+        maxBrightness = prefs.getBoolean("max_brightness", true);
+        if (maxBrightness) {
             WindowManager.LayoutParams layout = getWindow().getAttributes();
             layout.screenBrightness = 1.f;
             getWindow().setAttributes(layout);
         }
 
+        reprojection = prefs.getBoolean("reprojection", false);
+        setReprojectionNative(reprojection);
+
+        displayManager = (DisplayManager) getSystemService(DISPLAY_SERVICE);
+        requestDisplayMode();
+
         // Prevents screen from dimming/locking.
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
         pref = PreferenceManager.getDefaultSharedPreferences(this);
+        sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
+        motionThread = new HandlerThread("MotionSensor");
+        motionThread.start();
         passthrough =
                 new Passthrough(
                         pref,
-                        (SensorManager) getSystemService(SENSOR_SERVICE),
+                        sensorManager,
+                        new Camera2Backend(
+                                (CameraManager) getSystemService(CAMERA_SERVICE),
+                                getSharedPreferences("camera_capabilities", MODE_PRIVATE)),
                         displayWidth,
-                        displayHeight);
+                        displayHeight,
+                        getExternalFilesDir("sensor_traces"));
+        thermalMonitor =
+                new ThermalMonitor((PowerManager) getSystemService(POWER_SERVICE), governor);
     }
 
     @Override
     public void onBatteryLevelChanged(float batteryPercentage, boolean isPlugged) {
         sendBatteryLevel(batteryPercentage, isPlugged);
+        governor.onBattery(SystemClock.elapsedRealtime(), batteryPercentage, isPlugged);
         Log.d(TAG, "Battery level changed: " + batteryPercentage + ", isPlugged in? :" + isPlugged);
     }
 
+    private void onPerformanceLevelChanged(PerformanceGovernor.Transition transition) {
+        // timestamps are elapsedRealtime, like the sensor and camera timestamps
+        Log.i(TAG, "Performance level " + transition);
+        PerformanceGovernor.Level level = transition.to;
+        setPerformanceLimitsNative(maxRefreshRate(), level.resolutionScale);
+        passthrough.setPrewarmAllowed(level.prewarmAllowed);
+        requestDisplayMode();
+    }
+
+    /** @return the refresh rate limit of the settings and the performance level, 0 for none */
+    private float maxRefreshRate() {
+        float setting = highRefreshRate ? 0 : DisplayModes.STANDARD_REFRESH_RATE;
+        return DisplayModes.minLimit(setting, governor.getLevel().maxRefreshRate);
+    }
+
+    // Integrates the battery power and reports it with the frames rendered once a minute.
+    private void samplePower() {
+        BatteryManager batteryManager = (BatteryManager) getSystemService(BATTERY_SERVICE);
+        Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int milliVolts = battery != null ? battery.getIntExtra(BatteryManager.EXTRA_VOLTAGE, 0) : 0;
+        energyMeter.addSample(
+                System.nanoTime(),
+                batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW),
+                milliVolts);
+
+        powerSamples++;
+        if (powerSamples < POWER_STATS_SAMPLES) {
+            return;
+        }
+        IdleThrottle.Stats stats = idleThrottle.takeStats(System.nanoTime());
+        double watts = energyMeter.averageWatts();
+        powerStats =
+                String.format(Locale.ROOT, "%s, %.0f J/min (%.2f W)", stats, watts * 60, watts);
+        Log.i(TAG, "Power: " + powerStats);
+        energyMeter.reset();
+        powerSamples = 0;
+    }
+
+    // Asks for the display mode with the highest refresh rate within the limits. Applied by the
+    // OS, which may still pick another mode, see onDisplayModeChanged.
+    private void requestDisplayMode() {
+        DisplayModes.Mode mode = displayModes.choose(maxRefreshRate());
+        WindowManager.LayoutParams layout = getWindow().getAttributes();
+        if (layout.preferredDisplayModeId != mode.id) {
+            Log.i(TAG, "Requesting display " + mode);
+            layout.preferredDisplayModeId = mode.id;
+            getWindow().setAttributes(layout);
+        }
+    }
+
+    private void onDisplayModeChanged() {
+        Display display = getWindowManager().getDefaultDisplay();
+        DisplayModes.Mode mode = NativeWarmUp.toMode(display.getMode());
+        if (mode.id == displayModes.getCurrent().id) {
+            // another property of the display changed
+            return;
+        }
+        boolean forced = displayModes.onModeChanged(mode);
+        Log.i(TAG, (forced ? "Display mode forced: " : "Display mode changed: ") + displayModes);
+        setDisplayRefreshRateNative(mode.refreshRate);
+    }
+
     @Override
     protected void onPause() {
         super.onPause();
         Log.d(TAG, "Pausing ALVR Activity");
-        pauseNative();
+        // queued events run before glView.onPause returns
+        glView.queueEvent(this::pauseNative);
+        Choreographer.getInstance().removeFrameCallback(vsyncCallback);
+        handler.removeCallbacks(updateFrameTimingOverlay);
+        handler.removeCallbacks(samplePower);
+        sensorManager.unregisterListener(motionListener);
+        displayManager.unregisterDisplayListener(displayListener);
         glView.onPause();
         bMonitor.stopMonitoring(this);
+        thermalMonitor.stop();
         passthrough.onPause();
     }
 
@@ -179,16 +464,45 @@ public class ALVRActivity extends AppCompatActivity
         }
         passthrough.onResume();
         glView.onResume();
-        resumeNative();
+        Choreographer.getInstance().postFrameCallback(vsyncCallback);
+        displayManager.registerDisplayListener(displayListener, handler);
+        Sensor gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        if (gyroscope != null) {
+            sensorManager.registerListener(
+                    motionListener,
+                    gyroscope,
+                    SensorManager.SENSOR_DELAY_GAME,
+                    new Handler(motionThread.getLooper()));
+        }
+        // a new minute of power stats
+        energyMeter.reset();
+        idleThrottle.takeStats(System.nanoTime());
+        powerSamples = 0;
+        handler.post(samplePower);
+        // the mode may have changed while paused
+        onDisplayModeChanged();
+        // after initializeNative, on the render thread
+        glView.queueEvent(this::resumeNative);
         bMonitor.startMonitoring(this);
+        thermalMonitor.start();
+        if (frameTimingOverlay.getVisibility() == View.VISIBLE) {
+            handler.post(updateFrameTimingOverlay);
+        }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "Destroying ALVR Activity");
+        // done long before, unless the activity is closed during a slow warm up
+        try {
+            nativeInitialized.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         destroyNative();
         passthrough.releaseCamera();
+        motionThread.quitSafely();
     }
 
     @Override
@@ -200,6 +514,8 @@ public class ALVRActivity extends AppCompatActivity
     }
 
     private class Renderer implements GLSurfaceView.Renderer {
+        private boolean frameRendered = false;
+
         @Override
         public void onSurfaceCreated(GL10 gl10, EGLConfig eglConfig) {
             int texID = surfaceCreatedNative();
@@ -215,6 +531,10 @@ public class ALVRActivity extends AppCompatActivity
         public void onDrawFrame(GL10 gl10) {
             passthrough.update();
             renderNative();
+            if (!frameRendered) {
+                frameRendered = true;
+                NativeWarmUp.firstFrameRendered();
+            }
         }
     }
 
@@ -231,14 +551,20 @@ public class ALVRActivity extends AppCompatActivity
         inflater.inflate(R.menu.settings_menu, popup.getMenu());
 
         MenuItem toggleBrightness = popup.getMenu().findItem(R.id.max_brightness_toggle);
-        // get setting max_brightness boolean from settings
-        SharedPreferences prefs = getSharedPreferences("settings", MODE_PRIVATE);
-        boolean isChecked = prefs.getBoolean("max_brightness", true);
-        toggleBrightness.setChecked(isChecked);
+        toggleBrightness.setChecked(maxBrightness);
+
+        MenuItem toggleHighRefreshRate = popup.getMenu().findItem(R.id.high_refresh_rate_toggle);
+        toggleHighRefreshRate.setChecked(highRefreshRate);
+
+        MenuItem toggleReprojection = popup.getMenu().findItem(R.id.reprojection_toggle);
+        toggleReprojection.setChecked(reprojection);
+
+        MenuItem toggleOverlay = popup.getMenu().findItem(R.id.frame_timing_overlay_toggle);
+        toggleOverlay.setChecked(frameTimingOverlay.getVisibility() == View.VISIBLE);
 
         MenuItem box = popup.getMenu().findItem(R.id.passthrough);
         if (box != null) {
-            box.setChecked(pref.getBoolean("passthrough", false));
+            box.setChecked(passthrough.isPassthroughOn());
         }
         popup.setOnMenuItemClickListener(this);
         popup.show();
@@ -262,10 +588,42 @@ public class ALVRActivity extends AppCompatActivity
         } else if (item.getItemId() == R.id.max_brightness_toggle) {
             // Save app setting boolean max_brightness == true
             item.setChecked(!item.isChecked());
+            maxBrightness = item.isChecked();
             SharedPreferences.Editor editor = getSharedPreferences("settings", MODE_PRIVATE).edit();
             editor.putBoolean("max_brightness", item.isChecked());
             editor.apply();
             return true;
+        } else if (item.getItemId() == R.id.reprojection_toggle) {
+            item.setChecked(!item.isChecked());
+            reprojection = item.isChecked();
+            setReprojectionNative(reprojection);
+            SharedPreferences.Editor editor = getSharedPreferences("settings", MODE_PRIVATE).edit();
+            editor.putBoolean("reprojection", reprojection);
+            editor.apply();
+            return true;
+        } else if (item.getItemId() == R.id.high_refresh_rate_toggle) {
+            item.setChecked(!item.isChecked());
+            highRefreshRate = item.isChecked();
+            SharedPreferences.Editor editor = getSharedPreferences("settings", MODE_PRIVATE).edit();
+            editor.putBoolean("high_refresh_rate", highRefreshRate);
+            editor.apply();
+            // offered from the next connection on
+            setPerformanceLimitsNative(maxRefreshRate(), governor.getLevel().resolutionScale);
+            requestDisplayMode();
+            return true;
+        } else if (item.getItemId() == R.id.frame_timing_overlay_toggle) {
+            item.setChecked(!item.isChecked());
+            handler.removeCallbacks(updateFrameTimingOverlay);
+            if (item.isChecked()) {
+                frameTimingOverlay.setVisibility(View.VISIBLE);
+                handler.post(updateFrameTimingOverlay);
+            } else {
+                frameTimingOverlay.setVisibility(View.GONE);
+            }
+            return true;
+        } else if (item.getItemId() == R.id.dump_frame_timings) {
+            dumpFrameTimings();
+            return true;
         }
         if (item.getItemId() == R.id.passthrough_settings) {
             Intent settings = new Intent(this, PassthroughSettingsActivity.class);
@@ -288,6 +646,27 @@ public class ALVRActivity extends AppCompatActivity
         return false;
     }
 
+    // Writes the frames still in the ring as CSV to the app's external files.
+    private void dumpFrameTimings() {
+        List<FrameTimings.Frame> frames = frameTimings.latest(frameTimings.getCapacity());
+        String name =
+                new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date()) + ".csv";
+        File file = new File(getExternalFilesDir("frame_timings"), name);
+        try (Writer out = new FileWriter(file)) {
+            FrameTimings.writeCsv(frames, out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write frame timings", e);
+            Toast.makeText(this, R.string.frame_timings_dump_failed, Toast.LENGTH_LONG).show();
+            return;
+        }
+        Log.i(TAG, "Wrote " + frames.size() + " frame timings to " + file);
+        Toast.makeText(
+                        this,
+                        getString(R.string.frame_timings_dumped, file.getPath()),
+                        Toast.LENGTH_LONG)
+                .show();
+    }
+
     private boolean isReadExternalStorageEnabled() {
         return ActivityCompat.checkSelfPermission(this, Manifest.permission.READ_EXTERNAL_STORAGE)
                 == PackageManager.PERMISSION_GRANTED;
@@ -324,8 +703,16 @@ public class ALVRActivity extends AppCompatActivity
                                 | View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY);
     }
 
+    /**
+     * @param refreshRates of the display modes at the screen resolution, highest first
+     * @param cacheDir where the distortion meshes of the viewer are cached
+     */
     private native void initializeNative(
-            int screenWidth, int screenHeight, float screenRefreshRate);
+            int screenWidth,
+            int screenHeight,
+            float screenRefreshRate,
+            float[] refreshRates,
+            String cacheDir);
 
     private native void destroyNative();
 
@@ -342,4 +729,32 @@ public class ALVRActivity extends AppCompatActivity
     private native void switchViewerNative();
 
     private native void sendBatteryLevel(float level, boolean plugged);
+
+    /** @param frameTimeNanos Choreographer frame time of a vsync, System.nanoTime() based */
+    private native void vsyncNative(long frameTimeNanos);
+
+    /**
+     * @param maxRefreshRate highest refresh rate offered to the server, 0 for no limit
+     * @param resolutionScale of the view resolution offered to the server
+     */
+    private native void setPerformanceLimitsNative(float maxRefreshRate, float resolutionScale);
+
+    /** @param refreshRate of the display mode the display switched to */
+    private native void setDisplayRefreshRateNative(float refreshRate);
+
+    private native boolean isStreamingNative();
+
+    /**
+     * Polls the ALVR events for the next renderNative, at every vsync so a throttled lobby notices
+     * a new stream or HUD message right away.
+     *
+     * @return whether the lobby changed without head motion or events arrived since the last call
+     */
+    private native boolean takeLobbyActivityNative();
+
+    /** @param enabled turn the stream to the latest head orientation before display */
+    private native void setReprojectionNative(boolean enabled);
+
+    /** @return the native frame timing ring, read by FrameTimings */
+    private native ByteBuffer getFrameTimingBufferNative();
 }
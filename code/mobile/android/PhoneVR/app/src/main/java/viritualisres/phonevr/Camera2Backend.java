@@ -0,0 +1,365 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import android.content.SharedPreferences;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+import android.view.Surface;
+import java.util.Collections;
+
+/**
+ * {@link CameraBackend} on top of camera2. Opening the device, creating the capture session and
+ * choosing the fps range all happen on the "PassthroughCamera" handler thread.
+ *
+ * <p>The chosen camera, preview size and fps range are probed once and persisted as {@link
+ * CameraCapabilities}, later opens skip the camera enumeration.
+ */
+public class Camera2Backend implements CameraBackend {
+
+    private static final String TAG = Camera2Backend.class.getSimpleName() + "-Java";
+
+    private static final String CAPABILITIES_KEY = "capabilities";
+
+    private final CameraManager cameraManager;
+
+    private final SharedPreferences capabilityCache;
+
+    private final HandlerThread thread;
+
+    private final Handler handler;
+
+    // created on the GL thread
+    private volatile SurfaceTexture texture = null;
+
+    // only accessed on the camera thread
+    private Callback callback = null;
+
+    private CameraDevice device = null;
+
+    private CameraCaptureSession session = null;
+
+    private Surface surface = null;
+
+    private Request request = null;
+
+    // the repeating request is set
+    private boolean streaming = false;
+
+    // of the open camera
+    private CameraCapabilities capabilities = null;
+
+    private volatile boolean realtimeTimestamps = false;
+
+    private boolean firstFrameReported = false;
+
+    private final CameraCaptureSession.CaptureCallback frameCallback =
+            new CameraCaptureSession.CaptureCallback() {
+                @Override
+                public void onCaptureCompleted(
+                        CameraCaptureSession session,
+                        CaptureRequest captureRequest,
+                        TotalCaptureResult result) {
+                    if (!firstFrameReported && callback != null) {
+                        firstFrameReported = true;
+                        callback.onFirstFrame();
+                    }
+                }
+            };
+
+    /** @param capabilityCache where the probed {@link CameraCapabilities} are persisted */
+    public Camera2Backend(CameraManager cameraManager, SharedPreferences capabilityCache) {
+        this.cameraManager = cameraManager;
+        this.capabilityCache = capabilityCache;
+        thread = new HandlerThread("PassthroughCamera");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    public void setTexture(SurfaceTexture texture) {
+        this.texture = texture;
+    }
+
+    /**
+     * @return true if the frame timestamps of the open camera are in elapsedRealtimeNanos, false
+     *     for System.nanoTime()
+     */
+    public boolean hasRealtimeTimestamps() {
+        return realtimeTimestamps;
+    }
+
+    @Override
+    public void open(Request request, Callback callback) {
+        handler.post(() -> openOnCameraThread(request, callback));
+    }
+
+    @Override
+    public void setStreaming(boolean streaming) {
+        handler.post(
+                () -> {
+                    if (session == null) {
+                        return;
+                    }
+                    this.streaming = streaming;
+                    if (streaming) {
+                        firstFrameReported = false;
+                        startRepeating();
+                    } else {
+                        try {
+                            session.stopRepeating();
+                        } catch (CameraAccessException | IllegalStateException e) {
+                            fail(device, "Pausing preview failed: " + e);
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public void setRequest(Request request) {
+        handler.post(
+                () -> {
+                    boolean hintChanged =
+                            this.request != null
+                                    && this.request.recordingHint != request.recordingHint;
+                    this.request = request;
+                    if (hintChanged && session != null && streaming) {
+                        // replaces the repeating request, the session stays configured
+                        startRepeating();
+                    }
+                });
+    }
+
+    @Override
+    public void close() {
+        handler.post(
+                () -> {
+                    release();
+                    if (callback != null) {
+                        callback.onClosed();
+                        callback = null;
+                    }
+                });
+    }
+
+    /** Stops the camera thread, after pending requests are done. */
+    public void quit() {
+        handler.post(this::release);
+        thread.quitSafely();
+    }
+
+    private void openOnCameraThread(Request request, Callback callback) {
+        this.callback = callback;
+        if (texture == null) {
+            fail(null, "Passthrough texture not created yet");
+            return;
+        }
+        this.request = request;
+        try {
+            CameraCapabilities caps = loadCapabilities(request);
+            if (caps == null) {
+                caps = probeCapabilities(request);
+                if (caps == null) {
+                    fail(null, "No camera found");
+                    return;
+                }
+                storeCapabilities(request, caps);
+            }
+            Log.d(TAG, "Opening " + caps);
+
+            CameraCapabilities opened = caps;
+            cameraManager.openCamera(
+                    opened.cameraId,
+                    new CameraDevice.StateCallback() {
+                        @Override
+                        public void onOpened(CameraDevice camera) {
+                            device = camera;
+                            startSession(opened);
+                        }
+
+                        @Override
+                        public void onDisconnected(CameraDevice camera) {
+                            fail(camera, "Camera disconnected");
+                        }
+
+                        @Override
+                        public void onError(CameraDevice camera, int error) {
+                            fail(camera, "Camera error " + error);
+                        }
+                    },
+                    handler);
+        } catch (CameraAccessException | SecurityException | IllegalArgumentException e) {
+            // the cached camera may be gone, probe again next time
+            capabilityCache.edit().remove(CAPABILITIES_KEY).apply();
+            fail(null, "Opening camera failed: " + e);
+        }
+    }
+
+    private void startSession(CameraCapabilities caps) {
+        capabilities = caps;
+        realtimeTimestamps = caps.realtimeTimestamps;
+        texture.setDefaultBufferSize(caps.previewWidth, caps.previewHeight);
+        surface = new Surface(texture);
+        try {
+            device.createCaptureSession(
+                    Collections.singletonList(surface),
+                    new CameraCaptureSession.StateCallback() {
+                        @Override
+                        public void onConfigured(CameraCaptureSession captureSession) {
+                            session = captureSession;
+                            if (callback != null) {
+                                callback.onOpened();
+                            }
+                        }
+
+                        @Override
+                        public void onConfigureFailed(CameraCaptureSession captureSession) {
+                            fail(device, "Configuring capture session failed");
+                        }
+                    },
+                    handler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            fail(device, "Creating capture session failed: " + e);
+        }
+    }
+
+    private void startRepeating() {
+        try {
+            // the record template can increase fps in passthrough mode
+            CaptureRequest.Builder builder =
+                    device.createCaptureRequest(
+                            request.recordingHint
+                                    ? CameraDevice.TEMPLATE_RECORD
+                                    : CameraDevice.TEMPLATE_PREVIEW);
+            builder.addTarget(surface);
+            if (capabilities.hasFpsRange()) {
+                builder.set(
+                        CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                        new Range<>(capabilities.fpsMin, capabilities.fpsMax));
+            }
+            session.setRepeatingRequest(builder.build(), frameCallback, handler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            fail(device, "Starting preview failed: " + e);
+        }
+    }
+
+    private void fail(CameraDevice camera, String message) {
+        Log.e(TAG, message);
+        if (camera != null && camera != device) {
+            camera.close();
+        }
+        release();
+        if (callback != null) {
+            callback.onError(message);
+            callback = null;
+        }
+    }
+
+    private void release() {
+        streaming = false;
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        if (device != null) {
+            device.close();
+            device = null;
+        }
+        if (surface != null) {
+            surface.release();
+            surface = null;
+        }
+    }
+
+    private CameraCapabilities loadCapabilities(Request request) {
+        return CameraCapabilities.decode(
+                capabilityCache.getString(CAPABILITIES_KEY, null),
+                Build.FINGERPRINT,
+                request.desiredWidth,
+                request.desiredHeight);
+    }
+
+    private void storeCapabilities(Request request, CameraCapabilities caps) {
+        capabilityCache
+                .edit()
+                .putString(
+                        CAPABILITIES_KEY,
+                        caps.encode(Build.FINGERPRINT, request.desiredWidth, request.desiredHeight))
+                .apply();
+        Log.i(TAG, "Probed passthrough camera: " + caps);
+    }
+
+    /** @return the capabilities of the back camera (else the first one), null without cameras */
+    private CameraCapabilities probeCapabilities(Request request) throws CameraAccessException {
+        String[] ids = cameraManager.getCameraIdList();
+        if (ids.length == 0) {
+            return null;
+        }
+        // the first camera is used if there is no back-facing one
+        String cameraId = ids[0];
+        CameraCharacteristics characteristics = null;
+        for (String id : ids) {
+            CameraCharacteristics c = cameraManager.getCameraCharacteristics(id);
+            Integer facing = c.get(CameraCharacteristics.LENS_FACING);
+            if (facing != null && facing == CameraCharacteristics.LENS_FACING_BACK) {
+                cameraId = id;
+                characteristics = c;
+                break;
+            }
+        }
+        if (characteristics == null) {
+            characteristics = cameraManager.getCameraCharacteristics(cameraId);
+        }
+
+        StreamConfigurationMap map =
+                characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        Size[] sizes = map.getOutputSizes(SurfaceTexture.class);
+        int[] widths = new int[sizes.length];
+        int[] heights = new int[sizes.length];
+        for (int i = 0; i < sizes.length; ++i) {
+            widths[i] = sizes[i].getWidth();
+            heights[i] = sizes[i].getHeight();
+        }
+        Size size =
+                sizes[
+                        CameraCapabilities.chooseOptimalSize(
+                                widths, heights, request.desiredWidth, request.desiredHeight)];
+
+        int fpsMin = 0;
+        int fpsMax = 0;
+        Range<Integer>[] ranges =
+                characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (ranges != null) {
+            int[] lowers = new int[ranges.length];
+            int[] uppers = new int[ranges.length];
+            for (int i = 0; i < ranges.length; ++i) {
+                lowers[i] = ranges[i].getLower();
+                uppers[i] = ranges[i].getUpper();
+            }
+            int best = CameraCapabilities.chooseFpsRange(lowers, uppers);
+            if (best >= 0) {
+                fpsMin = lowers[best];
+                fpsMax = uppers[best];
+            }
+        }
+        Integer timestampSource =
+                characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        boolean realtime =
+                timestampSource != null
+                        && timestampSource
+                                == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+        return new CameraCapabilities(
+                cameraId, size.getWidth(), size.getHeight(), fpsMin, fpsMax, realtime);
+    }
+}
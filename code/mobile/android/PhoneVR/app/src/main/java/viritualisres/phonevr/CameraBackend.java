@@ -0,0 +1,59 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+/**
+ * Camera that streams into the passthrough texture. All calls return immediately, the work is done
+ * on a thread of the backend and reported through the {@link Callback}.
+ *
+ * <p>An open camera has its capture session configured but only delivers frames between {@link
+ * #setStreaming setStreaming(true)} and {@link #setStreaming setStreaming(false)}, so it can be
+ * kept open ("pre-warmed") while passthrough is off.
+ */
+public interface CameraBackend {
+
+    /** What the passthrough wants from the camera. */
+    class Request {
+        public final int desiredWidth;
+
+        public final int desiredHeight;
+
+        public final boolean recordingHint;
+
+        public Request(int desiredWidth, int desiredHeight, boolean recordingHint) {
+            this.desiredWidth = desiredWidth;
+            this.desiredHeight = desiredHeight;
+            this.recordingHint = recordingHint;
+        }
+    }
+
+    /** Called on the backend thread. */
+    interface Callback {
+        /** The camera is open with the preview paused. */
+        void onOpened();
+
+        /** The first frame after {@link #setStreaming setStreaming(true)} was captured. */
+        void onFirstFrame();
+
+        /** The camera is released after {@link #close()}. */
+        void onClosed();
+
+        /** Opening or streaming failed, the camera is released. Not followed by onClosed. */
+        void onError(String message);
+    }
+
+    /** Opens the camera with the preview paused. Only called while the camera is closed. */
+    void open(Request request, Callback callback);
+
+    /** Starts or pauses the preview of the open camera. */
+    void setStreaming(boolean streaming);
+
+    /**
+     * Applies the recording hint of the request to the open camera without reopening it, a running
+     * preview switches to the new capture request. The desired size is only used by the next open.
+     * Only called while the camera is open or opening.
+     */
+    void setRequest(Request request);
+
+    /** Stops streaming and releases the camera. Only called while the camera is open. */
+    void close();
+}
@@ -0,0 +1,148 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import java.util.Locale;
+
+/**
+ * What the passthrough uses of a camera: which camera, its preview size, fps range and the clock of
+ * its frame timestamps. Probing this takes a camera enumeration and characteristics queries, so the
+ * result is persisted and reused as long as the device build and the requested size stay the same.
+ */
+public class CameraCapabilities {
+
+    private static final String SEPARATOR = "|";
+
+    private static final int FIELDS = 9;
+
+    public final String cameraId;
+
+    public final int previewWidth;
+
+    public final int previewHeight;
+
+    // 0 if the camera does not report fps ranges
+    public final int fpsMin;
+
+    public final int fpsMax;
+
+    // frame timestamps are in SystemClock.elapsedRealtimeNanos(), else in System.nanoTime()
+    public final boolean realtimeTimestamps;
+
+    public CameraCapabilities(
+            String cameraId,
+            int previewWidth,
+            int previewHeight,
+            int fpsMin,
+            int fpsMax,
+            boolean realtimeTimestamps) {
+        this.cameraId = cameraId;
+        this.previewWidth = previewWidth;
+        this.previewHeight = previewHeight;
+        this.fpsMin = fpsMin;
+        this.fpsMax = fpsMax;
+        this.realtimeTimestamps = realtimeTimestamps;
+    }
+
+    public boolean hasFpsRange() {
+        return fpsMax > 0;
+    }
+
+    /**
+     * @param deviceKey identifies the device build, e.g. Build.FINGERPRINT
+     * @return the string to persist
+     */
+    public String encode(String deviceKey, int desiredWidth, int desiredHeight) {
+        return String.join(
+                SEPARATOR,
+                deviceKey.replace(SEPARATOR, "_"),
+                Integer.toString(desiredWidth),
+                Integer.toString(desiredHeight),
+                cameraId,
+                Integer.toString(previewWidth),
+                Integer.toString(previewHeight),
+                Integer.toString(fpsMin),
+                Integer.toString(fpsMax),
+                Boolean.toString(realtimeTimestamps));
+    }
+
+    /** @return the capabilities, null if value is invalid or was probed for other parameters */
+    public static CameraCapabilities decode(
+            String value, String deviceKey, int desiredWidth, int desiredHeight) {
+        if (value == null) {
+            return null;
+        }
+        String[] fields = value.split("\\|", -1);
+        if (fields.length != FIELDS
+                || !fields[0].equals(deviceKey.replace(SEPARATOR, "_"))
+                || !fields[1].equals(Integer.toString(desiredWidth))
+                || !fields[2].equals(Integer.toString(desiredHeight))) {
+            return null;
+        }
+        try {
+            return new CameraCapabilities(
+                    fields[3],
+                    Integer.parseInt(fields[4]),
+                    Integer.parseInt(fields[5]),
+                    Integer.parseInt(fields[6]),
+                    Integer.parseInt(fields[7]),
+                    Boolean.parseBoolean(fields[8]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Picks the preview size for an eye of width x height: an exact match, else the smallest size
+     * with both sides at least min(width, height) (but at least 320), else the first one.
+     *
+     * @return index into widths and heights
+     */
+    public static int chooseOptimalSize(int[] widths, int[] heights, int width, int height) {
+        int minSize = Math.max(Math.min(width, height), 320);
+        int best = -1;
+        for (int i = 0; i < widths.length; ++i) {
+            if (widths[i] == width && heights[i] == height) {
+                return i;
+            }
+            if (heights[i] >= minSize
+                    && widths[i] >= minSize
+                    && (best < 0 || area(widths, heights, i) < area(widths, heights, best))) {
+                best = i;
+            }
+        }
+        return best >= 0 ? best : 0;
+    }
+
+    /**
+     * @return index of the range with the highest maximum, preferring the higher minimum on ties,
+     *     -1 if there is none
+     */
+    public static int chooseFpsRange(int[] lowers, int[] uppers) {
+        int best = -1;
+        for (int i = 0; i < uppers.length; ++i) {
+            if (best < 0
+                    || uppers[i] > uppers[best]
+                    || (uppers[i] == uppers[best] && lowers[i] > lowers[best])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static long area(int[] widths, int[] heights, int i) {
+        return (long) widths[i] * heights[i];
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.ROOT,
+                "camera %s, %dx%d, fps [%d, %d], %s timestamps",
+                cameraId,
+                previewWidth,
+                previewHeight,
+                fpsMin,
+                fpsMax,
+                realtimeTimestamps ? "realtime" : "monotonic");
+    }
+}
@@ -0,0 +1,166 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Picks the display mode to request through {@code preferredDisplayModeId} and the refresh rates to
+ * offer to the server, and keeps track of the mode the display actually runs at.
+ *
+ * <p>Only modes with the resolution of the current mode are considered, a resolution change would
+ * recreate the surface and the distortion meshes. Pure Java, {@link ALVRActivity} converts the
+ * {@code Display.Mode}s. All methods are called on the main thread.
+ */
+public class DisplayModes {
+
+    /** Refresh rate the display is limited to when high refresh rates are turned off. */
+    public static final float STANDARD_REFRESH_RATE = 60f;
+
+    // rates closer than this are the same, displays report 59.94 or 60.0001 for 60
+    static final float RATE_TOLERANCE = 0.5f;
+
+    public static class Mode {
+        public final int id;
+
+        public final int width;
+
+        public final int height;
+
+        public final float refreshRate;
+
+        public Mode(int id, int width, int height, float refreshRate) {
+            this.id = id;
+            this.width = width;
+            this.height = height;
+            this.refreshRate = refreshRate;
+        }
+
+        boolean sameResolution(Mode other) {
+            return width == other.width && height == other.height;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    Locale.ROOT, "mode %d %dx%d %.0fHz", id, width, height, refreshRate);
+        }
+    }
+
+    private final List<Mode> supported;
+
+    // the mode the display runs at
+    private Mode current;
+
+    // null until a mode was requested
+    private Mode preferred = null;
+
+    // mode changes that were not requested, by the OS or another app
+    private int forcedChanges = 0;
+
+    public DisplayModes(List<Mode> supported, Mode current) {
+        this.supported = new ArrayList<>(supported);
+        this.current = current;
+    }
+
+    /** @return the lower of two limits, where 0 means no limit */
+    public static float minLimit(float a, float b) {
+        if (a <= 0) {
+            return b;
+        }
+        if (b <= 0) {
+            return a;
+        }
+        return Math.min(a, b);
+    }
+
+    /** @return the distinct refresh rates at the current resolution, highest first */
+    public float[] refreshRates() {
+        List<Float> rates = new ArrayList<>();
+        for (Mode mode : supported) {
+            if (!mode.sameResolution(current) || containsRate(rates, mode.refreshRate)) {
+                continue;
+            }
+            int index = 0;
+            while (index < rates.size() && rates.get(index) > mode.refreshRate) {
+                index++;
+            }
+            rates.add(index, mode.refreshRate);
+        }
+        if (rates.isEmpty()) {
+            rates.add(current.refreshRate);
+        }
+        float[] result = new float[rates.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = rates.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @param maxRefreshRate highest refresh rate wanted, 0 for no limit
+     * @return the mode with the highest refresh rate up to maxRefreshRate, or the lowest one if
+     *     every mode is above it
+     */
+    public Mode choose(float maxRefreshRate) {
+        Mode best = null;
+        Mode lowest = current;
+        for (Mode mode : supported) {
+            if (!mode.sameResolution(current)) {
+                continue;
+            }
+            if (mode.refreshRate < lowest.refreshRate) {
+                lowest = mode;
+            }
+            boolean allowed =
+                    maxRefreshRate <= 0 || mode.refreshRate <= maxRefreshRate + RATE_TOLERANCE;
+            if (allowed && (best == null || mode.refreshRate > best.refreshRate)) {
+                best = mode;
+            }
+        }
+        preferred = best != null ? best : lowest;
+        return preferred;
+    }
+
+    /**
+     * Records the mode the display switched to.
+     *
+     * @return whether it was not the preferred mode, so the change was forced
+     */
+    public boolean onModeChanged(Mode mode) {
+        current = mode;
+        boolean forced = preferred != null && mode.id != preferred.id;
+        if (forced) {
+            forcedChanges++;
+        }
+        return forced;
+    }
+
+    public Mode getCurrent() {
+        return current;
+    }
+
+    public int getForcedChanges() {
+        return forcedChanges;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.ROOT,
+                "display %s, preferred %s, %d forced changes",
+                current,
+                preferred != null ? preferred.id : "none",
+                forcedChanges);
+    }
+
+    private static boolean containsRate(List<Float> rates, float rate) {
+        for (float other : rates) {
+            if (Math.abs(other - rate) < RATE_TOLERANCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,281 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+/**
+ * Detects a double tap from the absolute derivative of the raw accelerometer samples.
+ *
+ * <p>The absolute derivative of each axis is kept over a window of passthrough_delay ms. A tap
+ * candidate is a peak in both halves of the window after a resting phase; the toggle fires once the
+ * device comes to rest again within passthrough_delay ms after the candidate.
+ *
+ * <p>All state lives in primitive ring buffers. Axis means are running sums and the maxima of both
+ * window halves are tracked with monotonic deques, so once the window is established each sample is
+ * O(1) and does not allocate.
+ */
+public class DoubleTapDetector implements TapDetector {
+
+    private static final int AXES = 3;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // a window half needs at least this many samples, else the window is discarded and refilled
+    private static final int MIN_HALF_SIZE = 4;
+
+    // before a tap candidate the oldest summed mean must be below
+    // max(lowerBound - RESTING_MARGIN, MIN_RESTING_BOUND)
+    private static final float RESTING_MARGIN = 0.3f;
+
+    private static final float MIN_RESTING_BOUND = 0.5f;
+
+    private long delayNs = 600 * 1000000L;
+
+    private float lowerBound = 0.8f;
+
+    private float upperBound = 4f;
+
+    private long timestamp = 0;
+
+    private long timestampAfterCandidate = 0;
+
+    private int halfSize = 0;
+
+    private boolean triggerIsSet = false;
+
+    // raw samples in the window, each axis holds (rawCount - 1) absolute derivatives
+    private int rawCount = 0;
+
+    // rawCount the deques were built for
+    private int windowRawCount = 0;
+
+    // global index of the oldest derivative in the window and of the next one to be added
+    private long firstIndex = 0;
+
+    private long nextIndex = 0;
+
+    private final float[] lastValue = new float[AXES];
+
+    private final FloatRingBuffer[] derivatives = new FloatRingBuffer[AXES];
+
+    private final double[] derivativeSums = new double[AXES];
+
+    // global index of the latest derivative below lowerBound, per axis
+    private final long[] lastBelowLower = new long[AXES];
+
+    private final SlidingWindowMax[] firstHalfMax = new SlidingWindowMax[AXES];
+
+    private final SlidingWindowMax[] secondHalfMax = new SlidingWindowMax[AXES];
+
+    private final FloatRingBuffer cumSums = new FloatRingBuffer(INITIAL_CAPACITY);
+
+    public DoubleTapDetector() {
+        for (int axis = 0; axis < AXES; ++axis) {
+            derivatives[axis] = new FloatRingBuffer(INITIAL_CAPACITY);
+            firstHalfMax[axis] = new SlidingWindowMax(INITIAL_CAPACITY);
+            secondHalfMax[axis] = new SlidingWindowMax(INITIAL_CAPACITY);
+        }
+        clearSamples();
+    }
+
+    public DoubleTapDetector(long delayMs, float lowerBound, float upperBound) {
+        this();
+        setParameters(delayMs, lowerBound, upperBound);
+    }
+
+    @Override
+    public void setParameters(long delayMs, float lowerBound, float upperBound) {
+        this.delayNs = delayMs * 1000000L;
+        this.upperBound = upperBound;
+        if (this.lowerBound != lowerBound) {
+            this.lowerBound = lowerBound;
+            for (int axis = 0; axis < AXES; ++axis) {
+                lastBelowLower[axis] = Long.MIN_VALUE;
+                for (int i = 0; i < derivatives[axis].size(); ++i) {
+                    if (derivatives[axis].get(i) < lowerBound) {
+                        lastBelowLower[axis] = firstIndex + i;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        timestamp = 0;
+        timestampAfterCandidate = 0;
+        halfSize = 0;
+        triggerIsSet = false;
+        cumSums.clear();
+        clearSamples();
+    }
+
+    @Override
+    public boolean onSample(long timestampNs, float x, float y, float z) {
+        if (timestamp == 0) {
+            timestamp = timestampNs;
+        }
+
+        if (timestampAfterCandidate == 0) {
+            timestampAfterCandidate = timestampNs;
+        }
+
+        boolean initialFull = timestampNs - timestamp > delayNs;
+        boolean afterCandidateFull = timestampNs - timestampAfterCandidate > delayNs;
+
+        // gather data for passthrough_delay_ms
+        addSample(x, y, z);
+
+        if (initialFull) {
+            // only store the last X samples
+            removeOldestSample();
+            if (halfSize == 0) {
+                halfSize = rawCount / 2;
+            }
+            if (halfSize < MIN_HALF_SIZE) {
+                clearSamples();
+                timestamp = 0;
+                halfSize = 0;
+            }
+        }
+
+        if (halfSize == 0) {
+            return false;
+        }
+
+        int size = rawCount - 1;
+        updateWindowMaxima(size);
+
+        // get the mean for each axis and sum them up
+        float sumMean = 0.0f;
+        for (int axis = 0; axis < AXES; ++axis) {
+            sumMean += (float) (derivativeSums[axis] / size);
+        }
+
+        cumSums.add(sumMean);
+        if (cumSums.size() < size) {
+            return false;
+        }
+        // only store the last X elements
+        cumSums.removeFirst();
+
+        if (!afterCandidateFull) {
+            // if a potential passthrough_change event is found,
+            // check if the device does not move much anymore
+            if (!triggerIsSet && sumMean < lowerBound) {
+                triggerIsSet = true;
+                return true;
+            }
+            return false;
+        }
+
+        triggerIsSet = false;
+        float restingBound = Math.max(lowerBound - RESTING_MARGIN, MIN_RESTING_BOUND);
+        // here we check for potential passthrough_change events
+        // these may occur on any axis
+        for (int axis = 0; axis < AXES; ++axis) {
+            // we look at two halves of the passthrough_delay, sharing the middle element
+            // we check:
+            // - if in the first and second half is a real peak
+            // - whether the peaks are in the bounds
+            // - if the summed mean is in the bounds
+            // - if the first summed mean is below restingBound
+            //   (to assure a resting stage before the triggering)
+            // - if the second maximum is decending under the lower bound until curr value
+            FloatRingBuffer d = derivatives[axis];
+            float max1 = firstHalfMax[axis].maxValue();
+            float max2 = secondHalfMax[axis].maxValue();
+            float middle = d.get(halfSize - 1);
+
+            if (max1 - d.first() < lowerBound
+                    || max1 - middle < lowerBound
+                    || max2 - middle < lowerBound
+                    || max2 - d.last() < lowerBound
+                    || max1 < lowerBound
+                    || max1 > upperBound
+                    || max2 < lowerBound
+                    || max2 > upperBound
+                    || sumMean < lowerBound
+                    || sumMean > upperBound) {
+                continue;
+            }
+
+            boolean descending = lastBelowLower[axis] > secondHalfMax[axis].maxIndex();
+            if (cumSums.first() < restingBound && descending) {
+                timestampAfterCandidate = timestampNs;
+                break;
+            }
+        }
+        return false;
+    }
+
+    private void addSample(float x, float y, float z) {
+        if (rawCount > 0) {
+            pushDerivative(0, Math.abs(x - lastValue[0]));
+            pushDerivative(1, Math.abs(y - lastValue[1]));
+            pushDerivative(2, Math.abs(z - lastValue[2]));
+            ++nextIndex;
+        }
+        lastValue[0] = x;
+        lastValue[1] = y;
+        lastValue[2] = z;
+        ++rawCount;
+    }
+
+    private void pushDerivative(int axis, float value) {
+        derivatives[axis].add(value);
+        derivativeSums[axis] += value;
+        if (value < lowerBound) {
+            lastBelowLower[axis] = nextIndex;
+        }
+    }
+
+    private void removeOldestSample() {
+        if (rawCount > 1) {
+            for (int axis = 0; axis < AXES; ++axis) {
+                derivativeSums[axis] -= derivatives[axis].removeFirst();
+            }
+            ++firstIndex;
+        }
+        --rawCount;
+    }
+
+    private void clearSamples() {
+        rawCount = 0;
+        windowRawCount = 0;
+        firstIndex = nextIndex;
+        for (int axis = 0; axis < AXES; ++axis) {
+            derivatives[axis].clear();
+            derivativeSums[axis] = 0.0;
+            lastBelowLower[axis] = Long.MIN_VALUE;
+        }
+    }
+
+    private void updateWindowMaxima(int size) {
+        long middle = firstIndex + halfSize - 1;
+        long newest = firstIndex + size - 1;
+        if (rawCount == windowRawCount) {
+            // the window moved by exactly one sample
+            for (int axis = 0; axis < AXES; ++axis) {
+                FloatRingBuffer d = derivatives[axis];
+                firstHalfMax[axis].push(middle, d.get(halfSize - 1));
+                firstHalfMax[axis].evictBefore(firstIndex);
+                secondHalfMax[axis].push(newest, d.last());
+                secondHalfMax[axis].evictBefore(middle);
+            }
+            return;
+        }
+
+        // window (re)established, build the deques from scratch
+        windowRawCount = rawCount;
+        for (int axis = 0; axis < AXES; ++axis) {
+            FloatRingBuffer d = derivatives[axis];
+            firstHalfMax[axis].reset(halfSize);
+            secondHalfMax[axis].reset(size - halfSize + 1);
+            for (int i = 0; i < halfSize; ++i) {
+                firstHalfMax[axis].push(firstIndex + i, d.get(i));
+            }
+            for (int i = halfSize - 1; i < size; ++i) {
+                secondHalfMax[axis].push(firstIndex + i, d.get(i));
+            }
+        }
+    }
+}
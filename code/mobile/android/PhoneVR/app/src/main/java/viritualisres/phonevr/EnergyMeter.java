@@ -0,0 +1,55 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+/**
+ * Integrates the battery power into energy, so the savings of {@link IdleThrottle} can be measured.
+ *
+ * <p>Fed with samples of {@code BatteryManager.BATTERY_PROPERTY_CURRENT_NOW} and the battery
+ * voltage. The sign of the current differs between devices, only its magnitude is used, so the
+ * energy is only meaningful while unplugged. Pure Java.
+ */
+public class EnergyMeter {
+
+    // Integer.MIN_VALUE is returned by BatteryManager when the current is unsupported
+    static final int UNKNOWN_CURRENT = Integer.MIN_VALUE;
+
+    private long lastSampleNs = -1;
+
+    private double lastWatts = 0;
+
+    private double joules = 0;
+
+    private long durationNs = 0;
+
+    /** @return false if the sample could not be used, so nothing is known */
+    public boolean addSample(long timeNs, int microAmps, int milliVolts) {
+        if (microAmps == UNKNOWN_CURRENT || milliVolts <= 0) {
+            return false;
+        }
+        double watts = Math.abs((double) microAmps) * milliVolts / 1e9;
+        if (lastSampleNs >= 0 && timeNs > lastSampleNs) {
+            // trapezoid between the samples
+            long elapsedNs = timeNs - lastSampleNs;
+            joules += (watts + lastWatts) / 2 * elapsedNs / 1e9;
+            durationNs += elapsedNs;
+        }
+        lastSampleNs = timeNs;
+        lastWatts = watts;
+        return true;
+    }
+
+    public double getJoules() {
+        return joules;
+    }
+
+    /** @return the mean power since the last reset, NaN before two samples */
+    public double averageWatts() {
+        return durationNs > 0 ? joules / (durationNs / 1e9) : Double.NaN;
+    }
+
+    /** Restarts the integration, from the last sample on. */
+    public void reset() {
+        joules = 0;
+        durationNs = 0;
+    }
+}
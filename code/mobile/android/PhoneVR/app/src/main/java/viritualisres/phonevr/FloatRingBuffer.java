@@ -0,0 +1,74 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+/**
+ * FIFO of primitive floats backed by a ring. The backing array only grows when the buffer is full,
+ * so a buffer used with a stable size never allocates.
+ */
+class FloatRingBuffer {
+
+    private float[] data;
+
+    private int head = 0;
+
+    private int size = 0;
+
+    FloatRingBuffer(int initialCapacity) {
+        data = new float[Math.max(initialCapacity, 1)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    void add(float value) {
+        if (size == data.length) {
+            grow();
+        }
+        data[(head + size) % data.length] = value;
+        ++size;
+    }
+
+    float removeFirst() {
+        if (size == 0) {
+            throw new IllegalStateException("FloatRingBuffer is empty");
+        }
+        float value = data[head];
+        head = (head + 1) % data.length;
+        --size;
+        return value;
+    }
+
+    float get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+        }
+        return data[(head + i) % data.length];
+    }
+
+    float first() {
+        return get(0);
+    }
+
+    float last() {
+        return get(size - 1);
+    }
+
+    private void grow() {
+        float[] grown = new float[data.length * 2];
+        for (int i = 0; i < size; ++i) {
+            grown[i] = data[(head + i) % data.length];
+        }
+        data = grown;
+        head = 0;
+    }
+}
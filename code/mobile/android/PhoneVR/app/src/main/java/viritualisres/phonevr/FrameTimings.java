@@ -0,0 +1,223 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the per-frame timings the native render loop writes into a ring buffer (frame_timing.h),
+ * shared as a direct ByteBuffer. Reading never calls into native code.
+ *
+ * <p>The render thread keeps writing while frames are read. A record that is overwritten during the
+ * read changes its sequence number and is skipped.
+ */
+public class FrameTimings {
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+
+    static final int RECORD_SIZE = 48;
+
+    private static final int FRAMES_WRITTEN_OFFSET = 16;
+
+    public static final int STAGE_POLL = 0;
+
+    public static final int STAGE_ACQUIRE = 1;
+
+    public static final int STAGE_RENDER = 2;
+
+    public static final int STAGE_DISTORTION = 3;
+
+    public static final int STAGE_COUNT = 4;
+
+    static final String[] STAGE_NAMES = {"poll", "acquire", "render", "distortion"};
+
+    public static final int MODE_LOBBY = 0;
+
+    public static final int MODE_STREAM = 1;
+
+    public static final int MODE_PASSTHROUGH = 2;
+
+    private static final String[] MODE_NAMES = {"lobby", "stream", "passthrough"};
+
+    static final int FLAG_DROPPED = 1 << 2;
+
+    private static final int MODE_MASK = 3;
+
+    public static class Frame {
+        /** Index of the frame since the render loop started. */
+        public long number;
+
+        /** CLOCK_BOOTTIME at the start of renderNative. */
+        public long startNs;
+
+        /** ALVR frame timestamp, -1 if no frame was ready, 0 outside of streams. */
+        public long timestampNs;
+
+        public final int[] stageNs = new int[STAGE_COUNT];
+
+        public int totalNs;
+
+        public int mode;
+
+        public boolean dropped;
+    }
+
+    /** Aggregate of a list of frames. */
+    public static class Summary {
+        public int frames;
+
+        public int dropped;
+
+        public double fps;
+
+        public double meanTotalMs;
+
+        public double maxTotalMs;
+
+        public final double[] meanStageMs = new double[STAGE_COUNT];
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(
+                    String.format(
+                            Locale.ROOT,
+                            "%.1f fps, frame %.2f ms (max %.2f), %d dropped",
+                            fps,
+                            meanTotalMs,
+                            maxTotalMs,
+                            dropped));
+            for (int stage = 0; stage < STAGE_COUNT; ++stage) {
+                sb.append(
+                        String.format(
+                                Locale.ROOT,
+                                "\n%s %.2f ms",
+                                STAGE_NAMES[stage],
+                                meanStageMs[stage]));
+            }
+            return sb.toString();
+        }
+    }
+
+    private final ByteBuffer buffer;
+
+    private final int capacity;
+
+    public FrameTimings(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate().order(ByteOrder.nativeOrder());
+        int version = this.buffer.getInt(0);
+        int recordSize = this.buffer.getInt(8);
+        if (version != VERSION || recordSize != RECORD_SIZE) {
+            throw new IllegalArgumentException(
+                    "Unsupported frame timing layout " + version + "/" + recordSize);
+        }
+        capacity = this.buffer.getInt(4);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getFramesWritten() {
+        return buffer.getLong(FRAMES_WRITTEN_OFFSET);
+    }
+
+    /** @return up to max of the latest frames, oldest first */
+    public List<Frame> latest(int max) {
+        long written = getFramesWritten();
+        long first = Math.max(0, written - Math.min(max, capacity));
+        List<Frame> frames = new ArrayList<>((int) (written - first));
+        for (long n = first; n < written; ++n) {
+            Frame frame = read(n);
+            if (frame != null) {
+                frames.add(frame);
+            }
+        }
+        return frames;
+    }
+
+    /** @return frame n, null if it was overwritten or is being written */
+    private Frame read(long n) {
+        int offset = HEADER_SIZE + (int) (n % capacity) * RECORD_SIZE;
+        long expected = 2 * n + 2;
+        if (buffer.getLong(offset) != expected) {
+            return null;
+        }
+        Frame frame = new Frame();
+        frame.number = n;
+        frame.startNs = buffer.getLong(offset + 8);
+        frame.timestampNs = buffer.getLong(offset + 16);
+        for (int stage = 0; stage < STAGE_COUNT; ++stage) {
+            frame.stageNs[stage] = buffer.getInt(offset + 24 + 4 * stage);
+        }
+        frame.totalNs = buffer.getInt(offset + 24 + 4 * STAGE_COUNT);
+        int flags = buffer.getInt(offset + 28 + 4 * STAGE_COUNT);
+        frame.mode = flags & MODE_MASK;
+        frame.dropped = (flags & FLAG_DROPPED) != 0;
+        if (buffer.getLong(offset) != expected) {
+            return null;
+        }
+        return frame;
+    }
+
+    public static Summary summarize(List<Frame> frames) {
+        Summary summary = new Summary();
+        summary.frames = frames.size();
+        if (frames.isEmpty()) {
+            return summary;
+        }
+        long totalSum = 0;
+        long[] stageSums = new long[STAGE_COUNT];
+        for (Frame frame : frames) {
+            totalSum += frame.totalNs;
+            summary.maxTotalMs = Math.max(summary.maxTotalMs, frame.totalNs / 1e6);
+            for (int stage = 0; stage < STAGE_COUNT; ++stage) {
+                stageSums[stage] += frame.stageNs[stage];
+            }
+            if (frame.dropped) {
+                ++summary.dropped;
+            }
+        }
+        summary.meanTotalMs = totalSum / 1e6 / frames.size();
+        for (int stage = 0; stage < STAGE_COUNT; ++stage) {
+            summary.meanStageMs[stage] = stageSums[stage] / 1e6 / frames.size();
+        }
+        long spanNs = frames.get(frames.size() - 1).startNs - frames.get(0).startNs;
+        if (spanNs > 0) {
+            summary.fps = (frames.size() - 1) * 1e9 / spanNs;
+        }
+        return summary;
+    }
+
+    public static void writeCsv(List<Frame> frames, Writer out) throws IOException {
+        out.write("frame,start_ns,timestamp_ns,mode,dropped");
+        for (String stage : STAGE_NAMES) {
+            out.write("," + stage + "_ns");
+        }
+        out.write(",total_ns\n");
+        for (Frame frame : frames) {
+            StringBuilder line = new StringBuilder();
+            line.append(frame.number)
+                    .append(',')
+                    .append(frame.startNs)
+                    .append(',')
+                    .append(frame.timestampNs)
+                    .append(',')
+                    .append(MODE_NAMES[Math.min(frame.mode, MODE_NAMES.length - 1)])
+                    .append(',')
+                    .append(frame.dropped ? 1 : 0);
+            for (int stageNs : frame.stageNs) {
+                line.append(',').append(stageNs);
+            }
+            line.append(',').append(frame.totalNs).append('\n');
+            out.write(line.toString());
+        }
+    }
+}
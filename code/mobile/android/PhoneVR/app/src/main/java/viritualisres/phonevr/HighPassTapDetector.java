@@ -0,0 +1,168 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+/**
+ * Cheaper double tap detector working on the energy of the high-passed accelerometer signal.
+ *
+ * <p>A one pole high-pass removes gravity and slow head motion. A tap is a short burst of the
+ * filtered magnitude between lowerBound and upperBound after a quiet phase; two taps that are at
+ * least {@link #MIN_TAP_GAP_NS} apart and fit in passthrough_delay ms toggle passthrough. Each
+ * sample costs a few multiplications and one store into a fixed size window.
+ */
+public class HighPassTapDetector implements TapDetector {
+
+    // time constant of the high-pass, about 0.8Hz cutoff
+    private static final float HIGH_PASS_RC_S = 0.2f;
+
+    // samples before the first tap whose mean energy has to be quiet
+    private static final int QUIET_WINDOW = 8;
+
+    // the quiet mean has to stay below lowerBound * QUIET_FACTOR
+    private static final float QUIET_FACTOR = 0.5f;
+
+    // a burst longer than this is motion and not a tap
+    private static final long MAX_TAP_NS = 150 * 1000000L;
+
+    // bursts closer than this belong to the same tap
+    private static final long MIN_TAP_GAP_NS = 80 * 1000000L;
+
+    private long delayNs = 600 * 1000000L;
+
+    private float lowerBound = 0.8f;
+
+    private float upperBound = 4f;
+
+    private final float[] lastValue = new float[3];
+
+    private final float[] filtered = new float[3];
+
+    private long lastTimestamp = 0;
+
+    private final float[] energies = new float[QUIET_WINDOW];
+
+    private int energyCount = 0;
+
+    private int energyIndex = 0;
+
+    private float energySum = 0f;
+
+    // start and peak of the current burst, burstStart is 0 outside of a burst
+    private long burstStart = 0;
+
+    private float burstPeak = 0f;
+
+    private boolean burstAfterQuiet = false;
+
+    // end of the first tap of a pending double tap, 0 if none
+    private long firstTapEnd = 0;
+
+    // no taps are accepted before this timestamp after a toggle
+    private long refractoryUntil = 0;
+
+    public HighPassTapDetector() {}
+
+    public HighPassTapDetector(long delayMs, float lowerBound, float upperBound) {
+        setParameters(delayMs, lowerBound, upperBound);
+    }
+
+    @Override
+    public void setParameters(long delayMs, float lowerBound, float upperBound) {
+        this.delayNs = delayMs * 1000000L;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+    }
+
+    @Override
+    public void reset() {
+        lastTimestamp = 0;
+        for (int axis = 0; axis < 3; ++axis) {
+            filtered[axis] = 0f;
+        }
+        energyCount = 0;
+        energyIndex = 0;
+        energySum = 0f;
+        burstStart = 0;
+        firstTapEnd = 0;
+        refractoryUntil = 0;
+    }
+
+    @Override
+    public boolean onSample(long timestampNs, float x, float y, float z) {
+        if (lastTimestamp == 0) {
+            lastTimestamp = timestampNs;
+            lastValue[0] = x;
+            lastValue[1] = y;
+            lastValue[2] = z;
+            return false;
+        }
+
+        float dt = (timestampNs - lastTimestamp) / 1e9f;
+        lastTimestamp = timestampNs;
+        float alpha = HIGH_PASS_RC_S / (HIGH_PASS_RC_S + Math.max(dt, 0f));
+        float hx = alpha * (filtered[0] + x - lastValue[0]);
+        float hy = alpha * (filtered[1] + y - lastValue[1]);
+        float hz = alpha * (filtered[2] + z - lastValue[2]);
+        filtered[0] = hx;
+        filtered[1] = hy;
+        filtered[2] = hz;
+        lastValue[0] = x;
+        lastValue[1] = y;
+        lastValue[2] = z;
+        float energy = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+
+        boolean toggle = false;
+        if (burstStart == 0) {
+            if (energy >= lowerBound) {
+                burstStart = timestampNs;
+                burstPeak = energy;
+                burstAfterQuiet =
+                        energyCount == QUIET_WINDOW
+                                && energySum / QUIET_WINDOW < lowerBound * QUIET_FACTOR;
+            }
+        } else if (energy >= lowerBound) {
+            burstPeak = Math.max(burstPeak, energy);
+        } else {
+            toggle = onBurstEnd(timestampNs);
+            burstStart = 0;
+        }
+
+        if (firstTapEnd != 0 && timestampNs - firstTapEnd > delayNs) {
+            firstTapEnd = 0;
+        }
+
+        // fixed window of the latest energies
+        if (energyCount == QUIET_WINDOW) {
+            energySum -= energies[energyIndex];
+        } else {
+            ++energyCount;
+        }
+        energies[energyIndex] = energy;
+        energySum += energy;
+        energyIndex = (energyIndex + 1) % QUIET_WINDOW;
+        return toggle;
+    }
+
+    private boolean onBurstEnd(long timestampNs) {
+        boolean isTap =
+                burstPeak <= upperBound
+                        && timestampNs - burstStart <= MAX_TAP_NS
+                        && timestampNs >= refractoryUntil;
+        if (!isTap) {
+            firstTapEnd = 0;
+            return false;
+        }
+        if (firstTapEnd == 0) {
+            if (burstAfterQuiet) {
+                firstTapEnd = timestampNs;
+            }
+            return false;
+        }
+        long gap = timestampNs - firstTapEnd;
+        if (gap < MIN_TAP_GAP_NS) {
+            return false;
+        }
+        firstTapEnd = 0;
+        refractoryUntil = timestampNs + delayNs;
+        return true;
+    }
+}
@@ -0,0 +1,146 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import java.util.Locale;
+
+/**
+ * Decides on which vsyncs the lobby and the passthrough are rendered.
+ *
+ * <p>Every vsync is rendered while streaming, while the head moves and for {@link #IDLE_AFTER_NS}
+ * after the last motion or activity, like a changed HUD message. After that only one frame per idle
+ * frame interval is rendered, until the next motion or activity, which is rendered at the next
+ * vsync.
+ *
+ * <p>Pure Java, all times are {@code System.nanoTime()}. All methods are called on the main thread.
+ */
+public class IdleThrottle {
+
+    static final long IDLE_AFTER_NS = 2_000_000_000L;
+
+    // rad/s, above the gyroscope noise of a phone lying on a table
+    static final float MOTION_THRESHOLD = 0.05f;
+
+    /** Frames and time rendered since the last {@link #takeStats}. */
+    public static class Stats {
+        public final long durationNs;
+
+        public final int vsyncs;
+
+        public final int framesRendered;
+
+        // vsyncs that were idle, rendered or not
+        public final int idleVsyncs;
+
+        Stats(long durationNs, int vsyncs, int framesRendered, int idleVsyncs) {
+            this.durationNs = durationNs;
+            this.vsyncs = vsyncs;
+            this.framesRendered = framesRendered;
+            this.idleVsyncs = idleVsyncs;
+        }
+
+        public float framesPerMinute() {
+            return durationNs > 0 ? framesRendered * 60e9f / durationNs : 0;
+        }
+
+        public float idleFraction() {
+            return vsyncs > 0 ? (float) idleVsyncs / vsyncs : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    Locale.ROOT,
+                    "%.0f frames/min, idle %.0f%%",
+                    framesPerMinute(),
+                    idleFraction() * 100);
+        }
+    }
+
+    private long idleFrameIntervalNs;
+
+    // -1 before the first vsync, so the first one is rendered
+    private long lastActiveNs = -1;
+
+    private long lastRenderedNs = -1;
+
+    private long statsStartNs = -1;
+
+    private int vsyncs = 0;
+
+    private int framesRendered = 0;
+
+    private int idleVsyncs = 0;
+
+    /** @param idleFrameIntervalNs time between the frames rendered while idle */
+    public IdleThrottle(long idleFrameIntervalNs) {
+        this.idleFrameIntervalNs = idleFrameIntervalNs;
+    }
+
+    public void setIdleFrameInterval(long idleFrameIntervalNs) {
+        this.idleFrameIntervalNs = idleFrameIntervalNs;
+    }
+
+    /** @param angularSpeed of the head in rad/s */
+    public void onMotion(long timeNs, float angularSpeed) {
+        if (isMotion(angularSpeed)) {
+            onActivity(timeNs);
+        }
+    }
+
+    /** @return whether the head turns fast enough to leave idle, from any thread */
+    public static boolean isMotion(float angularSpeed) {
+        return angularSpeed > MOTION_THRESHOLD;
+    }
+
+    /** Something changed on screen without head motion, like a HUD message. */
+    public void onActivity(long timeNs) {
+        lastActiveNs = Math.max(lastActiveNs, timeNs);
+    }
+
+    /**
+     * @param streaming whether a stream runs, which is never throttled
+     * @return whether to render a frame for this vsync
+     */
+    public boolean onVsync(long timeNs, boolean streaming) {
+        if (statsStartNs < 0) {
+            statsStartNs = timeNs;
+        }
+        if (streaming || lastActiveNs < 0) {
+            onActivity(timeNs);
+        }
+        vsyncs++;
+
+        boolean render;
+        if (timeNs - lastActiveNs < IDLE_AFTER_NS) {
+            render = true;
+        } else {
+            idleVsyncs++;
+            render = timeNs - lastRenderedNs >= idleFrameIntervalNs;
+        }
+        if (render) {
+            framesRendered++;
+            lastRenderedNs = timeNs;
+        }
+        return render;
+    }
+
+    /** @return whether the last vsync was throttled or could have been */
+    public boolean isIdle(long timeNs) {
+        return lastActiveNs >= 0 && timeNs - lastActiveNs >= IDLE_AFTER_NS;
+    }
+
+    /** @return the stats since the last call, and restarts them */
+    public Stats takeStats(long timeNs) {
+        Stats stats =
+                new Stats(
+                        statsStartNs < 0 ? 0 : timeNs - statsStartNs,
+                        vsyncs,
+                        framesRendered,
+                        idleVsyncs);
+        statsStartNs = timeNs;
+        vsyncs = 0;
+        framesRendered = 0;
+        idleVsyncs = 0;
+        return stats;
+    }
+}
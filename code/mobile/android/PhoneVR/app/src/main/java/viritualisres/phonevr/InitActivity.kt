@@ -44,6 +44,10 @@ class InitActivity : AppCompatActivity() {
         Linkify.addLinks(tvBody, Linkify.WEB_URLS)
 
         val prefs = getSharedPreferences("prefs", MODE_PRIVATE)
+        // loads the native libraries while the user looks at this screen, the ALVR client core
+        // starts looking for a server right away, so only when ALVR was chosen before
+        NativeWarmUp.start(this, noGvrFlavour || prefs.getBoolean("alvr_server", false))
+
         val swVRemember = findViewById<SwitchCompat>(R.id.remeber_server)
         swVRemember.isChecked = prefs.getBoolean("remember", false)
 
@@ -89,6 +93,8 @@ class InitActivity : AppCompatActivity() {
             if (prefs.getBoolean("remember", false))
                 prefs.edit().putBoolean("alvr_server", false).apply()
 
+            // an idle ALVR client core of the warm up would keep looking for a server
+            NativeWarmUp.releaseAlvr()
             val intent = Intent(this, MainActivity::class.java)
             startActivity(intent)
         } else {
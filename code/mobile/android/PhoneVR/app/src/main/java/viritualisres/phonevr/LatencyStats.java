@@ -0,0 +1,147 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Percentiles of a fixed set of metrics, like the fps and delays of the stream, over the latest
+ * samples of each metric.
+ *
+ * <p>One thread adds samples while another one reads the percentiles, without locks. Every metric
+ * keeps its samples in a ring of float bits, a sample is written before the count publishing it. A
+ * reader copies the samples and drops the ones the writer may have overwritten meanwhile, like
+ * {@link FrameTimings} does with its records. Nothing is allocated after construction.
+ */
+public class LatencyStats {
+
+    /** Percentiles of the samples of one metric, reused between reads. */
+    public static class Percentiles {
+        public int count;
+
+        public float p50;
+
+        public float p95;
+
+        public float p99;
+
+        public float max;
+
+        /** Appends "p50 p95 p99 max" with one decimal each, without allocating. */
+        public void appendTo(StringBuilder sb) {
+            appendDecimal(sb, p50);
+            sb.append(' ');
+            appendDecimal(sb, p95);
+            sb.append(' ');
+            appendDecimal(sb, p99);
+            sb.append(' ');
+            appendDecimal(sb, max);
+        }
+    }
+
+    private final int window;
+
+    // one more than the window, for the slot the writer may be writing while a window is read
+    private final int slots;
+
+    // [metric * slots + sample % slots], Float.floatToRawIntBits of the samples
+    private final AtomicIntegerArray samples;
+
+    // samples added per metric
+    private final AtomicLongArray counts;
+
+    // copy of the samples being read, owned by the reader
+    private final float[] sorted;
+
+    /** @param window the number of latest samples of each metric the percentiles are taken of */
+    public LatencyStats(int metrics, int window) {
+        if (metrics <= 0 || window <= 0) {
+            throw new IllegalArgumentException("Invalid size " + metrics + "x" + window);
+        }
+        this.window = window;
+        slots = window + 1;
+        samples = new AtomicIntegerArray(metrics * slots);
+        counts = new AtomicLongArray(metrics);
+        sorted = new float[window];
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /** Adds a sample of a metric, only ever called by the same thread. */
+    public void add(int metric, float value) {
+        long count = counts.get(metric);
+        samples.lazySet(metric * slots + (int) (count % slots), Float.floatToRawIntBits(value));
+        counts.lazySet(metric, count + 1);
+    }
+
+    /** Adds a sample of every metric, in the order of the metrics. */
+    public void addAll(float[] values, int offset) {
+        for (int metric = 0; metric < counts.length(); ++metric) {
+            add(metric, values[offset + metric]);
+        }
+    }
+
+    public long getCount(int metric) {
+        return counts.get(metric);
+    }
+
+    /** Reads the percentiles over the whole window, only ever called by the same thread. */
+    public void read(int metric, Percentiles out) {
+        read(metric, window, out);
+    }
+
+    /**
+     * Reads the percentiles over the latest {@code last} samples, so a shorter window can be read
+     * from the same stats. All values are NaN without samples.
+     */
+    public void read(int metric, int last, Percentiles out) {
+        long end = counts.get(metric);
+        long start = Math.max(0, end - Math.min(last, window));
+        int n = 0;
+        for (long i = start; i < end; ++i) {
+            sorted[n++] = Float.intBitsToFloat(samples.get(metric * slots + (int) (i % slots)));
+        }
+        // by now the writer may be writing the sample after the last one published, over the
+        // sample a window before that one
+        long overwritten = counts.get(metric) - window;
+        if (overwritten > start) {
+            int skipped = (int) Math.min(overwritten - start, n);
+            System.arraycopy(sorted, skipped, sorted, 0, n - skipped);
+            n -= skipped;
+        }
+
+        out.count = n;
+        if (n == 0) {
+            out.p50 = out.p95 = out.p99 = out.max = Float.NaN;
+            return;
+        }
+        Arrays.sort(sorted, 0, n);
+        out.p50 = percentile(sorted, n, 0.50);
+        out.p95 = percentile(sorted, n, 0.95);
+        out.p99 = percentile(sorted, n, 0.99);
+        out.max = sorted[n - 1];
+    }
+
+    /** @return the nearest-rank percentile p of the n sorted values */
+    static float percentile(float[] sorted, int n, double p) {
+        int rank = (int) Math.ceil(p * n);
+        return sorted[Math.min(Math.max(rank, 1), n) - 1];
+    }
+
+    /** Appends the value rounded to one decimal, "-" for NaN. */
+    static void appendDecimal(StringBuilder sb, float value) {
+        if (Float.isNaN(value)) {
+            sb.append('-');
+            return;
+        }
+        long tenths = Math.round(value * 10.0);
+        if (tenths < 0) {
+            sb.append('-');
+            tenths = -tenths;
+        }
+        sb.append(tenths / 10).append('.').append((char) ('0' + tenths % 10));
+    }
+}
@@ -0,0 +1,220 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.Display;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the native libraries, reads the Cardboard device params with their cached distortion meshes
+ * and creates the ALVR client core on a background thread, started by {@link InitActivity} while it
+ * is shown. {@link ALVRActivity} waits for it and reuses what was done, without a warm up it does
+ * everything itself.
+ *
+ * <p>Every step is a {@link Trace} section, the native ones too, and the time from the process
+ * start to the first frame is logged, so cold starts can be measured with systrace or Perfetto.
+ */
+public final class NativeWarmUp {
+
+    private static final String TAG = NativeWarmUp.class.getSimpleName() + "-Java";
+
+    // async trace section from the start of the warm up, or of ALVRActivity, to the first frame
+    private static final String COLD_START_SECTION = "PhoneVR cold start";
+
+    // the warm up, then the release of its ALVR client core if the PVR streamer is chosen
+    private static Thread thread = null;
+
+    private static volatile boolean alvrLoaded = false;
+
+    private static boolean coldStartTraced = false;
+
+    private static boolean firstFrameReported = false;
+
+    private NativeWarmUp() {}
+
+    /**
+     * Starts the warm up once per process.
+     *
+     * @param initializeAlvr whether to create the ALVR client core too, which starts looking for a
+     *     server, so only when ALVR is likely used
+     */
+    public static synchronized void start(Activity activity, boolean initializeAlvr) {
+        if (thread != null) {
+            return;
+        }
+        beginColdStart();
+
+        Display display = activity.getWindowManager().getDefaultDisplay();
+        DisplayMetrics displayMetrics = new DisplayMetrics();
+        display.getMetrics(displayMetrics);
+        int screenWidth = displayMetrics.widthPixels;
+        int screenHeight = displayMetrics.heightPixels;
+        DisplayModes displayModes = getDisplayModes(display);
+        SharedPreferences settings =
+                activity.getSharedPreferences("settings", Context.MODE_PRIVATE);
+        // the performance level is NORMAL until ALVRActivity runs
+        float maxRefreshRate = isHighRefreshRate(settings) ? 0 : DisplayModes.STANDARD_REFRESH_RATE;
+        Context context = activity.getApplicationContext();
+        String cacheDir = activity.getCacheDir().getPath();
+
+        thread =
+                new Thread(
+                        () -> {
+                            long startMs = SystemClock.elapsedRealtime();
+                            // loaded by Passthrough, not built in every configuration
+                            loadLibrary("native-lib");
+                            if (!loadLibrary("native-lib-alvr")) {
+                                return;
+                            }
+                            alvrLoaded = true;
+
+                            Trace.beginSection("warmUpNative");
+                            try {
+                                warmUpNative(
+                                        context,
+                                        screenWidth,
+                                        screenHeight,
+                                        maxRefreshRate,
+                                        displayModes.refreshRates(),
+                                        cacheDir,
+                                        initializeAlvr);
+                            } finally {
+                                Trace.endSection();
+                            }
+                            Log.i(
+                                    TAG,
+                                    "Warm up took "
+                                            + (SystemClock.elapsedRealtime() - startMs)
+                                            + "ms");
+                        },
+                        "NativeWarmUp");
+        thread.start();
+    }
+
+    /**
+     * Destroys the ALVR client core the warm up created, when the PVR streamer is used instead.
+     * Done on a background thread once the warm up is done, {@link #await} waits for it too.
+     */
+    public static synchronized void releaseAlvr() {
+        Thread warmUp = thread;
+        if (warmUp == null) {
+            return;
+        }
+        thread =
+                new Thread(
+                        () -> {
+                            join(warmUp);
+                            if (alvrLoaded) {
+                                releaseAlvrNative();
+                            }
+                        },
+                        "NativeWarmUp");
+        thread.start();
+    }
+
+    /** Waits for a started warm up to finish, returns right away without one. */
+    public static void await() {
+        Thread warmUp;
+        synchronized (NativeWarmUp.class) {
+            warmUp = thread;
+        }
+        if (warmUp == null) {
+            return;
+        }
+        Trace.beginSection("NativeWarmUp.await");
+        try {
+            join(warmUp);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Starts the cold start trace section, if no warm up did. */
+    static synchronized void beginColdStart() {
+        if (!coldStartTraced && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(COLD_START_SECTION, 0);
+        }
+        coldStartTraced = true;
+    }
+
+    /** Called with the first frame rendered, reports the cold start once per process. */
+    static synchronized void firstFrameRendered() {
+        if (firstFrameReported) {
+            return;
+        }
+        firstFrameReported = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(COLD_START_SECTION, 0);
+        }
+        long sinceStartMs = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+        Log.i(TAG, "Process start to first frame: " + sinceStartMs + "ms");
+    }
+
+    /** @return the display modes as offered to the server, shared with ALVRActivity */
+    static DisplayModes getDisplayModes(Display display) {
+        List<DisplayModes.Mode> supportedModes = new ArrayList<>();
+        for (Display.Mode mode : display.getSupportedModes()) {
+            supportedModes.add(toMode(mode));
+        }
+        return new DisplayModes(supportedModes, toMode(display.getMode()));
+    }
+
+    static DisplayModes.Mode toMode(Display.Mode mode) {
+        return new DisplayModes.Mode(
+                mode.getModeId(),
+                mode.getPhysicalWidth(),
+                mode.getPhysicalHeight(),
+                mode.getRefreshRate());
+    }
+
+    /** @param settings the "settings" preferences of ALVRActivity */
+    static boolean isHighRefreshRate(SharedPreferences settings) {
+        return settings.getBoolean("high_refresh_rate", true);
+    }
+
+    private static boolean loadLibrary(String name) {
+        Trace.beginSection("loadLibrary " + name);
+        try {
+            System.loadLibrary(name);
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            Log.w(TAG, "Could not preload " + name, e);
+            return false;
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * @param context the application context, handed to ALVR and the Cardboard SDK
+     * @param maxRefreshRate highest refresh rate offered to the server, 0 for no limit
+     */
+    private static native void warmUpNative(
+            Context context,
+            int screenWidth,
+            int screenHeight,
+            float maxRefreshRate,
+            float[] refreshRates,
+            String cacheDir,
+            boolean initializeAlvr);
+
+    /** Destroys the ALVR client core, unless an {@link ALVRActivity} uses it. */
+    private static native void releaseAlvrNative();
+}
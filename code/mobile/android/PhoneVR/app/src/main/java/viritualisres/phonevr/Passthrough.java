@@ -3,21 +3,25 @@ package viritualisres.phonevr;
 
 import android.content.SharedPreferences;
 import android.graphics.SurfaceTexture;
-import android.hardware.Camera;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.util.Log;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class Passthrough implements SensorEventListener {
+public class Passthrough
+        implements SensorEventListener,
+                PassthroughCamera.Listener,
+                SharedPreferences.OnSharedPreferenceChangeListener {
 
     static {
         System.loadLibrary("native-lib");
@@ -25,13 +29,36 @@ public class Passthrough implements SensorEventListener {
 
     private static final String TAG = Passthrough.class.getSimpleName() + "-Java";
 
-    private Camera mCamera = null;
+    // Let the sensor FIFO batch events for up to 100ms, the tap detection works on the event
+    // timestamps so this only delays the toggle.
+    private static final int MAX_REPORT_LATENCY_US = 100000;
+
+    // Set to true to log every LOG_EVENT_INTERVAL-th accelerometer event. Being a constant the
+    // logging is compiled out otherwise.
+    private static final boolean LOG_SENSOR_EVENTS = false;
+
+    private static final int LOG_EVENT_INTERVAL = 50;
+
+    private final Camera2Backend cameraBackend;
+
+    private final PassthroughCamera camera;
 
     private SurfaceTexture mTexture = null;
-    private Camera.Size mPreviewSize = null;
+
+    // camera frames that arrived while shown since the last updateTexImage
+    private final AtomicInteger pendingFrames = new AtomicInteger();
+
+    // set on the main thread, read on the GL thread and by the frame listener
+    private volatile boolean cameraVisible = false;
+
+    // only accessed on the GL thread
+    private long latchedTimestampNs = 0;
 
     private final SharedPreferences mPref;
 
+    // replaced on the main thread on every preference change
+    private volatile PassthroughSettings settings;
+
     private final SensorManager mSensorManager;
 
     private final int displayWidth;
@@ -40,34 +67,57 @@ public class Passthrough implements SensorEventListener {
 
     private Sensor mAccelerometer = null;
 
-    private long timestamp = 0;
+    // only accessed on the sensor thread
+    private TapDetector tapDetector = new DoubleTapDetector();
 
-    private long timestampAfterCandidate = 0;
+    private String tapDetectorType = TapDetector.WINDOW;
 
-    private long passthroughDelayInMs = 600;
+    private final File traceDir;
 
-    private float detectionLowerBound = 0.8f;
+    private SensorTrace.Writer traceWriter = null;
 
-    private float detectionUpperBound = 4f;
+    private HandlerThread sensorThread = null;
 
-    private final List<Float>[] accelStore =
-            new List[] {new ArrayList<>(), new ArrayList<>(), new ArrayList<>()};
+    private Handler sensorHandler = null;
 
-    private int halfSize = 0;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
-    private boolean triggerIsSet = false;
+    // only accessed on the main thread
+    private boolean sensorActive = false;
 
-    private final List<Float> cumSums = new ArrayList<>();
+    private boolean resumed = false;
+
+    private boolean passthroughOn = false;
+
+    // cleared by the PerformanceGovernor while the device is hot, read by createTexture
+    private volatile boolean prewarmAllowed = true;
+
+    private final Runnable toggleFromTap =
+            () -> {
+                if (sensorActive) {
+                    changePassthroughMode();
+                }
+            };
+
+    private int sensorEventCount = 0;
 
     public Passthrough(
             SharedPreferences pref,
             SensorManager sensorManager,
+            Camera2Backend cameraBackend,
             int displayWidth,
-            int displayHeight) {
+            int displayHeight,
+            File traceDir) {
         this.displayWidth = displayWidth;
         this.displayHeight = displayHeight;
+        this.traceDir = traceDir;
         mPref = pref;
         mSensorManager = sensorManager;
+        this.cameraBackend = cameraBackend;
+        camera = new PassthroughCamera(cameraBackend, this);
+        settings = loadSettings();
+        // SharedPreferences only keeps a weak reference to the listener
+        mPref.registerOnSharedPreferenceChangeListener(this);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             mAccelerometer =
                     mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER_UNCALIBRATED);
@@ -79,311 +129,318 @@ public class Passthrough implements SensorEventListener {
 
     @Override
     public void onSensorChanged(SensorEvent event) {
-        if (timestamp == 0) {
-            timestamp = event.timestamp;
+        if (traceWriter != null) {
+            try {
+                traceWriter.append(
+                        event.timestamp, event.values[0], event.values[1], event.values[2]);
+            } catch (IOException e) {
+                Log.e(TAG, "Writing sensor trace failed, stopping recording", e);
+                stopTraceRecording();
+            }
         }
 
-        if (timestampAfterCandidate == 0) {
-            timestampAfterCandidate = event.timestamp;
+        if (tapDetector.onSample(
+                event.timestamp, event.values[0], event.values[1], event.values[2])) {
+            // runs on the sensor thread, only the decision goes to the main thread
+            mainHandler.post(toggleFromTap);
         }
 
-        boolean initialFull = event.timestamp - timestamp > passthroughDelayInMs * 1000000L;
-        boolean afterCandidateFull =
-                event.timestamp - timestampAfterCandidate > passthroughDelayInMs * 1000000L;
+        if (LOG_SENSOR_EVENTS && ++sensorEventCount % LOG_EVENT_INTERVAL == 0) {
+            Log.v(
+                    TAG + "-AccSensor",
+                    String.format(
+                            (Locale) null,
+                            "%d: [%f, %f, %f]",
+                            event.timestamp,
+                            event.values[0],
+                            event.values[1],
+                            event.values[2]));
+        }
+    }
 
-        // gather data for passthrough_delay_ms, we get a data point approx. each 60ms
-        for (int i = 0; i < accelStore.length; ++i) {
-            // derivative, absolute
-            accelStore[i].add(event.values[i]);
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
 
-            if (initialFull) {
-                // remove the first element to only store the last X elements
-                accelStore[i].remove(0);
-                if (halfSize == 0) {
-                    halfSize = accelStore[0].size() / 2;
-                }
-                // check if half size has at least 3 data points
-                if (halfSize < 4) {
-                    accelStore[i].clear();
-                    timestamp = 0;
-                    halfSize = 0;
-                }
-            }
+    protected void onResume() {
+        resumed = true;
+        passthroughOn = false;
+        if (settings.tap) {
+            startTapDetection();
         }
+    }
 
-        if (halfSize > 0) {
-            // Calculate derivative and absolute values
-            List<Float>[] accelAbs =
-                    new List[] {new ArrayList<>(), new ArrayList<>(), new ArrayList<>()};
-            for (int axis = 0; axis < accelStore.length; ++axis) {
-                for (int i = 1; i < accelStore[axis].size(); ++i) {
-                    accelAbs[axis].add(
-                            Math.abs(accelStore[axis].get(i) - accelStore[axis].get(i - 1)));
-                }
-            }
-
-            // get the mean for each axis and sum them up
-            float[] axisMean = new float[] {0.0f, 0.0f, 0.0f};
-            for (int i = 0; i < accelAbs.length; ++i) {
-                for (int j = 0; j < accelAbs[i].size(); ++j) {
-                    axisMean[i] += accelAbs[i].get(j);
-                }
-                axisMean[i] /= accelAbs[i].size();
-            }
-            float sumMean = axisMean[0] + axisMean[1] + axisMean[2];
-            cumSums.add(sumMean);
+    private PassthroughSettings loadSettings() {
+        PassthroughSettings loaded = PassthroughSettings.fromValues(mPref.getAll());
+        if (!loaded.invalidKeys.isEmpty()) {
+            Log.w(TAG, "Invalid passthrough settings " + loaded.invalidKeys + ", using defaults");
+        }
+        return loaded;
+    }
 
-            if (cumSums.size() < accelAbs[0].size()) {
-                return;
-            } else {
-                // only store the last X elements
-                cumSums.remove(0);
-            }
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+        // key is null when the preferences were cleared
+        if (key != null && !PassthroughSettings.isSettingKey(key)) {
+            return;
+        }
+        PassthroughSettings old = settings;
+        PassthroughSettings current = loadSettings();
+        settings = current;
+        Log.d(TAG, "Applying " + current);
 
-            if (!afterCandidateFull) {
-                // if a potential passthrough_change event is found,
-                // check if the device does not move much anymore
-                if (!triggerIsSet && sumMean < detectionLowerBound) {
-                    triggerIsSet = true;
-                    // if passthroughMode not already changed... change it
-                    changePassthroughMode();
-                }
+        if (current.fraction != old.fraction) {
+            setPassthroughSizeNative(current.fraction);
+        }
+        if (current.recordingHint != old.recordingHint) {
+            camera.setRequest(cameraRequest());
+        }
+        if (!resumed) {
+            // onResume and createTexture pick up the rest
+            return;
+        }
+        if (current.prewarm != old.prewarm && mTexture != null) {
+            camera.setWarm(current.prewarm && prewarmAllowed, cameraRequest());
+        }
+        if (current.tap != old.tap) {
+            if (current.tap) {
+                startTapDetection();
             } else {
-                triggerIsSet = false;
-                // here we check for potential passthrough_change events
-                // these may occur on any axis
-                for (List<Float> elem : accelAbs) {
-                    // we look at two halves of the passthrough_delay
-                    // we check:
-                    // - if in the first and second half is a real peak
-                    // - whether the peaks are in the bounds
-                    // - if the summed mean is in the bounds
-                    // - if the first summed mean is below lower_bound
-                    //   (to assure a resting stage before the triggering)
-                    // - if the second maximum is decending under the lower bound until curr value
-                    // If all is fulfilled we consider this a potential passthrough_change event.
-                    // The sum must then decend under lower bound until passthrough_delay
-                    int middle = halfSize - 1;
-                    List<Float> t1 = elem.subList(0, halfSize);
-                    List<Float> t2 = elem.subList(middle, elem.size());
-
-                    float max1 = Collections.max(t1);
-                    float max2 = Collections.max(t2);
-
-                    if (max1 - t1.get(0) < detectionLowerBound
-                            || max1 - t1.get(t1.size() - 1) < detectionLowerBound
-                            || max2 - t2.get(0) < detectionLowerBound
-                            || max2 - t2.get(t2.size() - 1) < detectionLowerBound
-                            || max1 < detectionLowerBound
-                            || max1 > detectionUpperBound
-                            || max2 < detectionLowerBound
-                            || max2 > detectionUpperBound
-                            || sumMean < detectionLowerBound
-                            || sumMean > detectionUpperBound) {
-                        continue;
-                    }
-
-                    int end2 = 0;
-                    for (int i = 0; i < t2.size(); ++i) {
-                        if (t2.get(i) == max2) {
-                            end2 = i;
-                        }
-                        if (end2 > 0) {
-                            if (t2.get(i) < detectionLowerBound) {
-                                end2 = i;
-                                break;
-                            }
-                        }
-                    }
-
-                    if (cumSums.get(0) < Math.max(detectionLowerBound - 0.3f, 0.5f)
-                            && t2.get(end2) < max2) {
-                        timestampAfterCandidate = event.timestamp;
-                        break;
-                    }
-                }
+                stopTapDetection();
             }
+        } else if (current.tap
+                && (current.detectorDiffers(old) || current.recordTrace != old.recordTrace)) {
+            sensorHandler.post(() -> configureDetector(current));
         }
-
-        Log.v(
-                TAG + "-AccSensor",
-                String.format(
-                        (Locale) null,
-                        "%d: [%f, %f, %f]",
-                        event.timestamp,
-                        event.values[0],
-                        event.values[1],
-                        event.values[2]));
     }
 
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
-
-    protected void onResume() {
-        SharedPreferences.Editor edit = mPref.edit();
-        edit.putBoolean("passthrough", false);
-        edit.apply();
+    private void startTapDetection() {
+        startSensorThread();
+        PassthroughSettings current = settings;
+        sensorHandler.post(
+                () -> {
+                    configureDetector(current);
+                    tapDetector.reset();
+                });
+
+        if (mAccelerometer != null && !sensorActive) {
+            int maxReportLatencyUs =
+                    mAccelerometer.getFifoMaxEventCount() > 0 ? MAX_REPORT_LATENCY_US : 0;
+            mSensorManager.registerListener(
+                    this,
+                    mAccelerometer,
+                    SensorManager.SENSOR_DELAY_UI,
+                    maxReportLatencyUs,
+                    sensorHandler);
+            sensorActive = true;
+        }
+    }
 
-        timestamp = 0;
-        halfSize = 0;
-        if (mPref.getBoolean("passthrough_tap", true)) {
-            try {
-                passthroughDelayInMs = Long.parseLong(mPref.getString("passthrough_delay", "600"));
-            } catch (Exception e) {
-                passthroughDelayInMs = 600;
-            }
-            try {
-                detectionLowerBound = Float.parseFloat(mPref.getString("passthrough_lower", "0.8"));
-            } catch (Exception e) {
-                detectionLowerBound = 0.8f;
-            }
-            try {
-                detectionUpperBound = Float.parseFloat(mPref.getString("passthrough_upper", "4"));
-            } catch (Exception e) {
-                detectionUpperBound = 4.f;
-            }
+    private void stopTapDetection() {
+        mSensorManager.unregisterListener(this);
+        sensorActive = false;
+        mainHandler.removeCallbacks(toggleFromTap);
+        stopSensorThread();
+    }
 
-            if (mAccelerometer != null) {
-                mSensorManager.registerListener(
-                        this, mAccelerometer, SensorManager.SENSOR_DELAY_UI);
-            }
+    /** Applies the detector settings, the detector and the trace writer live on this thread. */
+    private void configureDetector(PassthroughSettings current) {
+        if (!tapDetectorType.equals(current.detector)) {
+            tapDetector = TapDetector.create(current.detector);
+            tapDetectorType = current.detector;
+        }
+        tapDetector.setParameters(current.delayMs, current.lowerBound, current.upperBound);
+        if (current.recordTrace) {
+            startTraceRecording();
         } else {
-            mSensorManager.unregisterListener(this);
+            stopTraceRecording();
         }
     }
 
-    protected void setPassthroughMode(boolean passthrough) {
-        if (passthrough) {
-            int w = displayWidth / 2;
-            int h = displayHeight;
-            if (displayWidth < displayHeight) {
-                w = displayHeight / 2;
-                h = displayWidth;
-            }
-            openCamera(-1, w, h, mPref.getBoolean("passthrough_recording", true));
-
-            float size = 0.5f;
-            try {
-                size = Float.parseFloat(mPref.getString("passthrough_fraction", "0.5"));
-            } catch (RuntimeException e) {
-            }
+    private void startSensorThread() {
+        if (sensorThread == null) {
+            sensorThread = new HandlerThread("PassthroughSensor");
+            sensorThread.start();
+            sensorHandler = new Handler(sensorThread.getLooper());
+        }
+    }
 
-            setPassthroughSizeNative(size);
+    private void stopSensorThread() {
+        if (sensorThread != null) {
+            sensorHandler.post(this::stopTraceRecording);
+            sensorThread.quitSafely();
+            sensorThread = null;
+            sensorHandler = null;
         }
-        setPassthroughActiveNative(passthrough);
+    }
 
+    protected void setPassthroughMode(boolean passthrough) {
         if (passthrough) {
-            startPreview();
+            setPassthroughSizeNative(settings.fraction);
+            // passthrough is rendered once the camera streams, see onStreamingChanged
+            camera.setActive(true, cameraRequest());
         } else {
-            releaseCamera();
+            cameraVisible = false;
+            setPassthroughActiveNative(false);
+            camera.setActive(false, null);
         }
     }
 
-    protected void changePassthroughMode() {
-        boolean pt = !mPref.getBoolean("passthrough", false);
-        SharedPreferences.Editor edit = mPref.edit();
-        edit.putBoolean("passthrough", pt);
-        edit.apply();
-        setPassthroughMode(pt);
+    private CameraBackend.Request cameraRequest() {
+        int w = displayWidth / 2;
+        int h = displayHeight;
+        if (displayWidth < displayHeight) {
+            w = displayHeight / 2;
+            h = displayWidth;
+        }
+        return new CameraBackend.Request(w, h, settings.recordingHint);
     }
 
-    public void createTexture(int textureID) {
-        mTexture = new SurfaceTexture(textureID);
+    protected void changePassthroughMode() {
+        passthroughOn = !passthroughOn;
+        setPassthroughMode(passthroughOn);
     }
 
-    public void openCamera(int camNr, int desiredWidth, int desiredHeight, boolean recordingHint) {
-        if (mCamera != null) {
-            // TODO maybe print only a warning
-            throw new RuntimeException("Camera already initialized");
+    /** Keeps the camera closed while passthrough is off, even if pre-warming is enabled. */
+    public void setPrewarmAllowed(boolean allowed) {
+        if (prewarmAllowed == allowed) {
+            return;
         }
-        Camera.CameraInfo info = new Camera.CameraInfo();
-        // TODO add possibility to choose camera
-        if (camNr < 0) {
-            int numCameras = Camera.getNumberOfCameras();
-            for (int i = 0; i < numCameras; ++i) {
-                Camera.getCameraInfo(i, info);
-                if (info.facing == Camera.CameraInfo.CAMERA_FACING_BACK) {
-                    mCamera = Camera.open(i);
-                    break;
-                }
-            }
-            if (mCamera == null) {
-                // TODO log message "No back-facing camera found; opening default"
-                mCamera = Camera.open(); // open default
-            }
-        } else {
-            mCamera = Camera.open(camNr);
-        }
-        if (mCamera == null) {
-            throw new RuntimeException("Unable to open camera");
+        prewarmAllowed = allowed;
+        if (resumed && mTexture != null && settings.prewarm) {
+            camera.setWarm(allowed, cameraRequest());
         }
-        // TODO the size stuff
-        Camera.Parameters params = mCamera.getParameters();
-        List<Camera.Size> choices = params.getSupportedPreviewSizes();
-        mPreviewSize = chooseOptimalSize(choices, desiredWidth, desiredHeight);
-        Log.d(TAG, "PreviewSize: " + mPreviewSize.width + "x" + mPreviewSize.height);
-        params.setPreviewSize(mPreviewSize.width, mPreviewSize.height);
-        params.setRecordingHint(recordingHint); // Can increase fps in passthrough mode
-        mCamera.setParameters(params);
     }
 
-    private Camera.Size chooseOptimalSize(List<Camera.Size> choices, int width, int height) {
-        Integer minSize = Integer.max(Integer.min(width, height), 320);
+    /** @return true if passthrough was switched on, the camera may still be starting */
+    public boolean isPassthroughOn() {
+        return passthroughOn;
+    }
 
-        // Collect the supported resolutions that are at least as big as the preview Surface
-        ArrayList<Camera.Size> bigEnough = new ArrayList<>();
-        for (Camera.Size option : choices) {
-            if (option.width == width && option.height == height) {
-                return option;
-            }
-            if (option.height >= minSize && option.width >= minSize) {
-                bigEnough.add(option);
-            }
+    public void createTexture(int textureID) {
+        mTexture = new SurfaceTexture(textureID);
+        pendingFrames.set(0);
+        mTexture.setOnFrameAvailableListener(
+                texture -> {
+                    // pre-warmed frames are not shown, the first latch would count them dropped
+                    if (cameraVisible) {
+                        pendingFrames.incrementAndGet();
+                    }
+                });
+        cameraBackend.setTexture(mTexture);
+        // the texture is recreated on every resume, so pre-warming starts here
+        if (settings.prewarm && prewarmAllowed) {
+            camera.setWarm(true, cameraRequest());
         }
+    }
 
-        Comparator<Camera.Size> comp = (a, b) -> (a.width * a.height) - (b.width * b.width);
-        // Pick the smallest of those, assuming we found any
-        if (bigEnough.size() > 0) {
-            return Collections.min(bigEnough, comp);
-        } else {
-            return choices.get(0);
+    /** @return ms from the last passthrough activation to its first camera frame, -1 if unknown */
+    public long getTimeToFirstFrameMs() {
+        long ns = camera.getTimeToFirstFrameNs();
+        return ns < 0 ? -1 : ns / 1000000;
+    }
+
+    @Override
+    public void onStreamingChanged(boolean streaming) {
+        // the camera reports from its own thread, the native state is only changed on the main
+        // thread; a toggle may have happened in between, so the current state is applied
+        mainHandler.post(this::applyCameraState);
+    }
+
+    private void applyCameraState() {
+        boolean visible = camera.getState() == PassthroughCamera.State.STREAMING;
+        if (visible && !cameraVisible) {
+            // a frame counted before passthrough was last hidden was never latched
+            pendingFrames.set(0);
         }
+        cameraVisible = visible;
+        setPassthroughActiveNative(cameraVisible);
     }
 
+    @Override
+    public void onFirstFrame(long timeToFirstFrameNs) {
+        Log.i(TAG, "Passthrough time to first frame: " + timeToFirstFrameNs / 1000000 + "ms");
+    }
+
+    @Override
+    public void onCameraError(String message) {
+        Log.e(TAG, "Passthrough camera failed: " + message);
+        mainHandler.post(
+                () -> {
+                    passthroughOn = false;
+                    cameraVisible = false;
+                    setPassthroughActiveNative(false);
+                });
+    }
+
+    /** Releases the camera for good, the Passthrough cannot be used afterwards. */
     public void releaseCamera() {
-        if (mCamera != null) {
-            mCamera.setPreviewCallback(null);
-            mCamera.stopPreview();
-            mCamera.release();
-            mCamera = null;
+        mPref.unregisterOnSharedPreferenceChangeListener(this);
+        camera.setWarm(false, null);
+        camera.setActive(false, null);
+        cameraBackend.quit();
+    }
+
+    public void onPause() {
+        resumed = false;
+        stopTapDetection();
+        cameraVisible = false;
+        setPassthroughActiveNative(false);
+        camera.setWarm(false, null);
+        camera.setActive(false, null);
+    }
+
+    private void startTraceRecording() {
+        if (traceWriter != null || traceDir == null) {
+            return;
+        }
+        if (!traceDir.isDirectory() && !traceDir.mkdirs()) {
+            Log.e(TAG, "Cannot create sensor trace directory " + traceDir);
+            return;
+        }
+        File file = new File(traceDir, "accel-" + System.currentTimeMillis() + ".pvra");
+        try {
+            traceWriter = new SensorTrace.Writer(new FileOutputStream(file));
+            Log.i(TAG, "Recording accelerometer trace to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot open sensor trace " + file, e);
         }
     }
 
-    public void startPreview() {
-        if (mCamera != null) {
-            // Log.d(TAG, "starting camera preview")
+    private void stopTraceRecording() {
+        if (traceWriter != null) {
             try {
-                mCamera.setPreviewTexture(mTexture);
+                traceWriter.close();
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                Log.e(TAG, "Closing sensor trace failed", e);
             }
-            mCamera.startPreview();
+            traceWriter = null;
         }
     }
 
-    public void onPause() {
-        mSensorManager.unregisterListener(this);
-        setPassthroughActiveNative(false);
-        releaseCamera();
-    }
-
+    /** Latches the newest camera frame, if there is one and passthrough is shown. GL thread. */
     public void update() {
-        if (mTexture != null) {
-            mTexture.updateTexImage();
+        if (mTexture == null || !cameraVisible) {
+            return;
         }
+        int pending = pendingFrames.getAndSet(0);
+        if (pending == 0) {
+            return;
+        }
+        mTexture.updateTexImage();
+        long timestampNs = mTexture.getTimestamp();
+        if (timestampNs == latchedTimestampNs) {
+            // the frame was already latched with the previous count
+            return;
+        }
+        latchedTimestampNs = timestampNs;
+        // updateTexImage skips to the newest frame, the others were never shown
+        cameraFrameLatchedNative(timestampNs, pending - 1, cameraBackend.hasRealtimeTimestamps());
     }
 
     private native void setPassthroughSizeNative(float size);
 
     private native void setPassthroughActiveNative(boolean activate);
+
+    private native void cameraFrameLatchedNative(
+            long timestampNs, int droppedFrames, boolean realtimeClock);
 }
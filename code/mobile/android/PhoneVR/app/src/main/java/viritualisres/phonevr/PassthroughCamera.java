@@ -0,0 +1,194 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+/**
+ * State machine between the passthrough toggle and a {@link CameraBackend}.
+ *
+ * <p>{@link #setActive} only records what the user wants and starts the next backend step, it never
+ * waits for the camera. Toggles that arrive while the backend is opening or closing are applied
+ * once that step is done, so any sequence of toggles ends in the last requested state.
+ *
+ * <p>With {@link #setWarm} the camera is kept open with the preview paused while passthrough is
+ * off, switching passthrough on then only starts the preview.
+ */
+public class PassthroughCamera implements CameraBackend.Callback {
+
+    public enum State {
+        CLOSED,
+        OPENING,
+        // open, preview paused
+        OPEN,
+        STREAMING,
+        CLOSING
+    }
+
+    /**
+     * Called on the thread of the toggle or of the backend, without holding the lock of the
+     * PassthroughCamera.
+     */
+    public interface Listener {
+        void onStreamingChanged(boolean streaming);
+
+        /** @param timeToFirstFrameNs from switching passthrough on to the first camera frame */
+        void onFirstFrame(long timeToFirstFrameNs);
+
+        void onCameraError(String message);
+    }
+
+    private final CameraBackend backend;
+
+    private final Listener listener;
+
+    private State state = State.CLOSED;
+
+    private boolean active = false;
+
+    private boolean warm = false;
+
+    private CameraBackend.Request request = null;
+
+    // System.nanoTime() of the last activation, 0 once its first frame is reported
+    private long activatedAtNs = 0;
+
+    private long timeToFirstFrameNs = -1;
+
+    public PassthroughCamera(CameraBackend backend, Listener listener) {
+        this.backend = backend;
+        this.listener = listener;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /** @return time from the last activation to its first camera frame, -1 if unknown */
+    public synchronized long getTimeToFirstFrameNs() {
+        return timeToFirstFrameNs;
+    }
+
+    /** @param request used by the next open, ignored when deactivating */
+    public void setActive(boolean active, CameraBackend.Request request) {
+        synchronized (this) {
+            if (active && !this.active) {
+                activatedAtNs = System.nanoTime();
+            }
+            this.active = active;
+            if (active) {
+                this.request = request;
+            }
+        }
+        update();
+    }
+
+    /**
+     * Keeps the camera open while passthrough is off.
+     *
+     * @param request used by the next open, ignored when cooling down
+     */
+    public void setWarm(boolean warm, CameraBackend.Request request) {
+        synchronized (this) {
+            this.warm = warm;
+            if (warm && !active) {
+                this.request = request;
+            }
+        }
+        update();
+    }
+
+    /**
+     * Replaces the request of the next open and hands it to an open camera, which applies it
+     * without being closed.
+     */
+    public synchronized void setRequest(CameraBackend.Request request) {
+        this.request = request;
+        if (state == State.OPENING || state == State.OPEN || state == State.STREAMING) {
+            backend.setRequest(request);
+        }
+    }
+
+    /**
+     * Starts the backend step that leads towards the wanted state, if none is running. Backend
+     * calls only post work to the camera thread, so they are issued under the lock to keep their
+     * order.
+     */
+    private void update() {
+        Boolean streaming = null;
+        synchronized (this) {
+            if (state == State.CLOSED && (active || warm)) {
+                state = State.OPENING;
+                backend.open(request, this);
+            } else if (state == State.OPEN && active) {
+                state = State.STREAMING;
+                streaming = true;
+            } else if (state == State.OPEN && !warm) {
+                state = State.CLOSING;
+                backend.close();
+            } else if (state == State.STREAMING && !active) {
+                streaming = false;
+                state = warm ? State.OPEN : State.CLOSING;
+            }
+            // OPENING and CLOSING pick up the new wish in their callbacks
+            if (streaming != null) {
+                backend.setStreaming(streaming);
+                if (state == State.CLOSING) {
+                    backend.close();
+                }
+            }
+        }
+        if (streaming != null) {
+            listener.onStreamingChanged(streaming);
+        }
+    }
+
+    @Override
+    public void onOpened() {
+        synchronized (this) {
+            if (state != State.OPENING) {
+                return;
+            }
+            state = State.OPEN;
+        }
+        update();
+    }
+
+    @Override
+    public void onFirstFrame() {
+        long elapsed;
+        synchronized (this) {
+            if (state != State.STREAMING || activatedAtNs == 0) {
+                return;
+            }
+            elapsed = System.nanoTime() - activatedAtNs;
+            timeToFirstFrameNs = elapsed;
+            activatedAtNs = 0;
+        }
+        listener.onFirstFrame(elapsed);
+    }
+
+    @Override
+    public void onClosed() {
+        synchronized (this) {
+            if (state != State.CLOSING) {
+                return;
+            }
+            state = State.CLOSED;
+        }
+        update();
+    }
+
+    @Override
+    public void onError(String message) {
+        boolean wasStreaming;
+        synchronized (this) {
+            wasStreaming = state == State.STREAMING;
+            state = State.CLOSED;
+            // do not retry, the user has to toggle again
+            active = false;
+            warm = false;
+        }
+        if (wasStreaming) {
+            listener.onStreamingChanged(false);
+        }
+        listener.onCameraError(message);
+    }
+}
@@ -0,0 +1,234 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, validated snapshot of the passthrough preferences (see passthrough_settings.xml).
+ *
+ * <p>The numbers are stored as strings by the EditTextPreferences. Values that do not parse or are
+ * out of range fall back to their defaults and are listed in {@link #invalidKeys}, so the rest of
+ * the passthrough never has to handle bad input.
+ */
+public final class PassthroughSettings {
+
+    public static final String FRACTION = "passthrough_fraction";
+
+    public static final String RECORDING_HINT = "passthrough_recording";
+
+    public static final String PREWARM = "passthrough_prewarm";
+
+    public static final String TAP = "passthrough_tap";
+
+    public static final String DETECTOR = "passthrough_detector";
+
+    public static final String DELAY = "passthrough_delay";
+
+    public static final String LOWER = "passthrough_lower";
+
+    public static final String UPPER = "passthrough_upper";
+
+    public static final String RECORD_TRACE = "passthrough_record_trace";
+
+    static final float DEFAULT_FRACTION = 0.5f;
+
+    static final long DEFAULT_DELAY_MS = 600;
+
+    static final float DEFAULT_LOWER = 0.8f;
+
+    static final float DEFAULT_UPPER = 4f;
+
+    // a double tap has to fit into the delay, below this no window can be filled
+    static final long MIN_DELAY_MS = 100;
+
+    static final long MAX_DELAY_MS = 5000;
+
+    public static final PassthroughSettings DEFAULTS =
+            fromValues(Collections.<String, Object>emptyMap());
+
+    /** Half size of the passthrough plane in normalized device coordinates, in (0, 1]. */
+    public final float fraction;
+
+    public final boolean recordingHint;
+
+    public final boolean prewarm;
+
+    public final boolean tap;
+
+    /** One of the {@link TapDetector} types. */
+    public final String detector;
+
+    public final long delayMs;
+
+    public final float lowerBound;
+
+    public final float upperBound;
+
+    public final boolean recordTrace;
+
+    /** Keys whose value was rejected, in preference order. */
+    public final List<String> invalidKeys;
+
+    private PassthroughSettings(
+            float fraction,
+            boolean recordingHint,
+            boolean prewarm,
+            boolean tap,
+            String detector,
+            long delayMs,
+            float lowerBound,
+            float upperBound,
+            boolean recordTrace,
+            List<String> invalidKeys) {
+        this.fraction = fraction;
+        this.recordingHint = recordingHint;
+        this.prewarm = prewarm;
+        this.tap = tap;
+        this.detector = detector;
+        this.delayMs = delayMs;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.recordTrace = recordTrace;
+        this.invalidKeys = Collections.unmodifiableList(invalidKeys);
+    }
+
+    /** @return true if the key belongs to these settings */
+    public static boolean isSettingKey(String key) {
+        switch (key) {
+            case FRACTION:
+            case RECORDING_HINT:
+            case PREWARM:
+            case TAP:
+            case DETECTOR:
+            case DELAY:
+            case LOWER:
+            case UPPER:
+            case RECORD_TRACE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** @param values as returned by SharedPreferences.getAll() */
+    public static PassthroughSettings fromValues(Map<String, ?> values) {
+        List<String> invalid = new ArrayList<>();
+
+        float fraction = parseFloat(values, FRACTION, DEFAULT_FRACTION, invalid);
+        if (!(fraction > 0f && fraction <= 1f)) {
+            invalid.add(FRACTION);
+            fraction = DEFAULT_FRACTION;
+        }
+
+        String detector = TapDetector.WINDOW;
+        Object type = values.get(DETECTOR);
+        if (TapDetector.WINDOW.equals(type) || TapDetector.HIGH_PASS.equals(type)) {
+            detector = (String) type;
+        } else if (type != null) {
+            invalid.add(DETECTOR);
+        }
+
+        long delayMs = DEFAULT_DELAY_MS;
+        Object delay = values.get(DELAY);
+        if (delay != null) {
+            try {
+                delayMs = Long.parseLong(delay.toString().trim());
+            } catch (NumberFormatException e) {
+                delayMs = -1;
+            }
+            if (delayMs < MIN_DELAY_MS || delayMs > MAX_DELAY_MS) {
+                invalid.add(DELAY);
+                delayMs = DEFAULT_DELAY_MS;
+            }
+        }
+
+        float lower = parseFloat(values, LOWER, DEFAULT_LOWER, invalid);
+        float upper = parseFloat(values, UPPER, DEFAULT_UPPER, invalid);
+        if (!(lower > 0f)) {
+            invalid.add(LOWER);
+            lower = DEFAULT_LOWER;
+        }
+        if (!(upper > lower) || Float.isInfinite(upper)) {
+            // both bounds only make sense together
+            invalid.add(UPPER);
+            lower = DEFAULT_LOWER;
+            upper = DEFAULT_UPPER;
+        }
+
+        return new PassthroughSettings(
+                fraction,
+                parseBoolean(values, RECORDING_HINT, true, invalid),
+                parseBoolean(values, PREWARM, false, invalid),
+                parseBoolean(values, TAP, true, invalid),
+                detector,
+                delayMs,
+                lower,
+                upper,
+                parseBoolean(values, RECORD_TRACE, false, invalid),
+                invalid);
+    }
+
+    /** @return true if the tap detector has to be recreated or reconfigured for other */
+    public boolean detectorDiffers(PassthroughSettings other) {
+        return !detector.equals(other.detector)
+                || delayMs != other.delayMs
+                || lowerBound != other.lowerBound
+                || upperBound != other.upperBound;
+    }
+
+    private static float parseFloat(
+            Map<String, ?> values, String key, float defaultValue, List<String> invalid) {
+        Object value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            float parsed = Float.parseFloat(value.toString().trim());
+            if (!Float.isNaN(parsed)) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        invalid.add(key);
+        return defaultValue;
+    }
+
+    private static boolean parseBoolean(
+            Map<String, ?> values, String key, boolean defaultValue, List<String> invalid) {
+        Object value = values.get(key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value != null) {
+            invalid.add(key);
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return "PassthroughSettings{fraction="
+                + fraction
+                + ", recordingHint="
+                + recordingHint
+                + ", prewarm="
+                + prewarm
+                + ", tap="
+                + tap
+                + ", detector="
+                + detector
+                + ", delayMs="
+                + delayMs
+                + ", lower="
+                + lowerBound
+                + ", upper="
+                + upperBound
+                + ", recordTrace="
+                + recordTrace
+                + "}";
+    }
+}
@@ -0,0 +1,217 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Coalesces the thermal status, the thermal headroom and the battery state into one performance
+ * {@link Level}.
+ *
+ * <p>A worse level is taken as soon as any signal asks for it. Going back up needs every signal to
+ * be below its threshold minus a margin for {@link #COOL_DOWN_MS}, one level at a time, so a device
+ * hovering around a threshold does not flip between levels.
+ *
+ * <p>Pure Java and driven by the timestamps of the events, the Android side is {@link
+ * ThermalMonitor}. All methods are called on one thread, the listener is called inline.
+ */
+public class PerformanceGovernor {
+
+    // PowerManager.THERMAL_STATUS_* values
+    public static final int THERMAL_STATUS_NONE = 0;
+
+    public static final int THERMAL_STATUS_LIGHT = 1;
+
+    public static final int THERMAL_STATUS_MODERATE = 2;
+
+    public static final int THERMAL_STATUS_SEVERE = 3;
+
+    // forecast headroom (1 means throttling) from which a level is taken
+    static final float HEADROOM_REDUCED = 0.85f;
+
+    static final float HEADROOM_MINIMUM = 1.0f;
+
+    static final float HEADROOM_HYSTERESIS = 0.1f;
+
+    // battery fraction below which a level is taken, only while unplugged
+    static final float BATTERY_REDUCED = 0.15f;
+
+    static final float BATTERY_MINIMUM = 0.05f;
+
+    static final float BATTERY_HYSTERESIS = 0.05f;
+
+    static final long COOL_DOWN_MS = 30000;
+
+    // transitions kept for getTransitions
+    private static final int MAX_TRANSITIONS = 64;
+
+    public enum Level {
+        NORMAL(0f, 1f, true),
+        REDUCED(60f, 0.75f, false),
+        MINIMUM(45f, 0.5f, false);
+
+        /** Highest refresh rate offered to the server, 0 for the display refresh rate. */
+        public final float maxRefreshRate;
+
+        /** Scale of the view resolution offered to the server. */
+        public final float resolutionScale;
+
+        public final boolean prewarmAllowed;
+
+        Level(float maxRefreshRate, float resolutionScale, boolean prewarmAllowed) {
+            this.maxRefreshRate = maxRefreshRate;
+            this.resolutionScale = resolutionScale;
+            this.prewarmAllowed = prewarmAllowed;
+        }
+    }
+
+    public static class Transition {
+        /** Timestamp of the event that caused the transition. */
+        public final long timeMs;
+
+        public final Level from;
+
+        public final Level to;
+
+        /** The inputs at the time of the transition. */
+        public final String reason;
+
+        Transition(long timeMs, Level from, Level to, String reason) {
+            this.timeMs = timeMs;
+            this.from = from;
+            this.to = to;
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d: %s -> %s (%s)", timeMs, from, to, reason);
+        }
+    }
+
+    public interface Listener {
+        void onLevelChanged(Transition transition);
+    }
+
+    private final Listener listener;
+
+    private Level level = Level.NORMAL;
+
+    private int thermalStatus = THERMAL_STATUS_NONE;
+
+    // NaN while unknown
+    private float headroom = Float.NaN;
+
+    private float battery = 1f;
+
+    private boolean plugged = true;
+
+    // since when a better level is possible, -1 if it is not
+    private long coolingSinceMs = -1;
+
+    private final List<Transition> transitions = new ArrayList<>();
+
+    public PerformanceGovernor(Listener listener) {
+        this.listener = listener;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /** @return the latest transitions, oldest first */
+    public List<Transition> getTransitions() {
+        return Collections.unmodifiableList(transitions);
+    }
+
+    /** @param status one of the PowerManager.THERMAL_STATUS_* values */
+    public void onThermalStatus(long nowMs, int status) {
+        thermalStatus = status;
+        evaluate(nowMs);
+    }
+
+    /** @param forecastHeadroom from PowerManager.getThermalHeadroom, NaN if unsupported */
+    public void onThermalHeadroom(long nowMs, float forecastHeadroom) {
+        headroom = forecastHeadroom;
+        evaluate(nowMs);
+    }
+
+    /** @param level battery charge in [0, 1] */
+    public void onBattery(long nowMs, float level, boolean plugged) {
+        battery = level;
+        this.plugged = plugged;
+        evaluate(nowMs);
+    }
+
+    /** Re-evaluates without new inputs, lets the level recover when no events arrive. */
+    public void tick(long nowMs) {
+        evaluate(nowMs);
+    }
+
+    private void evaluate(long nowMs) {
+        Level wanted = target(0f);
+        if (wanted.ordinal() > level.ordinal()) {
+            change(nowMs, wanted);
+            coolingSinceMs = -1;
+            return;
+        }
+        // with the margins a signal right at its threshold keeps the current level
+        Level relaxed = target(1f);
+        if (relaxed.ordinal() >= level.ordinal()) {
+            coolingSinceMs = -1;
+        } else if (coolingSinceMs < 0) {
+            coolingSinceMs = nowMs;
+        } else if (nowMs - coolingSinceMs >= COOL_DOWN_MS) {
+            change(nowMs, Level.values()[level.ordinal() - 1]);
+            // the next step needs another cool down
+            coolingSinceMs = nowMs;
+        }
+    }
+
+    /** @param margin 0 for the thresholds, 1 to shift them by their hysteresis */
+    private Level target(float margin) {
+        Level wanted = Level.NORMAL;
+        if (thermalStatus >= THERMAL_STATUS_SEVERE) {
+            return Level.MINIMUM;
+        } else if (thermalStatus >= THERMAL_STATUS_MODERATE) {
+            wanted = Level.REDUCED;
+        }
+
+        if (!Float.isNaN(headroom)) {
+            if (headroom >= HEADROOM_MINIMUM - margin * HEADROOM_HYSTERESIS) {
+                return Level.MINIMUM;
+            } else if (headroom >= HEADROOM_REDUCED - margin * HEADROOM_HYSTERESIS) {
+                wanted = Level.REDUCED;
+            }
+        }
+
+        if (!plugged) {
+            if (battery <= BATTERY_MINIMUM + margin * BATTERY_HYSTERESIS) {
+                return Level.MINIMUM;
+            } else if (battery <= BATTERY_REDUCED + margin * BATTERY_HYSTERESIS) {
+                wanted = Level.REDUCED;
+            }
+        }
+        return wanted;
+    }
+
+    private void change(long nowMs, Level to) {
+        String reason =
+                String.format(
+                        Locale.ROOT,
+                        "thermal status %d, headroom %.2f, battery %.0f%%%s",
+                        thermalStatus,
+                        headroom,
+                        battery * 100,
+                        plugged ? " plugged" : "");
+        Transition transition = new Transition(nowMs, level, to, reason);
+        level = to;
+        if (transitions.size() == MAX_TRANSITIONS) {
+            transitions.remove(0);
+        }
+        transitions.add(transition);
+        listener.onLevelChanged(transition);
+    }
+}
@@ -0,0 +1,155 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Recorded accelerometer stream, used to replay the passthrough tap detection off-device.
+ *
+ * <p>File format (big endian): the magic {@code PVRA}, a version byte, then one 20 byte record per
+ * event: timestamp in ns (long) and the x, y, z values (float). A record cut off at the end of the
+ * file is ignored.
+ */
+public class SensorTrace {
+
+    private static final byte[] MAGIC = {'P', 'V', 'R', 'A'};
+
+    private static final int VERSION = 1;
+
+    static final int RECORD_SIZE = 8 + 3 * 4;
+
+    public final long[] timestampsNs;
+
+    public final float[] x;
+
+    public final float[] y;
+
+    public final float[] z;
+
+    public SensorTrace(long[] timestampsNs, float[] x, float[] y, float[] z) {
+        if (x.length != timestampsNs.length
+                || y.length != timestampsNs.length
+                || z.length != timestampsNs.length) {
+            throw new IllegalArgumentException("Axis arrays differ in length");
+        }
+        this.timestampsNs = timestampsNs;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public int size() {
+        return timestampsNs.length;
+    }
+
+    public static SensorTrace read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in, (int) ((file.length() - MAGIC.length - 1) / RECORD_SIZE));
+        }
+    }
+
+    public static SensorTrace read(InputStream input) throws IOException {
+        return read(input, 1024);
+    }
+
+    private static SensorTrace read(InputStream input, int expectedSize) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < MAGIC.length; ++i) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a sensor trace");
+            }
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported sensor trace version " + version);
+        }
+
+        int capacity = Math.max(expectedSize, 16);
+        long[] t = new long[capacity];
+        float[] x = new float[capacity];
+        float[] y = new float[capacity];
+        float[] z = new float[capacity];
+        int size = 0;
+        while (true) {
+            long timestamp;
+            float vx;
+            float vy;
+            float vz;
+            try {
+                timestamp = in.readLong();
+                vx = in.readFloat();
+                vy = in.readFloat();
+                vz = in.readFloat();
+            } catch (EOFException e) {
+                // the end, or a record cut off when the app was killed while recording
+                break;
+            }
+            if (size == capacity) {
+                capacity *= 2;
+                t = Arrays.copyOf(t, capacity);
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                z = Arrays.copyOf(z, capacity);
+            }
+            t[size] = timestamp;
+            x[size] = vx;
+            y[size] = vy;
+            z[size] = vz;
+            ++size;
+        }
+        return new SensorTrace(
+                Arrays.copyOf(t, size),
+                Arrays.copyOf(x, size),
+                Arrays.copyOf(y, size),
+                Arrays.copyOf(z, size));
+    }
+
+    public void write(OutputStream output) throws IOException {
+        Writer writer = new Writer(output);
+        for (int i = 0; i < size(); ++i) {
+            writer.append(timestampsNs[i], x[i], y[i], z[i]);
+        }
+        writer.flush();
+    }
+
+    /** Streams events to a trace file while they arrive. */
+    public static class Writer implements Closeable {
+
+        private final DataOutputStream out;
+
+        public Writer(OutputStream output) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(output));
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+        }
+
+        public void append(long timestampNs, float x, float y, float z) throws IOException {
+            out.writeLong(timestampNs);
+            out.writeFloat(x);
+            out.writeFloat(y);
+            out.writeFloat(z);
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Feeds recorded {@link SensorTrace}s through the passthrough tap detector on the JVM.
+ *
+ * <p>Usage: {@code SensorTraceReplay [--detector window|high_pass] [--delay ms] [--lower x]
+ * [--upper x] trace...}. Prints the timestamps at which passthrough would have been toggled, so
+ * detector changes can be compared by outcome.
+ */
+public final class SensorTraceReplay {
+
+    private SensorTraceReplay() {}
+
+    /** @return the timestamps of all samples that toggled passthrough */
+    public static long[] replay(SensorTrace trace, TapDetector detector) {
+        long[] toggles = new long[8];
+        int count = 0;
+        for (int i = 0; i < trace.size(); ++i) {
+            if (detector.onSample(trace.timestampsNs[i], trace.x[i], trace.y[i], trace.z[i])) {
+                if (count == toggles.length) {
+                    toggles = Arrays.copyOf(toggles, count * 2);
+                }
+                toggles[count++] = trace.timestampsNs[i];
+            }
+        }
+        return Arrays.copyOf(toggles, count);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String type = TapDetector.WINDOW;
+        long delayMs = 600;
+        float lower = 0.8f;
+        float upper = 4f;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i += 2) {
+            switch (args[i]) {
+                case "--detector":
+                    type = args[i + 1];
+                    break;
+                case "--delay":
+                    delayMs = Long.parseLong(args[i + 1]);
+                    break;
+                case "--lower":
+                    lower = Float.parseFloat(args[i + 1]);
+                    break;
+                case "--upper":
+                    upper = Float.parseFloat(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (i == args.length) {
+            System.err.println(
+                    "usage: SensorTraceReplay [--detector window|high_pass] [--delay ms]"
+                            + " [--lower x] [--upper x] trace...");
+            System.exit(1);
+        }
+
+        for (; i < args.length; ++i) {
+            SensorTrace trace = SensorTrace.read(new File(args[i]));
+            TapDetector detector = TapDetector.create(type);
+            detector.setParameters(delayMs, lower, upper);
+            long[] toggles = replay(trace, detector);
+            long start = trace.size() > 0 ? trace.timestampsNs[0] : 0;
+            System.out.printf(
+                    Locale.ROOT,
+                    "%s: %d events, %d toggles%n",
+                    args[i],
+                    trace.size(),
+                    toggles.length);
+            for (long toggle : toggles) {
+                System.out.printf(Locale.ROOT, "  toggle at %.3f s%n", (toggle - start) / 1e9);
+            }
+        }
+    }
+}
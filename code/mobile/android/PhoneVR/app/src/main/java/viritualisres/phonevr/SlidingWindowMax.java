@@ -0,0 +1,84 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+/**
+ * Monotonic deque giving the maximum of a sliding window in amortized O(1).
+ *
+ * <p>Elements are identified by a strictly increasing index. Equal values are kept, so {@link
+ * #maxIndex()} is the index of the first occurrence of the maximum inside the window.
+ */
+class SlidingWindowMax {
+
+    private long[] indices;
+
+    private float[] values;
+
+    private int head = 0;
+
+    private int size = 0;
+
+    SlidingWindowMax(int initialCapacity) {
+        indices = new long[Math.max(initialCapacity, 1)];
+        values = new float[indices.length];
+    }
+
+    /** Empties the deque and makes sure a window of {@code capacity} elements fits. */
+    void reset(int capacity) {
+        if (capacity > indices.length) {
+            indices = new long[capacity];
+            values = new float[capacity];
+        }
+        head = 0;
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void push(long index, float value) {
+        while (size > 0 && values[slot(size - 1)] < value) {
+            --size;
+        }
+        if (size == indices.length) {
+            // only reachable if the window is larger than announced in reset()
+            grow();
+        }
+        int s = slot(size);
+        indices[s] = index;
+        values[s] = value;
+        ++size;
+    }
+
+    /** Drops all elements with an index below {@code firstIndex}. */
+    void evictBefore(long firstIndex) {
+        while (size > 0 && indices[head] < firstIndex) {
+            head = (head + 1) % indices.length;
+            --size;
+        }
+    }
+
+    float maxValue() {
+        return values[head];
+    }
+
+    long maxIndex() {
+        return indices[head];
+    }
+
+    private int slot(int i) {
+        return (head + i) % indices.length;
+    }
+
+    private void grow() {
+        long[] newIndices = new long[indices.length * 2];
+        float[] newValues = new float[indices.length * 2];
+        for (int i = 0; i < size; ++i) {
+            newIndices[i] = indices[slot(i)];
+            newValues[i] = values[slot(i)];
+        }
+        indices = newIndices;
+        values = newValues;
+        head = 0;
+    }
+}
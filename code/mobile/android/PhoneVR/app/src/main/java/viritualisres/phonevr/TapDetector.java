@@ -0,0 +1,38 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+/** Detects the double tap that toggles passthrough from a stream of accelerometer samples. */
+public interface TapDetector {
+
+    /** Value of the passthrough_detector preference for {@link DoubleTapDetector}. */
+    String WINDOW = "window";
+
+    /** Value of the passthrough_detector preference for {@link HighPassTapDetector}. */
+    String HIGH_PASS = "high_pass";
+
+    /**
+     * @param delayMs passthrough_delay, the time span a double tap has to fit in
+     * @param lowerBound passthrough_lower, minimum strength of a tap
+     * @param upperBound passthrough_upper, maximum strength of a tap, stronger motion is ignored
+     */
+    void setParameters(long delayMs, float lowerBound, float upperBound);
+
+    /** Forgets all samples, the next sample starts from scratch. */
+    void reset();
+
+    /**
+     * Feeds one accelerometer sample.
+     *
+     * @param timestampNs sensor timestamp in nanoseconds
+     * @return true if passthrough should be toggled
+     */
+    boolean onSample(long timestampNs, float x, float y, float z);
+
+    /** Creates the detector for a passthrough_detector preference value. */
+    static TapDetector create(String type) {
+        if (HIGH_PASS.equals(type)) {
+            return new HighPassTapDetector();
+        }
+        return new DoubleTapDetector();
+    }
+}
@@ -0,0 +1,309 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Scores {@link TapDetector}s against a corpus of labelled {@link SensorTrace}s.
+ *
+ * <p>Every trace {@code name.pvra} comes with {@code name.labels}, a text file with the sensor
+ * timestamp (ns) of the second tap of each intended double tap, one per line, {@code #} starts a
+ * comment. A toggle up to {@link #EARLY_TOLERANCE_NS} before and maxLatency after a label detects
+ * it, any other toggle is a false positive.
+ *
+ * <p>Usage: {@code TapDetectorEvaluation [--detector name]... [--delay ms] [--lower x] [--upper x]
+ * [--max-latency ms] dir|trace...}. Without --detector all detectors are compared.
+ */
+public final class TapDetectorEvaluation {
+
+    static final String TRACE_SUFFIX = ".pvra";
+
+    static final String LABEL_SUFFIX = ".labels";
+
+    // labels are set by hand, allow a toggle slightly before the labelled tap
+    static final long EARLY_TOLERANCE_NS = 100 * 1000000L;
+
+    // replays used to measure the cost per sample, the fastest one is reported; this is a rough
+    // figure, TapDetectorBenchmark in the benchmark module gives the exact cost
+    private static final int TIMING_RUNS = 5;
+
+    private TapDetectorEvaluation() {}
+
+    /** A trace and the timestamps of its labelled double taps. */
+    public static class LabelledTrace {
+        public final String name;
+
+        public final SensorTrace trace;
+
+        public final long[] labelsNs;
+
+        public LabelledTrace(String name, SensorTrace trace, long[] labelsNs) {
+            this.name = name;
+            this.trace = trace;
+            this.labelsNs = labelsNs.clone();
+            Arrays.sort(this.labelsNs);
+        }
+    }
+
+    /** Outcome of one detector over the corpus. */
+    public static class Result {
+        public final String detector;
+
+        public int labels;
+
+        public int detected;
+
+        public int falsePositives;
+
+        public long samples;
+
+        public long durationNs;
+
+        public double nsPerSample;
+
+        // detection latency of every detected label
+        private long[] latenciesNs = new long[16];
+
+        Result(String detector) {
+            this.detector = detector;
+        }
+
+        public int missed() {
+            return labels - detected;
+        }
+
+        public double falsePositivesPerHour() {
+            return durationNs > 0 ? falsePositives * 3600e9 / durationNs : 0;
+        }
+
+        /** @return the latency percentile in ms, 0 if nothing was detected */
+        public double latencyMs(double percentile) {
+            if (detected == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latenciesNs, detected);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * detected) - 1;
+            return sorted[Math.max(0, Math.min(detected - 1, index))] / 1e6;
+        }
+
+        public double meanLatencyMs() {
+            long sum = 0;
+            for (int i = 0; i < detected; ++i) {
+                sum += latenciesNs[i];
+            }
+            return detected > 0 ? sum / 1e6 / detected : 0;
+        }
+
+        void addLatency(long latencyNs) {
+            if (detected == latenciesNs.length) {
+                latenciesNs = Arrays.copyOf(latenciesNs, detected * 2);
+            }
+            latenciesNs[detected++] = latencyNs;
+        }
+    }
+
+    public static Result evaluate(
+            String type,
+            List<LabelledTrace> corpus,
+            long delayMs,
+            float lower,
+            float upper,
+            long maxLatencyNs) {
+        Result result = new Result(type);
+        TapDetector detector = TapDetector.create(type);
+        for (LabelledTrace labelled : corpus) {
+            SensorTrace trace = labelled.trace;
+            detector.setParameters(delayMs, lower, upper);
+            detector.reset();
+            long[] toggles = SensorTraceReplay.replay(trace, detector);
+            score(result, labelled.labelsNs, toggles, maxLatencyNs);
+            result.samples += trace.size();
+            if (trace.size() > 1) {
+                result.durationNs += trace.timestampsNs[trace.size() - 1] - trace.timestampsNs[0];
+            }
+        }
+        result.nsPerSample = measureCost(detector, corpus, result.samples);
+        return result;
+    }
+
+    /** Matches toggles to labels in time order, each label is detected at most once. */
+    private static void score(Result result, long[] labelsNs, long[] toggles, long maxLatencyNs) {
+        result.labels += labelsNs.length;
+        int label = 0;
+        for (long toggle : toggles) {
+            // labels that can no longer be matched are missed
+            while (label < labelsNs.length && toggle > labelsNs[label] + maxLatencyNs) {
+                ++label;
+            }
+            if (label < labelsNs.length && toggle >= labelsNs[label] - EARLY_TOLERANCE_NS) {
+                result.addLatency(Math.max(0, toggle - labelsNs[label]));
+                ++label;
+            } else {
+                ++result.falsePositives;
+            }
+        }
+    }
+
+    private static double measureCost(
+            TapDetector detector, List<LabelledTrace> corpus, long samples) {
+        if (samples == 0) {
+            return 0;
+        }
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < TIMING_RUNS; ++run) {
+            long start = System.nanoTime();
+            for (LabelledTrace labelled : corpus) {
+                detector.reset();
+                SensorTraceReplay.replay(labelled.trace, detector);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / samples;
+    }
+
+    public static long[] readLabels(File file) throws IOException {
+        long[] labels = new long[16];
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (count == labels.length) {
+                    labels = Arrays.copyOf(labels, count * 2);
+                }
+                try {
+                    labels[count++] = Long.parseLong(line);
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ": invalid label '" + line + "'", e);
+                }
+            }
+        }
+        return Arrays.copyOf(labels, count);
+    }
+
+    /** Loads the traces and their labels, directories are searched for *.pvra files. */
+    public static List<LabelledTrace> loadCorpus(List<File> paths) throws IOException {
+        List<LabelledTrace> corpus = new ArrayList<>();
+        for (File path : paths) {
+            File[] traces = {path};
+            if (path.isDirectory()) {
+                traces = path.listFiles((dir, name) -> name.endsWith(TRACE_SUFFIX));
+                if (traces == null) {
+                    throw new IOException("Cannot list " + path);
+                }
+                Arrays.sort(traces);
+            }
+            for (File traceFile : traces) {
+                String name = traceFile.getPath();
+                String base =
+                        name.endsWith(TRACE_SUFFIX)
+                                ? name.substring(0, name.length() - TRACE_SUFFIX.length())
+                                : name;
+                File labelFile = new File(base + LABEL_SUFFIX);
+                if (!labelFile.isFile()) {
+                    throw new IOException("Missing labels " + labelFile);
+                }
+                corpus.add(
+                        new LabelledTrace(
+                                traceFile.getName(),
+                                SensorTrace.read(traceFile),
+                                readLabels(labelFile)));
+            }
+        }
+        return corpus;
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> types = new ArrayList<>();
+        long delayMs = 600;
+        float lower = 0.8f;
+        float upper = 4f;
+        long maxLatencyMs = 1000;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i += 2) {
+            switch (args[i]) {
+                case "--detector":
+                    types.add(args[i + 1]);
+                    break;
+                case "--delay":
+                    delayMs = Long.parseLong(args[i + 1]);
+                    break;
+                case "--lower":
+                    lower = Float.parseFloat(args[i + 1]);
+                    break;
+                case "--upper":
+                    upper = Float.parseFloat(args[i + 1]);
+                    break;
+                case "--max-latency":
+                    maxLatencyMs = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (i == args.length) {
+            System.err.println(
+                    "usage: TapDetectorEvaluation [--detector name]... [--delay ms] [--lower x]"
+                            + " [--upper x] [--max-latency ms] dir|trace...");
+            System.exit(1);
+        }
+        if (types.isEmpty()) {
+            types.add(TapDetector.WINDOW);
+            types.add(TapDetector.HIGH_PASS);
+        }
+
+        List<File> paths = new ArrayList<>();
+        for (; i < args.length; ++i) {
+            paths.add(new File(args[i]));
+        }
+        List<LabelledTrace> corpus = loadCorpus(paths);
+        int labels = 0;
+        for (LabelledTrace labelled : corpus) {
+            labels += labelled.labelsNs.length;
+        }
+        System.out.printf(
+                Locale.ROOT, "%d traces, %d labelled double taps%n", corpus.size(), labels);
+        System.out.printf(
+                Locale.ROOT,
+                "%-10s %8s %8s %8s %8s %10s %10s %10s %10s%n",
+                "detector",
+                "detected",
+                "missed",
+                "fp",
+                "fp/h",
+                "lat mean",
+                "lat p50",
+                "lat p95",
+                "ns/sample");
+        for (String type : types) {
+            Result r = evaluate(type, corpus, delayMs, lower, upper, maxLatencyMs * 1000000L);
+            System.out.printf(
+                    Locale.ROOT,
+                    "%-10s %8d %8d %8d %8.1f %8.1fms %8.1fms %8.1fms %10.1f%n",
+                    type,
+                    r.detected,
+                    r.missed(),
+                    r.falsePositives,
+                    r.falsePositivesPerHour(),
+                    r.meanLatencyMs(),
+                    r.latencyMs(50),
+                    r.latencyMs(95),
+                    r.nsPerSample);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+/**
+ * Feeds the thermal status and the thermal headroom of the {@link PowerManager} into a {@link
+ * PerformanceGovernor}. Everything runs on the main thread.
+ *
+ * <p>The status is reported by a listener (API 29+). The headroom (API 30+) has to be polled, the
+ * poll also lets the governor recover on devices without it.
+ */
+public class ThermalMonitor {
+
+    // getThermalHeadroom returns NaN when called more than once per second
+    private static final long POLL_INTERVAL_MS = 10000;
+
+    // how far getThermalHeadroom looks ahead
+    private static final int HEADROOM_FORECAST_S = 10;
+
+    private final PowerManager powerManager;
+
+    private final PerformanceGovernor governor;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Runnable poll = this::poll;
+
+    private PowerManager.OnThermalStatusChangedListener statusListener = null;
+
+    public ThermalMonitor(PowerManager powerManager, PerformanceGovernor governor) {
+        this.powerManager = powerManager;
+        this.governor = governor;
+    }
+
+    public void start() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && statusListener == null) {
+            statusListener =
+                    status -> governor.onThermalStatus(SystemClock.elapsedRealtime(), status);
+            // reports the current status right away
+            powerManager.addThermalStatusListener(statusListener);
+        }
+        handler.removeCallbacks(poll);
+        handler.post(poll);
+    }
+
+    public void stop() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && statusListener != null) {
+            powerManager.removeThermalStatusListener(statusListener);
+            statusListener = null;
+        }
+        handler.removeCallbacks(poll);
+    }
+
+    private void poll() {
+        long now = SystemClock.elapsedRealtime();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            governor.onThermalHeadroom(now, powerManager.getThermalHeadroom(HEADROOM_FORECAST_S));
+        } else {
+            governor.tick(now);
+        }
+        handler.postDelayed(poll, POLL_INTERVAL_MS);
+    }
+}
@@ -0,0 +1,121 @@
+#include "PVRAccelerometer.h"
+#include "test_main.h"
+
+#include <vector>
+
+namespace {
+    // Hands out the samples queued by the test, like the sensor queue between two polls
+    class FakeAccelerationSource : public AccelerationSource {
+      public:
+        FakeAccelerationSource(bool available, int *stops) : available(available), stops(stops) {}
+
+        bool start() override { return available; }
+
+        int poll(AccelerationRing &ring) override {
+            for (auto &sample : pending)
+                ring.push(sample);
+            int n = (int) pending.size();
+            pending.clear();
+            return n;
+        }
+
+        void stop() override { (*stops)++; }
+
+        std::vector<AccSample> pending;
+
+      private:
+        bool available;
+        int *stops;
+    };
+
+    void ringKeepsTheLatestSamples() {
+        AccelerationRing ring;
+        AccSample sample;
+        CHECK(!ring.latest(&sample));
+
+        for (int i = 0; i < AccelerationRing::CAPACITY + 10; i++)
+            ring.push({i * 1000LL, {(float) i, 0, 0}});
+        CHECK(ring.size() == AccelerationRing::CAPACITY);
+        CHECK(ring.at(0).timestampNs == 10 * 1000LL);
+        CHECK(ring.latest(&sample));
+        CHECK(sample.timestampNs == (AccelerationRing::CAPACITY + 9) * 1000LL);
+
+        // oldest first
+        for (int i = 1; i < ring.size(); i++)
+            CHECK(ring.at(i).timestampNs > ring.at(i - 1).timestampNs);
+
+        ring.clear();
+        CHECK(ring.size() == 0);
+        CHECK(!ring.latest(&sample));
+    }
+
+    void feedReportsTheLatestSample() {
+        int stops = 0;
+        auto *fake = new FakeAccelerationSource(true, &stops);
+        {
+            AccelerationFeed feed((std::unique_ptr<AccelerationSource>(fake)));
+            CHECK(feed.isRunning());
+
+            float acc[3] = {9, 9, 9};
+            CHECK(!feed.latest(acc));
+            CHECK(acc[0] == 0 && acc[1] == 0 && acc[2] == 0);
+
+            fake->pending = {{1000, {1, 2, 3}}, {2000, {4, 5, 6}}};
+            CHECK(feed.update() == 2);
+            CHECK(feed.latest(acc));
+            CHECK(acc[0] == 4 && acc[1] == 5 && acc[2] == 6);
+
+            // no new events keep the last sample
+            CHECK(feed.update() == 0);
+            CHECK(feed.latest(acc));
+            CHECK(acc[2] == 6);
+            CHECK(feed.ring().size() == 2);
+        }
+        CHECK(stops == 1);
+    }
+
+    void feedWithoutSensorSendsZeros() {
+        int stops = 0;
+        {
+            auto *fake = new FakeAccelerationSource(false, &stops);
+            AccelerationFeed feed((std::unique_ptr<AccelerationSource>(fake)));
+            CHECK(!feed.isRunning());
+            fake->pending = {{1000, {1, 2, 3}}};
+            CHECK(feed.update() == 0);
+
+            float acc[3] = {9, 9, 9};
+            CHECK(!feed.latest(acc));
+            CHECK(acc[0] == 0);
+        }
+        // never started, never stopped
+        CHECK(stops == 0);
+
+        AccelerationFeed noSource(nullptr);
+        CHECK(!noSource.isRunning());
+        CHECK(noSource.update() == 0);
+    }
+
+    void burstsBetweenSendsKeepTheNewest() {
+        int stops = 0;
+        auto *fake = new FakeAccelerationSource(true, &stops);
+        AccelerationFeed feed((std::unique_ptr<AccelerationSource>(fake)));
+
+        // a 500Hz sensor delivers about 4 events per 120Hz send, more after a stall
+        for (int i = 0; i < 3 * AccelerationRing::CAPACITY; i++)
+            fake->pending.push_back({i * 2000000LL, {(float) i, 0, 0}});
+        CHECK(feed.update() == 3 * AccelerationRing::CAPACITY);
+
+        float acc[3];
+        CHECK(feed.latest(acc));
+        CHECK(acc[0] == 3 * AccelerationRing::CAPACITY - 1);
+        CHECK(feed.ring().size() == AccelerationRing::CAPACITY);
+    }
+}   // namespace
+
+int main() {
+    RUN_TEST(ringKeepsTheLatestSamples);
+    RUN_TEST(feedReportsTheLatestSample);
+    RUN_TEST(feedWithoutSensorSendsZeros);
+    RUN_TEST(burstsBetweenSendsKeepTheNewest);
+    return testResult();
+}
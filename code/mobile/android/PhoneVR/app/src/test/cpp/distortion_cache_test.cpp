@@ -0,0 +1,176 @@
+#include "distortion_cache.h"
+#include "test_main.h"
+
+#include <cstdio>
+#include <filesystem>
+#include <fstream>
+#include <iterator>
+#include <string>
+
+namespace {
+    const uint8_t VIEWER_A[] = {1, 2, 3, 4, 5};
+    const uint8_t VIEWER_B[] = {1, 2, 3, 4, 6};
+
+    std::string tempPath() {
+        std::string path =
+            (std::filesystem::temp_directory_path() / "phonevr_distortion_cache_test.bin").string();
+        std::remove(path.c_str());
+        return path;
+    }
+
+    DistortionParams makeParams(float seed) {
+        DistortionParams params;
+        for (int eye = 0; eye < 2; eye++) {
+            EyeDistortion &distortion = params.eyes[eye];
+            for (int i = 0; i < 6; i++) {
+                distortion.indices.push_back(i + eye);
+            }
+            for (int i = 0; i < 8; i++) {
+                distortion.vertices.push_back(seed + (float) i);
+                distortion.uvs.push_back(seed - (float) i);
+            }
+            distortion.eyeFromHead[12] = eye == 0 ? seed : -seed;
+            distortion.fov[0] = seed + (float) eye;
+            distortion.fov[3] = 0.5f;
+        }
+        return params;
+    }
+
+    bool sameParams(const DistortionParams &a, const DistortionParams &b) {
+        for (int eye = 0; eye < 2; eye++) {
+            const EyeDistortion &x = a.eyes[eye];
+            const EyeDistortion &y = b.eyes[eye];
+            if (x.indices != y.indices || x.vertices != y.vertices || x.uvs != y.uvs) {
+                return false;
+            }
+            for (int i = 0; i < 16; i++) {
+                if (x.eyeFromHead[i] != y.eyeFromHead[i]) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < 4; i++) {
+                if (x.fov[i] != y.fov[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    void keyDependsOnParamsAndScreen() {
+        uint64_t key = DistortionCache::key(VIEWER_A, sizeof(VIEWER_A), 2400, 1080);
+        CHECK(key == DistortionCache::key(VIEWER_A, sizeof(VIEWER_A), 2400, 1080));
+        CHECK(key != DistortionCache::key(VIEWER_B, sizeof(VIEWER_B), 2400, 1080));
+        CHECK(key != DistortionCache::key(VIEWER_A, sizeof(VIEWER_A) - 1, 2400, 1080));
+        CHECK(key != DistortionCache::key(VIEWER_A, sizeof(VIEWER_A), 1080, 2400));
+        CHECK(key != DistortionCache::key(VIEWER_A, sizeof(VIEWER_A), 2400, 1079));
+    }
+
+    void findsWhatWasPut() {
+        DistortionCache cache;
+        DistortionParams found;
+        CHECK(!cache.find(1, found));
+
+        cache.put(1, makeParams(1));
+        cache.put(2, makeParams(2));
+        CHECK(cache.find(1, found));
+        CHECK(sameParams(makeParams(1), found));
+        CHECK(cache.find(2, found));
+        CHECK(sameParams(makeParams(2), found));
+        CHECK(!cache.find(3, found));
+    }
+
+    void evictsLeastRecentlyUsed() {
+        DistortionCache cache;
+        DistortionParams found;
+        for (int key = 0; key < DistortionCache::MAX_ENTRIES; key++) {
+            cache.put(key, makeParams((float) key));
+        }
+        // 0 was used last, so 1 goes
+        CHECK(cache.find(0, found));
+        cache.put(100, makeParams(100));
+        CHECK(cache.find(0, found));
+        CHECK(!cache.find(1, found));
+        CHECK(cache.find(100, found));
+    }
+
+    void persistsAcrossInstances() {
+        std::string path = tempPath();
+        {
+            DistortionCache cache;
+            cache.setPath(path);
+            cache.put(7, makeParams(7));
+            cache.put(8, makeParams(8));
+        }
+        DistortionCache cache;
+        cache.setPath(path);
+        DistortionParams found;
+        CHECK(cache.find(7, found));
+        CHECK(sameParams(makeParams(7), found));
+        CHECK(cache.find(8, found));
+        CHECK(sameParams(makeParams(8), found));
+        std::remove(path.c_str());
+    }
+
+    void ignoresCorruptFiles() {
+        std::string path = tempPath();
+        {
+            DistortionCache cache;
+            cache.setPath(path);
+            cache.put(7, makeParams(7));
+        }
+        std::ifstream in(path, std::ios::binary);
+        std::string contents((std::istreambuf_iterator<char>(in)),
+                             std::istreambuf_iterator<char>());
+        in.close();
+
+        // truncated
+        std::ofstream(path, std::ios::binary | std::ios::trunc)
+            .write(contents.data(), (std::streamsize) contents.size() - 3);
+        DistortionCache truncated;
+        truncated.setPath(path);
+        DistortionParams found;
+        CHECK(!truncated.find(7, found));
+
+        // another format
+        std::string changed = contents;
+        changed[4] = 99;
+        std::ofstream(path, std::ios::binary | std::ios::trunc)
+            .write(changed.data(), (std::streamsize) changed.size());
+        DistortionCache otherVersion;
+        otherVersion.setPath(path);
+        CHECK(!otherVersion.find(7, found));
+
+        // a corrupt file is replaced by the next put
+        otherVersion.put(9, makeParams(9));
+        DistortionCache reloaded;
+        reloaded.setPath(path);
+        CHECK(reloaded.find(9, found));
+        std::remove(path.c_str());
+    }
+
+    void clearDeletesTheFile() {
+        std::string path = tempPath();
+        DistortionCache cache;
+        cache.setPath(path);
+        cache.put(7, makeParams(7));
+        cache.clear();
+        DistortionParams found;
+        CHECK(!cache.find(7, found));
+        CHECK(!std::ifstream(path).good());
+
+        DistortionCache reloaded;
+        reloaded.setPath(path);
+        CHECK(!reloaded.find(7, found));
+    }
+}   // namespace
+
+int main() {
+    RUN_TEST(keyDependsOnParamsAndScreen);
+    RUN_TEST(findsWhatWasPut);
+    RUN_TEST(evictsLeastRecentlyUsed);
+    RUN_TEST(persistsAcrossInstances);
+    RUN_TEST(ignoresCorruptFiles);
+    RUN_TEST(clearDeletesTheFile);
+    return testResult();
+}
@@ -0,0 +1,96 @@
+#include "frame_timing.h"
+#include "test_main.h"
+
+#include <cstring>
+
+namespace {
+    template <typename T> T get(const FrameTimingRing &ring, size_t offset) {
+        T value;
+        std::memcpy(&value, static_cast<const uint8_t *>(ring.data()) + offset, sizeof(T));
+        return value;
+    }
+
+    size_t recordOffset(int64_t frame) {
+        return FrameTimingRing::HEADER_SIZE +
+               (frame % FrameTimingRing::CAPACITY) * FrameTimingRing::RECORD_SIZE;
+    }
+
+    void writesHeader() {
+        FrameTimingRing ring;
+        CHECK(ring.size() == FrameTimingRing::HEADER_SIZE +
+                                 FrameTimingRing::CAPACITY * FrameTimingRing::RECORD_SIZE);
+        CHECK(get<int32_t>(ring, 0) == FrameTimingRing::VERSION);
+        CHECK(get<int32_t>(ring, 4) == FrameTimingRing::CAPACITY);
+        CHECK(get<int32_t>(ring, 8) == FrameTimingRing::RECORD_SIZE);
+        CHECK(get<int64_t>(ring, 16) == 0);
+    }
+
+    void recordsStages() {
+        FrameTimingRing ring;
+        ring.beginFrame(1000);
+        ring.endStage(STAGE_POLL, 1100);
+        ring.setMode(FRAME_STREAM);
+        ring.endStage(STAGE_ACQUIRE, 1300);
+        ring.setFrameTimestamp(777);
+        ring.endStage(STAGE_RENDER, 1600);
+        ring.endStage(STAGE_DISTORTION, 2000);
+        ring.endFrame(2100);
+
+        size_t r = recordOffset(0);
+        CHECK(get<int64_t>(ring, 16) == 1);
+        CHECK(get<int64_t>(ring, r) == 2);
+        CHECK(get<int64_t>(ring, r + 8) == 1000);
+        CHECK(get<int64_t>(ring, r + 16) == 777);
+        CHECK(get<int32_t>(ring, r + 24) == 100);
+        CHECK(get<int32_t>(ring, r + 28) == 200);
+        CHECK(get<int32_t>(ring, r + 32) == 300);
+        CHECK(get<int32_t>(ring, r + 36) == 400);
+        CHECK(get<int32_t>(ring, r + 40) == 1100);
+        CHECK(get<int32_t>(ring, r + 44) == FRAME_STREAM);
+    }
+
+    void marksDroppedFrames() {
+        FrameTimingRing ring;
+        ring.beginFrame(0);
+        ring.setMode(FRAME_STREAM);
+        ring.endStage(STAGE_POLL, 10);
+        ring.endStage(STAGE_ACQUIRE, 20);
+        ring.setFrameTimestamp(-1);
+        ring.endFrame(30);
+
+        size_t r = recordOffset(0);
+        CHECK(get<int64_t>(ring, r + 16) == -1);
+        // stages after the drop stay 0
+        CHECK(get<int32_t>(ring, r + 32) == 0);
+        CHECK(get<int32_t>(ring, r + 44) ==
+              (FRAME_STREAM | FrameTimingRing::FRAME_FLAG_DROPPED));
+    }
+
+    void wrapsAround() {
+        FrameTimingRing ring;
+        int64_t frames = FrameTimingRing::CAPACITY + 3;
+        for (int64_t i = 0; i < frames; i++) {
+            ring.beginFrame(i * 100);
+            ring.endFrame(i * 100 + 50);
+        }
+        // without beginFrame nothing is published
+        ring.endFrame(0);
+
+        CHECK(get<int64_t>(ring, 16) == frames);
+        size_t r = recordOffset(frames - 1);
+        CHECK(r == recordOffset(2));
+        CHECK(get<int64_t>(ring, r) == 2 * (frames - 1) + 2);
+        CHECK(get<int64_t>(ring, r + 8) == (frames - 1) * 100);
+        CHECK(get<int64_t>(ring, r + 16) == 0);
+        CHECK(get<int32_t>(ring, r + 40) == 50);
+        CHECK(get<int32_t>(ring, r + 44) == FRAME_LOBBY);
+    }
+}   // namespace
+
+int main() {
+    RUN_TEST(writesHeader);
+    RUN_TEST(recordsStages);
+    RUN_TEST(marksDroppedFrames);
+    RUN_TEST(wrapsAround);
+    return testResult();
+}
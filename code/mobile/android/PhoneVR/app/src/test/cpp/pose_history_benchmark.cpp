@@ -0,0 +1,90 @@
+// Cost of PoseHistory adds and lookups on the stream's pattern of frames, with late and skipped
+// pts. Not a test, run it on an idle machine:
+//   cmake --build build/native-tests --target pose_history_benchmark
+//   build/native-tests/pose_history_benchmark [operations]
+
+#include "PVRPoseHistory.h"
+
+#include <chrono>
+#include <cmath>
+#include <cstdint>
+#include <cstdio>
+#include <cstdlib>
+#include <random>
+#include <vector>
+
+using namespace std::chrono;
+
+namespace {
+    const int64_t FRAME_US = 16667;
+
+    // pts of count frames, every 10th arrives after the next one, every 25th never arrives
+    std::vector<int64_t> streamPts(int count) {
+        std::vector<int64_t> pts;
+        for (int64_t frame = 0; (int) pts.size() < count; frame++) {
+            if (frame % 25 == 24)
+                continue;
+            if (frame % 10 == 9) {
+                pts.push_back((frame + 1) * FRAME_US);
+                pts.push_back(frame * FRAME_US);
+                frame++;
+            } else {
+                pts.push_back(frame * FRAME_US);
+            }
+        }
+        pts.resize(count);
+        return pts;
+    }
+
+    template <typename Body> void report(const char *name, int operations, Body body) {
+        auto start = steady_clock::now();
+        body();
+        double ns = duration_cast<nanoseconds>(steady_clock::now() - start).count();
+        std::printf("%-34s %8.1f ns/op\n", name, ns / operations);
+    }
+}   // namespace
+
+int main(int argc, char **argv) {
+    int operations = argc > 1 ? std::atoi(argv[1]) : 1000000;
+    std::vector<int64_t> pts = streamPts(operations);
+    std::vector<float> angles(operations);
+    std::mt19937 random(1);
+    std::uniform_real_distribution<float> angle(-3.f, 3.f);
+    for (auto &a : angles)
+        a = angle(random);
+
+    PoseHistory history;
+    float checksum = 0;
+    report("add, late and skipped pts", operations, [&] {
+        for (int i = 0; i < operations; i++) {
+            float quat[4] = {std::cos(angles[i] / 2), 0, std::sin(angles[i] / 2), 0};
+            history.add(pts[i], quat);
+        }
+    });
+
+    // the renderer shows frames a few frames behind the newest received
+    int64_t newest = pts[operations - 1];
+    report("lookup, exact pts", operations, [&] {
+        float quat[4];
+        for (int i = 0; i < operations; i++) {
+            history.lookup(newest - (i % 40) * FRAME_US, quat);
+            checksum += quat[0];
+        }
+    });
+    report("lookup, between pts (slerp)", operations, [&] {
+        float quat[4];
+        for (int i = 0; i < operations; i++) {
+            history.lookup(newest - (i % 40) * FRAME_US - FRAME_US / 3, quat);
+            checksum += quat[0];
+        }
+    });
+    report("lookup, older than the history", operations, [&] {
+        float quat[4];
+        for (int i = 0; i < operations; i++)
+            checksum += history.lookup(newest - 1000 * FRAME_US, quat) ? 1 : 0;
+    });
+
+    // keeps the lookups from being optimized away
+    std::printf("checksum %f\n", checksum);
+    return 0;
+}
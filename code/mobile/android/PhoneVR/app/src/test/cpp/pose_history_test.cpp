@@ -0,0 +1,191 @@
+#include "PVRPoseHistory.h"
+#include "test_main.h"
+
+#include <atomic>
+#include <cmath>
+#include <cstdint>
+#include <thread>
+
+namespace {
+    const double PI = 3.14159265358979323846;
+
+    // rotation about the z axis, (w, x, y, z)
+    void yaw(double angle, float quat[4]) {
+        quat[0] = (float) std::cos(angle / 2);
+        quat[1] = 0;
+        quat[2] = 0;
+        quat[3] = (float) std::sin(angle / 2);
+    }
+
+    double yawOf(const float quat[4]) { return 2 * std::atan2(quat[3], quat[0]); }
+
+    // a pose per frame, 1 degree of yaw per ms of pts
+    void addFrame(PoseHistory &history, int64_t ptsUs) {
+        float quat[4];
+        yaw(ptsUs / 1000.0 * PI / 180, quat);
+        history.add(ptsUs, quat);
+    }
+
+    double degreesAt(const PoseHistory &history, int64_t ptsUs, bool *found = nullptr) {
+        float quat[4] = {};
+        bool ok = history.lookup(ptsUs, quat);
+        if (found)
+            *found = ok;
+        return yawOf(quat) * 180 / PI;
+    }
+
+    void findsExactPts() {
+        PoseHistory history;
+        float quat[4];
+        CHECK(!history.lookup(0, quat));
+
+        for (int64_t pts = 0; pts <= 100002; pts += 16667)
+            addFrame(history, pts);
+        CHECK(history.size() == 7);
+        CHECK_NEAR(16.667, degreesAt(history, 16667), 1e-3);
+        CHECK_NEAR(0, degreesAt(history, 0), 1e-3);
+        CHECK_NEAR(100.002, degreesAt(history, 100002), 1e-3);
+    }
+
+    void slerpsMissingPts() {
+        PoseHistory history;
+        addFrame(history, 10000);
+        addFrame(history, 30000);
+
+        // halfway is the same as rotating half the way
+        CHECK_NEAR(20, degreesAt(history, 20000), 1e-3);
+        CHECK_NEAR(25, degreesAt(history, 25000), 1e-3);
+
+        float a[4];
+        float b[4];
+        float out[4];
+        yaw(0, a);
+        yaw(PI / 2, b);
+        PVRSlerp(a, b, 0.5f, out);
+        CHECK_NEAR(PI / 4, yawOf(out), 1e-5);
+        CHECK_NEAR(1, out[0] * out[0] + out[3] * out[3], 1e-5);
+
+        // -b is the same rotation as b, still the short way
+        float negB[4] = {-b[0], -b[1], -b[2], -b[3]};
+        PVRSlerp(a, negB, 0.5f, out);
+        CHECK_NEAR(PI / 4, std::fabs(yawOf(out)), 1e-5);
+    }
+
+    void skippedPtsInterpolateAcrossTheGap() {
+        PoseHistory history;
+        // the frame at 33333 never arrived
+        addFrame(history, 0);
+        addFrame(history, 16667);
+        addFrame(history, 50000);
+        CHECK_NEAR(33.333, degreesAt(history, 33333), 1e-2);
+    }
+
+    void outOfOrderPtsAreInsertedInPlace() {
+        PoseHistory history;
+        addFrame(history, 10000);
+        addFrame(history, 30000);
+        addFrame(history, 20000);
+        addFrame(history, 5000);
+        CHECK(history.size() == 4);
+
+        CHECK_NEAR(20, degreesAt(history, 20000), 1e-3);
+        CHECK_NEAR(15, degreesAt(history, 15000), 1e-3);
+        CHECK_NEAR(7.5, degreesAt(history, 7500), 1e-3);
+
+        // the same pts again replaces the sample
+        float quat[4];
+        yaw(PI, quat);
+        history.add(20000, quat);
+        CHECK(history.size() == 4);
+        CHECK_NEAR(180, std::fabs(degreesAt(history, 20000)), 1e-3);
+    }
+
+    void outsideTheHistory() {
+        PoseHistory history;
+        addFrame(history, 10000);
+        addFrame(history, 20000);
+
+        bool found;
+        degreesAt(history, 9999, &found);
+        CHECK(!found);
+        // the newest until a later frame arrives
+        CHECK_NEAR(20, degreesAt(history, 90000, &found), 1e-3);
+        CHECK(found);
+    }
+
+    void dropsTheOldestWhenFull() {
+        PoseHistory history;
+        for (int i = 0; i < PoseHistory::CAPACITY + 10; i++)
+            addFrame(history, i * 1000LL);
+        CHECK(history.size() == PoseHistory::CAPACITY);
+
+        bool found;
+        degreesAt(history, 9000, &found);
+        CHECK(!found);
+        CHECK_NEAR(10, degreesAt(history, 10000), 1e-3);
+
+        // a late frame older than all kept is dropped, a late one inside is kept
+        addFrame(history, 5000);
+        degreesAt(history, 5000, &found);
+        CHECK(!found);
+        addFrame(history, 40500);
+        CHECK(history.size() == PoseHistory::CAPACITY);
+        CHECK_NEAR(40.5, degreesAt(history, 40500), 1e-3);
+        degreesAt(history, 10000, &found);
+        CHECK(!found);
+
+        history.clear();
+        CHECK(history.size() == 0);
+    }
+
+    // The reader looks up while the writer adds frames, some late. Yaw is linear in pts, so
+    // every result must match its pts, a torn read would not.
+    void readerNeverSeesTornHistory() {
+        PoseHistory history;
+        std::atomic<int64_t> written{0};
+        std::atomic<bool> done{false};
+        std::thread writer([&] {
+            for (int64_t frame = 1; frame <= 200000; frame++) {
+                int64_t pts = frame * 100;
+                // every 7th frame arrives after the next one
+                if (frame % 7 == 0) {
+                    addFrame(history, pts + 100);
+                    addFrame(history, pts);
+                    frame++;
+                } else {
+                    addFrame(history, pts);
+                }
+                written.store(pts, std::memory_order_relaxed);
+            }
+            done = true;
+        });
+
+        int wrong = 0;
+        int lookups = 0;
+        while (!done) {
+            int64_t pts = written.load(std::memory_order_relaxed) - 1234;
+            bool found;
+            double degrees = degreesAt(history, pts, &found);
+            if (found) {
+                double expected = std::remainder(pts / 1000.0, 360.0);
+                if (std::fabs(std::remainder(degrees - expected, 360.0)) > 1e-2)
+                    wrong++;
+            }
+            lookups++;
+        }
+        writer.join();
+        CHECK(wrong == 0);
+        CHECK(lookups > 0);
+    }
+}   // namespace
+
+int main() {
+    RUN_TEST(findsExactPts);
+    RUN_TEST(slerpsMissingPts);
+    RUN_TEST(skippedPtsInterpolateAcrossTheGap);
+    RUN_TEST(outOfOrderPtsAreInsertedInPlace);
+    RUN_TEST(outsideTheHistory);
+    RUN_TEST(dropsTheOldestWhenFull);
+    RUN_TEST(readerNeverSeesTornHistory);
+    return testResult();
+}
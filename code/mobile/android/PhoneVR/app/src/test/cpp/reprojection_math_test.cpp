@@ -0,0 +1,143 @@
+#include "reprojection_math.h"
+#include "test_main.h"
+
+#include <cmath>
+
+namespace {
+    const float PI = 3.14159265f;
+    const ReprojectionQuat IDENTITY = {0, 0, 0, 1};
+
+    // an asymmetric Cardboard like field of view, wider towards the nose
+    const FovTangents FOV = fovTangents(-0.87f, 0.70f, 0.80f, -0.85f);
+
+    ReprojectionQuat axisAngle(float x, float y, float z, float angle) {
+        float s = std::sin(angle / 2);
+        return {x * s, y * s, z * s, std::cos(angle / 2)};
+    }
+
+    // texture u of a direction in the rendered view
+    float uOfTangent(const FovTangents &fov, float tangent) {
+        return (tangent - fov.left) / (fov.right - fov.left);
+    }
+
+    float vOfTangent(const FovTangents &fov, float tangent) {
+        return (tangent - fov.down) / (fov.up - fov.down);
+    }
+
+    void withoutRotationMapsViewToTexture() {
+        float m[9];
+        reprojectionMatrix(FOV, IDENTITY, FOV, IDENTITY, m);
+        float u, v;
+        CHECK(reprojectPoint(m, -1, -1, u, v));
+        CHECK_NEAR(0, u, 1e-5);
+        CHECK_NEAR(0, v, 1e-5);
+        CHECK(reprojectPoint(m, 1, 1, u, v));
+        CHECK_NEAR(1, u, 1e-5);
+        CHECK_NEAR(1, v, 1e-5);
+        CHECK(reprojectPoint(m, 0.25f, -0.5f, u, v));
+        CHECK_NEAR(0.625, u, 1e-5);
+        CHECK_NEAR(0.25, v, 1e-5);
+
+        // the same orientation, turned, still is no change
+        ReprojectionQuat turned = axisAngle(0, 1, 0, 0.3f);
+        reprojectionMatrix(FOV, turned, FOV, turned, m);
+        CHECK(reprojectPoint(m, 0.25f, -0.5f, u, v));
+        CHECK_NEAR(0.625, u, 1e-5);
+        CHECK_NEAR(0.25, v, 1e-5);
+    }
+
+    void yawShiftsHorizontally() {
+        // the head turned left since the frame was rendered, straight ahead now is left of the
+        // rendered center
+        float angle = 0.1f;
+        float m[9];
+        reprojectionMatrix(FOV, IDENTITY, FOV, axisAngle(0, 1, 0, angle), m);
+
+        // the display center direction, from the unprojection of the device coordinates
+        float centerX = (FOV.left + FOV.right) / 2;
+        float centerY = (FOV.down + FOV.up) / 2;
+        float u, v;
+        CHECK(reprojectPoint(m, 0, 0, u, v));
+        float expectedTangent = std::tan(std::atan(centerX) - angle);
+        // pitch is unaffected at the horizon only, the center is slightly off it
+        CHECK_NEAR(uOfTangent(FOV, expectedTangent), u, 1e-4);
+        CHECK(u < 0.5f);
+        CHECK_NEAR(vOfTangent(FOV, centerY), v, 5e-3);
+    }
+
+    void pitchShiftsVertically() {
+        // looking up, the display center shows what was above the rendered center
+        float angle = 0.1f;
+        float m[9];
+        reprojectionMatrix(FOV, IDENTITY, FOV, axisAngle(1, 0, 0, angle), m);
+        float u, v;
+        // the point of the display on the horizontal center plane of the head
+        float ndcY = -(FOV.up + FOV.down) / (FOV.up - FOV.down);
+        CHECK(reprojectPoint(m, 0, ndcY, u, v));
+        CHECK_NEAR(vOfTangent(FOV, std::tan(angle)), v, 1e-4);
+        CHECK(v > 0.5f);
+    }
+
+    void rollRotatesAroundTheViewAxis() {
+        FovTangents square = fovTangents(-PI / 4, PI / 4, PI / 4, -PI / 4);
+        float m[9];
+        // rolled a quarter turn counterclockwise, seen from behind the head
+        reprojectionMatrix(square, IDENTITY, square, axisAngle(0, 0, 1, PI / 2), m);
+        float u, v;
+        CHECK(reprojectPoint(m, 0, 0, u, v));
+        CHECK_NEAR(0.5, u, 1e-5);
+        CHECK_NEAR(0.5, v, 1e-5);
+        // the right edge of the display now shows the top of the rendered frame
+        CHECK(reprojectPoint(m, 1, 0, u, v));
+        CHECK_NEAR(0.5, u, 1e-5);
+        CHECK_NEAR(1, v, 1e-5);
+    }
+
+    void directionsBehindAreRejected() {
+        float m[9];
+        reprojectionMatrix(FOV, IDENTITY, FOV, axisAngle(0, 1, 0, PI), m);
+        float u, v;
+        CHECK(!reprojectPoint(m, 0, 0, u, v));
+    }
+
+    void swappingOrientationsInverts() {
+        ReprojectionQuat rendered = axisAngle(0.3f, 0.9f, 0.1f, 0.4f);
+        ReprojectionQuat display = axisAngle(-0.2f, 1, 0.3f, 0.25f);
+        float forward[9];
+        float backward[9];
+        reprojectionMatrix(FOV, rendered, FOV, display, forward);
+        reprojectionMatrix(FOV, display, FOV, rendered, backward);
+
+        float u, v;
+        CHECK(reprojectPoint(forward, 0.3f, -0.2f, u, v));
+        // texture coordinates to device coordinates of the same view
+        float backU, backV;
+        CHECK(reprojectPoint(backward, 2 * u - 1, 2 * v - 1, backU, backV));
+        CHECK_NEAR(0.65, backU, 1e-4);
+        CHECK_NEAR(0.4, backV, 1e-4);
+    }
+
+    void rotationMatrixNormalizes() {
+        float unit[9];
+        float scaled[9];
+        rotationMatrix(axisAngle(0, 0, 1, 0.5f), unit);
+        ReprojectionQuat q = axisAngle(0, 0, 1, 0.5f);
+        rotationMatrix({q.x * 3, q.y * 3, q.z * 3, q.w * 3}, scaled);
+        for (int i = 0; i < 9; i++) {
+            CHECK_NEAR(unit[i], scaled[i], 1e-6);
+        }
+        CHECK_NEAR(std::cos(0.5f), unit[0], 1e-6);
+        CHECK_NEAR(std::sin(0.5f), unit[3], 1e-6);
+    }
+}   // namespace
+
+int main() {
+    RUN_TEST(withoutRotationMapsViewToTexture);
+    RUN_TEST(yawShiftsHorizontally);
+    RUN_TEST(pitchShiftsVertically);
+    RUN_TEST(rollRotatesAroundTheViewAxis);
+    RUN_TEST(directionsBehindAreRejected);
+    RUN_TEST(swappingOrientationsInverts);
+    RUN_TEST(rotationMatrixNormalizes);
+    return testResult();
+}
@@ -0,0 +1,106 @@
+#include "seqlock.h"
+#include "test_main.h"
+
+#include <atomic>
+#include <cstdint>
+#include <thread>
+#include <vector>
+
+namespace {
+    // about the size of the view configuration in alvr_main.cpp, spanning several words
+    struct Snapshot {
+        uint64_t sequence;
+        float values[10];
+        uint64_t checksum;
+    };
+
+    Snapshot makeSnapshot(uint64_t sequence) {
+        Snapshot snapshot = {};
+        snapshot.sequence = sequence;
+        for (int i = 0; i < 10; i++) {
+            snapshot.values[i] = (float) (sequence % 1000) + (float) i;
+        }
+        snapshot.checksum = sequence * 31 + 7;
+        return snapshot;
+    }
+
+    bool isConsistent(const Snapshot &snapshot) {
+        Snapshot expected = makeSnapshot(snapshot.sequence);
+        for (int i = 0; i < 10; i++) {
+            if (snapshot.values[i] != expected.values[i]) {
+                return false;
+            }
+        }
+        return snapshot.checksum == expected.checksum;
+    }
+
+    void loadsStoredValue() {
+        SeqLock<Snapshot> lock;
+        CHECK(lock.load().sequence == 0);
+        CHECK(lock.load().checksum == 0);
+
+        lock.store(makeSnapshot(42));
+        Snapshot loaded = lock.load();
+        CHECK(loaded.sequence == 42);
+        CHECK(isConsistent(loaded));
+
+        SeqLock<float> single(1.5f);
+        CHECK(single.load() == 1.5f);
+    }
+
+    // One writer stores as fast as it can while readers keep loading, every load has to be a
+    // whole snapshot and the sequence must never go backwards for a reader.
+    void noTornReadsUnderContention() {
+        const uint64_t STORES = 2000000;
+        const int READERS = 3;
+
+        SeqLock<Snapshot> lock(makeSnapshot(0));
+        std::atomic<bool> writing{true};
+        std::atomic<int> torn{0};
+        std::atomic<int> backwards{0};
+        std::vector<uint64_t> loads(READERS, 0);
+
+        std::vector<std::thread> readers;
+        for (int r = 0; r < READERS; r++) {
+            readers.emplace_back([&, r] {
+                uint64_t last = 0;
+                while (writing.load(std::memory_order_relaxed)) {
+                    Snapshot snapshot = lock.load();
+                    if (!isConsistent(snapshot)) {
+                        torn++;
+                    }
+                    if (snapshot.sequence < last) {
+                        backwards++;
+                    }
+                    last = snapshot.sequence;
+                    loads[r]++;
+                }
+            });
+        }
+        for (uint64_t i = 1; i <= STORES; i++) {
+            lock.store(makeSnapshot(i));
+        }
+        writing = false;
+        for (auto &reader : readers) {
+            reader.join();
+        }
+
+        CHECK(torn == 0);
+        CHECK(backwards == 0);
+        for (uint64_t count : loads) {
+            CHECK(count > 0);
+        }
+        CHECK(lock.load().sequence == STORES);
+        std::printf("%llu stores, loads per reader %llu %llu %llu\n",
+                    (unsigned long long) STORES,
+                    (unsigned long long) loads[0],
+                    (unsigned long long) loads[1],
+                    (unsigned long long) loads[2]);
+    }
+}   // namespace
+
+int main() {
+    RUN_TEST(loadsStoredValue);
+    RUN_TEST(noTornReadsUnderContention);
+    return testResult();
+}
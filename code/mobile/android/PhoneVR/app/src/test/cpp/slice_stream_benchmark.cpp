@@ -0,0 +1,247 @@
+// Latency from the start of encoding a frame to having all of it on the phone, whole frames against
+// sliced frames written by SliceWriter. Loopback TCP behind a link paced like Wi-Fi, the encoder is
+// simulated: it finishes the slices of a frame evenly over the encode time. Not a test, run it on
+// an idle machine:
+//   cmake --build build/native-tests --target slice_stream_benchmark
+//   build/native-tests/slice_stream_benchmark [frames] [Mbit/s] [encode ms] [KB per frame] [slices]
+
+#include "PVRSliceWriter.h"
+
+#include <algorithm>
+#include <arpa/inet.h>
+#include <chrono>
+#include <condition_variable>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <deque>
+#include <mutex>
+#include <netinet/in.h>
+#include <netinet/tcp.h>
+#include <sys/socket.h>
+#include <thread>
+#include <unistd.h>
+#include <vector>
+
+using namespace std::chrono;
+
+namespace {
+    typedef std::vector<uint8_t> Bytes;
+
+    // like the server's header: pts at 0, NAL size at 24, send time at 56
+    const size_t HEADER = 64;
+    const size_t SIZE_OFFSET = 24;
+    const size_t TIMESTAMP_OFFSET = 56;
+
+    struct Options {
+        int frames = 300;
+        double mbps = 50;
+        double encodeMs = 6;
+        size_t frameBytes = 40000;
+        int slices = 4;
+    };
+
+    int64_t nowNs() {
+        return duration_cast<nanoseconds>(steady_clock::now().time_since_epoch()).count();
+    }
+
+    // Sends what is written at the link rate, writes do not block like on a real socket
+    class PacedLink {
+      public:
+        PacedLink(int socket, double mbps) : skt(socket), bytesPerNs(mbps / 8e3) {
+            thread = std::thread([this] { run(); });
+        }
+        ~PacedLink() {
+            {
+                std::lock_guard<std::mutex> lock(mtx);
+                stopping = true;
+            }
+            cond.notify_one();
+            thread.join();
+        }
+        void write(const uint8_t *data, size_t size) {
+            {
+                std::lock_guard<std::mutex> lock(mtx);
+                queue.emplace_back(data, data + size);
+            }
+            cond.notify_one();
+        }
+
+      private:
+        int skt;
+        double bytesPerNs;
+        std::thread thread;
+        std::mutex mtx;
+        std::condition_variable cond;
+        std::deque<Bytes> queue;
+        bool stopping = false;
+
+        void run() {
+            int64_t linkFreeNs = nowNs();
+            while (true) {
+                Bytes chunk;
+                {
+                    std::unique_lock<std::mutex> lock(mtx);
+                    cond.wait(lock, [this] { return stopping || !queue.empty(); });
+                    if (queue.empty())
+                        return;
+                    chunk = std::move(queue.front());
+                    queue.pop_front();
+                }
+                // a packet at a time, each leaves when the link sent the one before. Late wake ups
+                // do not slow the link down, the next packet is just sent sooner.
+                linkFreeNs = std::max(linkFreeNs, nowNs());
+                for (size_t at = 0; at < chunk.size(); at += 1448) {
+                    size_t size = std::min<size_t>(1448, chunk.size() - at);
+                    linkFreeNs += (int64_t) (size / bytesPerNs);
+                    std::this_thread::sleep_until(
+                        steady_clock::time_point(nanoseconds(linkFreeNs)));
+                    send(skt, &chunk[at], size, 0);
+                }
+            }
+        }
+    };
+
+    bool readFully(int skt, uint8_t *to, size_t size) {
+        while (size > 0) {
+            ssize_t got = recv(skt, to, size, 0);
+            if (got <= 0)
+                return false;
+            to += got;
+            size -= (size_t) got;
+        }
+        return true;
+    }
+
+    // Reads frames like the phone, into one buffer as into a codec buffer. Returns the latency of
+    // each frame in ns, from the encode start the sender put at the start of the header.
+    std::vector<int64_t> receive(int skt, int frames) {
+        std::vector<int64_t> latencies;
+        Bytes header(HEADER);
+        Bytes codecBuf(4 << 20);
+        for (int frame = 0; frame < frames; frame++) {
+            if (!readFully(skt, header.data(), HEADER))
+                break;
+            int64_t startNs;
+            uint32_t nalSize;
+            memcpy(&startNs, &header[0], 8);
+            memcpy(&nalSize, &header[SIZE_OFFSET], 4);
+            if (nalSize == PVR_SLICED_FRAME) {
+                size_t filled = 0;
+                uint32_t size = 0;
+                while ((size & PVR_LAST_SLICE) == 0) {
+                    readFully(skt, reinterpret_cast<uint8_t *>(&size), 4);
+                    readFully(skt, &codecBuf[filled], size & ~PVR_LAST_SLICE);
+                    filled += size & ~PVR_LAST_SLICE;
+                }
+            } else {
+                readFully(skt, codecBuf.data(), nalSize);
+            }
+            latencies.push_back(nowNs() - startNs);
+        }
+        return latencies;
+    }
+
+    std::vector<int64_t> measure(const Options &options, bool sliced) {
+        int listener = socket(AF_INET, SOCK_STREAM, 0);
+        sockaddr_in address = {};
+        address.sin_family = AF_INET;
+        address.sin_addr.s_addr = htonl(INADDR_LOOPBACK);
+        bind(listener, (sockaddr *) &address, sizeof(address));
+        socklen_t length = sizeof(address);
+        getsockname(listener, (sockaddr *) &address, &length);
+        listen(listener, 1);
+
+        int sender = socket(AF_INET, SOCK_STREAM, 0);
+        int noDelay = 1;
+        setsockopt(sender, IPPROTO_TCP, TCP_NODELAY, &noDelay, sizeof(noDelay));
+        connect(sender, (sockaddr *) &address, sizeof(address));
+        int receiver = accept(listener, nullptr, nullptr);
+
+        std::vector<int64_t> latencies;
+        std::thread receiverThread([&] { latencies = receive(receiver, options.frames); });
+        {
+            PacedLink link(sender, options.mbps);
+            SliceWriter writer(options.slices, [&](const uint8_t *data, size_t size) {
+                link.write(data, size);
+            });
+            Bytes header(HEADER);
+            Bytes frame(options.frameBytes, 0x42);
+            Bytes whole;
+            size_t sliceBytes = options.frameBytes / options.slices;
+            auto sliceTime = duration<double, std::milli>(options.encodeMs / options.slices);
+
+            auto next = steady_clock::now();
+            for (int i = 0; i < options.frames; i++) {
+                std::this_thread::sleep_until(next);
+                next += microseconds(16667);
+
+                int64_t startNs = nowNs();
+                memcpy(&header[0], &startNs, 8);
+                uint32_t nalSize = sliced ? PVR_SLICED_FRAME : (uint32_t) options.frameBytes;
+                memcpy(&header[SIZE_OFFSET], &nalSize, 4);
+                if (sliced)
+                    writer.startFrame(header.data(), HEADER, TIMESTAMP_OFFSET);
+
+                auto start = steady_clock::now();
+                for (int slice = 0; slice < options.slices; slice++) {
+                    std::this_thread::sleep_until(start + sliceTime * (slice + 1));
+                    if (sliced)
+                        writer.add(&frame[slice * sliceBytes], sliceBytes, true, slice, slice);
+                }
+                if (sliced) {
+                    writer.endFrame();
+                } else {
+                    whole.assign(header.begin(), header.end());
+                    whole.insert(whole.end(), frame.begin(), frame.end());
+                    link.write(whole.data(), whole.size());
+                }
+            }
+            receiverThread.join();
+        }
+        close(sender);
+        close(receiver);
+        close(listener);
+        std::sort(latencies.begin(), latencies.end());
+        return latencies;
+    }
+
+    void report(const char *name, const std::vector<int64_t> &sorted) {
+        if (sorted.empty())
+            return;
+        auto percentile = [&](double p) {
+            size_t rank = (size_t) (p * sorted.size() + 0.999999);
+            return sorted[std::max<size_t>(rank, 1) - 1] / 1e6;
+        };
+        std::printf("%-14s p50 %6.2fms  p90 %6.2fms  p99 %6.2fms  max %6.2fms\n",
+                    name,
+                    percentile(0.50),
+                    percentile(0.90),
+                    percentile(0.99),
+                    sorted.back() / 1e6);
+    }
+}   // namespace
+
+int main(int argc, char **argv) {
+    Options options;
+    if (argc > 1)
+        options.frames = std::atoi(argv[1]);
+    if (argc > 2)
+        options.mbps = std::atof(argv[2]);
+    if (argc > 3)
+        options.encodeMs = std::atof(argv[3]);
+    if (argc > 4)
+        options.frameBytes = (size_t) std::atoi(argv[4]) * 1000;
+    if (argc > 5)
+        options.slices = std::max(std::atoi(argv[5]), 1);
+    std::printf("%d frames of %zuKB, %.0fMbit/s link, %.1fms encode in %d slices\n",
+                options.frames,
+                options.frameBytes / 1000,
+                options.mbps,
+                options.encodeMs,
+                options.slices);
+
+    report("whole frames", measure(options, false));
+    report("sliced frames", measure(options, true));
+    return 0;
+}
@@ -0,0 +1,207 @@
+#include "PVRSliceWriter.h"
+#include "test_main.h"
+
+#include <algorithm>
+#include <cstring>
+#include <random>
+#include <thread>
+#include <vector>
+
+namespace {
+    typedef std::vector<uint8_t> Bytes;
+
+    const size_t HEADER = 16;
+    const size_t TIMESTAMP = 8;
+    const int MBS = 100;
+
+    struct Frame {
+        Bytes header;
+        std::vector<Bytes> nals;
+    };
+
+    // Reads sliced frames back like the phone does
+    std::vector<Frame> parse(const Bytes &stream, bool *valid) {
+        std::vector<Frame> frames;
+        size_t at = 0;
+        *valid = true;
+        while (at < stream.size()) {
+            Frame frame;
+            if (stream.size() - at < HEADER) {
+                *valid = false;
+                break;
+            }
+            frame.header.assign(stream.begin() + at, stream.begin() + at + HEADER);
+            at += HEADER;
+            bool last = false;
+            while (!last) {
+                uint32_t size;
+                if (stream.size() - at < 4) {
+                    *valid = false;
+                    return frames;
+                }
+                memcpy(&size, &stream[at], 4);
+                at += 4;
+                last = (size & PVR_LAST_SLICE) != 0;
+                size &= ~PVR_LAST_SLICE;
+                if (stream.size() - at < size) {
+                    *valid = false;
+                    return frames;
+                }
+                if (size > 0)
+                    frame.nals.emplace_back(stream.begin() + at, stream.begin() + at + size);
+                at += size;
+            }
+            frames.push_back(frame);
+        }
+        return frames;
+    }
+
+    Bytes nal(uint8_t tag, size_t size) { return Bytes(size, tag); }
+
+    struct Stream {
+        Bytes bytes;
+        int writes = 0;
+        SliceWriter writer{MBS, [this](const uint8_t *data, size_t size) {
+                               bytes.insert(bytes.end(), data, data + size);
+                               writes++;
+                           }};
+
+        void start(uint8_t tag) {
+            Bytes header(HEADER, tag);
+            writer.startFrame(header.data(), header.size(), TIMESTAMP);
+        }
+        void add(const Bytes &nal, bool slice, int firstMb, int lastMb) {
+            writer.add(nal.data(), nal.size(), slice, firstMb, lastMb);
+        }
+    };
+
+    void writesSlicesInMacroblockOrder() {
+        Stream stream;
+        stream.start(0xAA);
+        stream.add(nal(1, 10), false, 0, 0);   // SPS
+        stream.add(nal(4, 40), true, 50, 74);
+        CHECK(stream.writes == 1);   // waits for the slices before it
+        stream.add(nal(2, 20), true, 0, 24);
+        CHECK(stream.writes == 2);
+        stream.add(nal(5, 50), true, 75, 99);
+        stream.add(nal(3, 30), true, 25, 49);
+        CHECK(stream.writes == 5);
+        CHECK(stream.writer.endFrame() == 150);
+
+        bool valid;
+        auto frames = parse(stream.bytes, &valid);
+        CHECK(valid);
+        CHECK(frames.size() == 1);
+        CHECK(frames[0].nals.size() == 5);
+        for (size_t i = 0; i < frames[0].nals.size(); i++)
+            CHECK(frames[0].nals[i] == nal((uint8_t) (i + 1), (i + 1) * 10));
+        // the last slice carries the flag, no terminator
+        uint32_t lastSize;
+        memcpy(&lastSize, &stream.bytes[stream.bytes.size() - 50 - 4], 4);
+        CHECK(lastSize == (50 | PVR_LAST_SLICE));
+        CHECK(stream.bytes.size() == HEADER + 5 * 4 + 150);
+    }
+
+    void headerGoesWithTheFirstNalAndIsStamped() {
+        Stream stream;
+        stream.start(0xAA);
+        CHECK(stream.writes == 0);
+        stream.add(nal(1, 10), true, 0, MBS - 1);
+        CHECK(stream.writes == 1);
+        stream.writer.endFrame();
+
+        bool valid;
+        auto frames = parse(stream.bytes, &valid);
+        CHECK(valid && frames.size() == 1);
+        CHECK(frames[0].header[0] == 0xAA);
+        CHECK(frames[0].header[TIMESTAMP - 1] == 0xAA);
+        int64_t timestamp;
+        memcpy(&timestamp, &frames[0].header[TIMESTAMP], 8);
+        CHECK(timestamp > 1600000000000000LL);   // us since epoch
+    }
+
+    void endFrameTerminatesAnIncompleteFrame() {
+        Stream stream;
+        stream.start(1);
+        stream.add(nal(1, 10), true, 0, 49);
+        CHECK(stream.writer.endFrame() == 10);
+        // nothing output: nothing written, the phone keeps waiting for the next header
+        stream.start(2);
+        CHECK(stream.writer.endFrame() == 0);
+        // a gap in the slices: the rest is written in order at the end
+        stream.start(3);
+        stream.add(nal(3, 30), true, 60, 99);
+        stream.add(nal(2, 20), true, 30, 59);
+        CHECK(stream.writer.endFrame() == 50);
+
+        bool valid;
+        auto frames = parse(stream.bytes, &valid);
+        CHECK(valid);
+        CHECK(frames.size() == 2);
+        CHECK(frames[0].nals.size() == 1);
+        CHECK(frames[1].header[0] == 3);
+        CHECK(frames[1].nals.size() == 2 && frames[1].nals[0] == nal(2, 20));
+    }
+
+    void dropsNalsAfterTheLastSlice() {
+        Stream stream;
+        stream.start(1);
+        stream.add(nal(1, 10), true, 0, MBS - 1);
+        stream.add(nal(9, 10), false, 0, 0);
+        CHECK(stream.writer.endFrame() == 10);
+        stream.start(2);
+        stream.add(nal(2, 10), true, 0, MBS - 1);
+        stream.writer.endFrame();
+
+        bool valid;
+        auto frames = parse(stream.bytes, &valid);
+        CHECK(valid);
+        CHECK(frames.size() == 2);
+        CHECK(frames[1].nals[0] == nal(2, 10));
+    }
+
+    // Slice threads hand over slices at once and out of order
+    void slicesFromManyThreads() {
+        Stream stream;
+        const int SLICES = 10;
+        for (int frame = 0; frame < 200; frame++) {
+            stream.start((uint8_t) frame);
+            std::vector<int> order(SLICES);
+            for (int i = 0; i < SLICES; i++)
+                order[i] = i;
+            std::shuffle(order.begin(), order.end(), std::mt19937(frame));
+
+            std::vector<std::thread> threads;
+            for (int slice : order) {
+                threads.emplace_back([&stream, slice] {
+                    Bytes data = nal((uint8_t) slice, 100 + slice);
+                    stream.add(data, true, slice * 10, slice * 10 + 9);
+                });
+            }
+            for (auto &thread : threads)
+                thread.join();
+            CHECK(stream.writer.endFrame() == (size_t) (SLICES * 100 + 45));
+        }
+
+        bool valid;
+        auto frames = parse(stream.bytes, &valid);
+        CHECK(valid);
+        CHECK(frames.size() == 200);
+        bool ordered = true;
+        for (auto &frame : frames) {
+            ordered = ordered && frame.nals.size() == SLICES;
+            for (size_t i = 0; ordered && i < frame.nals.size(); i++)
+                ordered = frame.nals[i] == nal((uint8_t) i, 100 + i);
+        }
+        CHECK(ordered);
+    }
+}   // namespace
+
+int main() {
+    RUN_TEST(writesSlicesInMacroblockOrder);
+    RUN_TEST(headerGoesWithTheFirstNalAndIsStamped);
+    RUN_TEST(endFrameTerminatesAnIncompleteFrame);
+    RUN_TEST(dropsNalsAfterTheLastSlice);
+    RUN_TEST(slicesFromManyThreads);
+    return testResult();
+}
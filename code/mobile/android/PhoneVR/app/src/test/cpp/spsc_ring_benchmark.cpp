@@ -0,0 +1,79 @@
+// Hand-off latency of SpscRing::popWait compared with the usleep(2000) polling the stream receiver
+// used to wait for codec buffers. Not a test, run it on an idle machine:
+//   cmake --build build/native-tests --target spsc_ring_benchmark
+//   build/native-tests/spsc_ring_benchmark [hand-offs]
+
+#include "Utils/SpscRing.h"
+
+#include <algorithm>
+#include <chrono>
+#include <cstdint>
+#include <cstdio>
+#include <cstdlib>
+#include <random>
+#include <thread>
+#include <unistd.h>
+#include <vector>
+
+using namespace std::chrono;
+
+namespace {
+    typedef SpscRing<int64_t, 16> Ring;
+
+    int64_t nowNs() {
+        return duration_cast<nanoseconds>(steady_clock::now().time_since_epoch()).count();
+    }
+
+    // Pushes count timestamps at random intervals of 0.5 to 3ms, like frames from the network
+    void produce(Ring &ring, int count) {
+        std::mt19937 random(1);
+        std::uniform_int_distribution<int> intervalUs(500, 3000);
+        for (int i = 0; i < count; i++) {
+            std::this_thread::sleep_for(microseconds(intervalUs(random)));
+            ring.tryPush(nowNs());
+        }
+    }
+
+    template <typename Wait> std::vector<int64_t> measure(int count, Wait wait) {
+        Ring ring;
+        std::thread producer(produce, std::ref(ring), count);
+        std::vector<int64_t> latencies;
+        latencies.reserve(count);
+        int64_t pushedNs;
+        while ((int) latencies.size() < count) {
+            if (wait(ring, &pushedNs))
+                latencies.push_back(nowNs() - pushedNs);
+        }
+        producer.join();
+        std::sort(latencies.begin(), latencies.end());
+        return latencies;
+    }
+
+    void report(const char *name, const std::vector<int64_t> &sorted) {
+        auto percentile = [&](double p) {
+            size_t rank = (size_t) (p * sorted.size() + 0.999999);
+            return sorted[std::max<size_t>(rank, 1) - 1] / 1e3;
+        };
+        std::printf("%-16s p50 %8.1fus  p90 %8.1fus  p99 %8.1fus  max %8.1fus\n",
+                    name,
+                    percentile(0.50),
+                    percentile(0.90),
+                    percentile(0.99),
+                    sorted.back() / 1e3);
+    }
+}   // namespace
+
+int main(int argc, char **argv) {
+    int count = argc > 1 ? std::atoi(argv[1]) : 2000;
+    std::printf("%d hand-offs\n", count);
+
+    report("usleep(2000)", measure(count, [](Ring &ring, int64_t *value) {
+               while (!ring.tryPop(value))
+                   usleep(2000);
+               return true;
+           }));
+    report("popWait", measure(count, [](Ring &ring, int64_t *value) {
+               return ring.popWait(value, milliseconds(10));
+           }));
+    return 0;
+}
@@ -0,0 +1,140 @@
+#include "Utils/SpscRing.h"
+#include "test_main.h"
+
+#include <algorithm>
+#include <chrono>
+#include <cstdint>
+#include <cstdio>
+#include <thread>
+#include <vector>
+
+using namespace std::chrono;
+
+namespace {
+    // about the size of the FilledVidBuf handed to the codec thread
+    struct Item {
+        uint64_t sequence;
+        int64_t pushedNs;
+        uint32_t payload;
+    };
+
+    int64_t nowNs() {
+        return duration_cast<nanoseconds>(steady_clock::now().time_since_epoch()).count();
+    }
+
+    void keepsOrderUpToCapacity() {
+        SpscRing<int, 4> ring;
+        int value = -1;
+        CHECK(!ring.tryPop(&value));
+        CHECK(ring.front() == nullptr);
+
+        // wraps around a few times
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++)
+                CHECK(ring.tryPush(round * 10 + i));
+            CHECK(!ring.tryPush(99));
+            CHECK(ring.size() == 4);
+
+            CHECK(*ring.front() == round * 10);
+            ring.pop();
+            for (int i = 1; i < 4; i++) {
+                CHECK(ring.tryPop(&value));
+                CHECK(value == round * 10 + i);
+            }
+            CHECK(ring.size() == 0);
+        }
+
+        ring.tryPush(1);
+        ring.clear();
+        CHECK(ring.size() == 0);
+        CHECK(!ring.tryPop(&value));
+    }
+
+    void popWaitTimesOut() {
+        SpscRing<int, 4> ring;
+        int value;
+        auto start = steady_clock::now();
+        CHECK(!ring.popWait(&value, microseconds(5000)));
+        CHECK(steady_clock::now() - start >= microseconds(5000));
+
+        ring.tryPush(7);
+        CHECK(ring.popWait(&value, microseconds(0)));
+        CHECK(value == 7);
+    }
+
+    // Pushes count items as fast as the ring takes them, with pauses so the consumer sleeps too
+    void produce(SpscRing<Item, 8> &ring, uint64_t count) {
+        for (uint64_t i = 0; i < count; i++) {
+            Item item = {i, nowNs(), (uint32_t) (i * 2654435761u)};
+            while (!ring.tryPush(item))
+                std::this_thread::yield();
+            if (i % 4096 == 0)
+                std::this_thread::sleep_for(microseconds(50));
+        }
+    }
+
+    void stressKeepsEveryItemInOrder() {
+        const uint64_t count = 2000000;
+        SpscRing<Item, 8> ring;
+        std::thread producer(produce, std::ref(ring), count);
+
+        uint64_t expected = 0;
+        int mismatches = 0;
+        // the producer never pauses for long, so waiting seconds is a lost wake up, not a
+        // descheduled thread; a lost item shows as a mismatch
+        int timeouts = 0;
+        while (expected < count && timeouts < 3) {
+            Item item;
+            if (!ring.popWait(&item, seconds(5))) {
+                timeouts++;
+                continue;
+            }
+            if (item.sequence != expected || item.payload != (uint32_t) (expected * 2654435761u))
+                mismatches++;
+            expected = item.sequence + 1;
+        }
+        producer.join();
+
+        CHECK(expected == count);
+        CHECK(mismatches == 0);
+        CHECK(timeouts == 0);
+    }
+
+    // A frame every 2ms, like the receiver at 500 packets/s. The consumer sleeps in between, so
+    // this measures the wake up.
+    void wakesSleepingConsumerQuickly() {
+        const int count = 500;
+        SpscRing<Item, 8> ring;
+        std::thread producer([&] {
+            for (int i = 0; i < count; i++) {
+                std::this_thread::sleep_for(microseconds(2000));
+                ring.tryPush({(uint64_t) i, nowNs(), 0});
+            }
+        });
+
+        std::vector<int64_t> latencies;
+        Item item;
+        while ((int) latencies.size() < count && ring.popWait(&item, milliseconds(100)))
+            latencies.push_back(nowNs() - item.pushedNs);
+        producer.join();
+
+        CHECK((int) latencies.size() == count);
+        std::sort(latencies.begin(), latencies.end());
+        int64_t p50 = latencies[latencies.size() / 2];
+        int64_t p99 = latencies[latencies.size() * 99 / 100];
+        std::printf("hand-off latency p50 %.1fus p99 %.1fus max %.1fus\n",
+                    p50 / 1e3,
+                    p99 / 1e3,
+                    latencies.back() / 1e3);
+        // the old usleep(2000) polling took 1ms on average, a woken futex a few microseconds
+        CHECK(p50 < 500000);
+    }
+}   // namespace
+
+int main() {
+    RUN_TEST(keepsOrderUpToCapacity);
+    RUN_TEST(popWaitTimesOut);
+    RUN_TEST(stressKeepsEveryItemInOrder);
+    RUN_TEST(wakesSleepingConsumerQuickly);
+    return testResult();
+}
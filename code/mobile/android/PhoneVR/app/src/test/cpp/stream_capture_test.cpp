@@ -0,0 +1,172 @@
+#include "PVRStreamCapture.h"
+#include "test_main.h"
+
+#include <chrono>
+#include <cstring>
+#include <fstream>
+#include <iterator>
+#include <thread>
+#include <unistd.h>
+
+using namespace std::chrono;
+
+namespace {
+    typedef std::vector<uint8_t> Bytes;
+
+    std::string tempPath(const char *name) {
+        return "/tmp/" + std::string(name) + "-" + std::to_string(getpid()) + ".pvrcap";
+    }
+
+    Bytes frameHeader(int64_t pts) {
+        Bytes header(64, 0);
+        memcpy(&header[0], &pts, 8);
+        return header;
+    }
+
+    Bytes nal(int frame) { return Bytes(100 + frame * 37, (uint8_t) frame); }
+
+    // frame i received at i * spacingUs
+    void writeCapture(const std::string &path, int frames, int64_t spacingUs) {
+        StreamCaptureWriter writer;
+        CHECK(writer.open(path));
+        Bytes header = {0, 0, 0, 1, 0x67, 0x42};
+        writer.addHeaderNals(header.data(), header.size(), 0);
+        for (int i = 0; i < frames; i++) {
+            Bytes h = frameHeader(1000 + i), n = nal(i);
+            writer.addFrame(h.data(), h.size(), n.data(), n.size(), i * spacingUs);
+        }
+        writer.close();
+    }
+
+    bool frameMatches(const CapturedFrame &frame, int i, int64_t spacingUs) {
+        int64_t pts;
+        memcpy(&pts, &frame.header[0], 8);
+        return frame.header.size() == 64 && pts == 1000 + i && frame.nal == nal(i) &&
+               frame.receiveUs == i * spacingUs;
+    }
+
+    void readsBackWhatWasWritten() {
+        auto path = tempPath("roundtrip");
+        writeCapture(path, 50, 16667);
+
+        StreamCaptureReader reader;
+        CHECK(reader.open(path));
+        CHECK(reader.indexed());
+        CHECK(reader.frameCount() == 50);
+        CHECK(reader.headerNals() == Bytes({0, 0, 0, 1, 0x67, 0x42}));
+        CapturedFrame frame;
+        bool matches = true;
+        // in any order, through the index
+        for (int i = 49; i >= 0; i--)
+            matches = matches && reader.readFrame(i, &frame) && frameMatches(frame, i, 16667);
+        CHECK(matches);
+        CHECK(!reader.readFrame(50, &frame));
+        unlink(path.c_str());
+    }
+
+    void readsACaptureCutOff() {
+        auto path = tempPath("cut");
+        writeCapture(path, 20, 1000);
+        std::ifstream in(path, std::ios::binary);
+        Bytes bytes((std::istreambuf_iterator<char>(in)), std::istreambuf_iterator<char>());
+        in.close();
+        // like a killed app: the index and half of the last frame lost
+        size_t cut = bytes.size() - (20 * 8 + 16) - (64 + nal(19).size()) / 2;
+        std::ofstream(path, std::ios::binary | std::ios::trunc)
+            .write(reinterpret_cast<const char *>(bytes.data()), (std::streamsize) cut);
+
+        StreamCaptureReader reader;
+        CHECK(reader.open(path));
+        CHECK(!reader.indexed());
+        CHECK(reader.frameCount() == 19);
+        CapturedFrame frame;
+        CHECK(reader.readFrame(18, &frame) && frameMatches(frame, 18, 1000));
+        unlink(path.c_str());
+    }
+
+    void rejectsOtherFiles() {
+        auto path = tempPath("other");
+        std::ofstream(path, std::ios::binary) << "not a capture at all";
+        StreamCaptureReader reader;
+        CHECK(!reader.open(path));
+        CHECK(!reader.open(path + ".missing"));
+
+        // a capture without header NALs cannot configure the decoder
+        StreamCaptureWriter writer;
+        CHECK(writer.open(path));
+        writer.close();
+        CHECK(!writer.isOpen());
+        CHECK(!reader.open(path));
+        unlink(path.c_str());
+    }
+
+    void replaysAtMaxSpeed() {
+        auto path = tempPath("fast");
+        writeCapture(path, 30, 100000);   // 3s as received
+        StreamCaptureReader reader;
+        CHECK(reader.open(path));
+
+        StreamReplay replay(reader, false);
+        CapturedFrame frame;
+        auto start = steady_clock::now();
+        int frames = 0;
+        bool ordered = true;
+        while (replay.next(&frame))
+            ordered = ordered && frameMatches(frame, frames++, 100000);
+        CHECK(frames == 30 && ordered);
+        CHECK(steady_clock::now() - start < milliseconds(500));
+        unlink(path.c_str());
+    }
+
+    void replaysAtRecordedSpeed() {
+        auto path = tempPath("realtime");
+        writeCapture(path, 6, 20000);
+        StreamCaptureReader reader;
+        CHECK(reader.open(path));
+
+        StreamReplay replay(reader, true);
+        CapturedFrame frame;
+        steady_clock::time_point start;
+        bool onTime = true;
+        for (int i = 0; i < 6; i++) {
+            CHECK(replay.next(&frame));
+            if (i == 0)
+                start = steady_clock::now();
+            auto late = steady_clock::now() - start - microseconds(i * 20000);
+            onTime = onTime && late > -milliseconds(1) && late < milliseconds(15);
+        }
+        CHECK(onTime);
+        CHECK(!replay.next(&frame));
+        unlink(path.c_str());
+    }
+
+    void stopWakesAWaitingReplay() {
+        auto path = tempPath("stop");
+        writeCapture(path, 2, 10000000);   // 10s between the frames
+        StreamCaptureReader reader;
+        CHECK(reader.open(path));
+
+        StreamReplay replay(reader, true);
+        CapturedFrame frame;
+        CHECK(replay.next(&frame));
+        std::thread stopper([&] {
+            std::this_thread::sleep_for(milliseconds(20));
+            replay.stop();
+        });
+        auto start = steady_clock::now();
+        CHECK(!replay.next(&frame));
+        CHECK(steady_clock::now() - start < seconds(1));
+        stopper.join();
+        unlink(path.c_str());
+    }
+}   // namespace
+
+int main() {
+    RUN_TEST(readsBackWhatWasWritten);
+    RUN_TEST(readsACaptureCutOff);
+    RUN_TEST(rejectsOtherFiles);
+    RUN_TEST(replaysAtMaxSpeed);
+    RUN_TEST(replaysAtRecordedSpeed);
+    RUN_TEST(stopWakesAWaitingReplay);
+    return testResult();
+}
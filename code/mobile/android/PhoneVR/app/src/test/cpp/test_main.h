@@ -0,0 +1,41 @@
+#pragma once
+
+// Minimal test harness for the host tests, the native code has no test framework.
+
+#include <cstdio>
+#include <cstdlib>
+
+static int testFailures = 0;
+
+#define CHECK(condition)                                                                           \
+    do {                                                                                           \
+        if (!(condition)) {                                                                        \
+            std::printf("%s:%d: CHECK(%s) failed\n", __FILE__, __LINE__, #condition);              \
+            testFailures++;                                                                        \
+        }                                                                                          \
+    } while (0)
+
+#define CHECK_NEAR(expected, actual, tolerance)                                                    \
+    do {                                                                                           \
+        double e_ = (double) (expected);                                                           \
+        double a_ = (double) (actual);                                                             \
+        if (a_ < e_ - (tolerance) || a_ > e_ + (tolerance)) {                                      \
+            std::printf("%s:%d: %s = %f, expected %f +- %f\n",                                     \
+                        __FILE__,                                                                  \
+                        __LINE__,                                                                  \
+                        #actual,                                                                   \
+                        a_,                                                                        \
+                        e_,                                                                        \
+                        (double) (tolerance));                                                     \
+            testFailures++;                                                                        \
+        }                                                                                          \
+    } while (0)
+
+#define RUN_TEST(test)                                                                             \
+    do {                                                                                           \
+        int before_ = testFailures;                                                                \
+        test();                                                                                    \
+        std::printf("%s %s\n", testFailures == before_ ? "PASS" : "FAIL", #test);                  \
+    } while (0)
+
+inline int testResult() { return testFailures == 0 ? EXIT_SUCCESS : EXIT_FAILURE; }
@@ -0,0 +1,318 @@
+#include "PVRVideoTransport.h"
+#include "test_main.h"
+
+#include <algorithm>
+#include <arpa/inet.h>
+#include <atomic>
+#include <cstring>
+#include <netinet/in.h>
+#include <sys/socket.h>
+#include <thread>
+#include <unistd.h>
+#include <vector>
+
+namespace {
+    typedef std::vector<uint8_t> Packet;
+
+    const uint16_t SHARD = 100;
+
+    // id in the first 4 bytes, the rest depends on id and position
+    std::vector<uint8_t> makeFrame(uint32_t id, size_t size) {
+        std::vector<uint8_t> frame(size);
+        for (size_t i = 0; i < size; i++)
+            frame[i] = (uint8_t) (id * 31 + i * 7);
+        if (size >= 4)
+            memcpy(&frame[0], &id, 4);
+        return frame;
+    }
+
+    bool isFrame(const VideoReassembler &reassembler, const std::vector<uint8_t> &frame) {
+        return reassembler.frameSize() == frame.size() &&
+               std::equal(frame.begin(), frame.end(), reassembler.frame());
+    }
+
+    std::vector<Packet> packetize(VideoPacketizer &packetizer, const std::vector<uint8_t> &frame) {
+        std::vector<Packet> packets;
+        packetizer.send(frame.data(), frame.size(), [&](const uint8_t *packet, size_t size) {
+            packets.emplace_back(packet, packet + size);
+        });
+        return packets;
+    }
+
+    // true if a packet completed a frame
+    bool feed(VideoReassembler &reassembler, const std::vector<Packet> &packets) {
+        bool completed = false;
+        for (auto &packet : packets)
+            completed = reassembler.add(packet.data(), packet.size()) || completed;
+        return completed;
+    }
+
+    void roundTripsFramesOfAnySize() {
+        VideoPacketizer packetizer(SHARD, 25);
+        VideoReassembler reassembler;
+        uint32_t id = 0;
+        for (size_t size : {0, 1, 99, 100, 101, 1000, 12345}) {
+            auto frame = makeFrame(id++, size);
+            auto packets = packetize(packetizer, frame);
+            size_t dataShards = std::max<size_t>((size + SHARD - 1) / SHARD, 1);
+            CHECK(packets.size() == dataShards + (dataShards + 3) / 4);
+            // the data shards are enough, the parity after them is dropped as late
+            bool completed = false;
+            for (size_t i = 0; i < dataShards; i++)
+                completed = reassembler.add(packets[i].data(), packets[i].size());
+            CHECK(completed);
+            CHECK(isFrame(reassembler, frame));
+            CHECK(reassembler.frameId() == id - 1);
+            for (size_t i = dataShards; i < packets.size(); i++)
+                CHECK(!reassembler.add(packets[i].data(), packets[i].size()));
+        }
+        CHECK(reassembler.stats().frames == 7);
+        CHECK(reassembler.stats().framesRecovered == 0);
+    }
+
+    void recoversOneLossPerParityGroup() {
+        VideoPacketizer packetizer(SHARD, 25);
+        VideoReassembler reassembler;
+
+        // 10 data shards, 3 parity shards: groups {0,3,6,9} {1,4,7} {2,5,8}
+        auto frame = makeFrame(0, 1000);
+        auto packets = packetize(packetizer, frame);
+        CHECK(packets.size() == 13);
+        packets.erase(packets.begin() + 9);   // the short last shard
+        packets.erase(packets.begin() + 4);
+        packets.erase(packets.begin() + 2);
+        CHECK(feed(reassembler, packets));
+        CHECK(isFrame(reassembler, frame));
+        CHECK(reassembler.stats().framesRecovered == 1);
+        CHECK(reassembler.stats().shardsRecovered == 3);
+
+        // a burst as long as the parity count hits each group once
+        frame = makeFrame(1, 1000);
+        packets = packetize(packetizer, frame);
+        packets.erase(packets.begin() + 5, packets.begin() + 8);
+        CHECK(feed(reassembler, packets));
+        CHECK(isFrame(reassembler, frame));
+
+        // two losses in a group cannot be recovered
+        frame = makeFrame(2, 1000);
+        packets = packetize(packetizer, frame);
+        packets.erase(packets.begin() + 3);
+        packets.erase(packets.begin());
+        CHECK(!feed(reassembler, packets));
+
+        // and are given up when the next frame completes
+        frame = makeFrame(3, 1000);
+        CHECK(feed(reassembler, packetize(packetizer, frame)));
+        CHECK(isFrame(reassembler, frame));
+        CHECK(reassembler.stats().framesLost == 1);
+        CHECK(reassembler.stats().frames == 3);
+    }
+
+    void withoutParityEveryShardIsNeeded() {
+        VideoPacketizer packetizer(SHARD, 0);
+        VideoReassembler reassembler;
+        auto packets = packetize(packetizer, makeFrame(0, 1000));
+        CHECK(packets.size() == 10);
+        packets.pop_back();
+        CHECK(!feed(reassembler, packets));
+    }
+
+    void reorderedPackets() {
+        VideoPacketizer packetizer(SHARD, 20);
+        VideoReassembler reassembler;
+
+        // within a frame any order works
+        auto frame0 = makeFrame(0, 2000);
+        auto packets = packetize(packetizer, frame0);
+        std::reverse(packets.begin(), packets.end());
+        int completed = 0;
+        for (auto &packet : packets)
+            completed += reassembler.add(packet.data(), packet.size()) ? 1 : 0;
+        CHECK(completed == 1);
+
+        // frames interleaved are each delivered when complete
+        auto frame1 = makeFrame(1, 500);
+        auto frame2 = makeFrame(2, 500);
+        auto packets1 = packetize(packetizer, frame1);
+        auto packets2 = packetize(packetizer, frame2);
+        for (size_t i = 0; i < 4; i++) {
+            CHECK(!reassembler.add(packets1[i].data(), packets1[i].size()));
+            CHECK(!reassembler.add(packets2[i].data(), packets2[i].size()));
+        }
+        CHECK(reassembler.add(packets1[4].data(), packets1[4].size()));
+        CHECK(isFrame(reassembler, frame1));
+        CHECK(reassembler.add(packets2[4].data(), packets2[4].size()));
+        CHECK(isFrame(reassembler, frame2));
+
+        // a frame completing first gives up the one before it, its late packets are dropped
+        auto frame3 = makeFrame(3, 500);
+        auto frame4 = makeFrame(4, 500);
+        auto packets3 = packetize(packetizer, frame3);
+        auto packets4 = packetize(packetizer, frame4);
+        CHECK(!reassembler.add(packets3[0].data(), packets3[0].size()));
+        CHECK(feed(reassembler, packets4));
+        CHECK(isFrame(reassembler, frame4));
+        uint64_t dropped = reassembler.stats().packetsDropped;
+        CHECK(!feed(reassembler, packets3));
+        CHECK(reassembler.stats().packetsDropped == dropped + packets3.size());
+        CHECK(reassembler.stats().framesLost == 1);
+    }
+
+    void dropsDuplicateAndMalformedPackets() {
+        VideoPacketizer packetizer(SHARD, 0);
+        VideoReassembler reassembler;
+        auto frame = makeFrame(0, 250);
+        auto packets = packetize(packetizer, frame);
+
+        CHECK(!reassembler.add(packets[0].data(), packets[0].size()));
+        CHECK(!reassembler.add(packets[0].data(), packets[0].size()));
+        // truncated
+        CHECK(!reassembler.add(packets[1].data(), packets[1].size() - 1));
+        CHECK(!reassembler.add(packets[1].data(), 10));
+        // shard index past the frame
+        Packet bad = packets[1];
+        uint16_t index = 7;
+        memcpy(&bad[offsetof(VideoPacketHeader, index)], &index, 2);
+        CHECK(!reassembler.add(bad.data(), bad.size()));
+        CHECK(reassembler.stats().packetsDropped == 4);
+
+        CHECK(!reassembler.add(packets[1].data(), packets[1].size()));
+        CHECK(reassembler.add(packets[2].data(), packets[2].size()));
+        CHECK(isFrame(reassembler, frame));
+    }
+
+    void acceptsARestartedStream() {
+        VideoPacketizer packetizer(SHARD, 0);
+        VideoReassembler reassembler;
+        for (uint32_t id = 0; id < 1000; id++)
+            CHECK(feed(reassembler, packetize(packetizer, makeFrame(id, 150))));
+
+        // a late frame is dropped, frame 0 of a new server long ago is a new stream
+        VideoPacketizer restarted(SHARD, 0);
+        auto frame = makeFrame(0, 150);
+        CHECK(feed(reassembler, packetize(restarted, frame)));
+        CHECK(isFrame(reassembler, frame));
+        CHECK(reassembler.frameId() == 0);
+    }
+
+    void simulatorDropsAndReorders() {
+        std::vector<uint32_t> sent;
+        PacketLossSimulator simulator(
+            [&](const uint8_t *packet, size_t) {
+                uint32_t value;
+                memcpy(&value, packet, 4);
+                sent.push_back(value);
+            },
+            0.1,
+            0.5,
+            0.05,
+            3);
+        for (uint32_t i = 0; i < 10000; i++)
+            simulator.send(reinterpret_cast<const uint8_t *>(&i), 4);
+        simulator.flush();
+
+        CHECK(sent.size() + simulator.dropped() == 10000);
+        // losses start at 10% and continue at 50%, 0.1 / (1 - 0.5 + 0.1) of the packets are lost
+        CHECK_NEAR(1 / 6.0, simulator.dropped() / 10000.0, 0.02);
+        CHECK_NEAR(0.05 * 5 / 6.0, simulator.reordered() / 10000.0, 0.01);
+        int late = 0;
+        for (size_t i = 1; i < sent.size(); i++)
+            late += sent[i] < sent[i - 1] ? 1 : 0;
+        CHECK(late > 0 && (uint64_t) late <= simulator.reordered());
+    }
+
+    // Frames through the simulator and a real UDP socket on loopback. Every frame delivered must
+    // be intact, and most of the lost packets recovered.
+    void loopbackWithLossAndReordering() {
+        int receiver = socket(AF_INET, SOCK_DGRAM, 0);
+        int sender = socket(AF_INET, SOCK_DGRAM, 0);
+        CHECK(receiver >= 0 && sender >= 0);
+        int bufferSize = 8 << 20;
+        setsockopt(receiver, SOL_SOCKET, SO_RCVBUF, &bufferSize, sizeof(bufferSize));
+        timeval timeout = {0, 200000};
+        setsockopt(receiver, SOL_SOCKET, SO_RCVTIMEO, &timeout, sizeof(timeout));
+
+        sockaddr_in address = {};
+        address.sin_family = AF_INET;
+        address.sin_addr.s_addr = htonl(INADDR_LOOPBACK);
+        address.sin_port = 0;
+        CHECK(bind(receiver, (sockaddr *) &address, sizeof(address)) == 0);
+        socklen_t length = sizeof(address);
+        getsockname(receiver, (sockaddr *) &address, &length);
+
+        const uint32_t FRAMES = 300;
+        std::atomic<bool> sending{true};
+        std::thread senderThread([&] {
+            VideoPacketizer packetizer(PVR_VIDEO_SHARD_SIZE, 20);
+            PacketLossSimulator simulator(
+                [&](const uint8_t *packet, size_t size) {
+                    sendto(sender, packet, size, 0, (sockaddr *) &address, sizeof(address));
+                },
+                0.01,
+                0.3,
+                0.01,
+                4);
+            for (uint32_t id = 0; id < FRAMES; id++) {
+                auto frame = makeFrame(id, 5000 + (id * 7919) % 60000);
+                packetizer.send(
+                    frame.data(), frame.size(), [&](const uint8_t *packet, size_t size) {
+                        simulator.send(packet, size);
+                    });
+                // paced like a stream, so loopback itself does not drop
+                usleep(1000);
+            }
+            simulator.flush();
+            sending = false;
+        });
+
+        VideoReassembler reassembler;
+        std::vector<uint8_t> packet(2048);
+        int delivered = 0;
+        int corrupt = 0;
+        int64_t lastId = -1;
+        bool ordered = true;
+        while (true) {
+            ssize_t size = recv(receiver, packet.data(), packet.size(), 0);
+            if (size < 0) {
+                if (!sending)
+                    break;
+                continue;
+            }
+            if (!reassembler.add(packet.data(), (size_t) size))
+                continue;
+            uint32_t id = reassembler.frameId();
+            ordered = ordered && (int64_t) id > lastId;
+            lastId = id;
+            auto frame = makeFrame(id, 5000 + (id * 7919) % 60000);
+            corrupt += isFrame(reassembler, frame) ? 0 : 1;
+            delivered++;
+        }
+        senderThread.join();
+        close(sender);
+        close(receiver);
+
+        const VideoReceiveStats &stats = reassembler.stats();
+        std::printf("    %d of %u frames, %llu recovered, %llu lost, %llu shards recovered\n",
+                    delivered,
+                    FRAMES,
+                    (unsigned long long) stats.framesRecovered,
+                    (unsigned long long) stats.framesLost,
+                    (unsigned long long) stats.shardsRecovered);
+        CHECK(corrupt == 0);
+        CHECK(ordered);
+        CHECK(delivered >= (int) (FRAMES * 0.95));
+        CHECK(stats.framesRecovered > 0);
+    }
+}   // namespace
+
+int main() {
+    RUN_TEST(roundTripsFramesOfAnySize);
+    RUN_TEST(recoversOneLossPerParityGroup);
+    RUN_TEST(withoutParityEveryShardIsNeeded);
+    RUN_TEST(reorderedPackets);
+    RUN_TEST(dropsDuplicateAndMalformedPackets);
+    RUN_TEST(acceptsARestartedStream);
+    RUN_TEST(simulatorDropsAndReorders);
+    RUN_TEST(loopbackWithLossAndReordering);
+    return testResult();
+}
@@ -0,0 +1,135 @@
+#include "test_main.h"
+#include "vsync_predictor.h"
+
+#include <cmath>
+#include <cstdint>
+#include <random>
+
+namespace {
+    const int64_t START_NS = 123456789000;
+    const double PERIOD_60 = 1e9 / 60;
+    const double PERIOD_90 = 1e9 / 90;
+    const double PERIOD_120 = 1e9 / 120;
+
+    // Adds count vsyncs from startNs on, with uniform jitter of +- jitterNs. Vsyncs are dropped
+    // with dropChance, like callbacks of a busy main thread. Returns the time of the vsync after
+    // the last one.
+    double addVsyncs(VsyncPredictor &predictor,
+                     double startNs,
+                     double periodNs,
+                     int count,
+                     double jitterNs = 0,
+                     double dropChance = 0,
+                     unsigned seed = 1) {
+        std::mt19937 random(seed);
+        std::uniform_real_distribution<double> jitter(-jitterNs, jitterNs);
+        std::uniform_real_distribution<double> drop(0, 1);
+        double t = startNs;
+        for (int i = 0; i < count; i++, t += periodNs) {
+            if (dropChance > 0 && drop(random) < dropChance) {
+                continue;
+            }
+            predictor.addVsync(std::llround(t + (jitterNs > 0 ? jitter(random) : 0)));
+        }
+        return t;
+    }
+
+    void usesNominalPeriodWithoutVsyncs() {
+        VsyncPredictor predictor((int64_t) PERIOD_90);
+        CHECK(!predictor.hasModel());
+        CHECK(predictor.periodNs() == (int64_t) PERIOD_90);
+        CHECK(predictor.nextVsyncNs(START_NS) == START_NS + (int64_t) PERIOD_90);
+
+        // the phase comes from the first vsync
+        predictor.addVsync(START_NS);
+        CHECK_NEAR(START_NS + 2 * PERIOD_90, predictor.nextVsyncNs(START_NS + 1.5 * PERIOD_90), 1);
+    }
+
+    void learnsSteadyVsync() {
+        // the nominal period is off, like a rounded Display.getRefreshRate
+        VsyncPredictor predictor((int64_t) (1e9 / 59));
+        double next = addVsyncs(predictor, START_NS, PERIOD_60, 10);
+        CHECK(predictor.hasModel());
+        CHECK_NEAR(PERIOD_60, predictor.periodNs(), 1);
+
+        int64_t now = std::llround(next - PERIOD_60 / 2);
+        CHECK_NEAR(next, predictor.nextVsyncNs(now), 2);
+        CHECK_NEAR(next + 2 * PERIOD_60, predictor.predictDisplayTimeNs(now, 2), 4);
+        // a vsync at exactly now is not the next one
+        CHECK_NEAR(next + PERIOD_60, predictor.nextVsyncNs(std::llround(next)), 2);
+    }
+
+    void averagesJitter() {
+        VsyncPredictor predictor;
+        double next = addVsyncs(predictor, START_NS, PERIOD_60, 200, 1e6);
+        CHECK_NEAR(PERIOD_60, predictor.periodNs(), 50e3);
+        // a single vsync is up to 1ms off, the fit much less
+        CHECK_NEAR(next, predictor.nextVsyncNs(std::llround(next - 1e6)), 0.5e6);
+    }
+
+    void skippedCallbacksKeepThePeriod() {
+        VsyncPredictor predictor;
+        double next = addVsyncs(predictor, START_NS, PERIOD_60, 300, 0.3e6, 0.3);
+        CHECK_NEAR(PERIOD_60, predictor.periodNs(), 20e3);
+        CHECK_NEAR(next, predictor.nextVsyncNs(std::llround(next - PERIOD_60 / 2)), 0.3e6);
+    }
+
+    void followsRefreshRateIncrease() {
+        VsyncPredictor predictor((int64_t) PERIOD_60);
+        double t = addVsyncs(predictor, START_NS, PERIOD_60, 60, 0.2e6);
+        CHECK_NEAR(PERIOD_60, predictor.periodNs(), 100e3);
+        // every third 90Hz vsync matches a 60Hz one
+        double next = addVsyncs(predictor, t, PERIOD_90, 20, 0.2e6, 0, 2);
+        CHECK_NEAR(PERIOD_90, predictor.periodNs(), 100e3);
+        CHECK_NEAR(next, predictor.nextVsyncNs(std::llround(next - PERIOD_90 / 2)), 0.3e6);
+    }
+
+    void followsRefreshRateDecrease() {
+        VsyncPredictor predictor((int64_t) PERIOD_90);
+        double t = addVsyncs(predictor, START_NS, PERIOD_90, 60, 0.2e6);
+        CHECK_NEAR(PERIOD_90, predictor.periodNs(), 100e3);
+        double next = addVsyncs(predictor, t, PERIOD_60, 20, 0.2e6, 0, 2);
+        CHECK_NEAR(PERIOD_60, predictor.periodNs(), 100e3);
+        CHECK_NEAR(next, predictor.nextVsyncNs(std::llround(next - PERIOD_60 / 2)), 0.3e6);
+    }
+
+    void detectsHalvedRefreshRate() {
+        // every 60Hz vsync is also a 120Hz one, only the missing vsyncs tell them apart
+        VsyncPredictor predictor((int64_t) PERIOD_120);
+        double t = addVsyncs(predictor, START_NS, PERIOD_120, 60);
+        CHECK_NEAR(PERIOD_120, predictor.periodNs(), 1e3);
+        double next = addVsyncs(predictor, t, PERIOD_60, 20);
+        CHECK_NEAR(PERIOD_60, predictor.periodNs(), 1e3);
+        CHECK_NEAR(next, predictor.nextVsyncNs(std::llround(next - PERIOD_120)), 1e3);
+    }
+
+    void singleLateCallbackIsIgnored() {
+        VsyncPredictor predictor;
+        double t = addVsyncs(predictor, START_NS, PERIOD_60, 40);
+        predictor.addVsync(std::llround(t + PERIOD_60 / 2));
+        double next = addVsyncs(predictor, t + PERIOD_60, PERIOD_60, 5);
+        CHECK_NEAR(PERIOD_60, predictor.periodNs(), 1e3);
+        CHECK_NEAR(next, predictor.nextVsyncNs(std::llround(next - PERIOD_60 / 2)), 1e3);
+    }
+
+    void nominalPeriodRestartsTheModel() {
+        VsyncPredictor predictor;
+        addVsyncs(predictor, START_NS, PERIOD_60, 40);
+        predictor.setNominalPeriod((int64_t) PERIOD_90);
+        CHECK(!predictor.hasModel());
+        CHECK(predictor.periodNs() == (int64_t) PERIOD_90);
+    }
+}   // namespace
+
+int main() {
+    RUN_TEST(usesNominalPeriodWithoutVsyncs);
+    RUN_TEST(learnsSteadyVsync);
+    RUN_TEST(averagesJitter);
+    RUN_TEST(skippedCallbacksKeepThePeriod);
+    RUN_TEST(followsRefreshRateIncrease);
+    RUN_TEST(followsRefreshRateDecrease);
+    RUN_TEST(detectsHalvedRefreshRate);
+    RUN_TEST(singleLateCallbackIsIgnored);
+    RUN_TEST(nominalPeriodRestartsTheModel);
+    return testResult();
+}
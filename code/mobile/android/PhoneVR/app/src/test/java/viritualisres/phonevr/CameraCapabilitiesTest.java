@@ -0,0 +1,67 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CameraCapabilitiesTest {
+
+    @Test
+    public void exactSizeWins() {
+        int[] widths = {1920, 1280, 960};
+        int[] heights = {1080, 720, 720};
+        assertEquals(1, CameraCapabilities.chooseOptimalSize(widths, heights, 1280, 720));
+    }
+
+    @Test
+    public void smallestBigEnoughSizeByArea() {
+        // 800x800 is the smallest by area, comparing against b.width * b.width kept 720x1280
+        int[] widths = {1920, 720, 800, 640};
+        int[] heights = {1080, 1280, 800, 480};
+        assertEquals(2, CameraCapabilities.chooseOptimalSize(widths, heights, 1200, 700));
+    }
+
+    @Test
+    public void firstSizeWithoutBigEnoughOne() {
+        int[] widths = {640, 320};
+        int[] heights = {480, 240};
+        assertEquals(0, CameraCapabilities.chooseOptimalSize(widths, heights, 1200, 1080));
+    }
+
+    @Test
+    public void highestFpsRange() {
+        int[] lowers = {15, 30, 7, 24};
+        int[] uppers = {30, 30, 60, 60};
+        assertEquals(3, CameraCapabilities.chooseFpsRange(lowers, uppers));
+        assertEquals(-1, CameraCapabilities.chooseFpsRange(new int[0], new int[0]));
+    }
+
+    @Test
+    public void encodeDecodeRoundTrip() {
+        CameraCapabilities caps = new CameraCapabilities("0", 1280, 720, 24, 60, true);
+        String value = caps.encode("google/oriole|14", 1200, 1080);
+
+        CameraCapabilities decoded =
+                CameraCapabilities.decode(value, "google/oriole|14", 1200, 1080);
+        assertEquals("0", decoded.cameraId);
+        assertEquals(1280, decoded.previewWidth);
+        assertEquals(720, decoded.previewHeight);
+        assertEquals(24, decoded.fpsMin);
+        assertEquals(60, decoded.fpsMax);
+        assertTrue(decoded.realtimeTimestamps);
+    }
+
+    @Test
+    public void decodeRejectsOtherDeviceOrSize() {
+        String value = new CameraCapabilities("0", 1280, 720, 24, 60, true).encode("a", 1200, 1080);
+        assertNull(CameraCapabilities.decode(value, "b", 1200, 1080));
+        assertNull(CameraCapabilities.decode(value, "a", 1080, 1200));
+        assertNull(CameraCapabilities.decode(null, "a", 1200, 1080));
+        // entries written before the timestamp clock was probed
+        assertNull(CameraCapabilities.decode("a|1200|1080|0|1280|720|24|60", "a", 1200, 1080));
+        assertNull(CameraCapabilities.decode("a|1200|1080|0|x|720|24|60|true", "a", 1200, 1080));
+    }
+}
@@ -0,0 +1,75 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import viritualisres.phonevr.DisplayModes.Mode;
+
+public class DisplayModesTest {
+
+    // a 120Hz phone that starts at 60Hz, with a lower resolution at 120Hz too
+    private static final Mode FHD_60 = new Mode(1, 2400, 1080, 60.0001f);
+    private static final Mode FHD_90 = new Mode(2, 2400, 1080, 90f);
+    private static final Mode FHD_120 = new Mode(3, 2400, 1080, 120f);
+    private static final Mode HD_120 = new Mode(4, 1600, 720, 120f);
+    private static final Mode FHD_59 = new Mode(5, 2400, 1080, 59.94f);
+
+    private static final List<Mode> MODES = Arrays.asList(FHD_60, HD_120, FHD_120, FHD_59, FHD_90);
+
+    @Test
+    public void offersEveryRateOfTheCurrentResolution() {
+        DisplayModes modes = new DisplayModes(MODES, FHD_60);
+        // 59.94 is the same rate as 60
+        assertArrayEquals(new float[] {120f, 90f, 60.0001f}, modes.refreshRates(), 0);
+
+        DisplayModes hd = new DisplayModes(MODES, HD_120);
+        assertArrayEquals(new float[] {120f}, hd.refreshRates(), 0);
+
+        // a display without any mode list still offers its rate
+        DisplayModes none = new DisplayModes(Arrays.asList(), FHD_90);
+        assertArrayEquals(new float[] {90f}, none.refreshRates(), 0);
+    }
+
+    @Test
+    public void choosesTheHighestRateWithinTheLimit() {
+        DisplayModes modes = new DisplayModes(MODES, FHD_60);
+        assertEquals(FHD_120, modes.choose(0));
+        assertEquals(FHD_90, modes.choose(100));
+        assertEquals(FHD_60, modes.choose(DisplayModes.STANDARD_REFRESH_RATE));
+        // below every mode, the lowest is the best there is
+        assertEquals(FHD_59, modes.choose(45));
+    }
+
+    @Test
+    public void combinesLimits() {
+        assertEquals(0, DisplayModes.minLimit(0, 0), 0);
+        assertEquals(60, DisplayModes.minLimit(0, 60), 0);
+        assertEquals(60, DisplayModes.minLimit(60, 0), 0);
+        assertEquals(45, DisplayModes.minLimit(60, 45), 0);
+    }
+
+    @Test
+    public void countsModeChangesThatWereNotRequested() {
+        DisplayModes modes = new DisplayModes(MODES, FHD_60);
+        // before anything was requested, every mode is fine
+        assertFalse(modes.onModeChanged(FHD_90));
+
+        modes.choose(0);
+        assertFalse(modes.onModeChanged(FHD_120));
+        assertTrue(modes.onModeChanged(FHD_60));
+        assertEquals(FHD_60, modes.getCurrent());
+        assertEquals(1, modes.getForcedChanges());
+        assertTrue(modes.toString().contains("1 forced changes"));
+
+        // a lower limit makes the same mode a requested one
+        modes.choose(60);
+        assertFalse(modes.onModeChanged(FHD_60));
+        assertEquals(1, modes.getForcedChanges());
+    }
+}
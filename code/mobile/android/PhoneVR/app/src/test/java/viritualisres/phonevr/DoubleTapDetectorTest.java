@@ -0,0 +1,285 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks that {@link DoubleTapDetector} takes the same decisions as the list-based detector that
+ * used to live in {@code Passthrough.onSensorChanged}.
+ */
+public class DoubleTapDetectorTest {
+
+    @Test
+    public void sameDecisionsAsListImplementation() {
+        long[] periodsMs = {16, 60, 66, 20};
+        float[][] bounds = {{0.8f, 4f}, {0.5f, 3f}, {1.2f, 6f}};
+        long[] delaysMs = {600, 400, 900};
+        int toggles = 0;
+        for (int seed = 0; seed < 8; ++seed) {
+            for (long periodMs : periodsMs) {
+                for (int b = 0; b < bounds.length; ++b) {
+                    long delayMs = delaysMs[(seed + b) % delaysMs.length];
+                    SensorTrace trace = syntheticTrace(seed, periodMs, 4000);
+                    toggles +=
+                            assertSameDecisions(trace, delayMs, bounds[b][0], bounds[b][1]);
+                }
+            }
+        }
+        // make sure the streams actually exercise the detection path
+        assertTrue("no toggle in any trace: " + toggles, toggles > 20);
+    }
+
+    @Test
+    public void sameDecisionsWithSparseSamples() {
+        // with few samples per window the window is repeatedly discarded and refilled
+        for (int seed = 0; seed < 4; ++seed) {
+            assertSameDecisions(syntheticTrace(seed, 150, 1000), 600, 0.8f, 4f);
+        }
+    }
+
+    /**
+     * The trace file was written by SensorTrace.Writer from {@code syntheticTrace(0, 60, 400)}, it
+     * is not a device recording.
+     */
+    @Test
+    public void sameDecisionsOnSyntheticTraceFile() throws IOException {
+        SensorTrace trace;
+        String name = "synthetic_double_taps.pvra";
+        try (InputStream in = DoubleTapDetectorTest.class.getResourceAsStream(name)) {
+            assertNotNull(name + " missing from the test resources", in);
+            trace = SensorTrace.read(in);
+        }
+        assertEquals(400, trace.size());
+        // pinned, a change of either detector shows even if both change the same way
+        assertEquals(5, assertSameDecisions(trace, 600, 0.8f, 4f));
+        for (float[] bounds : new float[][] {{0.5f, 3f}, {1.2f, 6f}}) {
+            assertSameDecisions(trace, 600, bounds[0], bounds[1]);
+        }
+    }
+
+    @Test
+    public void resetStartsNewWindow() {
+        SensorTrace trace = syntheticTrace(3, 16, 3000);
+        DoubleTapDetector detector = new DoubleTapDetector(600, 0.8f, 4f);
+        int half = trace.size() / 2;
+        for (int i = 0; i < half; ++i) {
+            detector.onSample(trace.timestampsNs[i], trace.x[i], trace.y[i], trace.z[i]);
+        }
+        detector.reset();
+
+        LegacyDetector legacy = new LegacyDetector(600, 0.8f, 4f);
+        for (int i = half; i < trace.size(); ++i) {
+            assertEquals(
+                    "sample " + i,
+                    legacy.onSample(trace.timestampsNs[i], trace.x[i], trace.y[i], trace.z[i]),
+                    detector.onSample(trace.timestampsNs[i], trace.x[i], trace.y[i], trace.z[i]));
+        }
+    }
+
+    private static int assertSameDecisions(
+            SensorTrace trace, long delayMs, float lower, float upper) {
+        DoubleTapDetector detector = new DoubleTapDetector(delayMs, lower, upper);
+        LegacyDetector legacy = new LegacyDetector(delayMs, lower, upper);
+        int toggles = 0;
+        for (int i = 0; i < trace.size(); ++i) {
+            long t = trace.timestampsNs[i];
+            boolean expected = legacy.onSample(t, trace.x[i], trace.y[i], trace.z[i]);
+            boolean actual = detector.onSample(t, trace.x[i], trace.y[i], trace.z[i]);
+            assertEquals("sample " + i + " at " + t + "ns", expected, actual);
+            if (expected) {
+                ++toggles;
+            }
+        }
+        return toggles;
+    }
+
+    /** Phone lying still in a viewer with double taps on random axes. */
+    static SensorTrace syntheticTrace(int seed, long periodMs, int samples) {
+        return syntheticTrace(seed, periodMs, samples, null);
+    }
+
+    /** @param tapTimesNs if not null, receives the timestamps of the second taps */
+    static SensorTrace syntheticTrace(
+            int seed, long periodMs, int samples, List<Long> tapTimesNs) {
+        Random rnd = new Random(seed);
+        long[] ts = new long[samples];
+        float[][] v = new float[3][samples];
+        long t = 1000000000L + rnd.nextInt(1000000);
+        int tapAxis = -1;
+        int nextTap = 20;
+        int tapStep = 0;
+        float tapAmp = 0;
+        boolean secondTap = false;
+        for (int i = 0; i < samples; ++i) {
+            v[0][i] = 0.1f + (float) rnd.nextGaussian() * 0.03f;
+            v[1][i] = 0.2f + (float) rnd.nextGaussian() * 0.03f;
+            v[2][i] = 9.81f + (float) rnd.nextGaussian() * 0.03f;
+            if (i == nextTap) {
+                tapAxis = rnd.nextInt(3);
+                tapAmp = 1.0f + rnd.nextFloat() * 2.5f;
+                tapStep = 0;
+            }
+            if (tapAxis >= 0) {
+                // two one-sample spikes roughly 250ms apart
+                int gap = (int) Math.max(2, 250 / periodMs);
+                if (tapStep == 0 || tapStep == gap) {
+                    v[tapAxis][i] += (rnd.nextBoolean() ? 1 : -1) * tapAmp;
+                    secondTap = tapStep == gap;
+                }
+                if (++tapStep > gap) {
+                    tapAxis = -1;
+                    nextTap = i + (int) ((1500 + rnd.nextInt(3000)) / periodMs);
+                }
+            }
+            long jitterNs = rnd.nextInt((int) Math.max(1, periodMs / 4) * 1000000);
+            t += periodMs * 1000000L + jitterNs;
+            ts[i] = t;
+            if (secondTap && tapTimesNs != null) {
+                tapTimesNs.add(t);
+            }
+            secondTap = false;
+        }
+        return new SensorTrace(ts, v[0], v[1], v[2]);
+    }
+
+    /** The detector as it was implemented in Passthrough.onSensorChanged. */
+    private static class LegacyDetector {
+        private final long passthroughDelayInMs;
+        private final float detectionLowerBound;
+        private final float detectionUpperBound;
+
+        private long timestamp = 0;
+        private long timestampAfterCandidate = 0;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final List<Float>[] accelStore =
+                new List[] {new ArrayList<>(), new ArrayList<>(), new ArrayList<>()};
+
+        private int halfSize = 0;
+        private boolean triggerIsSet = false;
+        private final List<Float> cumSums = new ArrayList<>();
+
+        LegacyDetector(long delayMs, float lower, float upper) {
+            passthroughDelayInMs = delayMs;
+            detectionLowerBound = lower;
+            detectionUpperBound = upper;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        boolean onSample(long eventTimestamp, float x, float y, float z) {
+            float[] values = {x, y, z};
+            if (timestamp == 0) {
+                timestamp = eventTimestamp;
+            }
+            if (timestampAfterCandidate == 0) {
+                timestampAfterCandidate = eventTimestamp;
+            }
+
+            boolean initialFull = eventTimestamp - timestamp > passthroughDelayInMs * 1000000L;
+            boolean afterCandidateFull =
+                    eventTimestamp - timestampAfterCandidate > passthroughDelayInMs * 1000000L;
+
+            for (int i = 0; i < accelStore.length; ++i) {
+                accelStore[i].add(values[i]);
+                if (initialFull) {
+                    accelStore[i].remove(0);
+                    if (halfSize == 0) {
+                        halfSize = accelStore[0].size() / 2;
+                    }
+                    if (halfSize < 4) {
+                        accelStore[i].clear();
+                        timestamp = 0;
+                        halfSize = 0;
+                    }
+                }
+            }
+
+            if (halfSize > 0) {
+                List<Float>[] accelAbs =
+                        new List[] {new ArrayList<>(), new ArrayList<>(), new ArrayList<>()};
+                for (int axis = 0; axis < accelStore.length; ++axis) {
+                    for (int i = 1; i < accelStore[axis].size(); ++i) {
+                        accelAbs[axis].add(
+                                Math.abs(accelStore[axis].get(i) - accelStore[axis].get(i - 1)));
+                    }
+                }
+
+                float[] axisMean = new float[] {0.0f, 0.0f, 0.0f};
+                for (int i = 0; i < accelAbs.length; ++i) {
+                    for (int j = 0; j < accelAbs[i].size(); ++j) {
+                        axisMean[i] += accelAbs[i].get(j);
+                    }
+                    axisMean[i] /= accelAbs[i].size();
+                }
+                float sumMean = axisMean[0] + axisMean[1] + axisMean[2];
+                cumSums.add(sumMean);
+
+                if (cumSums.size() < accelAbs[0].size()) {
+                    return false;
+                } else {
+                    cumSums.remove(0);
+                }
+
+                if (!afterCandidateFull) {
+                    if (!triggerIsSet && sumMean < detectionLowerBound) {
+                        triggerIsSet = true;
+                        return true;
+                    }
+                } else {
+                    triggerIsSet = false;
+                    for (List<Float> elem : accelAbs) {
+                        int middle = halfSize - 1;
+                        List<Float> t1 = elem.subList(0, halfSize);
+                        List<Float> t2 = elem.subList(middle, elem.size());
+
+                        float max1 = Collections.max(t1);
+                        float max2 = Collections.max(t2);
+
+                        if (max1 - t1.get(0) < detectionLowerBound
+                                || max1 - t1.get(t1.size() - 1) < detectionLowerBound
+                                || max2 - t2.get(0) < detectionLowerBound
+                                || max2 - t2.get(t2.size() - 1) < detectionLowerBound
+                                || max1 < detectionLowerBound
+                                || max1 > detectionUpperBound
+                                || max2 < detectionLowerBound
+                                || max2 > detectionUpperBound
+                                || sumMean < detectionLowerBound
+                                || sumMean > detectionUpperBound) {
+                            continue;
+                        }
+
+                        int end2 = 0;
+                        for (int i = 0; i < t2.size(); ++i) {
+                            if (t2.get(i) == max2) {
+                                end2 = i;
+                            }
+                            if (end2 > 0) {
+                                if (t2.get(i) < detectionLowerBound) {
+                                    end2 = i;
+                                    break;
+                                }
+                            }
+                        }
+
+                        if (cumSums.get(0) < Math.max(detectionLowerBound - 0.3f, 0.5f)
+                                && t2.get(end2) < max2) {
+                            timestampAfterCandidate = eventTimestamp;
+                            break;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EnergyMeterTest {
+
+    private static final long SECOND_NS = 1_000_000_000L;
+
+    @Test
+    public void integratesPower() {
+        EnergyMeter meter = new EnergyMeter();
+        assertTrue(Double.isNaN(meter.averageWatts()));
+
+        // 500mA at 4V is 2W, the sign of the current does not matter
+        assertTrue(meter.addSample(0, -500_000, 4000));
+        assertTrue(meter.addSample(10 * SECOND_NS, 500_000, 4000));
+        assertEquals(20, meter.getJoules(), 1e-9);
+        assertEquals(2, meter.averageWatts(), 1e-9);
+
+        // from 2W to 4W, the mean is 3W
+        meter.addSample(20 * SECOND_NS, 1_000_000, 4000);
+        assertEquals(50, meter.getJoules(), 1e-9);
+        assertEquals(2.5, meter.averageWatts(), 1e-9);
+    }
+
+    @Test
+    public void resetKeepsTheLastSample() {
+        EnergyMeter meter = new EnergyMeter();
+        meter.addSample(0, 500_000, 4000);
+        meter.addSample(SECOND_NS, 500_000, 4000);
+        meter.reset();
+        assertEquals(0, meter.getJoules(), 0);
+
+        meter.addSample(2 * SECOND_NS, 500_000, 4000);
+        assertEquals(2, meter.getJoules(), 1e-9);
+    }
+
+    @Test
+    public void ignoresUnsupportedCurrents() {
+        EnergyMeter meter = new EnergyMeter();
+        assertFalse(meter.addSample(0, EnergyMeter.UNKNOWN_CURRENT, 4000));
+        assertFalse(meter.addSample(0, 500_000, 0));
+        assertTrue(Double.isNaN(meter.averageWatts()));
+    }
+}
@@ -0,0 +1,139 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import org.junit.Test;
+
+public class FrameTimingsTest {
+
+    private static final int CAPACITY = 8;
+
+    private static final long PERIOD_NS = 16_666_667;
+
+    // written like frame_timing.cpp does
+    private final ByteBuffer buffer =
+            ByteBuffer.allocateDirect(
+                            FrameTimings.HEADER_SIZE + CAPACITY * FrameTimings.RECORD_SIZE)
+                    .order(ByteOrder.nativeOrder());
+
+    private long framesWritten = 0;
+
+    public FrameTimingsTest() {
+        buffer.putInt(0, FrameTimings.VERSION);
+        buffer.putInt(4, CAPACITY);
+        buffer.putInt(8, FrameTimings.RECORD_SIZE);
+    }
+
+    private int offset(long n) {
+        return FrameTimings.HEADER_SIZE + (int) (n % CAPACITY) * FrameTimings.RECORD_SIZE;
+    }
+
+    private void writeFrame(long timestampNs, int mode, int stageNs) {
+        long n = framesWritten;
+        int offset = offset(n);
+        buffer.putLong(offset, 2 * n + 1);
+        buffer.putLong(offset + 8, n * PERIOD_NS);
+        buffer.putLong(offset + 16, timestampNs);
+        for (int stage = 0; stage < FrameTimings.STAGE_COUNT; ++stage) {
+            buffer.putInt(offset + 24 + 4 * stage, stageNs);
+        }
+        buffer.putInt(offset + 40, FrameTimings.STAGE_COUNT * stageNs);
+        buffer.putInt(offset + 44, mode | (timestampNs == -1 ? FrameTimings.FLAG_DROPPED : 0));
+        buffer.putLong(offset, 2 * n + 2);
+        framesWritten++;
+        buffer.putLong(16, framesWritten);
+    }
+
+    @Test
+    public void readsFramesOldestFirst() {
+        FrameTimings timings = new FrameTimings(buffer);
+        assertEquals(CAPACITY, timings.getCapacity());
+        assertTrue(timings.latest(10).isEmpty());
+
+        writeFrame(0, FrameTimings.MODE_LOBBY, 1000);
+        writeFrame(123, FrameTimings.MODE_STREAM, 2000);
+        writeFrame(-1, FrameTimings.MODE_STREAM, 3000);
+
+        List<FrameTimings.Frame> frames = timings.latest(10);
+        assertEquals(3, frames.size());
+        assertEquals(0, frames.get(0).number);
+        assertEquals(FrameTimings.MODE_LOBBY, frames.get(0).mode);
+        assertEquals(123, frames.get(1).timestampNs);
+        assertEquals(PERIOD_NS, frames.get(1).startNs);
+        assertEquals(2000, frames.get(1).stageNs[FrameTimings.STAGE_RENDER]);
+        assertEquals(8000, frames.get(1).totalNs);
+        assertFalse(frames.get(1).dropped);
+        assertTrue(frames.get(2).dropped);
+        assertEquals(FrameTimings.MODE_STREAM, frames.get(2).mode);
+
+        assertEquals(2, timings.latest(2).size());
+        assertEquals(1, timings.latest(2).get(0).number);
+    }
+
+    @Test
+    public void keepsOnlyTheLastCapacityFrames() {
+        for (int i = 0; i < 20; ++i) {
+            writeFrame(0, FrameTimings.MODE_LOBBY, i);
+        }
+        List<FrameTimings.Frame> frames = new FrameTimings(buffer).latest(100);
+        assertEquals(CAPACITY, frames.size());
+        assertEquals(20 - CAPACITY, frames.get(0).number);
+        assertEquals(19, frames.get(CAPACITY - 1).number);
+        assertEquals(19, frames.get(CAPACITY - 1).stageNs[FrameTimings.STAGE_POLL]);
+    }
+
+    @Test
+    public void skipsRecordsBeingWritten() {
+        for (int i = 0; i < 3; ++i) {
+            writeFrame(0, FrameTimings.MODE_LOBBY, 1000);
+        }
+        // the render thread started to overwrite frame 0 with frame 8
+        buffer.putLong(offset(0), 2 * CAPACITY + 1);
+
+        List<FrameTimings.Frame> frames = new FrameTimings(buffer).latest(CAPACITY);
+        assertEquals(2, frames.size());
+        assertEquals(1, frames.get(0).number);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownLayout() {
+        buffer.putInt(0, FrameTimings.VERSION + 1);
+        new FrameTimings(buffer);
+    }
+
+    @Test
+    public void summarizesAndWritesCsv() throws IOException {
+        writeFrame(0, FrameTimings.MODE_PASSTHROUGH, 1_000_000);
+        writeFrame(-1, FrameTimings.MODE_STREAM, 2_000_000);
+        writeFrame(5, FrameTimings.MODE_STREAM, 3_000_000);
+        List<FrameTimings.Frame> frames = new FrameTimings(buffer).latest(CAPACITY);
+
+        FrameTimings.Summary summary = FrameTimings.summarize(frames);
+        assertEquals(3, summary.frames);
+        assertEquals(1, summary.dropped);
+        assertEquals(60, summary.fps, 0.01);
+        assertEquals(8, summary.meanTotalMs, 1e-9);
+        assertEquals(12, summary.maxTotalMs, 1e-9);
+        assertEquals(2, summary.meanStageMs[FrameTimings.STAGE_DISTORTION], 1e-9);
+        assertEquals(0, FrameTimings.summarize(frames.subList(0, 0)).frames);
+
+        StringWriter csv = new StringWriter();
+        FrameTimings.writeCsv(frames, csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertEquals(
+                "frame,start_ns,timestamp_ns,mode,dropped,poll_ns,acquire_ns,render_ns,"
+                        + "distortion_ns,total_ns",
+                lines[0]);
+        assertEquals("0,0,0,passthrough,0,1000000,1000000,1000000,1000000,4000000", lines[1]);
+        assertEquals("1,16666667,-1,stream,1,2000000,2000000,2000000,2000000,8000000", lines[2]);
+    }
+}
@@ -0,0 +1,78 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HighPassTapDetectorTest {
+
+    private static final long PERIOD_NS = 16 * 1000000L;
+
+    @Test
+    public void detectsDoubleTap() {
+        long[] toggles = replay(trace(2f, 200, 2f));
+        assertEquals(1, toggles.length);
+        // the toggle follows the second tap within a few samples
+        long secondTap = 1000000000L + (100 + 200 / 16) * PERIOD_NS;
+        assertTrue(toggles[0] >= secondTap && toggles[0] - secondTap < 5 * PERIOD_NS);
+    }
+
+    @Test
+    public void ignoresSingleTap() {
+        assertEquals(0, replay(trace(2f, 0, 0f)).length);
+    }
+
+    @Test
+    public void ignoresTapsTooFarApart() {
+        assertEquals(0, replay(trace(2f, 900, 2f)).length);
+    }
+
+    @Test
+    public void ignoresStrongMotion() {
+        assertEquals(0, replay(trace(10f, 200, 10f)).length);
+    }
+
+    @Test
+    public void resetForgetsFirstTap() {
+        SensorTrace trace = trace(2f, 200, 2f);
+        HighPassTapDetector detector = new HighPassTapDetector(600, 0.8f, 4f);
+        int secondTap = 100 + 200 / 16;
+        for (int i = 0; i < secondTap - 2; ++i) {
+            detector.onSample(trace.timestampsNs[i], trace.x[i], trace.y[i], trace.z[i]);
+        }
+        detector.reset();
+        for (int i = secondTap - 2; i < trace.size(); ++i) {
+            assertFalse(
+                    detector.onSample(trace.timestampsNs[i], trace.x[i], trace.y[i], trace.z[i]));
+        }
+    }
+
+    private static long[] replay(SensorTrace trace) {
+        return SensorTraceReplay.replay(trace, new HighPassTapDetector(600, 0.8f, 4f));
+    }
+
+    /** Resting phone with a spike after 100 samples and a second one gapMs later. */
+    private static SensorTrace trace(float firstAmp, long gapMs, float secondAmp) {
+        int samples = 300;
+        long[] t = new long[samples];
+        float[] x = new float[samples];
+        float[] y = new float[samples];
+        float[] z = new float[samples];
+        int first = 100;
+        int second = first + (int) (gapMs / 16);
+        for (int i = 0; i < samples; ++i) {
+            t[i] = 1000000000L + i * PERIOD_NS;
+            x[i] = 0.1f;
+            y[i] = 0.2f;
+            z[i] = 9.81f;
+        }
+        z[first] += firstAmp;
+        if (second != first && second < samples) {
+            z[second] += secondAmp;
+        }
+        return new SensorTrace(t, x, y, z);
+    }
+}
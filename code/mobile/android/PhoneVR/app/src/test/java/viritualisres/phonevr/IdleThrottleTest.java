@@ -0,0 +1,88 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IdleThrottleTest {
+
+    private static final long VSYNC_NS = 16_666_667;
+
+    // 10 fps while idle
+    private static final long IDLE_INTERVAL_NS = 100_000_000;
+
+    private final IdleThrottle throttle = new IdleThrottle(IDLE_INTERVAL_NS);
+
+    private long time = 1_000_000_000L;
+
+    // runs count vsyncs, returns how many were rendered
+    private int run(int count, boolean streaming) {
+        int rendered = 0;
+        for (int i = 0; i < count; i++) {
+            time += VSYNC_NS;
+            if (throttle.onVsync(time, streaming)) {
+                rendered++;
+            }
+        }
+        return rendered;
+    }
+
+    @Test
+    public void throttlesOnlyAfterTheHeadIsStill() {
+        int idleAfterVsyncs = (int) (IdleThrottle.IDLE_AFTER_NS / VSYNC_NS);
+        assertEquals(idleAfterVsyncs, run(idleAfterVsyncs, false));
+        assertFalse(throttle.isIdle(time));
+
+        // then 10 of 60 frames a second
+        run(10, false);
+        assertTrue(throttle.isIdle(time));
+        int rendered = run(60, false);
+        assertTrue(rendered >= 9 && rendered <= 11);
+    }
+
+    @Test
+    public void motionRendersTheNextVsync() {
+        run(200, false);
+        assertTrue(throttle.isIdle(time));
+
+        // a still head does not wake it
+        throttle.onMotion(time, IdleThrottle.MOTION_THRESHOLD / 2);
+        run(10, false);
+        assertTrue(throttle.isIdle(time));
+
+        throttle.onMotion(time, 1);
+        assertEquals(1, run(1, false));
+        assertEquals(30, run(30, false));
+        assertFalse(throttle.isIdle(time));
+    }
+
+    @Test
+    public void activityAndStreamingAreNeverThrottled() {
+        run(200, false);
+        throttle.onActivity(time);
+        assertEquals(1, run(1, false));
+
+        run(200, false);
+        assertEquals(200, run(200, true));
+        assertFalse(throttle.isIdle(time));
+    }
+
+    @Test
+    public void reportsFramesPerMinute() {
+        throttle.takeStats(time);
+        run(3600, false);
+        IdleThrottle.Stats stats = throttle.takeStats(time);
+
+        assertEquals(3600, stats.vsyncs);
+        assertEquals(60e9, stats.durationNs, 1e6);
+        // 2 seconds at 60 fps, then 58 seconds at 10 fps
+        assertEquals(120 + 580, stats.framesPerMinute(), 10);
+        assertEquals(58.0 / 60, stats.idleFraction(), 0.01);
+        assertTrue(stats.toString().contains("frames/min"));
+
+        assertEquals(0, throttle.takeStats(time).framesRendered);
+    }
+}
@@ -0,0 +1,127 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class LatencyStatsTest {
+
+    private final LatencyStats.Percentiles out = new LatencyStats.Percentiles();
+
+    // nearest rank of the sorted list
+    private static float exact(List<Float> sorted, double p) {
+        int rank = (int) Math.ceil(p * sorted.size());
+        return sorted.get(Math.max(rank, 1) - 1);
+    }
+
+    @Test
+    public void percentilesOfARange() {
+        LatencyStats stats = new LatencyStats(1, 100);
+        for (int i = 100; i >= 1; --i) {
+            stats.add(0, i);
+        }
+        stats.read(0, out);
+        assertEquals(100, out.count);
+        assertEquals(50, out.p50, 0);
+        assertEquals(95, out.p95, 0);
+        assertEquals(99, out.p99, 0);
+        assertEquals(100, out.max, 0);
+    }
+
+    @Test
+    public void matchesExactPercentilesOfTheWindow() {
+        int window = 1000;
+        LatencyStats stats = new LatencyStats(2, window);
+        Random random = new Random(42);
+        List<Float> added = new ArrayList<>();
+        for (int i = 0; i < 5 * window + 123; ++i) {
+            // frame times around 16ms with rare stalls, which the averages used to hide
+            float value = 16 + (float) random.nextGaussian();
+            if (random.nextInt(100) == 0) {
+                value += 50 + random.nextInt(100);
+            }
+            added.add(value);
+            stats.add(0, value);
+            stats.add(1, -value);
+        }
+
+        for (int last : new int[] {window, 100, 7}) {
+            List<Float> sorted = new ArrayList<>(added.subList(added.size() - last, added.size()));
+            Collections.sort(sorted);
+            stats.read(0, last, out);
+            assertEquals(last, out.count);
+            assertEquals(exact(sorted, 0.50), out.p50, 0);
+            assertEquals(exact(sorted, 0.95), out.p95, 0);
+            assertEquals(exact(sorted, 0.99), out.p99, 0);
+            assertEquals(sorted.get(sorted.size() - 1), out.max, 0);
+        }
+
+        // the metrics are independent
+        stats.read(1, out);
+        assertTrue(out.max < 0);
+    }
+
+    @Test
+    public void emptyAndFormatted() {
+        LatencyStats stats = new LatencyStats(2, 10);
+        stats.read(1, out);
+        assertEquals(0, out.count);
+        assertTrue(Float.isNaN(out.p50));
+
+        StringBuilder sb = new StringBuilder();
+        out.appendTo(sb);
+        assertEquals("- - - -", sb.toString());
+
+        stats.addAll(new float[] {0, 16.66f, 123.45f}, 1);
+        stats.read(0, out);
+        sb.setLength(0);
+        out.appendTo(sb);
+        assertEquals("16.7 16.7 16.7 16.7", sb.toString());
+
+        sb.setLength(0);
+        LatencyStats.appendDecimal(sb, -0.26f);
+        sb.append(' ');
+        LatencyStats.appendDecimal(sb, 123.46f);
+        assertEquals("-0.3 123.5", sb.toString());
+    }
+
+    @Test
+    public void readsWhileWritingWithoutTornWindows() throws InterruptedException {
+        int window = 64;
+        LatencyStats stats = new LatencyStats(1, window);
+        int total = 2_000_000;
+        Thread writer =
+                new Thread(
+                        () -> {
+                            for (int i = 0; i < total; ++i) {
+                                stats.add(0, i);
+                            }
+                        });
+        writer.start();
+
+        int reads = 0;
+        while (writer.isAlive() || reads == 0) {
+            stats.read(0, out);
+            reads++;
+            if (out.count == 0) {
+                continue;
+            }
+            // the samples read are always consecutive ones, none from an older lap of the ring
+            int n = out.count;
+            assertTrue(n <= window);
+            assertEquals(n - (int) Math.ceil(0.5 * n), out.max - out.p50, 0);
+            assertEquals(n - (int) Math.ceil(0.99 * n), out.max - out.p99, 0);
+        }
+        writer.join();
+
+        stats.read(0, out);
+        assertEquals(window, out.count);
+        assertEquals(total - 1, out.max, 0);
+    }
+}
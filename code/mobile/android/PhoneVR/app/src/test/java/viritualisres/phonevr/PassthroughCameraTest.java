@@ -0,0 +1,236 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class PassthroughCameraTest {
+
+    private static final CameraBackend.Request REQUEST = new CameraBackend.Request(1280, 720, true);
+
+    /** Backend that only records the calls, the test completes them. */
+    private static class FakeBackend implements CameraBackend {
+        final List<String> calls = new ArrayList<>();
+
+        Request lastRequest = null;
+
+        Callback callback = null;
+
+        @Override
+        public void open(Request request, Callback callback) {
+            calls.add("open");
+            lastRequest = request;
+            this.callback = callback;
+        }
+
+        @Override
+        public void setStreaming(boolean streaming) {
+            calls.add(streaming ? "start" : "pause");
+        }
+
+        @Override
+        public void setRequest(Request request) {
+            calls.add("request");
+            lastRequest = request;
+        }
+
+        @Override
+        public void close() {
+            calls.add("close");
+        }
+    }
+
+    private static class RecordingListener implements PassthroughCamera.Listener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onStreamingChanged(boolean streaming) {
+            events.add(streaming ? "streaming" : "stopped");
+        }
+
+        @Override
+        public void onFirstFrame(long timeToFirstFrameNs) {
+            events.add("frame");
+        }
+
+        @Override
+        public void onCameraError(String message) {
+            events.add("error");
+        }
+    }
+
+    private final FakeBackend backend = new FakeBackend();
+
+    private final RecordingListener listener = new RecordingListener();
+
+    private final PassthroughCamera camera = new PassthroughCamera(backend, listener);
+
+    @Test
+    public void openAndClose() {
+        camera.setActive(true, REQUEST);
+        assertEquals(PassthroughCamera.State.OPENING, camera.getState());
+        assertSame(REQUEST, backend.lastRequest);
+
+        backend.callback.onOpened();
+        assertEquals(PassthroughCamera.State.STREAMING, camera.getState());
+
+        camera.setActive(false, null);
+        assertEquals(PassthroughCamera.State.CLOSING, camera.getState());
+        backend.callback.onClosed();
+        assertEquals(PassthroughCamera.State.CLOSED, camera.getState());
+
+        assertEquals(list("open", "start", "pause", "close"), backend.calls);
+        assertEquals(list("streaming", "stopped"), listener.events);
+    }
+
+    @Test
+    public void repeatedTogglesWhileOpeningDoNotOpenTwice() {
+        camera.setActive(true, REQUEST);
+        camera.setActive(false, null);
+        camera.setActive(true, REQUEST);
+        camera.setActive(true, REQUEST);
+        assertEquals(list("open"), backend.calls);
+
+        backend.callback.onOpened();
+        assertEquals(PassthroughCamera.State.STREAMING, camera.getState());
+        assertEquals(list("streaming"), listener.events);
+    }
+
+    @Test
+    public void toggleOffWhileOpeningClosesOnceOpen() {
+        camera.setActive(true, REQUEST);
+        camera.setActive(false, null);
+        backend.callback.onOpened();
+        assertEquals(PassthroughCamera.State.CLOSING, camera.getState());
+        assertEquals(list("open", "close"), backend.calls);
+
+        backend.callback.onClosed();
+        assertEquals(PassthroughCamera.State.CLOSED, camera.getState());
+        // the camera never became visible
+        assertEquals(list(), listener.events);
+    }
+
+    @Test
+    public void toggleOnWhileClosingReopens() {
+        CameraBackend.Request second = new CameraBackend.Request(640, 480, false);
+        camera.setActive(true, REQUEST);
+        backend.callback.onOpened();
+        camera.setActive(false, null);
+        camera.setActive(true, second);
+        assertEquals(PassthroughCamera.State.CLOSING, camera.getState());
+
+        backend.callback.onClosed();
+        assertEquals(PassthroughCamera.State.OPENING, camera.getState());
+        assertSame(second, backend.lastRequest);
+        backend.callback.onOpened();
+
+        assertEquals(PassthroughCamera.State.STREAMING, camera.getState());
+        assertEquals(list("open", "start", "pause", "close", "open", "start"), backend.calls);
+        assertEquals(list("streaming", "stopped", "streaming"), listener.events);
+    }
+
+    @Test
+    public void warmCameraOnlyPausesPreview() {
+        camera.setWarm(true, REQUEST);
+        backend.callback.onOpened();
+        assertEquals(PassthroughCamera.State.OPEN, camera.getState());
+
+        for (int i = 0; i < 3; ++i) {
+            camera.setActive(true, REQUEST);
+            assertEquals(PassthroughCamera.State.STREAMING, camera.getState());
+            camera.setActive(false, null);
+            assertEquals(PassthroughCamera.State.OPEN, camera.getState());
+        }
+        assertEquals(
+                list("open", "start", "pause", "start", "pause", "start", "pause"), backend.calls);
+
+        camera.setWarm(false, null);
+        assertEquals(PassthroughCamera.State.CLOSING, camera.getState());
+        backend.callback.onClosed();
+        assertEquals(PassthroughCamera.State.CLOSED, camera.getState());
+    }
+
+    @Test
+    public void coolingDownWhileStreamingClosesWhenToggledOff() {
+        camera.setWarm(true, REQUEST);
+        backend.callback.onOpened();
+        camera.setActive(true, REQUEST);
+        camera.setWarm(false, null);
+        assertEquals(PassthroughCamera.State.STREAMING, camera.getState());
+
+        camera.setActive(false, null);
+        assertEquals(PassthroughCamera.State.CLOSING, camera.getState());
+        assertEquals(list("open", "start", "pause", "close"), backend.calls);
+    }
+
+    @Test
+    public void reportsTimeToFirstFrameOncePerActivation() {
+        assertEquals(-1, camera.getTimeToFirstFrameNs());
+        camera.setActive(true, REQUEST);
+        backend.callback.onOpened();
+        backend.callback.onFirstFrame();
+        backend.callback.onFirstFrame();
+        assertTrue(camera.getTimeToFirstFrameNs() >= 0);
+        assertEquals(list("streaming", "frame"), listener.events);
+    }
+
+    @Test
+    public void errorResetsToClosed() {
+        camera.setWarm(true, REQUEST);
+        camera.setActive(true, REQUEST);
+        backend.callback.onError("no camera");
+        assertEquals(PassthroughCamera.State.CLOSED, camera.getState());
+        assertEquals(list("error"), listener.events);
+
+        // late callbacks of the failed attempt are ignored
+        backend.callback.onOpened();
+        assertEquals(PassthroughCamera.State.CLOSED, camera.getState());
+
+        camera.setActive(true, REQUEST);
+        assertEquals(list("open", "open"), backend.calls);
+    }
+
+    @Test
+    public void errorWhileStreamingStopsPassthrough() {
+        camera.setActive(true, REQUEST);
+        backend.callback.onOpened();
+        backend.callback.onError("disconnected");
+        assertEquals(PassthroughCamera.State.CLOSED, camera.getState());
+        assertEquals(list("streaming", "stopped", "error"), listener.events);
+    }
+
+    private static List<String> list(String... items) {
+        List<String> result = new ArrayList<>();
+        for (String item : items) {
+            result.add(item);
+        }
+        return result;
+    }
+
+    @Test
+    public void requestAppliedToOpenCameraOnly() {
+        CameraBackend.Request preview = new CameraBackend.Request(1280, 720, false);
+        camera.setRequest(preview);
+        assertEquals(0, backend.calls.size());
+
+        camera.setActive(true, REQUEST);
+        backend.callback.onOpened();
+        camera.setRequest(preview);
+        assertEquals(Arrays.asList("open", "start", "request"), backend.calls);
+        assertSame(preview, backend.lastRequest);
+        assertEquals(PassthroughCamera.State.STREAMING, camera.getState());
+
+        camera.setActive(false, null);
+        camera.setRequest(REQUEST);
+        backend.callback.onClosed();
+        camera.setRequest(REQUEST);
+        // a closing or closed camera only keeps the request for the next open
+        assertEquals(Arrays.asList("open", "start", "request", "pause", "close"), backend.calls);
+    }
+}
@@ -0,0 +1,111 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class PassthroughSettingsTest {
+
+    @Test
+    public void defaultsWithoutPreferences() {
+        PassthroughSettings s =
+                PassthroughSettings.fromValues(Collections.<String, Object>emptyMap());
+        assertEquals(0.5f, s.fraction, 0f);
+        assertTrue(s.recordingHint);
+        assertFalse(s.prewarm);
+        assertTrue(s.tap);
+        assertEquals(TapDetector.WINDOW, s.detector);
+        assertEquals(600, s.delayMs);
+        assertEquals(0.8f, s.lowerBound, 0f);
+        assertEquals(4f, s.upperBound, 0f);
+        assertFalse(s.recordTrace);
+        assertTrue(s.invalidKeys.isEmpty());
+    }
+
+    @Test
+    public void parsesStoredStrings() {
+        Map<String, Object> values = new HashMap<>();
+        values.put(PassthroughSettings.FRACTION, " 0.75");
+        values.put(PassthroughSettings.RECORDING_HINT, false);
+        values.put(PassthroughSettings.PREWARM, true);
+        values.put(PassthroughSettings.DETECTOR, TapDetector.HIGH_PASS);
+        values.put(PassthroughSettings.DELAY, "450");
+        values.put(PassthroughSettings.LOWER, "1.2");
+        values.put(PassthroughSettings.UPPER, "6");
+        values.put("passthrough", true);
+
+        PassthroughSettings s = PassthroughSettings.fromValues(values);
+        assertEquals(0.75f, s.fraction, 0f);
+        assertFalse(s.recordingHint);
+        assertTrue(s.prewarm);
+        assertEquals(TapDetector.HIGH_PASS, s.detector);
+        assertEquals(450, s.delayMs);
+        assertEquals(1.2f, s.lowerBound, 0f);
+        assertEquals(6f, s.upperBound, 0f);
+        assertTrue(s.invalidKeys.isEmpty());
+    }
+
+    @Test
+    public void invalidValuesFallBackToDefaults() {
+        Map<String, Object> values = new HashMap<>();
+        values.put(PassthroughSettings.FRACTION, "2");
+        values.put(PassthroughSettings.TAP, "yes");
+        values.put(PassthroughSettings.DETECTOR, "neural");
+        values.put(PassthroughSettings.DELAY, "fast");
+        values.put(PassthroughSettings.LOWER, "NaN");
+
+        PassthroughSettings s = PassthroughSettings.fromValues(values);
+        assertEquals(PassthroughSettings.DEFAULTS.fraction, s.fraction, 0f);
+        assertTrue(s.tap);
+        assertEquals(TapDetector.WINDOW, s.detector);
+        assertEquals(PassthroughSettings.DEFAULT_DELAY_MS, s.delayMs);
+        assertEquals(PassthroughSettings.DEFAULT_LOWER, s.lowerBound, 0f);
+        assertEquals(
+                Arrays.asList(
+                        PassthroughSettings.FRACTION,
+                        PassthroughSettings.DETECTOR,
+                        PassthroughSettings.DELAY,
+                        PassthroughSettings.LOWER,
+                        PassthroughSettings.TAP),
+                s.invalidKeys);
+    }
+
+    @Test
+    public void boundsAreResetTogether() {
+        Map<String, Object> values = new HashMap<>();
+        values.put(PassthroughSettings.LOWER, "3");
+        values.put(PassthroughSettings.UPPER, "2");
+        values.put(PassthroughSettings.DELAY, "20000");
+
+        PassthroughSettings s = PassthroughSettings.fromValues(values);
+        assertEquals(PassthroughSettings.DEFAULT_LOWER, s.lowerBound, 0f);
+        assertEquals(PassthroughSettings.DEFAULT_UPPER, s.upperBound, 0f);
+        assertEquals(PassthroughSettings.DEFAULT_DELAY_MS, s.delayMs);
+        assertEquals(
+                Arrays.asList(PassthroughSettings.DELAY, PassthroughSettings.UPPER),
+                s.invalidKeys);
+    }
+
+    @Test
+    public void detectorDiffersOnlyForDetectorSettings() {
+        Map<String, Object> values = new HashMap<>();
+        values.put(PassthroughSettings.FRACTION, "0.3");
+        values.put(PassthroughSettings.PREWARM, true);
+        PassthroughSettings other = PassthroughSettings.fromValues(values);
+        assertFalse(PassthroughSettings.DEFAULTS.detectorDiffers(other));
+
+        values.put(PassthroughSettings.UPPER, "5");
+        assertTrue(
+                PassthroughSettings.DEFAULTS.detectorDiffers(
+                        PassthroughSettings.fromValues(values)));
+        assertTrue(PassthroughSettings.isSettingKey(PassthroughSettings.UPPER));
+        assertFalse(PassthroughSettings.isSettingKey("passthrough"));
+    }
+}
@@ -0,0 +1,111 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import viritualisres.phonevr.PerformanceGovernor.Level;
+
+public class PerformanceGovernorTest {
+
+    private final List<PerformanceGovernor.Transition> changes = new ArrayList<>();
+
+    private final PerformanceGovernor governor = new PerformanceGovernor(changes::add);
+
+    @Test
+    public void stepsDownImmediatelyWhenHeating() {
+        governor.onThermalStatus(1000, PerformanceGovernor.THERMAL_STATUS_LIGHT);
+        assertEquals(Level.NORMAL, governor.getLevel());
+
+        governor.onThermalStatus(2000, PerformanceGovernor.THERMAL_STATUS_MODERATE);
+        assertEquals(Level.REDUCED, governor.getLevel());
+        governor.onThermalStatus(3000, PerformanceGovernor.THERMAL_STATUS_SEVERE);
+        assertEquals(Level.MINIMUM, governor.getLevel());
+
+        assertEquals(2, changes.size());
+        assertEquals(2000, changes.get(0).timeMs);
+        assertEquals(Level.NORMAL, changes.get(0).from);
+        assertEquals(Level.REDUCED, changes.get(0).to);
+        assertTrue(changes.get(1).reason.contains("thermal status 3"));
+        assertFalse(Level.REDUCED.prewarmAllowed);
+        assertTrue(Level.MINIMUM.resolutionScale < Level.REDUCED.resolutionScale);
+    }
+
+    @Test
+    public void recoversOneLevelPerCoolDown() {
+        governor.onThermalStatus(0, PerformanceGovernor.THERMAL_STATUS_SEVERE);
+        governor.onThermalStatus(1000, PerformanceGovernor.THERMAL_STATUS_NONE);
+        assertEquals(Level.MINIMUM, governor.getLevel());
+
+        governor.tick(1000 + PerformanceGovernor.COOL_DOWN_MS - 1);
+        assertEquals(Level.MINIMUM, governor.getLevel());
+        governor.tick(1000 + PerformanceGovernor.COOL_DOWN_MS);
+        assertEquals(Level.REDUCED, governor.getLevel());
+        governor.tick(1000 + 2 * PerformanceGovernor.COOL_DOWN_MS);
+        assertEquals(Level.NORMAL, governor.getLevel());
+        assertEquals(3, governor.getTransitions().size());
+    }
+
+    @Test
+    public void headroomNearThresholdDoesNotFlap() {
+        governor.onThermalHeadroom(0, 0.86f);
+        assertEquals(Level.REDUCED, governor.getLevel());
+
+        // below the threshold but within the hysteresis
+        long t = 0;
+        for (int i = 0; i < 10; ++i) {
+            t += PerformanceGovernor.COOL_DOWN_MS;
+            governor.onThermalHeadroom(t, i % 2 == 0 ? 0.8f : 0.86f);
+        }
+        assertEquals(Level.REDUCED, governor.getLevel());
+        assertEquals(1, changes.size());
+
+        governor.onThermalHeadroom(t + 1, 0.5f);
+        governor.onThermalHeadroom(t + 1 + PerformanceGovernor.COOL_DOWN_MS, 0.5f);
+        assertEquals(Level.NORMAL, governor.getLevel());
+    }
+
+    @Test
+    public void heatingDuringCoolDownRestartsIt() {
+        governor.onThermalHeadroom(0, 0.9f);
+        governor.onThermalHeadroom(1000, 0.5f);
+        governor.onThermalHeadroom(20000, 0.9f);
+        governor.onThermalHeadroom(25000, 0.5f);
+        governor.tick(1000 + PerformanceGovernor.COOL_DOWN_MS);
+        assertEquals(Level.REDUCED, governor.getLevel());
+        governor.tick(25000 + PerformanceGovernor.COOL_DOWN_MS);
+        assertEquals(Level.NORMAL, governor.getLevel());
+    }
+
+    @Test
+    public void lowBatteryOnlyWhileUnplugged() {
+        governor.onBattery(0, 0.1f, true);
+        assertEquals(Level.NORMAL, governor.getLevel());
+        governor.onBattery(1000, 0.1f, false);
+        assertEquals(Level.REDUCED, governor.getLevel());
+        governor.onBattery(2000, 0.04f, false);
+        assertEquals(Level.MINIMUM, governor.getLevel());
+
+        // plugging in lets the level recover after the cool down
+        governor.onBattery(3000, 0.04f, true);
+        governor.tick(3000 + PerformanceGovernor.COOL_DOWN_MS);
+        assertEquals(Level.REDUCED, governor.getLevel());
+    }
+
+    @Test
+    public void worstSignalWins() {
+        governor.onBattery(0, 0.12f, false);
+        governor.onThermalHeadroom(1000, 1.2f);
+        assertEquals(Level.MINIMUM, governor.getLevel());
+
+        // the battery still asks for REDUCED
+        governor.onThermalHeadroom(2000, Float.NaN);
+        governor.tick(2000 + PerformanceGovernor.COOL_DOWN_MS);
+        governor.tick(2000 + 3 * PerformanceGovernor.COOL_DOWN_MS);
+        assertEquals(Level.REDUCED, governor.getLevel());
+    }
+}
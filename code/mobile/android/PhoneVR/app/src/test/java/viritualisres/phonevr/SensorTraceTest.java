@@ -0,0 +1,75 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class SensorTraceTest {
+
+    @Test
+    public void writeReadRoundTrip() throws IOException {
+        SensorTrace trace = DoubleTapDetectorTest.syntheticTrace(1, 16, 2500);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.write(out);
+        assertEquals(5 + trace.size() * SensorTrace.RECORD_SIZE, out.size());
+
+        SensorTrace read = SensorTrace.read(new ByteArrayInputStream(out.toByteArray()));
+        assertArrayEquals(trace.timestampsNs, read.timestampsNs);
+        assertArrayEquals(trace.x, read.x, 0f);
+        assertArrayEquals(trace.y, read.y, 0f);
+        assertArrayEquals(trace.z, read.z, 0f);
+    }
+
+    @Test
+    public void dropsRecordCutOffAtTheEnd() throws IOException {
+        SensorTrace trace = DoubleTapDetectorTest.syntheticTrace(4, 16, 100);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.write(out);
+        byte[] bytes = out.toByteArray();
+        // cut inside the timestamp and inside the values of the last record
+        for (int cut : new int[] {3, SensorTrace.RECORD_SIZE - 5}) {
+            byte[] truncated = Arrays.copyOf(bytes, bytes.length - SensorTrace.RECORD_SIZE + cut);
+            SensorTrace read = SensorTrace.read(new ByteArrayInputStream(truncated));
+            assertEquals(trace.size() - 1, read.size());
+            assertArrayEquals(
+                    Arrays.copyOf(trace.timestampsNs, trace.size() - 1), read.timestampsNs);
+            assertArrayEquals(Arrays.copyOf(trace.z, trace.size() - 1), read.z, 0f);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        SensorTrace.read(new ByteArrayInputStream(new byte[] {'P', 'K', 3, 4, 0}));
+    }
+
+    @Test
+    public void replayMatchesLiveDetection() throws IOException {
+        SensorTrace trace = DoubleTapDetectorTest.syntheticTrace(2, 60, 3000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SensorTrace.Writer writer = new SensorTrace.Writer(out)) {
+            DoubleTapDetector live = new DoubleTapDetector(600, 0.8f, 4f);
+            int liveToggles = 0;
+            for (int i = 0; i < trace.size(); ++i) {
+                long t = trace.timestampsNs[i];
+                writer.append(t, trace.x[i], trace.y[i], trace.z[i]);
+                if (live.onSample(t, trace.x[i], trace.y[i], trace.z[i])) {
+                    ++liveToggles;
+                }
+            }
+            writer.flush();
+
+            SensorTrace recorded = SensorTrace.read(new ByteArrayInputStream(out.toByteArray()));
+            long[] toggles =
+                    SensorTraceReplay.replay(recorded, new DoubleTapDetector(600, 0.8f, 4f));
+            assertTrue(toggles.length > 0);
+            assertEquals(liveToggles, toggles.length);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class TapDetectorEvaluationTest {
+
+    private static final long MAX_LATENCY_NS = 1000 * 1000000L;
+
+    @Test
+    public void highPassFindsLabelledTaps() {
+        List<TapDetectorEvaluation.LabelledTrace> corpus = corpus(60, 0);
+        TapDetectorEvaluation.Result result =
+                TapDetectorEvaluation.evaluate(
+                        TapDetector.HIGH_PASS, corpus, 600, 0.8f, 4f, MAX_LATENCY_NS);
+        assertTrue(result.labels > 100);
+        assertTrue("missed " + result.missed(), result.detected > result.labels * 9 / 10);
+        assertEquals(0, result.falsePositives);
+        assertTrue(result.latencyMs(95) < 300);
+        assertTrue(result.nsPerSample > 0);
+    }
+
+    @Test
+    public void togglesAwayFromLabelsAreFalsePositives() {
+        // labels moved past the end of the traces do not match any toggle
+        List<TapDetectorEvaluation.LabelledTrace> corpus = corpus(16, 3600 * 1000);
+        TapDetectorEvaluation.Result result =
+                TapDetectorEvaluation.evaluate(
+                        TapDetector.HIGH_PASS, corpus, 600, 0.8f, 4f, MAX_LATENCY_NS);
+        assertEquals(0, result.detected);
+        assertEquals(result.labels, result.missed());
+        assertTrue(result.falsePositives > 0);
+        assertTrue(result.falsePositivesPerHour() > 0);
+    }
+
+    @Test
+    public void readsLabelFiles() throws IOException {
+        File file = File.createTempFile("taps", TapDetectorEvaluation.LABEL_SUFFIX);
+        try {
+            try (Writer writer = new FileWriter(file)) {
+                writer.write("# second taps\n3000000000\n\n1500000000  # late\n");
+            }
+            assertArrayEquals(
+                    new long[] {3000000000L, 1500000000L}, TapDetectorEvaluation.readLabels(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static List<TapDetectorEvaluation.LabelledTrace> corpus(long periodMs, long shiftMs) {
+        List<TapDetectorEvaluation.LabelledTrace> corpus = new ArrayList<>();
+        for (int seed = 0; seed < 4; ++seed) {
+            List<Long> taps = new ArrayList<>();
+            SensorTrace trace = DoubleTapDetectorTest.syntheticTrace(seed, periodMs, 3000, taps);
+            long[] labels = new long[taps.size()];
+            for (int i = 0; i < labels.length; ++i) {
+                labels[i] = taps.get(i) + shiftMs * 1000000L;
+            }
+            corpus.add(new TapDetectorEvaluation.LabelledTrace("seed" + seed, trace, labels));
+        }
+        return corpus;
+    }
+}
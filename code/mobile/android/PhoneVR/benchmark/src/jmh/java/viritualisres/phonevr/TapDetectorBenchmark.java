@@ -0,0 +1,111 @@
+/* (C)2024 */
+package viritualisres.phonevr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one accelerometer event in the passthrough tap detectors. One invocation is one event, so
+ * the score is ns/event and gc.alloc.rate.norm is bytes/event.
+ *
+ * <p>Uses the trace given with -Dpvr.trace, or a long synthetic trace at 16ms (SENSOR_DELAY_GAME)
+ * and 60ms (SENSOR_DELAY_UI).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TapDetectorBenchmark {
+
+    private static final int SYNTHETIC_EVENTS = 500000;
+
+    @Param({TapDetector.WINDOW, TapDetector.HIGH_PASS})
+    public String detectorType;
+
+    @Param({"16", "60"})
+    public long syntheticPeriodMs;
+
+    private SensorTrace trace;
+
+    private TapDetector detector;
+
+    private int index;
+
+    private long offsetNs;
+
+    private long spanNs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String path = System.getProperty("pvr.trace");
+        trace =
+                path != null && !path.isEmpty()
+                        ? SensorTrace.read(new File(path))
+                        : synthetic(syntheticPeriodMs, SYNTHETIC_EVENTS);
+        int last = trace.size() - 1;
+        spanNs =
+                trace.timestampsNs[last]
+                        - trace.timestampsNs[0]
+                        + (trace.timestampsNs[last] - trace.timestampsNs[0]) / last;
+        detector = TapDetector.create(detectorType);
+        detector.setParameters(600, 0.8f, 4f);
+        index = 0;
+        offsetNs = 0;
+    }
+
+    @Benchmark
+    public boolean onSample() {
+        int i = index;
+        boolean toggle =
+                detector.onSample(
+                        trace.timestampsNs[i] + offsetNs, trace.x[i], trace.y[i], trace.z[i]);
+        if (++index == trace.size()) {
+            // loop the trace with continuous timestamps
+            index = 0;
+            offsetNs += spanNs;
+        }
+        return toggle;
+    }
+
+    /** Phone at rest with a double tap every few seconds. */
+    private static SensorTrace synthetic(long periodMs, int events) {
+        Random rnd = new Random(42);
+        long[] t = new long[events];
+        float[][] v = new float[3][events];
+        long now = 1000000000L;
+        int tapGap = (int) Math.max(2, 250 / periodMs);
+        int nextTap = 20;
+        int axis = 0;
+        for (int i = 0; i < events; ++i) {
+            v[0][i] = 0.1f + (float) rnd.nextGaussian() * 0.03f;
+            v[1][i] = 0.2f + (float) rnd.nextGaussian() * 0.03f;
+            v[2][i] = 9.81f + (float) rnd.nextGaussian() * 0.03f;
+            if (i == nextTap) {
+                axis = rnd.nextInt(3);
+                v[axis][i] += 2f;
+            } else if (i == nextTap + tapGap) {
+                v[axis][i] -= 2f;
+                nextTap = i + (int) ((1500 + rnd.nextInt(3000)) / periodMs);
+            }
+            now += periodMs * 1000000L + rnd.nextInt((int) (periodMs * 250000L));
+            t[i] = now;
+        }
+        return new SensorTrace(t, v[0], v[1], v[2]);
+    }
+}
@@ -0,0 +1,117 @@
+#include "PVRAccelerometer.h"
+
+#include <cstring>
+
+#ifdef __ANDROID__
+#include <android/looper.h>
+#include <android/sensor.h>
+#endif
+
+void AccelerationRing::push(const AccSample &sample) {
+    samples[count % CAPACITY] = sample;
+    count++;
+}
+
+const AccSample &AccelerationRing::at(int i) const {
+    uint64_t first = count - size();
+    return samples[(first + i) % CAPACITY];
+}
+
+bool AccelerationRing::latest(AccSample *sample) const {
+    if (count == 0)
+        return false;
+    *sample = samples[(count - 1) % CAPACITY];
+    return true;
+}
+
+AccelerationFeed::AccelerationFeed(std::unique_ptr<AccelerationSource> source)
+    : source(std::move(source)) {
+    running = this->source && this->source->start();
+}
+
+AccelerationFeed::~AccelerationFeed() {
+    if (running)
+        source->stop();
+}
+
+int AccelerationFeed::update() { return running ? source->poll(samples) : 0; }
+
+bool AccelerationFeed::latest(float acc[3]) const {
+    AccSample sample;
+    if (!samples.latest(&sample)) {
+        memset(acc, 0, 3 * sizeof(float));
+        return false;
+    }
+    memcpy(acc, sample.acc.data(), 3 * sizeof(float));
+    return true;
+}
+
+#ifdef __ANDROID__
+namespace {
+    const int LOOPER_ID_ACC = 1;
+
+    class AndroidAccelerationSource : public AccelerationSource {
+      public:
+        bool start() override {
+            // getInstanceForPackage needs API 26
+            manager = ASensorManager_getInstance();
+            if (manager)
+                sensor = ASensorManager_getDefaultSensor(manager, ASENSOR_TYPE_LINEAR_ACCELERATION);
+            if (!sensor)
+                return false;
+
+            ALooper *looper = ALooper_forThread();
+            if (!looper)
+                looper = ALooper_prepare(ALOOPER_PREPARE_ALLOW_NON_CALLBACKS);
+            queue =
+                ASensorManager_createEventQueue(manager, looper, LOOPER_ID_ACC, nullptr, nullptr);
+            if (!queue)
+                return false;
+
+            // as fast as the sensor goes, like SENSOR_DELAY_FASTEST did
+            if (ASensorEventQueue_enableSensor(queue, sensor) < 0 ||
+                ASensorEventQueue_setEventRate(queue, sensor, ASensor_getMinDelay(sensor)) < 0) {
+                ASensorManager_destroyEventQueue(manager, queue);
+                queue = nullptr;
+                return false;
+            }
+            return true;
+        }
+
+        int poll(AccelerationRing &ring) override {
+            int added = 0;
+            ASensorEvent events[16];
+            ssize_t n;
+            while ((n = ASensorEventQueue_getEvents(queue, events, 16)) > 0) {
+                for (ssize_t i = 0; i < n; i++) {
+                    if (events[i].type != ASENSOR_TYPE_LINEAR_ACCELERATION)
+                        continue;
+                    ring.push({events[i].timestamp,
+                               {events[i].acceleration.x,
+                                events[i].acceleration.y,
+                                events[i].acceleration.z}});
+                    added++;
+                }
+            }
+            return added;
+        }
+
+        void stop() override {
+            if (queue) {
+                ASensorEventQueue_disableSensor(queue, sensor);
+                ASensorManager_destroyEventQueue(manager, queue);
+                queue = nullptr;
+            }
+        }
+
+      private:
+        ASensorManager *manager = nullptr;
+        const ASensor *sensor = nullptr;
+        ASensorEventQueue *queue = nullptr;
+    };
+}   // namespace
+
+std::unique_ptr<AccelerationSource> PVRCreateAndroidAccelerationSource() {
+    return std::unique_ptr<AccelerationSource>(new AndroidAccelerationSource());
+}
+#endif
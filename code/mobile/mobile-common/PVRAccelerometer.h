@@ -0,0 +1,78 @@
+#pragma once
+
+#include <array>
+#include <cstdint>
+#include <memory>
+
+// Linear acceleration of the phone, read natively by the sensor sender thread.
+
+struct AccSample {
+    int64_t timestampNs;   // sensor event timestamp, CLOCK_BOOTTIME on Android
+    std::array<float, 3> acc;
+};
+
+// Latest samples, oldest ones are overwritten. Not thread safe, filled and read by the sender.
+class AccelerationRing {
+  public:
+    static constexpr int CAPACITY = 64;
+
+    void push(const AccSample &sample);
+
+    int size() const { return count < CAPACITY ? (int) count : CAPACITY; }
+
+    // i = 0 is the oldest sample kept
+    const AccSample &at(int i) const;
+
+    // Returns false without samples.
+    bool latest(AccSample *sample) const;
+
+    void clear() { count = 0; }
+
+  private:
+    std::array<AccSample, CAPACITY> samples{};
+    uint64_t count = 0;
+};
+
+// Where the samples come from. Created, polled and destroyed on the same thread.
+class AccelerationSource {
+  public:
+    virtual ~AccelerationSource() = default;
+
+    // Returns false if the sensor is not available.
+    virtual bool start() = 0;
+
+    // Adds the samples that arrived since the last poll to the ring, without blocking. Returns
+    // how many.
+    virtual int poll(AccelerationRing &ring) = 0;
+
+    virtual void stop() = 0;
+};
+
+// A started source and the ring of its samples, updated once per sender loop.
+class AccelerationFeed {
+  public:
+    explicit AccelerationFeed(std::unique_ptr<AccelerationSource> source);
+    ~AccelerationFeed();
+
+    bool isRunning() const { return running; }
+
+    // Polls the source, returns the number of new samples.
+    int update();
+
+    // Latest acceleration, zero before the first sample or without a sensor. Returns whether a
+    // sample was there.
+    bool latest(float acc[3]) const;
+
+    const AccelerationRing &ring() const { return samples; }
+
+  private:
+    std::unique_ptr<AccelerationSource> source;
+    AccelerationRing samples;
+    bool running = false;
+};
+
+#ifdef __ANDROID__
+// TYPE_LINEAR_ACCELERATION through an ASensorEventQueue on the looper of the calling thread, which
+// is prepared if it has none. Must be called on the thread that polls it.
+std::unique_ptr<AccelerationSource> PVRCreateAndroidAccelerationSource();
+#endif
@@ -0,0 +1,141 @@
+#include "PVRPoseHistory.h"
+
+#include <cmath>
+
+namespace {
+    const std::memory_order relaxed = std::memory_order_relaxed;
+}   // namespace
+
+void PoseHistory::copy(Entry &to, const Entry &from) {
+    to.pts.store(from.pts.load(relaxed), relaxed);
+    for (int c = 0; c < 4; c++)
+        to.quat[c].store(from.quat[c].load(relaxed), relaxed);
+}
+
+void PoseHistory::add(int64_t pts, const float quat[4]) {
+    int n = count.load(relaxed);
+
+    // usually the newest, so search from the end
+    int pos = n;
+    while (pos > 0 && at(pos - 1).pts.load(relaxed) > pts)
+        pos--;
+    bool replace = pos > 0 && at(pos - 1).pts.load(relaxed) == pts;
+    if (!replace && n == CAPACITY && pos == 0)
+        return;   // older than everything kept
+
+    uint32_t seq = sequence.load(relaxed);
+    sequence.store(seq + 1, relaxed);
+    // the entries must not change before the odd sequence is visible
+    std::atomic_thread_fence(std::memory_order_release);
+
+    if (replace) {
+        pos--;
+    } else {
+        if (n == CAPACITY) {
+            // drop the oldest, the samples before pos move down with it
+            first.store((first.load(relaxed) + 1) % CAPACITY, relaxed);
+            n--;
+            pos--;
+        }
+        for (int i = n; i > pos; i--)
+            copy(at(i), at(i - 1));
+        count.store(n + 1, relaxed);
+    }
+    Entry &entry = at(pos);
+    entry.pts.store(pts, relaxed);
+    for (int c = 0; c < 4; c++)
+        entry.quat[c].store(quat[c], relaxed);
+
+    sequence.store(seq + 2, std::memory_order_release);
+}
+
+bool PoseHistory::lookup(int64_t pts, float quat[4]) const {
+    bool found;
+    float before[4];
+    float after[4];
+    float t;
+    uint32_t seqBefore;
+    uint32_t seqAfter;
+    do {
+        seqBefore = sequence.load(std::memory_order_acquire);
+        int start = first.load(relaxed);
+        int n = count.load(relaxed);
+        auto entry = [&](int i) -> const Entry & { return entries[(start + i) % CAPACITY]; };
+
+        // first sample with a pts >= the one looked up
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) / 2;
+            if (entry(mid).pts.load(relaxed) < pts)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        found = n > 0;
+        t = 0;
+        if (low == n) {
+            // after the newest, nothing to interpolate towards
+            low = n - 1;
+        } else if (entry(low).pts.load(relaxed) != pts) {
+            if (low == 0) {
+                found = false;
+            } else {
+                int64_t p0 = entry(low - 1).pts.load(relaxed);
+                int64_t p1 = entry(low).pts.load(relaxed);
+                t = p1 > p0 ? (float) ((double) (pts - p0) / (double) (p1 - p0)) : 1;
+                for (int c = 0; c < 4; c++)
+                    before[c] = entry(low - 1).quat[c].load(relaxed);
+            }
+        }
+        if (found) {
+            for (int c = 0; c < 4; c++)
+                after[c] = entry(low).quat[c].load(relaxed);
+        }
+
+        // the entries must be read before the sequence is checked again
+        std::atomic_thread_fence(std::memory_order_acquire);
+        seqAfter = sequence.load(relaxed);
+    } while ((seqBefore & 1) != 0 || seqBefore != seqAfter);
+
+    if (!found)
+        return false;
+    if (t == 0) {
+        for (int c = 0; c < 4; c++)
+            quat[c] = after[c];
+    } else {
+        PVRSlerp(before, after, t, quat);
+    }
+    return true;
+}
+
+void PoseHistory::clear() {
+    first.store(0);
+    count.store(0);
+}
+
+void PVRSlerp(const float a[4], const float b[4], float t, float out[4]) {
+    float dot = a[0] * b[0] + a[1] * b[1] + a[2] * b[2] + a[3] * b[3];
+    // q and -q are the same rotation, take the short way
+    float sign = dot < 0 ? -1.f : 1.f;
+    dot *= sign;
+
+    float wa = 1 - t;
+    float wb = t * sign;
+    if (dot < 0.9995f) {
+        float angle = std::acos(dot);
+        float s = std::sin(angle);
+        wa = std::sin((1 - t) * angle) / s;
+        wb = std::sin(t * angle) / s * sign;
+    }
+    float norm = 0;
+    for (int c = 0; c < 4; c++) {
+        out[c] = wa * a[c] + wb * b[c];
+        norm += out[c] * out[c];
+    }
+    // nearly parallel ones are lerped, which needs normalizing
+    norm = std::sqrt(norm);
+    for (int c = 0; c < 4; c++)
+        out[c] /= norm;
+}
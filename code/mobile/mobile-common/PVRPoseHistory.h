@@ -0,0 +1,48 @@
+#pragma once
+
+#include <atomic>
+#include <cstdint>
+
+// Orientations the server rendered the latest frames with, by pts. Written by the stream receiver
+// and read by the renderer for the frame it shows. Fixed capacity, nothing is allocated.
+//
+// The samples are kept sorted by pts, a late one is inserted in its place. One writer and one
+// reader: the reader retries while the writer changes the history, like a seqlock. All fields are
+// atomics, so a read that is retried is not a data race either.
+class PoseHistory {
+  public:
+    static constexpr int CAPACITY = 64;
+
+    // Adds the orientation (w, x, y, z) of a frame, replacing one with the same pts. When full the
+    // oldest sample is dropped, or the new one if it is older than all kept. Writer only.
+    void add(int64_t pts, const float quat[4]);
+
+    // The orientation of pts: the sample with that pts, the slerp of the samples around it if it
+    // is missing, the newest sample after the newest pts. Returns false without samples or for a
+    // pts before the oldest one. Reader only.
+    bool lookup(int64_t pts, float quat[4]) const;
+
+    int size() const { return count.load(std::memory_order_relaxed); }
+
+    // Only while neither writer nor reader run
+    void clear();
+
+  private:
+    struct Entry {
+        std::atomic<int64_t> pts{0};
+        std::atomic<float> quat[4];
+    };
+
+    // samples are entries[(first + i) % CAPACITY] for i < count, oldest first
+    Entry entries[CAPACITY];
+    std::atomic<int> first{0};
+    std::atomic<int> count{0};
+    // odd while the writer changes the history
+    std::atomic<uint32_t> sequence{0};
+
+    Entry &at(int i) { return entries[(first.load(std::memory_order_relaxed) + i) % CAPACITY]; }
+    void copy(Entry &to, const Entry &from);
+};
+
+// Spherical linear interpolation of unit quaternions (w, x, y, z), t = 0 gives a, 1 gives b
+void PVRSlerp(const float a[4], const float b[4], float t, float out[4]);
@@ -175,10 +175,10 @@ void PVRRender(int64_t pts) {
             static Clk::time_point oldtime = Clk::now();
 
             if (pts > 0) {
-                vector<float> v = DequeueQuatAtPts(pts);
-                if (v.size() == 4)
+                float q[4];
+                if (PVRGetQuatAtPts(pts, q))
                     rotInv.block(0, 0, 3, 3) =
-                        Matrix3f(Quaternionf(v[0], v[1], v[2], v[3]));   // todo: simplify
+                        Matrix3f(Quaternionf(q[0], q[1], q[2], q[3]));   // todo: simplify
                 // rotInv = rotMat;//.inverse(); ?
             }
 
@@ -11,46 +11,55 @@ namespace {
     mutex delMtx;
 
     bool announcing = false;
+    // asked from the server with the additional data
+    bool videoUdp = false;
+
+    // the received stream as it goes to the codec, see PVRSetStreamCapture
+    StreamCaptureWriter capture;
+    // replayed instead of received when set, see PVRSetStreamReplay
+    string replayPath;
+    bool replayRealtime = true;
+    StreamReplay *replay = nullptr;   // while replaying
 
     TimeBomb headerBomb(seconds(5), [] {
         pvrState = PVR_STATE_SHUTDOWN;
     });   // todo: error handling instead of shutdown
 
-    //           pts       buf
-    queue<pair<int64_t, vector<float>>> quatQueue;
+    // receiver -> renderer, the orientations the frames were rendered with
+    PoseHistory poseHistory;
 
-    queue<EmptyVidBuf> emptyVBufs;
-    queue<FilledVidBuf> filledVBufs;
+    // codec thread -> receiver, PVRIsVidBufNeeded keeps 3 at most
+    SpscRing<EmptyVidBuf, 16> emptyVBufs;
+    // receiver -> codec thread, holds at most all input buffers of the codec
+    SpscRing<FilledVidBuf, 16> filledVBufs;
 
     float fpsStreamRecver = 0.0;
+
+    mutex statsMtx;
+    PVRStreamStats streamStats[PVR_STREAM_STATS_HISTORY];
+    uint64_t streamStatsCount = 0;    // frames received
+    uint64_t streamStatsPulled = 0;   // frames pulled, or dropped before
+
+    int64_t usSinceEpoch() {
+        return duration_cast<microseconds>(system_clock::now().time_since_epoch()).count();
+    }
 }   // namespace
 
 extern float fpsStreamDecoder = 0.0;
 extern float fpsRenderer = 0.0;
 
-vector<float> DequeueQuatAtPts(int64_t pts) {
-
-    vector<float> quat;
-    try {
-        while (quatQueue.size() > 0 && quatQueue.front().first <= pts) {
-            quat = quatQueue.front().second;
-            quatQueue.pop();
-        }
-
-    } catch (exception e) {
-        PVR_DB_I("PVRSockets_DequeueQuatAtPts:: Caught Exception: " + string(e.what()));
-    }
-
-    return quat;
-}
+bool PVRGetQuatAtPts(int64_t pts, float quat[4]) { return poseHistory.lookup(pts, quat); }
 
 void SendAdditionalData(vector<uint16_t> maxSize, vector<float> fov, float ipd) {
     try {
-        if (talker) {
-            vector<uint8_t> v(2 * 2 + 4 * 4 + 4);
+        // no server to ask in a replay
+        if (talker && replayPath.empty()) {
+            vector<uint8_t> v(2 * 2 + 4 * 4 + 4 + 1);
             memcpy(&v[0], &maxSize[0], 2 * 2);
             memcpy(&v[2 * 2], &fov[0], 4 * 4);
             memcpy(&v[2 * 2 + 4 * 4], &ipd, 4);
+            // older servers ignore them and stream whole frames over TCP
+            v[2 * 2 + 4 * 4 + 4] = (videoUdp ? PVR_VIDEO_UDP : 0) | PVR_VIDEO_SLICES;
             if (!talker->send(PVR_MSG::ADDITIONAL_DATA, v))
                 PVR_DB_I("[PVRSockets::SendAdditionalData] Failed to send AddData");
 
@@ -92,6 +101,7 @@ void PVRStartAnnouncer(const char *ip,
                             segueCb();
                         } else if (msgType == PVR_MSG::HEADER_NALS) {
                             headerCb(&data[0], data.size());
+                            capture.addHeaderNals(&data[0], data.size(), usSinceEpoch());
                             headerBomb.defuse();
                         } else if (msgType == PVR_MSG::DISCONNECT) {
                             unwindSegue();
@@ -250,7 +260,9 @@ void PVRStopAnnouncer() {
     PVR_DB_I("[PVRSockets::PVRStopAnnouncer] Stopping Announcer.");
 }
 
-void PVRStartSendSensorData(uint16_t port, bool (*getSensorData)(float *, float *)) {
+void PVRStartSendSensorData(uint16_t port,
+                            bool (*getOrientation)(float *),
+                            std::unique_ptr<AccelerationSource> (*createAccSource)()) {
     try {
         PVR_DB_I("[PVRStartSendSensorData] sending sensor data on UDP port : " + to_string(port) +
                  ", ip: " + to_string(pcIP));
@@ -262,13 +274,18 @@ void PVRStartSendSensorData(uint16_t port, bool (*getSensorData)(float *, float
                 skt.open(udp::v4());
 
                 RefWhistle ref(microseconds(8333));   // this scans loops of exactly 120 fps
+                AccelerationFeed accFeed(createAccSource());
+                if (!accFeed.isRunning())
+                    PVR_DB_I("[PVRStartSendSensorData] no linear acceleration sensor");
 
                 uint8_t buf[36];
                 auto orQuat = reinterpret_cast<float *>(&buf[0]);
                 auto acc = reinterpret_cast<float *>(&buf[4 * 4]);
                 auto tm = reinterpret_cast<long long *>(&buf[4 * 4 + 3 * 4]);
                 while (pvrState != PVR_STATE_SHUTDOWN) {
-                    if (getSensorData(orQuat, acc)) {
+                    accFeed.update();
+                    if (getOrientation(orQuat)) {
+                        accFeed.latest(acc);
                         *tm = Clk::now().time_since_epoch().count();
                         skt.send_to(buffer(buf, 36), ep);
                     }
@@ -287,136 +304,340 @@ void PVRStartSendSensorData(uint16_t port, bool (*getSensorData)(float *, float
 bool PVRIsVidBufNeeded() { return emptyVBufs.size() < 3; }
 
 void PVREnqueueVideoBuf(EmptyVidBuf eBuf) {
-    try {
-        emptyVBufs.push(eBuf);
-    } catch (exception e) {
-        PVR_DB_I("PVRSockets_PVREnqueueVideoBuf:: Caught Exception: " + string(e.what()));
-    }
+    if (!emptyVBufs.tryPush(eBuf))
+        PVR_DB_I("PVRSockets_PVREnqueueVideoBuf:: emptyVBufs full, dropping idx " +
+                 to_string(eBuf.idx));
 }
 
-FilledVidBuf PVRPopVideoBuf() {
-    try {
-        if (!filledVBufs.empty()) {
-            auto fbuf = filledVBufs.front();
-            filledVBufs.pop();
-            return fbuf;
+FilledVidBuf PVRPopVideoBuf(int timeoutUs) {
+    FilledVidBuf fBuf;
+    if (filledVBufs.popWait(&fBuf, microseconds(timeoutUs)))
+        return fBuf;
+    return {-1, 0, 0};   // idx == -1 -> no buffers available
+}
+
+void PVRResetStreamQueues() {
+    poseHistory.clear();
+    emptyVBufs.clear();
+    filledVBufs.clear();
+}
+
+namespace {
+    // the header the server sends with each frame: pts, quaternion, NAL size, server fps, server
+    // delays, send timestamp
+    const size_t EXTRA_BUF_SIZE = 8 + 16 + 4 + 20 + 8 + 8;
+
+    int msSinceSent(int64_t timestampUs) { return (int) ((usSinceEpoch() - timestampUs) / 1000); }
+
+    // Waits for a codec input buffer, false at shutdown
+    bool popEmptyVidBuf(EmptyVidBuf *eBuf) {
+        // woken by the codec thread as soon as it hands over a buffer
+        while (!emptyVBufs.popWait(eBuf, milliseconds(10))) {
+            if (pvrState == PVR_STATE_SHUTDOWN)
+                return false;
         }
-    } catch (exception e) {
-        PVR_DB_I("PVRSockets_PVRPopVideoBuf:: Caught Exception: " + string(e.what()));
+        return true;
+    }
+
+    // After a frame went to the decoder, keeps its stats for the UI
+    void frameReceived(uint8_t *extraBuf, int networkDelay) {
+        static Clk::time_point oldtime = Clk::now();
+        auto fpsBuf = reinterpret_cast<float *>(extraBuf + 8 + 16 + 4);
+        auto ctdBuf = reinterpret_cast<float *>(extraBuf + 8 + 16 + 4 + 20);
+        auto timestamp = reinterpret_cast<int64_t *>(extraBuf + 8 + 16 + 4 + 20 + 8);
+
+        // PVR_DB_I("Time: "+ to_string(
+        // (duration_cast<microseconds>(system_clock::now().time_since_epoch()).count()
+        // - *timestamp) ));
+        fpsStreamRecver = (1000000000.0 / (Clk::now() - oldtime).count());
+        PVR_DB("[StreamReceiver th] ------------------- Stream Receiving @ FPS: " +
+               to_string(fpsStreamRecver) + " De-coding @ FPS : " + to_string(fpsStreamDecoder) +
+               " Rendering @ FPS : " + to_string(fpsRenderer));
+        oldtime = Clk::now();
+
+        int receiveDelay = msSinceSent(*timestamp);
+        {
+            lock_guard<mutex> lock(statsMtx);
+            auto &stats = streamStats[streamStatsCount % PVR_STREAM_STATS_HISTORY];
+            stats.fpsStreamRecver = fpsStreamRecver;
+            stats.fpsDecoder = fpsStreamDecoder;
+            stats.fpsRenderer = fpsRenderer;
+            memcpy(stats.serverFps, fpsBuf, sizeof(stats.serverFps));
+            memcpy(stats.serverDelays, ctdBuf, sizeof(stats.serverDelays));
+            stats.networkDelay = networkDelay;
+            stats.receiveDelay = receiveDelay;
+            streamStatsCount++;
+        }
+    }
+
+    // The NALs of a sliced frame, see PVRSliceWriter.h, one after the other into the codec buffer.
+    // False if a slice does not fit, the rest of the frame is then read and dropped.
+    bool readSlices(io_service &svc,
+                    tcp::socket &skt,
+                    function<void(const asio::error_code &, size_t)> &handler,
+                    asio::error_code &ec,
+                    const EmptyVidBuf &eBuf,
+                    size_t *filled) {
+        *filled = 0;
+        bool fits = true;
+        uint32_t sliceSz = 0;
+        vector<uint8_t> dropped;
+        while (ec.value() == 0 && (sliceSz & PVR_LAST_SLICE) == 0) {
+            async_read(skt, buffer(&sliceSz, sizeof(sliceSz)), handler);
+            svc.run();
+            svc.reset();
+            if (ec.value() != 0)
+                break;
+
+            size_t size = sliceSz & ~PVR_LAST_SLICE;
+            if (fits && *filled + size > eBuf.bufSz) {
+                PVR_DB_I("[StreamReceiver th] slice of " + to_string(size) +
+                         " Bs does not fit codec buffer idx " + to_string(eBuf.idx) +
+                         ", frame dropped");
+                fits = false;
+            }
+            if (fits) {
+                async_read(skt, buffer(eBuf.buf + *filled, size), handler);
+                *filled += size;
+            } else {
+                dropped.resize(size);
+                async_read(skt, buffer(dropped), handler);
+            }
+            svc.run();
+            svc.reset();
+        }
+        return fits;
+    }
+
+    // extraBuf then the NAL, read straight into the codec buffer. Sliced frames come as their
+    // slices, read as they arrive.
+    void receiveTcp(io_service &svc, uint16_t port) {
+        tcp::socket skt(svc);
+        asio::error_code ec = error::fault;
+        PVR_DB_I("[StreamReceiver th] Connecting to pcIP " + pcIP + ":" + to_string(port));
+        // TODO: Add max retries or timeout, connect will block until connected
+        while (ec.value() != 0 && pvrState != PVR_STATE_SHUTDOWN)
+            skt.connect({address::from_string(pcIP), port}, ec);
+
+        PVR_DB_I("[StreamReceiver th] socket connected pcIP " + pcIP + ":" + to_string(port));
+
+        function<void(const asio::error_code &, size_t)> handler =
+            [&](const asio::error_code &err, size_t) { ec = err; };
+
+        uint8_t extraBuf[EXTRA_BUF_SIZE];
+        // these values are automatically updated when extraBuf is updated
+        auto pts = reinterpret_cast<int64_t *>(extraBuf);
+        auto quatBuf = reinterpret_cast<float *>(extraBuf + 8);
+        auto pktSz = reinterpret_cast<uint32_t *>(extraBuf + 8 + 16);
+        auto timestamp = reinterpret_cast<int64_t *>(extraBuf + 8 + 16 + 4 + 20 + 8);
+
+        EmptyVidBuf eBuf;
+        // the buffer of a dropped frame, the next one is read into it. Only the codec thread
+        // pushes emptyVBufs.
+        bool bufKept = false;
+        while (pvrState != PVR_STATE_SHUTDOWN) {
+            async_read(skt, buffer(extraBuf, sizeof(extraBuf)), handler);
+            svc.run();
+            svc.reset();
+
+            auto networkDelay = msSinceSent(*timestamp);
+
+            PVR_DB("[StreamReceiver th] recvd 28maxBs with Error: " + to_string(ec.value()) +
+                   ", pts: " + to_string(*pts) + ", pktSz" + to_string(*pktSz));
+
+            if (ec.value() == 0) {
+                poseHistory.add(*pts, quatBuf);
+
+                if (bufKept || popEmptyVidBuf(&eBuf)) {
+                    bufKept = false;
+                    bool complete = true;
+                    if (*pktSz == PVR_SLICED_FRAME) {
+                        size_t filled;
+                        complete = readSlices(svc, skt, handler, ec, eBuf, &filled);
+                        *pktSz = (uint32_t) filled;
+                    } else {
+                        async_read(skt, buffer(eBuf.buf, *pktSz), handler);
+                        svc.run();
+                        svc.reset();
+                    }
+
+                    PVR_DB("[StreamReceiver th] emptyVBufs.size: " + to_string(emptyVBufs.size()) +
+                           ", Reading sock for " + to_string(*pktSz) + "Bs");
+                    if (ec.value() == 0 && !complete) {
+                        bufKept = true;
+                    } else if (ec.value() == 0) {
+                        // before the codec owns the buffer again
+                        capture.addFrame(
+                            extraBuf, sizeof(extraBuf), eBuf.buf, *pktSz, usSinceEpoch());
+                        if (!filledVBufs.tryPush({eBuf.idx, *pktSz, (uint64_t) *pts}))
+                            PVR_DB_I("[StreamReceiver th] filledVBufs full");
+                        PVR_DB("[StreamReceiver th] pushing onto filledVBufs idx: " +
+                               to_string(eBuf.idx) + ", size: " + to_string(*pktSz) +
+                               ", pts:" + to_string(*pts));
+                    } else
+                        break;
+                }
+            } else
+                break;
+
+            frameReceived(extraBuf, networkDelay);
+        }
+    }
+
+    // Packets of extraBuf and the NAL, see PVRVideoTransport.h. Lost ones are recovered from the
+    // parity when possible, a frame that cannot be is skipped.
+    void receiveUdp(io_service &svc, uint16_t port) {
+        udp::socket skt(svc, {udp::v4(), port});
+        // a key frame arrives as a burst of packets
+        skt.set_option(socket_base::receive_buffer_size(1 << 20));
+        PVR_DB_I("[StreamReceiver th] Receiving UDP on port " + to_string(port));
+
+        asio::error_code ec;
+        size_t received = 0;
+        function<void(const asio::error_code &, size_t)> handler =
+            [&](const asio::error_code &err, size_t size) {
+                ec = err;
+                received = size;
+            };
+
+        VideoReassembler reassembler;
+        vector<uint8_t> packet(65536);
+        uint8_t extraBuf[EXTRA_BUF_SIZE];
+        auto pts = reinterpret_cast<int64_t *>(extraBuf);
+        auto quatBuf = reinterpret_cast<float *>(extraBuf + 8);
+        auto timestamp = reinterpret_cast<int64_t *>(extraBuf + 8 + 16 + 4 + 20 + 8);
+
+        while (pvrState != PVR_STATE_SHUTDOWN) {
+            ec = error::fault;   // stays set if the service is stopped
+            skt.async_receive(buffer(packet), handler);
+            svc.run();
+            svc.reset();
+            if (ec.value() != 0)
+                break;
+
+            if (!reassembler.add(&packet[0], received) ||
+                reassembler.frameSize() < sizeof(extraBuf))
+                continue;
+            memcpy(extraBuf, reassembler.frame(), sizeof(extraBuf));
+            auto networkDelay = msSinceSent(*timestamp);
+            poseHistory.add(*pts, quatBuf);
+
+            auto &stats = reassembler.stats();
+            if (stats.frames % 600 == 0)
+                PVR_DB_I("[StreamReceiver th] UDP frames: " + to_string(stats.frames) +
+                         ", recovered: " + to_string(stats.framesRecovered) +
+                         ", lost: " + to_string(stats.framesLost) +
+                         ", packets: " + to_string(stats.packets));
+
+            EmptyVidBuf eBuf;
+            if (!popEmptyVidBuf(&eBuf))
+                break;
+            size_t nalSz = reassembler.frameSize() - sizeof(extraBuf);
+            if (nalSz > eBuf.bufSz) {
+                PVR_DB_I("[StreamReceiver th] frame of " + to_string(nalSz) +
+                         "Bs does not fit codec buffer idx " + to_string(eBuf.idx));
+                nalSz = 0;   // the buffer goes back to the codec empty
+            }
+            memcpy(eBuf.buf, reassembler.frame() + sizeof(extraBuf), nalSz);
+            capture.addFrame(extraBuf, sizeof(extraBuf), eBuf.buf, nalSz, usSinceEpoch());
+            if (!filledVBufs.tryPush({eBuf.idx, nalSz, (uint64_t) *pts}))
+                PVR_DB_I("[StreamReceiver th] filledVBufs full");
+
+            frameReceived(extraBuf, networkDelay);
+        }
+    }
+
+    // The frames of a capture into the codec buffers like received ones
+    void replayCapture(StreamCaptureReader &reader, bool realtime) {
+        StreamReplay frames(reader, realtime);
+        delMtx.lock();
+        replay = &frames;
+        delMtx.unlock();
+
+        CapturedFrame frame;
+        while (pvrState != PVR_STATE_SHUTDOWN && frames.next(&frame)) {
+            uint8_t *extraBuf = &frame.header[0];
+            auto pts = reinterpret_cast<int64_t *>(extraBuf);
+            auto quatBuf = reinterpret_cast<float *>(extraBuf + 8);
+            auto timestamp = reinterpret_cast<int64_t *>(extraBuf + 8 + 16 + 4 + 20 + 8);
+            // as if sent now, the stats keep the delay the frame had when it was captured
+            *timestamp = usSinceEpoch() - (frame.receiveUs - *timestamp);
+            poseHistory.add(*pts, quatBuf);
+
+            EmptyVidBuf eBuf;
+            if (!popEmptyVidBuf(&eBuf))
+                break;
+            size_t nalSz = frame.nal.size();
+            if (nalSz > eBuf.bufSz) {
+                PVR_DB_I("[StreamReceiver th] captured frame of " + to_string(nalSz) +
+                         "Bs does not fit codec buffer idx " + to_string(eBuf.idx));
+                nalSz = 0;   // the buffer goes back to the codec empty
+            }
+            memcpy(eBuf.buf, frame.nal.data(), nalSz);
+            if (!filledVBufs.tryPush({eBuf.idx, nalSz, (uint64_t) *pts}))
+                PVR_DB_I("[StreamReceiver th] filledVBufs full");
+
+            frameReceived(extraBuf, msSinceSent(*timestamp));
+        }
+        PVR_DB_I("[StreamReceiver th] replay ended");
+
+        delMtx.lock();
+        replay = nullptr;
+        delMtx.unlock();
+    }
+}   // namespace
+
+void PVRSetVideoUdp(bool udp) { videoUdp = udp; }
+
+void PVRSetStreamCapture(const char *path) {
+    if (path && *path) {
+        if (capture.open(path))
+            PVR_DB_I("[PVRSockets::PVRSetStreamCapture] capturing the stream to " + string(path));
+        else
+            PVR_DB_I("[PVRSockets::PVRSetStreamCapture] cannot create " + string(path));
+    } else {
+        capture.close();
     }
-    return {-1, 0, 0};   // idx == -1 -> no buffers available
+}
+
+void PVRSetStreamReplay(const char *path, bool realtime) {
+    replayPath = path ? path : "";
+    replayRealtime = realtime;
 }
 
 void PVRStartReceiveStreams(uint16_t port) {
     try {
         while (pvrState == PVR_STATE_SHUTDOWN)
             usleep(10000);
-        PVR_DB_I("[PVRSockets::PVRStartReceiveStreams] th started.. @p:" + to_string(port));
+        if (!replayPath.empty()) {
+            string path = replayPath;
+            bool realtime = replayRealtime;
+            PVR_DB_I("[PVRSockets::PVRStartReceiveStreams] th started.. replaying " + path +
+                     (realtime ? " at recorded speed" : " at max speed"));
+            strThr = new std::thread([=] {
+                try {
+                    StreamCaptureReader reader;
+                    if (reader.open(path))
+                        replayCapture(reader, realtime);
+                    else
+                        PVR_DB_I("[PVRStartReceiveStreams th] not a capture: " + path);
+                } catch (exception &e) {
+                    PVR_DB_I("[PVRStartReceiveStreams th] caught Exception: " +
+                             to_string(e.what()));
+                }
+            });
+            return;
+        }
+        PVR_DB_I("[PVRSockets::PVRStartReceiveStreams] th started.. @p:" + to_string(port) +
+                 (videoUdp ? " UDP" : " TCP"));
         strThr = new std::thread([=] {
             try {
                 io_service svc;
                 videoSvc = &svc;
-                // udp::socket skt(svc, {udp::v4(), port});
-                tcp::socket skt(svc);
-                asio::error_code ec = error::fault;
-                PVR_DB_I("[StreamReceiver th] Connecting to pcIP " + pcIP + ":" + to_string(port));
-                // TODO: Add max retries or timeout, connect will block until connected
-                while (ec.value() != 0 && pvrState != PVR_STATE_SHUTDOWN)
-                    skt.connect({address::from_string(pcIP), port}, ec);
-
-                PVR_DB_I("[StreamReceiver th] socket connected pcIP " + pcIP + ":" +
-                         to_string(port));
-
-                function<void(const asio::error_code &, size_t)> handler =
-                    [&](const asio::error_code &err, size_t) { ec = err; };
-
-                uint8_t extraBuf[8 + 16 + 4 + 20 + 8 + 8];
-                auto pts = reinterpret_cast<int64_t *>(
-                    extraBuf);   // these values are automatically updated
-                auto quatBuf =
-                    reinterpret_cast<float *>(extraBuf + 8);   // when extraBuf is updated
-                auto pktSz = reinterpret_cast<uint32_t *>(extraBuf + 8 + 16);
-                auto fpsBuf = reinterpret_cast<float *>(extraBuf + 8 + 16 + 4);
-                auto ctdBuf = reinterpret_cast<float *>(extraBuf + 8 + 16 + 4 + 20);
-                auto timestamp = reinterpret_cast<int64_t *>(extraBuf + 8 + 16 + 4 + 20 + 8);
-
-                // reinit queues
-                quatQueue = queue<pair<int64_t, vector<float>>>();
-                emptyVBufs = queue<EmptyVidBuf>();
-                filledVBufs = queue<FilledVidBuf>();
-
-                while (pvrState != PVR_STATE_SHUTDOWN) {
-
-                    static Clk::time_point oldtime = Clk::now();
-
-                    async_read(skt, buffer(extraBuf, sizeof(extraBuf)), handler);
-                    svc.run();
-                    svc.reset();
-
-                    auto networkDelay =
-                        (int) ((duration_cast<microseconds>(system_clock::now().time_since_epoch())
-                                    .count() -
-                                *timestamp) /
-                               1000);
-
-                    PVR_DB(
-                        "[StreamReceiver th] recvd 28maxBs with Error: " + to_string(ec.value()) +
-                        ", pts: " + to_string(*pts) + ", pktSz" + to_string(*pktSz));
-
-                    if (ec.value() == 0) {
-                        quatQueue.push({*pts, vector<float>(quatBuf, quatBuf + 4)});
-
-                        while (emptyVBufs.empty() && pvrState != PVR_STATE_SHUTDOWN)
-                            usleep(2000);   // 1ms
-
-                        if (!emptyVBufs.empty()) {
-                            auto eBuf = emptyVBufs.front();
-                            async_read(skt, buffer(eBuf.buf, *pktSz), handler);
-                            svc.run();
-                            svc.reset();
-
-                            PVR_DB("[StreamReceiver th] emptyVBufs.size: " +
-                                   to_string(emptyVBufs.size()) + ", Reading sock for " +
-                                   to_string(*pktSz) + "Bs");
-                            if (ec.value() == 0) {
-                                filledVBufs.push({eBuf.idx, *pktSz, (uint64_t) *pts});
-                                PVR_DB("[StreamReceiver th] pushing onto filledVBufs idx: " +
-                                       to_string(eBuf.idx) + ", size: " + to_string(*pktSz) +
-                                       ", pts:" + to_string(*pts) + "...pop eVbuf ");
-                                emptyVBufs.pop();
-                            } else
-                                break;
-                        }
-                    } else
-                        break;
-
-                    // PVR_DB_I("Time: "+ to_string(
-                    // (duration_cast<microseconds>(system_clock::now().time_since_epoch()).count()
-                    // - *timestamp) ));
-                    fpsStreamRecver = (1000000000.0 / (Clk::now() - oldtime).count());
-                    PVR_DB("[StreamReceiver th] ------------------- Stream Receiving @ FPS: " +
-                           to_string(fpsStreamRecver) +
-                           " De-coding @ FPS : " + to_string(fpsStreamDecoder) +
-                           " Rendering @ FPS : " + to_string(fpsRenderer));
-                    oldtime = Clk::now();
-
-                    updateJavaTextViewFPS(
-                        fpsStreamRecver,
-                        fpsStreamDecoder,
-                        fpsRenderer,
-                        fpsBuf[0],
-                        fpsBuf[1],
-                        fpsBuf[2],
-                        fpsBuf[3],
-                        fpsBuf[4],
-                        ctdBuf[0],
-                        ctdBuf[1],
-                        networkDelay,
-                        (int) ((duration_cast<microseconds>(system_clock::now().time_since_epoch())
-                                    .count() -
-                                *timestamp) /
-                               1000));
-                }
+                if (videoUdp)
+                    receiveUdp(svc, port);
+                else
+                    receiveTcp(svc, port);
                 delMtx.lock();
                 videoSvc = nullptr;
                 delMtx.unlock();
@@ -429,12 +650,27 @@ void PVRStartReceiveStreams(uint16_t port) {
     }
 }
 
+int PVRPullStreamStats(PVRStreamStats *stats, int maxCount) {
+    lock_guard<mutex> lock(statsMtx);
+    // frames that were overwritten or do not fit are dropped, the oldest first
+    uint64_t kept = min<uint64_t>(PVR_STREAM_STATS_HISTORY, max(maxCount, 0));
+    if (streamStatsCount - streamStatsPulled > kept)
+        streamStatsPulled = streamStatsCount - kept;
+
+    int count = 0;
+    for (; streamStatsPulled < streamStatsCount; streamStatsPulled++)
+        stats[count++] = streamStats[streamStatsPulled % PVR_STREAM_STATS_HISTORY];
+    return count;
+}
+
 void PVRStopStreams() {
     try {
         // talker sends disconnects at segue
         delMtx.lock();
         if (videoSvc)
             videoSvc->stop();   // todo: use mutex
+        if (replay)
+            replay->stop();
         delMtx.unlock();
 
         if (strThr) {
@@ -442,6 +678,7 @@ void PVRStopStreams() {
             delete strThr;
             strThr = nullptr;
         }
+        capture.close();
     } catch (exception e) {
         PVR_DB_I("PVRSockets_PVRStopStreams:: Caught Exception: " + string(e.what()));
     }
@@ -7,9 +7,15 @@
 #include "pvr_google_ifaddrs.h"
 #include <vector>
 
+#include "PVRAccelerometer.h"
+#include "PVRPoseHistory.h"
 #include "PVRRenderer.h"
 
+#include "PVRSliceWriter.h"
 #include "PVRSocketUtils.h"
+#include "PVRStreamCapture.h"
+#include "PVRVideoTransport.h"
+#include "Utils/SpscRing.h"
 #include "Utils/ThreadUtils.h"
 #include <iostream>
 #include <queue>
@@ -19,9 +25,17 @@ using namespace asio;
 using namespace asio::ip;
 using namespace std::chrono;
 
-std::vector<float> DequeueQuatAtPts(int64_t pts);
+// The orientation the frame of pts was rendered with, interpolated if it did not arrive. Returns
+// false before the first one, only called by the renderer.
+bool PVRGetQuatAtPts(int64_t pts, float quat[4]);
 void SendAdditionalData(std::vector<uint16_t> maxSize, std::vector<float> fov, float ipd);
 
+// Sends the orientation with the latest acceleration at 120Hz. The acceleration source is created,
+// polled and destroyed on the sender thread, so the sensor queue runs on its looper.
+void PVRStartSendSensorData(uint16_t port,
+                            bool (*getOrientation)(float *orQuat),
+                            std::unique_ptr<AccelerationSource> (*createAccSource)());
+
 struct EmptyVidBuf {
     uint8_t *buf;
     int idx;
@@ -34,12 +48,28 @@ struct FilledVidBuf {
     uint64_t pts;
 };
 
+// Stream stats of a received frame, kept until pulled by the UI
+#define PVR_STREAM_STATS_HISTORY 128
+
+struct PVRStreamStats {
+    float fpsStreamRecver;
+    float fpsDecoder;
+    float fpsRenderer;
+    float serverFps[5];      // VR app, encoder, stream writer, streamer, renderer
+    float serverDelays[2];   // renderer, encoder, in ms
+    int networkDelay;        // ms
+    int receiveDelay;        // ms, from sending on the server to handing the frame to the decoder
+};
+
 extern "C" {
 #endif
 
 bool PVRIsVidBufNeeded();
 void PVREnqueueVideoBuf(EmptyVidBuf emptyVidBuf);
-FilledVidBuf PVRPopVideoBuf();
+// Waits up to timeoutUs for a filled buffer, idx is -1 without one
+FilledVidBuf PVRPopVideoBuf(int timeoutUs);
+// Only while neither the stream receiver nor the codec thread run
+void PVRResetStreamQueues();
 
 void PVRStartAnnouncer(const char *ip,
                        uint16_t port,
@@ -51,24 +81,22 @@ void PVRStopAnnouncer();
 void PrintNetworkInterfaceInfos();
 void PVRAnnounceToAllInterfaces(udp::socket &skt, uint8_t *buf, const uint16_t &port);
 
+// UDP with forward error correction instead of TCP for the video stream, set before the system is
+// initialized, the server is asked for it with the additional data
+void PVRSetVideoUdp(bool udp);
+// Records the header NALs and every frame received to path until the streams stop, see
+// PVRStreamCapture.h. Set before the system is initialized, null or empty stops recording.
+void PVRSetStreamCapture(const char *path);
+// The streams replay the capture at path instead of receiving from the server, its frames spaced
+// like they were received or as fast as the codec takes them. Set before the system is
+// initialized, no server is asked for the stream then. Null or empty receives again.
+void PVRSetStreamReplay(const char *path, bool realtime);
 void PVRStartReceiveStreams(uint16_t port);
 void PVRStopStreams();
 
-void PVRStartSendSensorData(uint16_t port, bool (*getSensorData)(float *orQuat, float *acc));
-
-// TODO: Make a .h file of Native-lib.cpp and add the below
-void updateJavaTextViewFPS(float f1,
-                           float f2,
-                           float f3,
-                           float cf1,
-                           float cf2,
-                           float cf3,
-                           float cf4,
-                           float cf5,
-                           float ctd1,
-                           float ctd2,
-                           int td1,
-                           int td2);
+// Copies the stats of up to maxCount frames received since the last pull, oldest first, returns
+// how many. Only the latest PVR_STREAM_STATS_HISTORY frames are kept between pulls.
+int PVRPullStreamStats(PVRStreamStats *stats, int maxCount);
 #ifdef __cplusplus
 }
 #endif
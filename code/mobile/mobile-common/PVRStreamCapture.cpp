@@ -0,0 +1,225 @@
+#include "PVRStreamCapture.h"
+
+#include <cstring>
+
+namespace {
+    const size_t MAGIC_SIZE = 8;
+    const size_t RECORD_HEADER_SIZE = 1 + 4 + 8;
+    const size_t FOOTER_SIZE = 8 + 4 + 4;
+    // the header the server sends with each frame
+    const size_t FRAME_HEADER_SIZE = 64;
+    // larger records are not written by the phone, a size above is a broken file
+    const uint32_t MAX_RECORD_SIZE = 64 << 20;
+
+    bool seek(FILE *file, uint64_t offset) { return fseeko(file, (off_t) offset, SEEK_SET) == 0; }
+
+    bool readExactly(FILE *file, void *to, size_t size) {
+        return size == 0 || fread(to, 1, size, file) == size;
+    }
+
+    struct RecordHeader {
+        uint8_t type;
+        uint32_t size;
+        int64_t receiveUs;
+    };
+
+    bool readRecordHeader(FILE *file, RecordHeader *record) {
+        uint8_t buf[RECORD_HEADER_SIZE];
+        if (!readExactly(file, buf, sizeof(buf)))
+            return false;
+        record->type = buf[0];
+        memcpy(&record->size, &buf[1], 4);
+        memcpy(&record->receiveUs, &buf[1 + 4], 8);
+        return record->size <= MAX_RECORD_SIZE;
+    }
+}   // namespace
+
+bool StreamCaptureWriter::open(const std::string &path) {
+    close();
+    std::lock_guard<std::mutex> lock(mtx);
+    file = fopen(path.c_str(), "wb");
+    if (!file)
+        return false;
+    // the frames of about a second stay in memory, the receiver rarely waits for the disk
+    fileBuf.resize(1 << 20);
+    setvbuf(file, &fileBuf[0], _IOFBF, fileBuf.size());
+    fwrite(PVR_CAPTURE_MAGIC, 1, MAGIC_SIZE, file);
+    offset = MAGIC_SIZE;
+    index.clear();
+    return true;
+}
+
+void StreamCaptureWriter::close() {
+    std::lock_guard<std::mutex> lock(mtx);
+    if (!file)
+        return;
+    uint64_t indexOffset = offset;
+    if (!index.empty())
+        fwrite(&index[0], sizeof(index[0]), index.size(), file);
+    uint8_t footer[FOOTER_SIZE];
+    uint32_t frames = (uint32_t) index.size();
+    uint32_t magic = PVR_CAPTURE_INDEX_MAGIC;
+    memcpy(&footer[0], &indexOffset, 8);
+    memcpy(&footer[8], &frames, 4);
+    memcpy(&footer[8 + 4], &magic, 4);
+    fwrite(footer, 1, sizeof(footer), file);
+    fclose(file);
+    file = nullptr;
+}
+
+bool StreamCaptureWriter::isOpen() {
+    std::lock_guard<std::mutex> lock(mtx);
+    return file != nullptr;
+}
+
+void StreamCaptureWriter::addHeaderNals(const uint8_t *nals, size_t size, int64_t receiveUs) {
+    std::lock_guard<std::mutex> lock(mtx);
+    addRecord(PVR_CAPTURE_HEADER_NALS, nals, size, nullptr, 0, receiveUs);
+}
+
+void StreamCaptureWriter::addFrame(const uint8_t *header,
+                                   size_t headerSize,
+                                   const uint8_t *nal,
+                                   size_t nalSize,
+                                   int64_t receiveUs) {
+    std::lock_guard<std::mutex> lock(mtx);
+    if (file)
+        index.push_back(offset);
+    addRecord(PVR_CAPTURE_FRAME, header, headerSize, nal, nalSize, receiveUs);
+}
+
+void StreamCaptureWriter::addRecord(uint8_t type,
+                                    const uint8_t *first,
+                                    size_t firstSize,
+                                    const uint8_t *second,
+                                    size_t secondSize,
+                                    int64_t receiveUs) {
+    if (!file)
+        return;
+    uint8_t buf[RECORD_HEADER_SIZE];
+    uint32_t size = (uint32_t) (firstSize + secondSize);
+    buf[0] = type;
+    memcpy(&buf[1], &size, 4);
+    memcpy(&buf[1 + 4], &receiveUs, 8);
+    fwrite(buf, 1, sizeof(buf), file);
+    if (firstSize > 0)
+        fwrite(first, 1, firstSize, file);
+    if (secondSize > 0)
+        fwrite(second, 1, secondSize, file);
+    offset += sizeof(buf) + size;
+}
+
+StreamCaptureReader::~StreamCaptureReader() {
+    if (file)
+        fclose(file);
+}
+
+bool StreamCaptureReader::open(const std::string &path) {
+    if (file)
+        fclose(file);
+    header.clear();
+    index.clear();
+    hasIndex = false;
+    file = fopen(path.c_str(), "rb");
+    if (!file)
+        return false;
+
+    char magic[MAGIC_SIZE];
+    if (!readExactly(file, magic, MAGIC_SIZE) || memcmp(magic, PVR_CAPTURE_MAGIC, MAGIC_SIZE) != 0)
+        return false;
+    fseeko(file, 0, SEEK_END);
+    auto fileSize = (uint64_t) ftello(file);
+    hasIndex = readIndex(fileSize);
+    if (!hasIndex)
+        scanRecords(fileSize);
+
+    // the header NALs come before the first frame
+    uint64_t end = index.empty() ? fileSize : index[0];
+    for (uint64_t at = MAGIC_SIZE; at + RECORD_HEADER_SIZE <= end && header.empty();) {
+        RecordHeader record;
+        if (!seek(file, at) || !readRecordHeader(file, &record))
+            break;
+        if (record.type == PVR_CAPTURE_HEADER_NALS) {
+            header.resize(record.size);
+            if (!readExactly(file, header.data(), record.size))
+                header.clear();
+        }
+        at += RECORD_HEADER_SIZE + record.size;
+    }
+    return !header.empty();
+}
+
+bool StreamCaptureReader::readIndex(uint64_t fileSize) {
+    if (fileSize < MAGIC_SIZE + FOOTER_SIZE || !seek(file, fileSize - FOOTER_SIZE))
+        return false;
+    uint8_t footer[FOOTER_SIZE];
+    if (!readExactly(file, footer, sizeof(footer)))
+        return false;
+    uint64_t indexOffset;
+    uint32_t frames, magic;
+    memcpy(&indexOffset, &footer[0], 8);
+    memcpy(&frames, &footer[8], 4);
+    memcpy(&magic, &footer[8 + 4], 4);
+    if (magic != PVR_CAPTURE_INDEX_MAGIC || indexOffset < MAGIC_SIZE ||
+        indexOffset + (uint64_t) frames * 8 + FOOTER_SIZE != fileSize)
+        return false;
+
+    index.resize(frames);
+    if (!seek(file, indexOffset) || !readExactly(file, index.data(), frames * 8)) {
+        index.clear();
+        return false;
+    }
+    return true;
+}
+
+void StreamCaptureReader::scanRecords(uint64_t fileSize) {
+    uint64_t at = MAGIC_SIZE;
+    RecordHeader record;
+    while (seek(file, at) && readRecordHeader(file, &record)) {
+        uint64_t next = at + RECORD_HEADER_SIZE + record.size;
+        if (next > fileSize)
+            break;   // cut off when the app was killed
+        if (record.type == PVR_CAPTURE_FRAME)
+            index.push_back(at);
+        at = next;
+    }
+}
+
+bool StreamCaptureReader::readFrame(size_t i, CapturedFrame *frame) {
+    RecordHeader record;
+    if (i >= index.size() || !seek(file, index[i]) || !readRecordHeader(file, &record) ||
+        record.type != PVR_CAPTURE_FRAME || record.size < FRAME_HEADER_SIZE)
+        return false;
+    frame->receiveUs = record.receiveUs;
+    frame->header.resize(FRAME_HEADER_SIZE);
+    frame->nal.resize(record.size - FRAME_HEADER_SIZE);
+    return readExactly(file, frame->header.data(), FRAME_HEADER_SIZE) &&
+           readExactly(file, frame->nal.data(), frame->nal.size());
+}
+
+StreamReplay::StreamReplay(StreamCaptureReader &reader, bool realtime)
+    : reader(reader), realtime(realtime) {}
+
+bool StreamReplay::next(CapturedFrame *frame) {
+    if (!reader.readFrame(nextFrame, frame))
+        return false;
+
+    std::unique_lock<std::mutex> lock(mtx);
+    if (nextFrame == 0) {
+        start = std::chrono::steady_clock::now();
+        firstReceiveUs = frame->receiveUs;
+    } else if (realtime) {
+        auto due = start + std::chrono::microseconds(frame->receiveUs - firstReceiveUs);
+        cond.wait_until(lock, due, [this] { return stopped; });
+    }
+    nextFrame++;
+    return !stopped;
+}
+
+void StreamReplay::stop() {
+    {
+        std::lock_guard<std::mutex> lock(mtx);
+        stopped = true;
+    }
+    cond.notify_all();
+}
@@ -0,0 +1,113 @@
+#pragma once
+
+#include <chrono>
+#include <condition_variable>
+#include <cstdint>
+#include <cstdio>
+#include <mutex>
+#include <string>
+#include <vector>
+
+// Captures of the video stream as the phone received it, replayed without a server.
+//
+// The file starts with PVR_CAPTURE_MAGIC. Then records follow, each a uint8 type, a uint32 size, an
+// int64 receive time in us since epoch and the payload: the header NALs, or the 64 byte header of a
+// frame and its NAL. Closing the capture appends the index, the int64 offset of each frame record,
+// then the int64 offset of the index, the uint32 frame count and PVR_CAPTURE_INDEX_MAGIC.
+#define PVR_CAPTURE_MAGIC "PVRCAP01"
+#define PVR_CAPTURE_INDEX_MAGIC 0x58444E49u   // "INDX"
+
+enum PVR_CAPTURE_RECORD {
+    PVR_CAPTURE_HEADER_NALS = 1,
+    PVR_CAPTURE_FRAME = 2,
+};
+
+// Writes a capture, from the talker thread for the header NALs and the stream receiver for the
+// frames. Buffered, a frame is not flushed until the buffer is full.
+class StreamCaptureWriter {
+  public:
+    ~StreamCaptureWriter() { close(); }
+
+    // Replaces the file, closes the capture before. False if it cannot be created.
+    bool open(const std::string &path);
+    // Writes the index, the capture is still readable without it
+    void close();
+    bool isOpen();
+
+    void addHeaderNals(const uint8_t *nals, size_t size, int64_t receiveUs);
+    void addFrame(const uint8_t *header,
+                  size_t headerSize,
+                  const uint8_t *nal,
+                  size_t nalSize,
+                  int64_t receiveUs);
+
+  private:
+    std::mutex mtx;
+    FILE *file = nullptr;
+    std::vector<char> fileBuf;
+    uint64_t offset = 0;
+    std::vector<uint64_t> index;
+
+    void addRecord(uint8_t type,
+                   const uint8_t *first,
+                   size_t firstSize,
+                   const uint8_t *second,
+                   size_t secondSize,
+                   int64_t receiveUs);
+};
+
+struct CapturedFrame {
+    int64_t receiveUs = 0;
+    std::vector<uint8_t> header;
+    std::vector<uint8_t> nal;
+};
+
+// Reads a capture. Without the index, of a capture that was not closed, the frames are found by
+// reading the records, up to the last complete one.
+class StreamCaptureReader {
+  public:
+    ~StreamCaptureReader();
+
+    // False if it is not a capture or has no header NALs
+    bool open(const std::string &path);
+
+    // the first header NALs of the capture, what the decoder is configured with
+    const std::vector<uint8_t> &headerNals() const { return header; }
+    size_t frameCount() const { return index.size(); }
+    bool indexed() const { return hasIndex; }
+
+    // Reuses the buffers of frame
+    bool readFrame(size_t i, CapturedFrame *frame);
+
+  private:
+    FILE *file = nullptr;
+    std::vector<uint8_t> header;
+    std::vector<uint64_t> index;
+    bool hasIndex = false;
+
+    bool readIndex(uint64_t fileSize);
+    void scanRecords(uint64_t fileSize);
+};
+
+// Hands out the frames of a capture when they are due: spaced like they were received, or each as
+// soon as it is asked for
+class StreamReplay {
+  public:
+    StreamReplay(StreamCaptureReader &reader, bool realtime);
+
+    // Waits until the next frame is due and reads it. False at the end, when stopped or on a read
+    // error.
+    bool next(CapturedFrame *frame);
+    // From any thread, wakes a waiting next
+    void stop();
+
+  private:
+    StreamCaptureReader &reader;
+    bool realtime;
+    size_t nextFrame = 0;
+    int64_t firstReceiveUs = 0;
+    std::chrono::steady_clock::time_point start;
+    std::mutex mtx;
+    std::condition_variable cond;
+    bool stopped = false;
+};
@@ -0,0 +1,149 @@
+#pragma once
+
+#include <atomic>
+#include <chrono>
+#include <cstddef>
+#include <cstdint>
+
+#ifdef __linux__
+#include <climits>
+#include <ctime>
+#include <linux/futex.h>
+#include <sys/syscall.h>
+#include <unistd.h>
+#else
+#include <condition_variable>
+#include <mutex>
+#endif
+
+// Wakes a thread sleeping until a counter changes, like an eventcount. A futex on Linux and
+// Android, a condition variable elsewhere. The syscall is only made while a thread sleeps.
+class WaitCounter {
+  public:
+    uint32_t load() const { return counter.load(std::memory_order_seq_cst); }
+
+    // Increments the counter and wakes the sleeping thread
+    void notify() {
+        counter.fetch_add(1, std::memory_order_seq_cst);
+        if (sleeping.load(std::memory_order_seq_cst)) {
+#ifdef __linux__
+            syscall(SYS_futex, &counter, FUTEX_WAKE_PRIVATE, INT_MAX, nullptr, nullptr, 0);
+#else
+            std::lock_guard<std::mutex> lock(mutex);
+            condition.notify_all();
+#endif
+        }
+    }
+
+    // Marks the calling thread as sleeping, it must check its condition again before wait()
+    void prepareWait() { sleeping.store(true, std::memory_order_seq_cst); }
+
+    // Instead of wait(), if the condition was met after prepareWait()
+    void cancelWait() { sleeping.store(false, std::memory_order_relaxed); }
+
+    // Sleeps until the counter differs from seen, the timeout passes or a spurious wake up
+    void wait(uint32_t seen, std::chrono::microseconds timeout) {
+        if (load() == seen && timeout.count() > 0) {
+#ifdef __linux__
+            timespec ts;
+            ts.tv_sec = (time_t) (timeout.count() / 1000000);
+            ts.tv_nsec = (long) (timeout.count() % 1000000) * 1000;
+            syscall(SYS_futex, &counter, FUTEX_WAIT_PRIVATE, seen, &ts, nullptr, 0);
+#else
+            std::unique_lock<std::mutex> lock(mutex);
+            condition.wait_for(lock, timeout, [&] { return load() != seen; });
+#endif
+        }
+        cancelWait();
+    }
+
+  private:
+    // futex words are 32 bit
+    std::atomic<uint32_t> counter{0};
+    std::atomic<bool> sleeping{false};
+#ifndef __linux__
+    std::mutex mutex;
+    std::condition_variable condition;
+#endif
+};
+
+// Bounded queue from one producer thread to one consumer thread without locks. The consumer can
+// sleep until an element arrives instead of polling, the producer never blocks.
+template <typename T, size_t Capacity> class SpscRing {
+    static_assert(Capacity > 0 && (Capacity & (Capacity - 1)) == 0,
+                  "SpscRing capacity must be a power of two");
+
+  public:
+    // Producer only. Returns false if the ring is full.
+    bool tryPush(const T &value) {
+        size_t tail = tailIdx.load(std::memory_order_relaxed);
+        if (tail - headIdx.load(std::memory_order_acquire) == Capacity)
+            return false;
+        slots[tail & (Capacity - 1)] = value;
+        tailIdx.store(tail + 1, std::memory_order_release);
+        pushed.notify();
+        return true;
+    }
+
+    // Consumer only. Returns false if the ring is empty.
+    bool tryPop(T *value) {
+        size_t head = headIdx.load(std::memory_order_relaxed);
+        if (head == tailIdx.load(std::memory_order_acquire))
+            return false;
+        *value = slots[head & (Capacity - 1)];
+        headIdx.store(head + 1, std::memory_order_release);
+        return true;
+    }
+
+    // Consumer only. Waits up to timeout for an element, returns false if none arrived.
+    bool popWait(T *value, std::chrono::microseconds timeout) {
+        auto deadline = std::chrono::steady_clock::now() + timeout;
+        while (!tryPop(value)) {
+            uint32_t seen = pushed.load();
+            pushed.prepareWait();
+            // an element pushed before prepareWait() is seen here, a later one wakes the wait
+            if (tryPop(value)) {
+                pushed.cancelWait();
+                return true;
+            }
+            auto left = std::chrono::duration_cast<std::chrono::microseconds>(
+                deadline - std::chrono::steady_clock::now());
+            if (left.count() <= 0) {
+                pushed.cancelWait();
+                return false;
+            }
+            pushed.wait(seen, left);
+        }
+        return true;
+    }
+
+    // Consumer only. The oldest element, nullptr if empty. Valid until it is popped.
+    const T *front() const {
+        size_t head = headIdx.load(std::memory_order_relaxed);
+        if (head == tailIdx.load(std::memory_order_acquire))
+            return nullptr;
+        return &slots[head & (Capacity - 1)];
+    }
+
+    // Consumer only. Drops the front element, which must exist.
+    void pop() {
+        headIdx.store(headIdx.load(std::memory_order_relaxed) + 1, std::memory_order_release);
+    }
+
+    // Either side, the other side may change it right after
+    size_t size() const {
+        // head first, the tail read after it cannot be behind it
+        size_t head = headIdx.load(std::memory_order_acquire);
+        return tailIdx.load(std::memory_order_acquire) - head;
+    }
+
+    // Only while neither producer nor consumer run
+    void clear() { headIdx.store(tailIdx.load()); }
+
+  private:
+    T slots[Capacity] = {};
+    // on separate cache lines, so producer and consumer do not invalidate each other's index
+    alignas(64) std::atomic<size_t> headIdx{0};
+    alignas(64) std::atomic<size_t> tailIdx{0};
+    alignas(64) WaitCounter pushed;
+};
@@ -18,6 +18,7 @@ ccc GAME_FPS_KEY = "game_fps";
 ccc VIDEO_PORT_KEY = "video_stream_port";
 ccc POSE_PORT_KEY = "pose_stream_port";
 ccc CONN_PORT_KEY = "pairing_port";
+ccc VIDEO_FEC_KEY = "video_udp_parity_percent";
 
 ccc ENCODER_SECT = "encoder";
 ccc PRESET_KEY = "preset";
@@ -29,6 +30,7 @@ ccc KEYINT_MAX_KEY = "keyint_max";
 ccc I_REFRESH_KEY = "intra_refresh";
 ccc BITRATE_KEY = "bitrate";
 ccc PROFILE_KEY = "profile";
+ccc SLICES_KEY = "slices";
 ccc CONN_TIMEOUT = "connection_timeout";
 
 namespace {
@@ -41,6 +43,7 @@ namespace {
                                     {VIDEO_PORT_KEY, 15243},
                                     {POSE_PORT_KEY, 51423},
                                     {CONN_PORT_KEY, 33333},
+                                    {VIDEO_FEC_KEY, 20},
                                     {CONN_TIMEOUT, 5},
                                     {ENCODER_SECT,
                                      {
@@ -53,6 +56,7 @@ namespace {
                                          {I_REFRESH_KEY, false},
                                          {BITRATE_KEY, -1},
                                          {PROFILE_KEY, "baseline"},
+                                         {SLICES_KEY, 4},
                                      }}};
 
     // const wchar_t *const setsFile = L"C:\\Program Files\\PhoneVR\\pvrsettings.json";
@@ -131,6 +131,7 @@ void PVRStopConnectionListener() {
 void PVRStartStreamer(string ip,
                       uint16_t width,
                       uint16_t height,
+                      uint8_t videoFlags,
                       function<void(vector<uint8_t>)> headerCb,
                       function<void()> onErrCb) {
     videoRunning = true;
@@ -138,6 +139,11 @@ void PVRStartStreamer(string ip,
         PVR_DB_I("[PVRStartStreamer th] Setting encoder");
         auto S = ENCODER_SECT;
         int fps = PVRProp<int>({GAME_FPS_KEY});
+        bool udpVideo = (videoFlags & PVR_VIDEO_UDP) != 0;
+        // the parity of UDP frames needs the whole frame
+        int slices = PVRProp<int>({S, SLICES_KEY});
+        bool sliced = (videoFlags & PVR_VIDEO_SLICES) && !udpVideo && slices > 1;
+        int macroblocks = ((width + 15) / 16) * ((height + 15) / 16);
 
         // auto wait = 1'000'000us / fps / 5;
         vFrameDtUs = (1'000'000us / fps).count();
@@ -199,11 +205,27 @@ void PVRStartStreamer(string ip,
         par.rc.f_rf_constant = 24;
         par.rc.f_rf_constant_max = 26;
 
-        // par.nalu_process           TODO: callback available!!!!!!!!! manage a udp thread inside
-        // here, then dispatch sends
-        //  use opaque pointer to know from which frame a nal belongs
-        //  use i_first_mb to sort slice nals
-        //  still need to find out how to sort non-slice nals
+        // the headers come from an encoder without the callback, it would get them without a frame
+        x264_param_t headerPar = par;
+        if (sliced) {
+            // each slice thread hands over its slice as soon as it is done, to the SliceWriter of
+            // the frame in its opaque
+            par.i_slice_count = slices;
+            par.b_sliced_threads = 1;
+            par.nalu_process = [](x264_t *h, x264_nal_t *nal, void *opaque) {
+                // nal is not encoded yet, room as x264_nal_encode needs it
+                thread_local vector<uint8_t> buf;
+                buf.resize(nal->i_payload * 3 / 2 + 5 + 64);
+                x264_nal_encode(h, &buf[0], nal);
+                if (opaque)
+                    static_cast<SliceWriter *>(opaque)->add(nal->p_payload,
+                                                            nal->i_payload,
+                                                            nal->i_type == NAL_SLICE ||
+                                                                nal->i_type == NAL_SLICE_IDR,
+                                                            nal->i_first_mb,
+                                                            nal->i_last_mb);
+            };
+        }
 
         vector<vector<uint8_t *>> vvbuf;
         for (size_t i = 0; i < nVFrames; i++) {
@@ -223,28 +245,43 @@ void PVRStartStreamer(string ip,
 
         x264_nal_t *nals;
         int nNals;
-        res = x264_encoder_headers(enc, &nals, &nNals);
+        auto *headerEnc = sliced ? x264_encoder_open(&headerPar) : enc;
+        res = x264_encoder_headers(headerEnc, &nals, &nNals);
         vector<uint8_t> vheader;
         for (size_t i = 0; i < nNals; i++)
             vheader.insert(vheader.end(),
                            nals[i].p_payload,
                            nals[i].p_payload + nals[i].i_payload);   // WARNING: including SEI nal
+        if (sliced)
+            x264_encoder_close(headerEnc);
         headerCb(vheader);
 
         io_service svc;
         tcp::socket skt(svc);
-        tcp::acceptor acc(svc, {tcp::v4(), PVRProp<uint16_t>({VIDEO_PORT_KEY})});
-        PVR_DB_I("[PVRStartStreamer th] accepting connections on TCP port " +
-                 to_string(PVRProp<uint16_t>({VIDEO_PORT_KEY})) +
-                 ", waiting for device to connect");
-        // TODO: Add max retries or timeout, accept will block until connected
-        acc.accept(skt);
-        PVR_DB_I("[PVRStartStreamer th] Client device connected on TCP port " +
-                 to_string(PVRProp<uint16_t>({VIDEO_PORT_KEY})) + ", sending stream ... ");
-
-        // udp::socket skt(svc);
-        // udp::endpoint remEP(address::from_string(ip), port);
-        // skt.open(udp::v4());
+        udp::socket uSkt(svc);
+        udp::endpoint remEP(address::from_string(ip), PVRProp<uint16_t>({VIDEO_PORT_KEY}));
+        VideoPacketizer packetizer(PVR_VIDEO_SHARD_SIZE, PVRProp<int>({VIDEO_FEC_KEY}));
+        vector<uint8_t> udpFrame;
+        if (udpVideo) {
+            uSkt.open(udp::v4());
+            // a key frame leaves as a burst of packets
+            uSkt.set_option(socket_base::send_buffer_size(1 << 20));
+            PVR_DB_I("[PVRStartStreamer th] sending stream to UDP " + ip + ":" +
+                     to_string(PVRProp<uint16_t>({VIDEO_PORT_KEY})) + " with " +
+                     to_string(PVRProp<int>({VIDEO_FEC_KEY})) + "% parity");
+        } else {
+            tcp::acceptor acc(svc, {tcp::v4(), PVRProp<uint16_t>({VIDEO_PORT_KEY})});
+            PVR_DB_I("[PVRStartStreamer th] accepting connections on TCP port " +
+                     to_string(PVRProp<uint16_t>({VIDEO_PORT_KEY})) +
+                     ", waiting for device to connect");
+            // TODO: Add max retries or timeout, accept will block until connected
+            acc.accept(skt);
+            // the slices are small, they should not wait for each other
+            if (sliced)
+                skt.set_option(tcp::no_delay(true));
+            PVR_DB_I("[PVRStartStreamer th] Client device connected on TCP port " +
+                     to_string(PVRProp<uint16_t>({VIDEO_PORT_KEY})) + ", sending stream ... ");
+        }
 
         int lastWhichFrame = 0;
         // uint8_t buf[256 * 256];
@@ -256,7 +293,53 @@ void PVRStartStreamer(string ip,
         auto tDelaysBuf = reinterpret_cast<float *>(&extraBuf[8 + 16 + 4 + 20]);
         auto timestamp = reinterpret_cast<int64_t *>(&extraBuf[8 + 16 + 4 + 20 + 8]);
 
+        // Pops the pose of the frame of framePts into extraBuf, skipping the poses of frames the
+        // encoder skipped. False without one.
+        auto fillExtraBuf = [&](int64_t framePts, int nalSize) {
+            lock_guard<mutex> lock(quatQueueMutex);
+            while ((quatQueue.size() != 0) &&
+                   (quatQueue.front().first.first < framePts))   // handle skipped frames
+            {
+                PVR_DB("[PVRStartStreamer th] handle skipped frames qPts:" +
+                       to_string(quatQueue.front().first.first) +
+                       ", outpicPts:" + to_string(framePts));
+                quatQueue.pop();
+            }
+            if (quatQueue.size() == 0)
+                return false;
+
+            auto outPts = quatQueue.front().first.first;
+            auto time = quatQueue.front().first.second.first;
+            auto renderDur = quatQueue.front().first.second.second;
+            auto quat = quatQueue.front().second;
+            quatQueue.pop();
+
+            *pbuf = outPts;
+            qbuf[0] = quat.w();
+            qbuf[1] = quat.x();
+            qbuf[2] = quat.y();
+            qbuf[3] = quat.z();
+            *nbuf = nalSize;
+            fpsbuf[0] = fpsSteamVRApp;     // VRApp FPS
+            fpsbuf[1] = fpsEncoder;        // Encoder FPS
+            fpsbuf[2] = fpsStreamWriter;   // StreamWriter FPS
+            fpsbuf[3] = fpsStreamer;       // Streamer FPS
+            fpsbuf[4] = fpsRenderer;
+            tDelaysBuf[0] = renderDur;   // Renderer Delay
+            // Encoder Delay, until the encoder starts for sliced frames
+            tDelaysBuf[1] = (float) ((Clk::now() - time).count() / 1000000.0);
+            *timestamp = (int64_t) duration_cast<microseconds>(
+                             system_clock::now().time_since_epoch())
+                             .count();   // FrameSent TimeStamp
+            return true;
+        };
+
         asio::error_code ec;
+        // written from the slice threads of x264 while a frame is encoded
+        SliceWriter sliceWriter(macroblocks, [&](const uint8_t *data, size_t size) {
+            write(skt, buffer(data, size), ec);
+        });
+
         // ofstream outp("C:\\Users\\narni\\mystream.h264",
         // ofstream::binary);/////////////////////////////////////////////
         while ((whichFrame == lastWhichFrame || quatQueue.size() == 0) &&
@@ -275,73 +358,55 @@ void PVRStartStreamer(string ip,
                          ", wF:" + to_string(whichFrame));
             lastWhichFrame = whichFrame;
             whichFrameMtxs[lastWhichFrame].lock();   // LOCK
+            if (sliced) {
+                // the header goes out with the first slice, before the frame is encoded. Without a
+                // pose the frame is not sent, like a whole one.
+                bool posed = fillExtraBuf(vFrames[lastWhichFrame].i_pts, (int) PVR_SLICED_FRAME);
+                sliceWriter.startFrame(extraBuf, sizeof(extraBuf), 8 + 16 + 4 + 20 + 8);
+                vFrames[lastWhichFrame].opaque = posed ? &sliceWriter : nullptr;
+            }
             auto totSz = x264_encoder_encode(enc, &nals, &nNals, &vFrames[lastWhichFrame], &outPic);
             whichFrameMtxs[lastWhichFrame].unlock();   // UNLOCK
+            if (sliced)
+                totSz = (int) sliceWriter.endFrame();
 
             fpsEncoder = (1000000000.0 / (Clk::now() - oldtime).count());
 
             oldtime = Clk::now();
 
-            if (totSz > 0) {
+            if (totSz > 0 && !sliced) {
                 PVR_DB("[PVRStartStreamer th] Rendering lWf:" + to_string(lastWhichFrame) +
                        ", wF:" + to_string(whichFrame));
-                quatQueueMutex.lock();   // LOCK
-                while ((quatQueue.size() != 0) &&
-                       (quatQueue.front().first.first < outPic.i_pts))   // handle skipped frames
-                {
-                    PVR_DB("[PVRStartStreamer th] handle skipped frames qPts:" +
-                           to_string(quatQueue.front().first.first) +
-                           ", outpicPts:" + to_string(outPic.i_pts));
-                    quatQueue.pop();
-                }
-                quatQueueMutex.unlock();   // UNLOCK
-
-                if (quatQueue.size() != 0) {
-                    quatQueueMutex.lock();
-                    auto outPts = quatQueue.front().first.first;
-                    auto time = quatQueue.front().first.second.first;
-                    auto renderDur = quatQueue.front().first.second.second;
-                    auto quat = quatQueue.front().second;
-                    quatQueue.pop();
-                    quatQueueMutex.unlock();
-
-                    *pbuf = outPts;
-                    qbuf[0] = quat.w();
-                    qbuf[1] = quat.x();
-                    qbuf[2] = quat.y();
-                    qbuf[3] = quat.z();
-                    *nbuf = totSz;
-                    fpsbuf[0] = fpsSteamVRApp;     // VRApp FPS
-                    fpsbuf[1] = fpsEncoder;        // Encoder FPS
-                    fpsbuf[2] = fpsStreamWriter;   // StreamWriter FPS
-                    fpsbuf[3] = fpsStreamer;       // Streamer FPS
-                    fpsbuf[4] = fpsRenderer;
-                    tDelaysBuf[0] = renderDur;   // Renderer Delay
-                    tDelaysBuf[1] =
-                        (float) ((Clk::now() - time).count() / 1000000.0);   // Encoder Delay
-                    *timestamp = (int64_t) duration_cast<microseconds>(
-                                     system_clock::now().time_since_epoch())
-                                     .count();   // FrameSent TimeStamp
-
-                    write(skt, buffer(extraBuf), ec);
-                    write(skt, buffer(nals->p_payload, totSz), ec);
+                if (fillExtraBuf(outPic.i_pts, totSz)) {
+                    if (udpVideo) {
+                        udpFrame.assign(extraBuf, extraBuf + sizeof(extraBuf));
+                        udpFrame.insert(udpFrame.end(), nals->p_payload, nals->p_payload + totSz);
+                        packetizer.send(
+                            &udpFrame[0], udpFrame.size(), [&](const uint8_t *packet, size_t size) {
+                                uSkt.send_to(buffer(packet, size), remEP, 0, ec);
+                            });
+                    } else {
+                        write(skt, buffer(extraBuf), ec);
+                        write(skt, buffer(nals->p_payload, totSz), ec);
+                    }
 
                     PVR_DB("[PVRStartStreamer th] wrote render to socket: Pts:[Tenc:" +
-                           str_fmt("%.2f", tDelaysBuf[1]) +
-                           " ms, Trend:" + str_fmt("%.2f", renderDur) + " ms]" + to_string(outPts) +
+                           str_fmt("%.2f", tDelaysBuf[1]) + " ms, Trend:" +
+                           str_fmt("%.2f", tDelaysBuf[0]) + " ms]" + to_string(*pbuf) +
                            ", Size: " + to_string(sizeof(extraBuf)) + "," + to_string(totSz));
 
-                    if (ec.value() != 0 && videoRunning)
-                        PVR_DB("Write failed: " + ec.message() + " Code: " + to_string(ec.value()));
-                    if (ec == error::connection_aborted || ec == error::connection_reset) {
-                        videoRunning = false;
-                        // onErrCb();
-                    }
-
                     // outp.write((char*)nals->p_payload,
                     // totSz);/////////////////////////////////////////////////////////
                 }
             }
+            if (totSz > 0) {
+                if (ec.value() != 0 && videoRunning)
+                    PVR_DB("Write failed: " + ec.message() + " Code: " + to_string(ec.value()));
+                if (ec == error::connection_aborted || ec == error::connection_reset) {
+                    videoRunning = false;
+                    // onErrCb();
+                }
+            }
             fpsStreamWriter = (1000000000.0 / (Clk::now() - oldtime).count());
             PVR_DB("[PVRStartStreamer th] ------------------- StreamWriting @ FPS: " +
                    to_string(fpsStreamWriter) + " Encoding @ FPS : " + to_string(fpsEncoder) +
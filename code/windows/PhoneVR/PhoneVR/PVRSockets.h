@@ -4,14 +4,20 @@
 #include "openvr_driver.h"
 
 #include "PVRGlobals.h"
+#include "PVRSliceWriter.h"
 #include "PVRSocketUtils.h"
+#include "PVRVideoTransport.h"
 
 void PVRStartConnectionListener(std::function<void(std::string ip, PVR_MSG devType)> callback);
 void PVRStopConnectionListener();
 
+// videoFlags are the PVR_VIDEO_FLAGS the phone sent. With PVR_VIDEO_UDP the frames go as packets
+// with parity, see PVRVideoTransport.h, instead of over TCP. Over TCP PVR_VIDEO_SLICES sends each
+// slice as soon as the encoder finished it, see PVRSliceWriter.h.
 void PVRStartStreamer(std::string ip,
                       uint16_t width,
                       uint16_t height,
+                      uint8_t videoFlags,
                       std::function<void(std::vector<uint8_t>)> headerCb,
                       std::function<void()> onErrCb);
 void PVRProcessFrame(uint64_t hdl, Eigen::Quaternionf quat);
@@ -45,6 +45,7 @@ class HMD : public ITrackedDeviceServerDriver,
     // std::mutex mxaddDataRcvd;
     bool addDataRcvd = false;
     float ipd = 0.0;
+    uint8_t videoFlags = 0;
     uint16_t rdrW = 0, rdrH = 0;
 
     void terminate() {
@@ -93,6 +94,12 @@ class HMD : public ITrackedDeviceServerDriver,
                           // VRProperties()->SetFloatProperty(propCont, Prop_UserIpdMeters_Float,
                           // ipd);
                           PVR_DB_I("[HMD::talker]: IPD: " + to_string(ipd));
+                          // older clients do not send them and receive whole frames over TCP
+                          if (data.size() > 2 * 2 + 4 * 4 + 4)
+                              videoFlags = data[2 * 2 + 4 * 4 + 4];
+                          PVR_DB_I("[HMD::talker]: video over " +
+                                   string(videoFlags & PVR_VIDEO_UDP ? "UDP" : "TCP") +
+                                   (videoFlags & PVR_VIDEO_SLICES ? ", sliced" : ""));
 
                           // mxaddDataRcvd.lock();
                           addDataRcvd = true;
@@ -241,6 +248,7 @@ class HMD : public ITrackedDeviceServerDriver,
                 devIP,
                 rdrW,
                 rdrH,
+                videoFlags,
                 [=](auto v) { talker.send(PVR_MSG::HEADER_NALS, v); },
                 [=] { terminate(); });
 